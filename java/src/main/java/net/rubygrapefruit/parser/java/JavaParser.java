@@ -20,7 +20,30 @@ public class JavaParser {
     private final Set<Expression> identifiers;
 
     public JavaParser() {
+        this(Engine.Interpreter);
+    }
+
+    /**
+     * Creates a parser that uses the given engine.
+     */
+    public JavaParser(Engine engine) {
+        this(engine, null);
+    }
+
+    /**
+     * Creates a parser that records the invocations of the rules of the Java grammar using the given profiler. See
+     * {@link ParserBuilder#setProfiler(ParseProfiler)}.
+     */
+    public JavaParser(ParseProfiler profiler) {
+        this(Engine.Interpreter, profiler);
+    }
+
+    private JavaParser(Engine engine, ParseProfiler profiler) {
         ParserBuilder builder = new ParserBuilder();
+        builder.setEngine(engine);
+        builder.setProfiler(profiler);
+        // Most source files match, so only track failures for those that do not
+        builder.setRecognizeFirst(true);
 
         Expression eol = builder.singleChar('\n');
 
@@ -29,8 +52,8 @@ public class JavaParser {
 
         whitespace = builder.oneOrMore(builder.oneOf(builder.singleChar(' '), eol)).group();
         Expression separator = builder.oneOf(whitespace, starComment, lineComment);
-        Expression whitespaceSeparator = builder.oneOrMore(separator);
-        Expression optionalWhitespace = builder.zeroOrMore(separator);
+        Expression whitespaceSeparator = builder.memoize(builder.oneOrMore(separator));
+        Expression optionalWhitespace = builder.memoize(builder.zeroOrMore(separator));
 
         Expression classKeyword = builder.chars("class");
         Expression interfaceKeyword = builder.chars("interface");
@@ -77,7 +100,8 @@ public class JavaParser {
         Expression packageDeclaration = builder.sequence(packageKeyword, whitespaceSeparator, qualified, optionalWhitespace, semiColon, optionalWhitespace);
         Expression optionalPackageDeclaration = builder.optional(packageDeclaration);
 
-        Expression importDeclaration = builder.sequence(importKeyword, whitespaceSeparator, builder.oneOf(starImport, qualified), optionalWhitespace, semiColon, optionalWhitespace);
+        // Declarations are memoized so that they can be reused when an edited source file is parsed
+        Expression importDeclaration = builder.memoize(builder.sequence(importKeyword, whitespaceSeparator, builder.oneOf(starImport, qualified), optionalWhitespace, semiColon, optionalWhitespace));
         Expression importDeclarations = builder.zeroOrMore(importDeclaration);
 
         Expression identifierList = builder.sequence(
@@ -86,8 +110,9 @@ public class JavaParser {
         Expression superTypesDeclaration = builder.sequence(whitespaceSeparator, extendsKeyword, whitespaceSeparator, identifierList);
         Expression implementsDeclaration = builder.sequence(whitespaceSeparator, implementsKeyword, whitespaceSeparator, identifierList);
 
-        Expression fieldModifiers = builder.zeroOrMore(builder.sequence(builder.oneOf(privateKeyword, finalKeyword), whitespaceSeparator));
-        Expression fieldDeclaration = builder.sequence(fieldModifiers, identifier, whitespaceSeparator, identifier, optionalWhitespace, semiColon);
+        Expression fieldModifiers = builder.memoize(builder.zeroOrMore(builder.sequence(builder.oneOf(privateKeyword, finalKeyword), whitespaceSeparator)));
+        // Member declarations are also split points, so that a large source file can be parsed in parallel
+        Expression fieldDeclaration = builder.splitPoint(builder.sequence(fieldModifiers, identifier, whitespaceSeparator, identifier, optionalWhitespace, semiColon));
 
         Expression methodArgs = builder.optional(builder.sequence(identifier, optionalWhitespace,
                 builder.zeroOrMore(builder.sequence(comma, optionalWhitespace, identifier)), optionalWhitespace));
@@ -104,17 +129,17 @@ public class JavaParser {
         Expression statements = builder.zeroOrMore(builder.sequence(statement, optionalWhitespace));
 
         Expression annotation = builder.sequence(at, optionalWhitespace, identifier);
-        Expression annotations = builder.zeroOrMore(builder.sequence(annotation, optionalWhitespace));
+        Expression annotations = builder.memoize(builder.zeroOrMore(builder.sequence(annotation, optionalWhitespace)));
 
         Expression methodParams = builder.optional(builder.sequence(identifier, whitespaceSeparator, identifier, optionalWhitespace, builder.zeroOrMore(builder.sequence(comma, optionalWhitespace, identifier, whitespaceSeparator, identifier, optionalWhitespace))));
 
-        Expression classMethodModifiers = builder.zeroOrMore(builder.sequence(builder.oneOf(publicKeyword, staticKeyword), whitespaceSeparator));
+        Expression classMethodModifiers = builder.memoize(builder.zeroOrMore(builder.sequence(builder.oneOf(publicKeyword, staticKeyword), whitespaceSeparator)));
         Expression methodSignature = builder.sequence(builder.oneOf(voidKeyword, identifier), whitespaceSeparator, identifier, optionalWhitespace, leftParen, optionalWhitespace, methodParams, rightParen);
-        Expression methodBody = builder.sequence(leftCurly, optionalWhitespace, statements, rightCurly);
-        Expression classMethodDeclaration = builder.sequence(annotations, classMethodModifiers, methodSignature, optionalWhitespace, methodBody);
-        Expression interfaceMethodDeclaration = builder.sequence(annotations, methodSignature, optionalWhitespace, semiColon);
+        Expression methodBody = builder.memoize(builder.sequence(leftCurly, optionalWhitespace, statements, rightCurly));
+        Expression classMethodDeclaration = builder.splitPoint(builder.sequence(annotations, classMethodModifiers, methodSignature, optionalWhitespace, methodBody));
+        Expression interfaceMethodDeclaration = builder.splitPoint(builder.sequence(annotations, methodSignature, optionalWhitespace, semiColon));
 
-        Expression constructorModifiers = builder.zeroOrMore(builder.sequence(builder.oneOf(publicKeyword, privateKeyword, protectedKeyword), whitespaceSeparator));
+        Expression constructorModifiers = builder.memoize(builder.zeroOrMore(builder.sequence(builder.oneOf(publicKeyword, privateKeyword, protectedKeyword), whitespaceSeparator)));
         Expression classConstructor = builder.sequence(constructorModifiers, className.getValue(), optionalWhitespace, leftParen, optionalWhitespace, methodParams, rightParen, optionalWhitespace, methodBody);
 
         Expression classMembers = builder.zeroOrMore(builder.sequence(builder.oneOf(fieldDeclaration, classConstructor, classMethodDeclaration), optionalWhitespace));
@@ -133,40 +158,191 @@ public class JavaParser {
         Expression typeDeclaration = builder.oneOf(classDeclaration, interfaceDeclaration);
 
         Expression compilationUnit = builder.sequence(optionalWhitespace, optionalPackageDeclaration, importDeclarations, typeDeclaration, optionalWhitespace);
+
+        builder.setName(compilationUnit, "compilation unit");
+        builder.setName(whitespaceSeparator, "separator");
+        builder.setName(optionalWhitespace, "optional separator");
+        builder.setName(whitespace, "whitespace");
+        builder.setName(starComment, "comment");
+        builder.setName(lineComment, "line comment");
+        builder.setName(identifier, "identifier");
+        builder.setName(qualified, "qualified name");
+        builder.setName(packageDeclaration, "package");
+        builder.setName(importDeclaration, "import");
+        builder.setName(classDeclaration, "class");
+        builder.setName(interfaceDeclaration, "interface");
+        builder.setName(fieldDeclaration, "field");
+        builder.setName(classConstructor, "constructor");
+        builder.setName(classMethodDeclaration, "method");
+        builder.setName(interfaceMethodDeclaration, "interface method");
+        builder.setName(annotations, "annotations");
+        builder.setName(methodSignature, "method signature");
+        builder.setName(methodBody, "method body");
+        builder.setName(statement, "statement");
+        builder.setName(expression, "expression");
+        builder.setName(newExpression, "new expression");
+
         parser = builder.newParser(compilationUnit);
     }
 
     /**
-     * Parses the given Java source into a sequence of tokens.
+     * Returns the statistics for the rules of the Java grammar that are memoized.
+     */
+    public MemoizationStatistics getMemoizationStatistics() {
+        return parser.getMemoizationStatistics();
+    }
+
+    /**
+     * Adds a listener that is notified of each parse of Java source, such as a {@link ParseMetrics}. See {@link Parser#addListener(ParseListener)}.
+     */
+    public void addListener(ParseListener listener) {
+        parser.addListener(listener);
+    }
+
+    /**
+     * Removes a listener previously added using {@link #addListener(ParseListener)}.
+     */
+    public void removeListener(ParseListener listener) {
+        parser.removeListener(listener);
+    }
+
+    /**
+     * Parses the given Java source into a sequence of tokens. The source is not copied, and must not change while it is being parsed or while the
+     * regions passed to the visitor are in use.
      *
-     * @param input The string to parse.
+     * @param input The source to parse.
      * @param visitor The visitor to receive the results.
      * @return the visitor
      */
-    public <T extends TokenVisitor<JavaToken>> T parse(String input, final T visitor) {
-        parser.parse(input, new TokenVisitor<Expression>(){
+    public <T extends TokenVisitor<JavaToken>> T parse(CharSequence input, T visitor) {
+        parser.parse(input, adapt(visitor));
+        return visitor;
+    }
+
+    /**
+     * Parses the given Java source into a sequence of tokens, stopping early when the parse exceeds one of the limits of the given options. See
+     * {@link Parser#parse(CharSequence, ParseOptions, TokenVisitor)}.
+     *
+     * @param input The source to parse.
+     * @param options The limits for the parse.
+     * @param visitor The visitor to receive the results.
+     * @return the visitor
+     */
+    public <T extends TokenVisitor<JavaToken>> T parse(CharSequence input, ParseOptions options, T visitor) {
+        parser.parse(input, options, adapt(visitor));
+        return visitor;
+    }
+
+    /**
+     * Parses the given Java source into a sequence of tokens, and retains the state of the parse so that an edited version of the source can be
+     * parsed incrementally using {@link #reparse(ParseResult, int, int, CharSequence, TokenVisitor)}.
+     *
+     * @param input The source to parse.
+     * @param visitor The visitor to receive the results.
+     * @return the state of the parse.
+     */
+    public ParseResult parseIncrementally(CharSequence input, TokenVisitor<JavaToken> visitor) {
+        return parser.parseIncrementally(input, adapt(visitor));
+    }
+
+    /**
+     * Same as {@link #parseIncrementally(CharSequence, TokenVisitor)}, but stops early when the parse exceeds one of the limits of the given options.
+     */
+    public ParseResult parseIncrementally(CharSequence input, ParseOptions options, TokenVisitor<JavaToken> visitor) {
+        return parser.parseIncrementally(input, options, adapt(visitor));
+    }
+
+    /**
+     * Parses an edited version of the source of a previous parse into a sequence of tokens, reusing the declarations that are not affected by the
+     * edit. See {@link Parser#reparse(ParseResult, int, int, CharSequence, TokenVisitor)}.
+     *
+     * @param previous The result of the previous parse, from this parser.
+     * @param offset The offset of the edit in the source of the previous parse.
+     * @param removed The number of characters removed at the offset.
+     * @param inserted The text inserted at the offset.
+     * @param visitor The visitor to receive the results.
+     * @return the state of the parse.
+     */
+    public ParseResult reparse(ParseResult previous, int offset, int removed, CharSequence inserted, TokenVisitor<JavaToken> visitor) {
+        return parser.reparse(previous, offset, removed, inserted, adapt(visitor));
+    }
+
+    /**
+     * Same as {@link #reparse(ParseResult, int, int, CharSequence, TokenVisitor)}, but stops early when the parse exceeds one of the limits of the
+     * given options.
+     */
+    public ParseResult reparse(ParseResult previous, int offset, int removed, CharSequence inserted, ParseOptions options, TokenVisitor<JavaToken> visitor) {
+        return parser.reparse(previous, offset, removed, inserted, options, adapt(visitor));
+    }
+
+    /**
+     * Starts parsing the given Java source files in the background. See {@link Parser#parseAll(Iterable, ParseOptions, VisitorFactory)}.
+     *
+     * @param inputs The source files to parse.
+     * @param visitors Creates the visitor for each source file.
+     * @return the batch, which can be used to wait for the source files to be parsed.
+     */
+    public <T extends TokenVisitor<JavaToken>> ParseBatch parseAll(Iterable<? extends ParseInput> inputs, VisitorFactory<T> visitors) {
+        return parseAll(inputs, new ParseOptions(), visitors);
+    }
+
+    /**
+     * Same as {@link #parseAll(Iterable, VisitorFactory)}, using the given options for the parse of each source file.
+     */
+    public <T extends TokenVisitor<JavaToken>> ParseBatch parseAll(Iterable<? extends ParseInput> inputs, ParseOptions options, final VisitorFactory<T> visitors) {
+        return parser.parseAll(inputs, options, new VisitorFactory<AdaptingVisitor<T>>() {
             @Override
-            public void token(Expression expression, Region match) {
-                JavaToken token;
-                if (expression == lineComment || expression == starComment) {
-                    token = JavaToken.Comment;
-                } else if (expression == whitespace) {
-                    token = JavaToken.Whitespace;
-                } else if (keywords.contains(expression)){
-                    token = JavaToken.Keyword;
-                } else if (identifiers.contains(expression)){
-                    token = JavaToken.Identifier;
-                } else {
-                    token = JavaToken.Punctuation;
-                }
-                visitor.token(token, match);
+            public AdaptingVisitor<T> create(ParseInput input) {
+                return adapt(visitors.create(input));
             }
 
             @Override
-            public void failed(String message, Region remainder) {
-                visitor.failed(message, remainder);
+            public void finished(ParseInput input, AdaptingVisitor<T> visitor) {
+                visitors.finished(input, visitor.visitor);
             }
         });
-        return visitor;
+    }
+
+    private <T extends TokenVisitor<JavaToken>> AdaptingVisitor<T> adapt(T visitor) {
+        return new AdaptingVisitor<>(visitor);
+    }
+
+    private class AdaptingVisitor<T extends TokenVisitor<JavaToken>> implements FailureVisitor<Expression> {
+        private final T visitor;
+
+        AdaptingVisitor(T visitor) {
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void token(Expression expression, Region match) {
+            JavaToken token;
+            if (expression == lineComment || expression == starComment) {
+                token = JavaToken.Comment;
+            } else if (expression == whitespace) {
+                token = JavaToken.Whitespace;
+            } else if (keywords.contains(expression)){
+                token = JavaToken.Keyword;
+            } else if (identifiers.contains(expression)){
+                token = JavaToken.Identifier;
+            } else {
+                token = JavaToken.Punctuation;
+            }
+            visitor.token(token, match);
+        }
+
+        @Override
+        public void failed(String message, Region remainder) {
+            visitor.failed(message, remainder);
+        }
+
+        @Override
+        public void failed(ParseFailure failure) {
+            if (visitor instanceof FailureVisitor) {
+                ((FailureVisitor<?>) visitor).failed(failure);
+            } else {
+                visitor.failed(failure.getMessage(), failure.getRemainder());
+            }
+        }
     }
 }
@@ -0,0 +1,9 @@
+package net.rubygrapefruit.parser.java
+
+import net.rubygrapefruit.parser.peg.Engine
+
+class GeneratedCodeJavaParserTest extends JavaParserTest {
+    def setup() {
+        parser = new JavaParser(Engine.GeneratedCode)
+    }
+}
@@ -1,8 +1,15 @@
 package net.rubygrapefruit.parser.java
 
+import net.rubygrapefruit.parser.peg.ParseInput
+import net.rubygrapefruit.parser.peg.ParseOptions
+import net.rubygrapefruit.parser.peg.ParseProfiler
+import net.rubygrapefruit.parser.peg.VisitorFactory
 import net.rubygrapefruit.parser.peg.visitor.CollectingVisitor
 import spock.lang.Specification
 
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+
 class JavaParserTest extends Specification {
     def parser = new JavaParser()
 
@@ -516,6 +523,97 @@ class X {String m(){return new A(a, b}
         false
     }
 
+    def "can reparse an edited Java source file"() {
+        expect:
+        def visitor = new CollectingVisitor()
+        def result = parser.parseIncrementally("class X { int a; int b() { } }", visitor)
+        visitor.failure == null
+
+        def visitor2 = new CollectingVisitor()
+        def result2 = parser.reparse(result, 14, 1, "ab", visitor2)
+        result2.text == "class X { int ab; int b() { } }"
+        visitor2.tokens == parse(result2.text)
+
+        def visitor3 = new CollectingVisitor()
+        def result3 = parser.reparse(result2, 16, 0, " c", visitor3)
+        result3.text == "class X { int ab c; int b() { } }"
+        visitor3.tokens == fail(result3.text).tokens
+        visitor3.failure == fail(result3.text).failure
+    }
+
+    def "can parse a large Java source file in parallel"() {
+        given:
+        def text = "class X {\n" + "    int a;\n    String b(int c) { return c; }\n    X() { }\n" * 2000 + "}\n"
+        def pool = new ForkJoinPool(4)
+        def options = new ParseOptions()
+        options.forkJoinPool = pool
+
+        expect:
+        def visitor = parser.parse(text, options, new CollectingVisitor())
+        visitor.failure == null
+        visitor.tokens == parse(text)
+
+        def broken = text.replace("String b(int c) { return c; }\n    X() { }\n}", "String b(int c) { return c }\n    X() { }\n}")
+        def visitor2 = parser.parse(broken, options, new CollectingVisitor())
+        visitor2.tokens == fail(broken).tokens
+        visitor2.failure == fail(broken).failure
+
+        cleanup:
+        pool.shutdown()
+    }
+
+    def "can parse a batch of Java source files"() {
+        expect:
+        def sources = ["class A { }", "class B { int a; }", "class C { int }"]
+        def results = new ConcurrentHashMap<String, CollectingVisitor<JavaToken>>()
+        def batch = parser.parseAll(sources.collect { ParseInput.of(it, it) }, new VisitorFactory<CollectingVisitor<JavaToken>>() {
+            @Override
+            CollectingVisitor<JavaToken> create(ParseInput input) {
+                return new CollectingVisitor<JavaToken>()
+            }
+
+            @Override
+            void finished(ParseInput input, CollectingVisitor<JavaToken> visitor) {
+                results.put(input.name, visitor)
+            }
+        })
+        batch.await()
+
+        sources.each { source ->
+            assert results[source].tokens == fail(source).tokens
+            assert results[source].values == fail(source).values
+            assert results[source].failure == fail(source).failure
+        }
+        results["class C { int }"].failure != null
+    }
+
+    def "can profile the rules of the Java grammar"() {
+        expect:
+        def profiler = new ParseProfiler()
+        def profiled = new JavaParser(profiler)
+        def source = """
+class Thing {
+    private String a;
+    public String m(String b) {
+        return b;
+    }
+    public String broken(
+}
+"""
+        def visitor = profiled.parse(source, new CollectingVisitor<JavaToken>())
+        visitor.tokens == fail(source).tokens
+        visitor.values == fail(source).values
+        visitor.failure == fail(source).failure
+
+        def rules = profiler.rules.collectEntries { [it.name, it] }
+        rules["compilation unit"].invocations == 1
+        rules["field"].successes == 1
+        rules["method"].invocations == 2
+        rules["method"].successes == 1
+        rules["method"].backtracked > 0
+        profiler.formatCollapsedStacks().readLines().any { it.startsWith("compilation unit;class;method;method body;statement ") }
+    }
+
     def List<String> parse(String str) {
         return parser.parse(str, new CollectingVisitor()).tokens
     }
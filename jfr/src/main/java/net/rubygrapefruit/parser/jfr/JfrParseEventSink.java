@@ -0,0 +1,80 @@
+package net.rubygrapefruit.parser.jfr;
+
+import net.rubygrapefruit.parser.peg.Engine;
+import net.rubygrapefruit.parser.peg.internal.event.ParseEventSink;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records parses as JDK Flight Recorder events. Located by the parser using {@link java.util.ServiceLoader} when this project is on the class path.
+ *
+ * <p>A {@code net.rubygrapefruit.parser.Parse} event is recorded for each parse, with the engine, the input length, the number of tokens, whether
+ * the parse failed and the offset where it stopped. The {@code net.rubygrapefruit.parser.Rule} event is disabled by
+ * default. When it is enabled, a parse is sampled once every {@value #DEFAULT_SAMPLE_INTERVAL} parses, or the interval set using the
+ * {@value #SAMPLE_INTERVAL_PROPERTY} system property, and an event is recorded for each rule matched by a sampled parse. A sampled parse always uses
+ * the interpreter, and is much slower than other parses.</p>
+ *
+ * <p>When the events are disabled, a parse creates no event objects. Requires Java 8 update 262 or later, which provides the JDK Flight Recorder
+ * API.</p>
+ */
+public class JfrParseEventSink implements ParseEventSink {
+    public static final String SAMPLE_INTERVAL_PROPERTY = "net.rubygrapefruit.parser.jfr.sampleInterval";
+    public static final int DEFAULT_SAMPLE_INTERVAL = 100;
+    private final int sampleInterval = Math.max(1, Integer.getInteger(SAMPLE_INTERVAL_PROPERTY, DEFAULT_SAMPLE_INTERVAL));
+    private final AtomicLong parses = new AtomicLong();
+
+    @Override
+    public Object parseStarted() {
+        ParseEvent event = new ParseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void parseFinished(Object parse, Engine engine, int length, int tokens, boolean failed, int stoppedAt) {
+        ParseEvent event = (ParseEvent) parse;
+        event.end();
+        if (event.shouldCommit()) {
+            event.engine = engine.name();
+            event.length = length;
+            event.tokens = tokens;
+            event.failed = failed;
+            event.stoppedAt = stoppedAt;
+            event.commit();
+        }
+    }
+
+    @Override
+    public boolean isRuleSampled() {
+        if (!new RuleEvent().isEnabled()) {
+            return false;
+        }
+        return parses.getAndIncrement() % sampleInterval == 0;
+    }
+
+    @Override
+    public Object ruleStarted(String rule) {
+        RuleEvent event = new RuleEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.rule = rule;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void ruleFinished(Object rule, boolean matched, int start, int end) {
+        RuleEvent event = (RuleEvent) rule;
+        event.end();
+        if (event.shouldCommit()) {
+            event.matched = matched;
+            event.startOffset = start;
+            event.endOffset = end;
+            event.commit();
+        }
+    }
+}
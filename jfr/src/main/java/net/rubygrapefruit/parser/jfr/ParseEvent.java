@@ -0,0 +1,32 @@
+package net.rubygrapefruit.parser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("net.rubygrapefruit.parser.Parse")
+@Label("Parse")
+@Category("Parser")
+@Description("A parse of some input")
+class ParseEvent extends Event {
+    @Label("Engine")
+    String engine;
+
+    @Label("Input Length")
+    @Description("The number of characters of input")
+    int length;
+
+    @Label("Tokens")
+    @Description("The number of tokens forwarded to the visitor")
+    int tokens;
+
+    @Label("Failed")
+    @Description("Whether the input did not match, or the parse was stopped")
+    boolean failed;
+
+    @Label("Stopped At")
+    @Description("The farthest offset reached, which is the length of the input when the parse did not fail")
+    int stoppedAt;
+}
@@ -0,0 +1,31 @@
+package net.rubygrapefruit.parser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("net.rubygrapefruit.parser.Rule")
+@Label("Rule")
+@Category("Parser")
+@Description("An invocation of a rule by a sampled parse")
+@Enabled(false)
+@StackTrace(false)
+class RuleEvent extends Event {
+    @Label("Rule")
+    String rule;
+
+    @Label("Matched")
+    boolean matched;
+
+    @Label("Start")
+    @Description("The offset where the rule started")
+    int startOffset;
+
+    @Label("End")
+    @Description("The offset where the match ended, or the farthest offset examined by a failure")
+    int endOffset;
+}
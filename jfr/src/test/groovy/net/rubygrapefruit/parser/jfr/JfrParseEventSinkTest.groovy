@@ -0,0 +1,62 @@
+package net.rubygrapefruit.parser.jfr
+
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordedEvent
+import jdk.jfr.consumer.RecordingFile
+import net.rubygrapefruit.parser.peg.ParserBuilder
+import net.rubygrapefruit.parser.peg.visitor.CollectingVisitor
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+class JfrParseEventSinkTest extends Specification {
+    def builder = new ParserBuilder()
+
+    List<RecordedEvent> record(boolean rules, Closure action) {
+        def file = Files.createTempFile("parser", ".jfr")
+        try {
+            def recording = new Recording()
+            try {
+                recording.enable("net.rubygrapefruit.parser.Parse").withoutThreshold()
+                if (rules) {
+                    recording.enable("net.rubygrapefruit.parser.Rule").withoutThreshold()
+                }
+                recording.start()
+                action()
+                recording.stop()
+                recording.dump(file)
+            } finally {
+                recording.close()
+            }
+            return RecordingFile.readAllEvents(file)
+        } finally {
+            Files.delete(file)
+        }
+    }
+
+    def "records an event for each parse"() {
+        expect:
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(builder.oneOrMore(builder.letter()).group(), builder.chars(" "))))
+
+        def events = record(false) {
+            assert parser.parse("abc d", new CollectingVisitor()).failure == null
+            assert parser.parse("abc 1", new CollectingVisitor()).failure != null
+        }
+        events.size() == 2
+        events.every { it.eventType.name == "net.rubygrapefruit.parser.Parse" && it.getString("engine") == "Interpreter" }
+        events.collect { [it.getInt("length"), it.getInt("tokens"), it.getBoolean("failed"), it.getInt("stoppedAt")] } == [[5, 3, false, 5], [5, 2, true, 4]]
+    }
+
+    def "records an event for each rule of a sampled parse"() {
+        expect:
+        def word = builder.oneOrMore(builder.letter()).group()
+        builder.setName(word, "word")
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(word, builder.chars(" "))))
+
+        def events = record(true) {
+            assert parser.parse("abc d", new CollectingVisitor()).failure == null
+        }
+        def rules = events.findAll { it.eventType.name == "net.rubygrapefruit.parser.Rule" && it.getString("rule") == "word" }
+        rules.collect { [it.getBoolean("matched"), it.getInt("startOffset"), it.getInt("endOffset")] } == [[true, 0, 3], [true, 4, 5]]
+    }
+}
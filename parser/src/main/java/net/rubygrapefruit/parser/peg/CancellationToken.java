@@ -0,0 +1,33 @@
+package net.rubygrapefruit.parser.peg;
+
+/**
+ * Allows a parse to be cancelled from another thread. See {@link ParseOptions#setCancellationToken(CancellationToken)}.
+ *
+ * <p>Implementations are thread-safe.</p>
+ */
+public class CancellationToken {
+    private final CancellationToken parent;
+    private volatile boolean cancelled;
+
+    public CancellationToken() {
+        this(null);
+    }
+
+    /**
+     * Creates a token that is also cancelled when the given token is cancelled. Use null for no parent.
+     */
+    public CancellationToken(CancellationToken parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Requests that the parses using this token stop as soon as possible. Has no effect on parses that have already finished.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || parent != null && parent.isCancelled();
+    }
+}
@@ -0,0 +1,24 @@
+package net.rubygrapefruit.parser.peg;
+
+/**
+ * The strategies that a {@link Parser} can use to match its expressions against some input.
+ */
+public enum Engine {
+    /**
+     * Matches by walking the graph of expressions. This is the default.
+     */
+    Interpreter,
+
+    /**
+     * Compiles the expressions into a flat program of instructions that is run by a simple virtual machine with an explicit backtracking stack.
+     * On failure, the input is matched again using the interpreter to report the failure.
+     */
+    VirtualMachine,
+
+    /**
+     * Generates and compiles a Java class that matches the expressions, so that the matching code can be optimized by the JVM like any other code.
+     * This requires the Java compiler to be available at runtime and falls back to the interpreter when it is not. On failure, the input is matched
+     * again using the interpreter to report the failure.
+     */
+    GeneratedCode
+}
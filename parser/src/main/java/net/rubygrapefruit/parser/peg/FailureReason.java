@@ -0,0 +1,27 @@
+package net.rubygrapefruit.parser.peg;
+
+/**
+ * The reasons why a parse can fail, see {@link ParseFailure#getReason()}.
+ */
+public enum FailureReason {
+    /**
+     * Some of the input did not match.
+     */
+    Mismatch,
+    /**
+     * The parse was cancelled using its {@link CancellationToken}.
+     */
+    Cancelled,
+    /**
+     * The parse exceeded the limit set using {@link ParseOptions#setMaxSteps(long)}.
+     */
+    StepLimitExceeded,
+    /**
+     * The parse exceeded the limit set using {@link ParseOptions#setTimeout(long, java.util.concurrent.TimeUnit)}.
+     */
+    TimeLimitExceeded,
+    /**
+     * The parse exceeded the limit set using {@link ParseOptions#setMaxTokens(int)}.
+     */
+    TokenLimitExceeded
+}
@@ -0,0 +1,12 @@
+package net.rubygrapefruit.parser.peg;
+
+/**
+ * A {@link TokenVisitor} that receives a failure as a {@link ParseFailure} rather than as a message, so that the message is only formatted if it is
+ * used. The parser calls {@link #failed(ParseFailure)} instead of {@link #failed(String, Region)} for a visitor of this type.
+ */
+public interface FailureVisitor<T> extends TokenVisitor<T> {
+    /**
+     * Called when parsing stops due to a failure to match, or because the parse exceeded one of the limits of its options.
+     */
+    void failed(ParseFailure failure);
+}
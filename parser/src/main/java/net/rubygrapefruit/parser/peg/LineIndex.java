@@ -0,0 +1,110 @@
+package net.rubygrapefruit.parser.peg;
+
+import net.rubygrapefruit.parser.peg.internal.stream.CharSequences;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Converts offsets in some input to line and column numbers. A line is terminated by a {@code \n} character, optionally preceded by {@code \r}.
+ *
+ * <p>The offsets of the start of each line are calculated once when the index is created, and each lookup is a binary search of these offsets.</p>
+ */
+public class LineIndex {
+    private final CharSequence input;
+    private final int[] lineStarts;
+    private final int lines;
+
+    public LineIndex(CharSequence input) {
+        this.input = input;
+        int[] lineStarts = new int[16];
+        int lines = 1;
+        for (int i = CharSequences.indexOf(input, '\n', 0); i >= 0; i = CharSequences.indexOf(input, '\n', i + 1)) {
+            if (lines == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lines * 2);
+            }
+            lineStarts[lines++] = i + 1;
+        }
+        this.lineStarts = lineStarts;
+        this.lines = lines;
+    }
+
+    /**
+     * Returns the number of lines in the input.
+     */
+    public int getLineCount() {
+        return lines;
+    }
+
+    /**
+     * Returns the line containing the given offset. Base 1.
+     */
+    public int getLine(int offset) {
+        return lineIndexOf(offset) + 1;
+    }
+
+    /**
+     * Returns the column of the given offset. Base 1.
+     */
+    public int getColumn(int offset) {
+        return offset - lineStarts[lineIndexOf(offset)] + 1;
+    }
+
+    /**
+     * Returns the text of the line containing the given offset, excluding the line ending.
+     */
+    public String getLineText(int offset) {
+        int line = lineIndexOf(offset);
+        int start = lineStarts[line];
+        if (line + 1 == lines) {
+            return CharSequences.substring(input, start, input.length());
+        }
+        int end = lineStarts[line + 1] - 1;
+        if (end > start && input.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return CharSequences.substring(input, start, end);
+    }
+
+    /**
+     * Resolves the line and column of the start and end of each of the given regions. This is more efficient than calling {@link #getLine(int)} and
+     * {@link #getColumn(int)} for each region when the regions are in order, as is the case for tokens.
+     *
+     * @return The start line, start column, end line and end column of each region, in that order. All base 1.
+     */
+    public int[] resolve(List<? extends Region> regions) {
+        int[] result = new int[regions.size() * 4];
+        int line = 0;
+        for (int i = 0; i < regions.size(); i++) {
+            Region region = regions.get(i);
+            line = advance(line, region.getStart());
+            result[i * 4] = line + 1;
+            result[i * 4 + 1] = region.getStart() - lineStarts[line] + 1;
+            line = advance(line, region.getEnd());
+            result[i * 4 + 2] = line + 1;
+            result[i * 4 + 3] = region.getEnd() - lineStarts[line] + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the line containing the given offset, scanning forward from the given line when the offset is close by.
+     */
+    private int advance(int line, int offset) {
+        if (offset < lineStarts[line]) {
+            return lineIndexOf(offset);
+        }
+        for (int i = 0; i < 8; i++) {
+            if (line + 1 == lines || lineStarts[line + 1] > offset) {
+                return line;
+            }
+            line++;
+        }
+        return lineIndexOf(offset);
+    }
+
+    private int lineIndexOf(int offset) {
+        int index = Arrays.binarySearch(lineStarts, 0, lines, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+}
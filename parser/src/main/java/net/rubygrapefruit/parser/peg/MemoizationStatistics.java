@@ -0,0 +1,21 @@
+package net.rubygrapefruit.parser.peg;
+
+/**
+ * Statistics about the caching of results for expressions created using {@link ParserBuilder#memoize(Expression)}, accumulated over all parses made by a parser.
+ */
+public interface MemoizationStatistics {
+    /**
+     * Returns the number of times a cached result was reused.
+     */
+    long getHits();
+
+    /**
+     * Returns the number of times an expression had to be matched because no result was cached.
+     */
+    long getMisses();
+
+    /**
+     * Returns the number of cached results discarded to stay within the memory limit.
+     */
+    long getEvictions();
+}
@@ -0,0 +1,47 @@
+package net.rubygrapefruit.parser.peg;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A batch of inputs that is being parsed in the background. See {@link Parser#parseAll(Iterable, ParseOptions, VisitorFactory)}.
+ *
+ * <p>Implementations are thread-safe.</p>
+ */
+public interface ParseBatch {
+    /**
+     * Returns the number of inputs in this batch.
+     */
+    int getInputCount();
+
+    /**
+     * Returns the number of inputs that have been parsed so far, including those that could not be read.
+     */
+    int getCompletedCount();
+
+    /**
+     * Returns true when all of the inputs have been parsed, or when the batch has been cancelled and the parses that were in progress have stopped.
+     */
+    boolean isDone();
+
+    /**
+     * Waits until this batch is done.
+     *
+     * @throws ExecutionException when some input could not be read, or a visitor or {@link VisitorFactory} failed. The failure for the first such
+     * input is the cause, and the failures for the other inputs are attached as suppressed exceptions. The other inputs are parsed regardless.
+     */
+    void await() throws InterruptedException, ExecutionException;
+
+    /**
+     * Waits until this batch is done, or until the given timeout has elapsed. See {@link #await()}.
+     *
+     * @return true if the batch is done, false if the timeout elapsed.
+     */
+    boolean await(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException;
+
+    /**
+     * Requests that this batch stop as soon as possible. The inputs that have not been started are skipped, and the parses in progress are
+     * cancelled as described for {@link ParseOptions#setCancellationToken(CancellationToken)}. Does not wait for the parses to stop.
+     */
+    void cancel();
+}
@@ -0,0 +1,48 @@
+package net.rubygrapefruit.parser.peg;
+
+import java.util.List;
+
+/**
+ * Describes why and where parsing stopped, passed to a {@link FailureVisitor}. The message is only formatted when {@link #getMessage()} is called.
+ */
+public interface ParseFailure {
+    /**
+     * Returns the reason parsing stopped. This is {@link FailureReason#Mismatch} when some of the input did not match, and one of the other reasons
+     * when the parse was stopped because it exceeded one of the limits of its {@link ParseOptions}, or was cancelled.
+     */
+    FailureReason getReason();
+
+    /**
+     * Returns the offset where parsing stopped, from the start of the input. Base 0.
+     */
+    int getOffset();
+
+    /**
+     * Returns the line where parsing stopped. Base 1.
+     */
+    int getLine();
+
+    /**
+     * Returns the column where parsing stopped. Base 1.
+     */
+    int getColumn();
+
+    /**
+     * Returns the display names of the terminals that were expected where parsing stopped, in order. Empty when no terminal was expected, for
+     * example when there is input after the end of the grammar, or when the parse was stopped because it exceeded one of the limits of its options.
+     *
+     * <p>Terminals are identified by their display name, so distinct terminals with the same display name, such as two separate expressions that
+     * match the same characters, are reported as a single entry.</p>
+     */
+    List<String> getExpected();
+
+    /**
+     * Returns the error message, as passed to {@link TokenVisitor#failed(String, Region)}. The message is formatted on the first call.
+     */
+    String getMessage();
+
+    /**
+     * Returns the region from the point where parsing stopped to the end of the input, as passed to {@link TokenVisitor#failed(String, Region)}.
+     */
+    Region getRemainder();
+}
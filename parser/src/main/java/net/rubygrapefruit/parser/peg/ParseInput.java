@@ -0,0 +1,81 @@
+package net.rubygrapefruit.parser.peg;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Some input to be parsed as part of a batch. See {@link Parser#parseAll(Iterable, ParseOptions, VisitorFactory)}.
+ */
+public abstract class ParseInput {
+    /**
+     * Returns a display name for this input, such as the path of a file.
+     */
+    public abstract String getName();
+
+    /**
+     * Returns an estimate of the number of characters in this input, which is used to start parsing the largest inputs first. This is called
+     * before the input is parsed, so should be cheap.
+     */
+    public abstract long getLength();
+
+    /**
+     * Returns the text of this input. This is called by the thread that parses the input, just before it is parsed.
+     */
+    public abstract CharSequence getText() throws IOException;
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+    /**
+     * Creates an input with the given text.
+     */
+    public static ParseInput of(final String name, final CharSequence text) {
+        return new ParseInput() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public long getLength() {
+                return text.length();
+            }
+
+            @Override
+            public CharSequence getText() {
+                return text;
+            }
+        };
+    }
+
+    /**
+     * Creates an input with the UTF-8 encoded text of the given file. The file is read when it is parsed.
+     */
+    public static ParseInput of(final Path file) {
+        return new ParseInput() {
+            @Override
+            public String getName() {
+                return file.toString();
+            }
+
+            @Override
+            public long getLength() {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    // Reported when the file is read
+                    return 0;
+                }
+            }
+
+            @Override
+            public CharSequence getText() throws IOException {
+                return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
@@ -0,0 +1,26 @@
+package net.rubygrapefruit.parser.peg;
+
+/**
+ * Notified of each parse done by a {@link Parser}, see {@link Parser#addListener(ParseListener)}. The methods are called by the thread that does the
+ * parse, so they may be called by any number of threads concurrently, and should return quickly.
+ *
+ * <p>When a parse finishes, the listener receives its {@link ParseStatistics}. These include the engine and whether it fell back to the
+ * interpreter, the input length, the number of tokens, the elapsed time, the peak number of buffered tokens and the outcome. They also include the
+ * number of times the input was matched and the number of segments matched in parallel.</p>
+ *
+ * <p>{@link ParseMetrics} is an implementation that accumulates the statistics of many parses.</p>
+ */
+public interface ParseListener {
+    /**
+     * Called when a parse starts.
+     *
+     * @param length The number of characters of input, or -1 when the input is read from a {@link java.io.Reader} and is not known yet.
+     */
+    void parseStarted(Engine engine, int length);
+
+    /**
+     * Called when a parse finishes, after the tokens and any failure have been forwarded to the visitor. Not called when the visitor throws an
+     * exception.
+     */
+    void parseFinished(ParseStatistics statistics);
+}
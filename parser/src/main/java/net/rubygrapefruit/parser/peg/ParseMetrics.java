@@ -0,0 +1,271 @@
+package net.rubygrapefruit.parser.peg;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link ParseListener} that accumulates the statistics of the parses done by one or more parsers: the number of parses and of their outcomes,
+ * the number of parses that matched their input a second time to report a failure, the characters and tokens processed, and the distribution of
+ * the time taken by each parse. The metrics can be read at any time, and can be published as a JMX MBean using {@link #register(String)}.
+ *
+ * <p>The counters are updated without locking, once per parse. The times are collected into a histogram with a bucket for each power of two
+ * nanoseconds, so the percentiles are accurate to within a factor of two.</p>
+ */
+public class ParseMetrics implements ParseListener, ParseMetricsMBean {
+    private static final int BUCKETS = 64;
+    private final AtomicLong parses = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong stopped = new AtomicLong();
+    private final AtomicLong secondPasses = new AtomicLong();
+    private final AtomicLong secondPassTime = new AtomicLong();
+    private final AtomicLong characters = new AtomicLong();
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicLong maxTime = new AtomicLong();
+    private final AtomicLong maxBufferedTokens = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private ObjectName name;
+
+    @Override
+    public void parseStarted(Engine engine, int length) {
+    }
+
+    @Override
+    public void parseFinished(ParseStatistics statistics) {
+        parses.incrementAndGet();
+        switch (statistics.getOutcome()) {
+            case Failed:
+                failures.incrementAndGet();
+                break;
+            case Stopped:
+                stopped.incrementAndGet();
+                break;
+        }
+        if (statistics.getPasses() > 1) {
+            secondPasses.incrementAndGet();
+            secondPassTime.addAndGet(statistics.getSecondPassTime());
+        }
+        characters.addAndGet(statistics.getInputLength());
+        tokens.addAndGet(statistics.getTokens());
+        long time = statistics.getElapsedTime();
+        totalTime.addAndGet(time);
+        max(maxTime, time);
+        max(maxBufferedTokens, statistics.getPeakBufferedTokens());
+        histogram.incrementAndGet(bucket(time));
+    }
+
+    private static void max(AtomicLong value, long candidate) {
+        while (true) {
+            long current = value.get();
+            if (candidate <= current || value.compareAndSet(current, candidate)) {
+                return;
+            }
+        }
+    }
+
+    private static int bucket(long time) {
+        return time <= 1 ? 0 : BUCKETS - 1 - Long.numberOfLeadingZeros(time);
+    }
+
+    /**
+     * Returns the number of parses that have finished.
+     */
+    @Override
+    public long getParses() {
+        return parses.get();
+    }
+
+    /**
+     * Returns the number of parses whose input did not match.
+     */
+    @Override
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Returns the number of parses that were stopped because of the limits of their {@link ParseOptions}.
+     */
+    @Override
+    public long getStopped() {
+        return stopped.get();
+    }
+
+    /**
+     * Returns the number of parses that matched their input a second time to report a failure, see {@link ParseStatistics#getPasses()}.
+     */
+    @Override
+    public long getSecondPasses() {
+        return secondPasses.get();
+    }
+
+    /**
+     * Returns the total time taken by the second matches of the input, in nanoseconds. This is included in {@link #getTotalTime()}.
+     */
+    @Override
+    public long getSecondPassTime() {
+        return secondPassTime.get();
+    }
+
+    /**
+     * Returns the number of characters of input parsed.
+     */
+    @Override
+    public long getCharacters() {
+        return characters.get();
+    }
+
+    /**
+     * Returns the number of tokens forwarded to visitors.
+     */
+    @Override
+    public long getTokens() {
+        return tokens.get();
+    }
+
+    /**
+     * Returns the total time taken by the parses, in nanoseconds.
+     */
+    @Override
+    public long getTotalTime() {
+        return totalTime.get();
+    }
+
+    /**
+     * Returns the mean time taken by a parse, in nanoseconds.
+     */
+    @Override
+    public double getMeanTime() {
+        long parses = this.parses.get();
+        return parses == 0 ? 0 : (double) totalTime.get() / parses;
+    }
+
+    /**
+     * Returns an upper bound of the median time taken by a parse, in nanoseconds.
+     */
+    @Override
+    public long getMedianTime() {
+        return getPercentileTime(50);
+    }
+
+    /**
+     * Returns an upper bound of the 99th percentile of the time taken by a parse, in nanoseconds.
+     */
+    @Override
+    public long get99thPercentileTime() {
+        return getPercentileTime(99);
+    }
+
+    /**
+     * Returns the longest time taken by a parse, in nanoseconds.
+     */
+    @Override
+    public long getMaxTime() {
+        return maxTime.get();
+    }
+
+    /**
+     * Returns the largest number of tokens held by a parse at any point.
+     */
+    @Override
+    public long getMaxBufferedTokens() {
+        return maxBufferedTokens.get();
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the time taken by a parse, in nanoseconds. This is the upper bound of the histogram bucket
+     * that contains the percentile, and at most the longest time.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     */
+    public long getPercentileTime(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 100.");
+        }
+        long[] counts = getLatencyHistogram();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min((1L << (i + 1)) - 1, maxTime.get());
+            }
+        }
+        return maxTime.get();
+    }
+
+    /**
+     * Returns the number of parses in each bucket of the histogram of times. Bucket 0 holds the parses that took less than 2 nanoseconds, and each
+     * bucket {@code n} after that holds the parses that took at least {@code 2^n} and less than {@code 2^(n+1)} nanoseconds.
+     */
+    public long[] getLatencyHistogram() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Discards the metrics accumulated so far. Parses that are in progress may be partly counted.
+     */
+    @Override
+    public void reset() {
+        parses.set(0);
+        failures.set(0);
+        stopped.set(0);
+        secondPasses.set(0);
+        secondPassTime.set(0);
+        characters.set(0);
+        tokens.set(0);
+        totalTime.set(0);
+        maxTime.set(0);
+        maxBufferedTokens.set(0);
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, using the object name {@code net.rubygrapefruit.parser:type=ParseMetrics,name=<name>}.
+     */
+    public synchronized void register(String name) {
+        if (this.name != null) {
+            throw new IllegalStateException("These metrics have already been registered.");
+        }
+        try {
+            ObjectName objectName = new ObjectName("net.rubygrapefruit.parser:type=ParseMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.name = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException(String.format("Could not register metrics '%s'.", name), e);
+        }
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server, if they have been registered.
+     */
+    public synchronized void unregister() {
+        if (name == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(name);
+        } catch (JMException e) {
+            throw new IllegalStateException(String.format("Could not unregister metrics '%s'.", name), e);
+        }
+        name = null;
+    }
+}
@@ -0,0 +1,34 @@
+package net.rubygrapefruit.parser.peg;
+
+/**
+ * The management interface of {@link ParseMetrics}. Times are in nanoseconds.
+ */
+public interface ParseMetricsMBean {
+    long getParses();
+
+    long getFailures();
+
+    long getStopped();
+
+    long getSecondPasses();
+
+    long getSecondPassTime();
+
+    long getCharacters();
+
+    long getTokens();
+
+    long getTotalTime();
+
+    double getMeanTime();
+
+    long getMedianTime();
+
+    long get99thPercentileTime();
+
+    long getMaxTime();
+
+    long getMaxBufferedTokens();
+
+    void reset();
+}
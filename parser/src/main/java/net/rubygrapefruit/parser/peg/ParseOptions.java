@@ -0,0 +1,119 @@
+package net.rubygrapefruit.parser.peg;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the work done by a single parse, and allows it to be done in parallel. See {@link Parser#parse(CharSequence, ParseOptions, TokenVisitor)}.
+ *
+ * <p>The limits are checked periodically while matching, rather than continuously, so a parse can exceed a limit by a small amount before it is
+ * stopped. When a parse is stopped, no tokens are forwarded to the visitor and {@link TokenVisitor#failed(String, Region)} is called with the
+ * whole input as the remainder and a message that starts with one of the following, depending on why the parse was stopped:</p>
+ *
+ * <ul>
+ *     <li>"line <i>n</i>: parsing was cancelled"</li>
+ *     <li>"line <i>n</i>: parsing exceeded the limit of <i>n</i> steps"</li>
+ *     <li>"line <i>n</i>: parsing exceeded the time limit"</li>
+ *     <li>"line <i>n</i>: parsing exceeded the limit of <i>n</i> tokens"</li>
+ * </ul>
+ *
+ * <p>A {@link FailureVisitor} receives a {@link ParseFailure} whose {@link ParseFailure#getReason()} tells why the parse was stopped, so callers do not
+ * need to inspect the message.</p>
+ *
+ * <p>The line is that of the position that was being matched when the parse was stopped. The number of steps taken and tokens buffered for a given
+ * input depends on the engine, so the engines may stop at different points when a limit is exceeded.</p>
+ *
+ * <p>The options are read when a parse starts, so changing them does not affect parses in progress.</p>
+ */
+public class ParseOptions {
+    private CancellationToken cancellationToken;
+    private long maxSteps = Long.MAX_VALUE;
+    private long timeoutNanos = Long.MAX_VALUE;
+    private int maxTokens = Integer.MAX_VALUE;
+    private ForkJoinPool forkJoinPool;
+
+    public ParseOptions() {
+    }
+
+    /**
+     * Creates a copy of the given options.
+     */
+    public ParseOptions(ParseOptions options) {
+        cancellationToken = options.cancellationToken;
+        maxSteps = options.maxSteps;
+        timeoutNanos = options.timeoutNanos;
+        maxTokens = options.maxTokens;
+        forkJoinPool = options.forkJoinPool;
+    }
+
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    /**
+     * Stops the parse when the given token is cancelled. Use null to not allow the parse to be cancelled.
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    public long getMaxSteps() {
+        return maxSteps;
+    }
+
+    /**
+     * Stops the parse when it takes more than the given number of steps. A step is taken for each alternative or repetition that is attempted,
+     * and for each character matched by a repetition of a single character, so the number of steps grows with the amount of backtracking.
+     */
+    public void setMaxSteps(long maxSteps) {
+        if (maxSteps < 0) {
+            throw new IllegalArgumentException("The maximum number of steps must not be negative.");
+        }
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Returns the timeout in nanoseconds, or {@link Long#MAX_VALUE} for no timeout.
+     */
+    public long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+
+    /**
+     * Stops the parse when it takes longer than the given time, measured from when the parse starts.
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("The timeout must not be negative.");
+        }
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * Stops the parse when it holds more than the given number of tokens in memory. Tokens are held until the parse completes, including the
+     * tokens of alternatives that are later discarded.
+     */
+    public void setMaxTokens(int maxTokens) {
+        if (maxTokens < 0) {
+            throw new IllegalArgumentException("The maximum number of tokens must not be negative.");
+        }
+        this.maxTokens = maxTokens;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    /**
+     * Uses the given pool to parse a large input in parallel, split at the points declared using {@link ParserBuilder#splitPoint(Expression)}. Use
+     * null to parse sequentially. Parallel parsing is only used by the {@link Engine#Interpreter} engine, as the other engines do not reuse the
+     * results of expressions. The limits apply separately to the work done for each segment of the input, and to the parse as a whole.
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+}
@@ -0,0 +1,19 @@
+package net.rubygrapefruit.parser.peg;
+
+/**
+ * The ways in which a parse can finish.
+ */
+public enum ParseOutcome {
+    /**
+     * The whole input matched.
+     */
+    Matched,
+    /**
+     * Some of the input did not match.
+     */
+    Failed,
+    /**
+     * The parse was stopped because it exceeded one of the limits of its {@link ParseOptions}, or was cancelled.
+     */
+    Stopped
+}
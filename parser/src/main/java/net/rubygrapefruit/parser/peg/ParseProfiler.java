@@ -0,0 +1,191 @@
+package net.rubygrapefruit.parser.peg;
+
+import net.rubygrapefruit.parser.peg.internal.profile.ProfileRecorder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records how often each rule of a grammar is matched, and how long this takes, for the parsers created by a {@link ParserBuilder} after
+ * {@link ParserBuilder#setProfiler(ParseProfiler)} is called.
+ *
+ * <p>The rules are the root expression, the expressions given a name using {@link ParserBuilder#setName(Expression, String)}, and the expressions that
+ * are used from more than one place or are the target of a {@link ReferenceExpression}. The work done by any other expression is charged to the rule
+ * that contains it.</p>
+ *
+ * <p>A profiler can be used by any number of parsers and parses concurrently. The results can be read at any time, but are only consistent once the
+ * parses have finished.</p>
+ */
+public class ParseProfiler {
+    private final ProfileRecorder recorder = new ProfileRecorder();
+
+    ProfileRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Discards the results recorded so far. Should not be called while parsing.
+     */
+    public void reset() {
+        recorder.reset();
+    }
+
+    /**
+     * Returns the results for each rule that has been invoked, ordered by decreasing exclusive time.
+     */
+    public List<RuleProfile> getRules() {
+        Map<ProfileRecorder.Rule, DefaultRuleProfile> rules = new IdentityHashMap<>();
+        for (ProfileRecorder.CallNode node : recorder.getRoot().getChildren()) {
+            collect(node, rules);
+        }
+        List<RuleProfile> result = new ArrayList<RuleProfile>(rules.values());
+        Collections.sort(result, new Comparator<RuleProfile>() {
+            @Override
+            public int compare(RuleProfile o1, RuleProfile o2) {
+                return Long.compare(o2.getExclusiveTime(), o1.getExclusiveTime());
+            }
+        });
+        return result;
+    }
+
+    private void collect(ProfileRecorder.CallNode node, Map<ProfileRecorder.Rule, DefaultRuleProfile> rules) {
+        DefaultRuleProfile rule = rules.get(node.getRule());
+        if (rule == null) {
+            rule = new DefaultRuleProfile(node.getRule().getName());
+            rules.put(node.getRule(), rule);
+        }
+        rule.add(node);
+        for (ProfileRecorder.CallNode child : node.getChildren()) {
+            collect(child, rules);
+        }
+    }
+
+    /**
+     * Formats the results for each rule as a table, ordered by decreasing exclusive time. Times are in milliseconds.
+     */
+    public String formatTable() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%12s %12s %12s %12s %12s %10s %10s  %s%n", "invocations", "successes", "failures", "consumed", "backtracked",
+                "incl ms", "excl ms", "rule"));
+        for (RuleProfile rule : getRules()) {
+            builder.append(String.format("%12d %12d %12d %12d %12d %10.2f %10.2f  %s%n", rule.getInvocations(), rule.getSuccesses(), rule.getFailures(),
+                    rule.getConsumed(), rule.getBacktracked(), rule.getInclusiveTime() / 1e6, rule.getExclusiveTime() / 1e6, rule.getName()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Formats the results in the collapsed stack format used to generate flame graphs. Each line contains a chain of rule invocations separated by
+     * {@code ;}, followed by a space and the exclusive time of the last rule of the chain in nanoseconds. Any {@code ;} in the name of a rule is
+     * replaced with {@code :}.
+     */
+    public String formatCollapsedStacks() {
+        StringBuilder builder = new StringBuilder();
+        for (ProfileRecorder.CallNode node : recorder.getRoot().getChildren()) {
+            formatStacks(node, "", builder);
+        }
+        return builder.toString();
+    }
+
+    private void formatStacks(ProfileRecorder.CallNode node, String prefix, StringBuilder builder) {
+        String stack = prefix + frameName(node.getRule().getName());
+        long time = node.getExclusiveTime();
+        if (time > 0) {
+            builder.append(stack).append(' ').append(time).append('\n');
+        }
+        for (ProfileRecorder.CallNode child : node.getChildren()) {
+            formatStacks(child, stack + ";", builder);
+        }
+    }
+
+    private static String frameName(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (ch == ';') {
+                builder.append(':');
+            } else if (Character.isISOControl(ch)) {
+                builder.append(' ');
+            } else {
+                builder.append(ch);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static class DefaultRuleProfile implements RuleProfile {
+        private final String name;
+        private long invocations;
+        private long successes;
+        private long failures;
+        private long consumed;
+        private long backtracked;
+        private long inclusiveTime;
+        private long exclusiveTime;
+
+        DefaultRuleProfile(String name) {
+            this.name = name;
+        }
+
+        void add(ProfileRecorder.CallNode node) {
+            invocations += node.getInvocations();
+            successes += node.getSuccesses();
+            failures += node.getFailures();
+            consumed += node.getConsumed();
+            backtracked += node.getBacktracked();
+            if (!node.isRecursive()) {
+                inclusiveTime += node.getInclusiveTime();
+            }
+            exclusiveTime += node.getExclusiveTime();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getInvocations() {
+            return invocations;
+        }
+
+        @Override
+        public long getSuccesses() {
+            return successes;
+        }
+
+        @Override
+        public long getFailures() {
+            return failures;
+        }
+
+        @Override
+        public long getConsumed() {
+            return consumed;
+        }
+
+        @Override
+        public long getBacktracked() {
+            return backtracked;
+        }
+
+        @Override
+        public long getInclusiveTime() {
+            return inclusiveTime;
+        }
+
+        @Override
+        public long getExclusiveTime() {
+            return exclusiveTime;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package net.rubygrapefruit.parser.peg;
+
+/**
+ * The state retained from parsing some text, which can be used to parse an edited version of the text incrementally. See
+ * {@link Parser#reparse(ParseResult, int, int, CharSequence, TokenVisitor)}.
+ */
+public interface ParseResult {
+    /**
+     * Returns the text that was parsed.
+     */
+    String getText();
+}
@@ -0,0 +1,67 @@
+package net.rubygrapefruit.parser.peg;
+
+/**
+ * Statistics about a single parse, passed to a {@link ParseListener} when the parse finishes.
+ */
+public interface ParseStatistics {
+    /**
+     * Returns the engine that did the parse. A parse that falls back to the interpreter to report a failure is reported using the original engine.
+     */
+    Engine getEngine();
+
+    /**
+     * Returns true when the engine could not be used for the grammar, so the input was parsed using the {@link Engine#Interpreter} instead. This
+     * happens when the {@link Engine#GeneratedCode} engine cannot generate a matcher class for the grammar.
+     */
+    boolean isFallback();
+
+    /**
+     * Returns the number of characters of input.
+     */
+    int getInputLength();
+
+    /**
+     * Returns the number of tokens forwarded to the visitor.
+     */
+    int getTokens();
+
+    /**
+     * Returns the time taken by the parse, in nanoseconds, including the time taken to forward the tokens to the visitor.
+     */
+    long getElapsedTime();
+
+    /**
+     * Returns the number of times the input was matched. This is 2 when the input was first matched without tracking failures and did not match,
+     * so was matched again to report the failure, and 1 otherwise. The {@link Engine#VirtualMachine} and {@link Engine#GeneratedCode} engines,
+     * and parsers created using {@link ParserBuilder#setRecognizeFirst(boolean)}, first match the input without tracking failures.
+     */
+    int getPasses();
+
+    /**
+     * Returns the time taken by the second match of the input, in nanoseconds, or 0 when the input was matched once. This is included in
+     * {@link #getElapsedTime()}.
+     */
+    long getSecondPassTime();
+
+    /**
+     * Returns the largest number of tokens held by the parse at any point, which is the number that is checked against
+     * {@link ParseOptions#setMaxTokens(int)}.
+     */
+    int getPeakBufferedTokens();
+
+    /**
+     * Returns the number of segments of the input that were matched in parallel, or 0 when the input was not parsed in parallel. See
+     * {@link ParseOptions#setForkJoinPool(java.util.concurrent.ForkJoinPool)}.
+     */
+    int getSegments();
+
+    /**
+     * Returns the outcome of the parse.
+     */
+    ParseOutcome getOutcome();
+
+    /**
+     * Returns the offset where the parse stopped, which is the length of the input for a parse that matched.
+     */
+    int getStoppedAt();
+}
@@ -1,5 +1,11 @@
 package net.rubygrapefruit.parser.peg;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+
 /**
  * Parses some input into a sequence of tokens. For now, this is a scanner rather than a parser.
  *
@@ -7,11 +13,144 @@ package net.rubygrapefruit.parser.peg;
  */
 public interface Parser {
     /**
-     * Parses as much of the given string as possible, forwarding the results to the given visitor.
+     * Parses as much of the given text as possible, forwarding the results to the given visitor.
+     *
+     * <p>The text is not copied, so the input can be a view of some larger buffer, such as the contents of an editor. The regions passed to the
+     * visitor refer to the text, so the text must not change while it is being parsed or while the regions are in use. Parsing a {@link String}
+     * is generally faster than parsing other kinds of text.</p>
+     *
+     * @param input The text to parse.
+     * @param visitor The visitor to receive the results.
+     * @return the visitor.
+     */
+    <T extends TokenVisitor<Expression>> T parse(CharSequence input, T visitor);
+
+    /**
+     * Parses as much of the given text as possible, forwarding the results to the given visitor, and stops early when the parse exceeds one of
+     * the limits of the given options. See {@link ParseOptions} for how this is reported.
+     *
+     * @param input The text to parse.
+     * @param options The limits for the parse.
+     * @param visitor The visitor to receive the results.
+     * @return the visitor.
+     */
+    <T extends TokenVisitor<Expression>> T parse(CharSequence input, ParseOptions options, T visitor);
+
+    /**
+     * Parses as much of the text read from the given reader as possible, forwarding the results to the given visitor. The reader is not closed.
+     *
+     * <p>When the root expression is a {@link ParserBuilder#zeroOrMore(Expression)} expression, the input is read incrementally and the tokens for
+     * each match of the repeated expression are forwarded to the visitor as soon as they are known to be part of the result, so that neither the
+     * whole input nor all of the tokens need to be held in memory. Otherwise, the whole input is read before it is parsed. In either case, the results
+     * are the same as for {@link #parse(CharSequence, TokenVisitor)}.</p>
+     *
+     * @param input The text to parse.
+     * @param visitor The visitor to receive the results.
+     * @return the visitor.
+     */
+    <T extends TokenVisitor<Expression>> T parse(Reader input, T visitor) throws IOException;
+
+    /**
+     * Parses as much of the text read from the given channel as possible, forwarding the results to the given visitor. See
+     * {@link #parse(Reader, TokenVisitor)}. The channel is not closed.
+     *
+     * @param input The bytes to parse.
+     * @param charset The encoding of the bytes.
+     * @param visitor The visitor to receive the results.
+     * @return the visitor.
+     */
+    <T extends TokenVisitor<Expression>> T parse(ReadableByteChannel input, Charset charset, T visitor) throws IOException;
+
+    /**
+     * Parses as much of the UTF-8 encoded text of the given file as possible, forwarding the results to the given visitor. The file is mapped into
+     * memory and decoded directly from the mapped bytes. See {@link #parse(Reader, TokenVisitor)} for when the file is parsed incrementally.
      *
-     * @param input The string to parse.
+     * @param input The file to parse.
      * @param visitor The visitor to receive the results.
      * @return the visitor.
      */
-    <T extends TokenVisitor<Expression>> T parse(String input, T visitor);
+    <T extends TokenVisitor<Expression>> T parse(Path input, T visitor) throws IOException;
+
+    /**
+     * Parses as much of the given text as possible, forwarding the results to the given visitor, and retains the state of the parse so that an
+     * edited version of the text can later be parsed using {@link #reparse(ParseResult, int, int, CharSequence, TokenVisitor)}. The text is copied.
+     *
+     * @param input The text to parse.
+     * @param visitor The visitor to receive the results.
+     * @return the state of the parse.
+     */
+    ParseResult parseIncrementally(CharSequence input, TokenVisitor<Expression> visitor);
+
+    /**
+     * Same as {@link #parseIncrementally(CharSequence, TokenVisitor)}, but stops early when the parse exceeds one of the limits of the given
+     * options. The result of a parse that is stopped can still be passed to {@link #reparse(ParseResult, int, int, CharSequence, ParseOptions, TokenVisitor)}.
+     */
+    ParseResult parseIncrementally(CharSequence input, ParseOptions options, TokenVisitor<Expression> visitor);
+
+    /**
+     * Parses an edited version of the text of a previous parse, forwarding the results to the given visitor. The results are the same as for parsing
+     * the edited text using {@link #parse(CharSequence, TokenVisitor)}.
+     *
+     * <p>The results of expressions created using {@link ParserBuilder#memoize(Expression)} are reused from the previous parse, when they did not
+     * examine the edited part of the text, so that only the expressions that overlap the edit need to be matched again. Results that depend on a
+     * {@link BackReference} are reused only when they precede the edit. All of the results are retained, regardless of the limits set using
+     * {@link ParserBuilder#setMemoizationLimits(int, int)}.</p>
+     *
+     * <p>The state of the previous parse is transferred to the new result, so a result can be passed to this method only once.</p>
+     *
+     * @param previous The result of the previous parse, from this parser.
+     * @param offset The offset of the edit in the text of the previous parse.
+     * @param removed The number of characters removed at the offset.
+     * @param inserted The text inserted at the offset.
+     * @param visitor The visitor to receive the results.
+     * @return the state of the parse.
+     */
+    ParseResult reparse(ParseResult previous, int offset, int removed, CharSequence inserted, TokenVisitor<Expression> visitor);
+
+    /**
+     * Same as {@link #reparse(ParseResult, int, int, CharSequence, TokenVisitor)}, but stops early when the parse exceeds one of the limits of the
+     * given options. The result of a parse that is stopped can still be reparsed.
+     */
+    ParseResult reparse(ParseResult previous, int offset, int removed, CharSequence inserted, ParseOptions options, TokenVisitor<Expression> visitor);
+
+    /**
+     * Same as {@link #parseAll(Iterable, ParseOptions, VisitorFactory)}, using the default options.
+     */
+    <T extends TokenVisitor<Expression>> ParseBatch parseAll(Iterable<? extends ParseInput> inputs, VisitorFactory<T> visitors);
+
+    /**
+     * Starts parsing the given inputs in the background, forwarding the results for each input to a visitor created for it using the given factory.
+     * Returns immediately.
+     *
+     * <p>The inputs are parsed using the pool of the given options, or using a pool created for the batch when the options have no pool. The
+     * inputs are parsed in order of decreasing length, so that a long input is not left until the end of the batch. Each thread of the pool reuses
+     * the buffers that hold the tokens of a parse for each input that it parses.</p>
+     *
+     * <p>The limits of the options apply separately to each input. Cancelling the cancellation token of the options cancels the whole batch.</p>
+     *
+     * @param inputs The inputs to parse.
+     * @param options The options for the parse of each input.
+     * @param visitors Creates the visitor for each input.
+     * @return the batch, which can be used to wait for the inputs to be parsed.
+     */
+    <T extends TokenVisitor<Expression>> ParseBatch parseAll(Iterable<? extends ParseInput> inputs, ParseOptions options, VisitorFactory<T> visitors);
+
+    /**
+     * Returns the statistics for expressions memoized by this parser.
+     */
+    MemoizationStatistics getMemoizationStatistics();
+
+    /**
+     * Adds a listener that is notified of each parse done by this parser, including the parses of a batch, incremental parses and reparses. The
+     * listener is notified by the thread that does the parse. A listener can be added or removed at any time, and affects the parses that start
+     * after this.
+     *
+     * <p>The statistics for a parse are only collected when the parser has listeners, so a parser without listeners is not slowed down.</p>
+     */
+    void addListener(ParseListener listener);
+
+    /**
+     * Removes a listener previously added using {@link #addListener(ParseListener)}.
+     */
+    void removeListener(ParseListener listener);
 }
@@ -1,11 +1,15 @@
 package net.rubygrapefruit.parser.peg;
 
 import net.rubygrapefruit.parser.peg.internal.*;
+import net.rubygrapefruit.parser.peg.internal.codegen.GeneratedCodeParser;
 import net.rubygrapefruit.parser.peg.internal.expression.*;
 import net.rubygrapefruit.parser.peg.internal.match.MatchExpression;
+import net.rubygrapefruit.parser.peg.internal.vm.VirtualMachineParser;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Builds a {@link Parser} from a root {@link Expression} specification.
@@ -13,6 +17,15 @@ import java.util.List;
  * <p>Call {@link #newParser(Expression)} using the root expression, using the factory methods on this class to assemble the root expression.</p>
  */
 public class ParserBuilder {
+    private int memoizedExpressions;
+    private int memoizationMaxEntries = 100000;
+    private int memoizationWindow = 4096;
+    private Engine engine = Engine.Interpreter;
+    private boolean recognizeFirst;
+    private final List<MatchExpression> splitPoints = new ArrayList<>();
+    private final Map<Expression, String> names = new IdentityHashMap<>();
+    private ParseProfiler profiler;
+
     /**
      * Matches the given sequence of characters, case sensitive.
      */
@@ -44,6 +57,44 @@ public class ParserBuilder {
         return new AnythingExpression();
     }
 
+    /**
+     * Matches any one of the given characters.
+     */
+    public Expression charIn(String chars) {
+        if (chars.isEmpty()) {
+            throw new IllegalArgumentException("At least one character required.");
+        }
+        return new CharClassExpression(CharClass.of(chars));
+    }
+
+    /**
+     * Matches any single character except the given characters.
+     */
+    public Expression charNotIn(String chars) {
+        if (chars.isEmpty()) {
+            throw new IllegalArgumentException("At least one character required.");
+        }
+        return new CharClassExpression(CharClass.of(chars).negate());
+    }
+
+    /**
+     * Matches any character in the given range, inclusive.
+     */
+    public Expression charRange(char from, char to) {
+        return new CharClassExpression(CharClass.range(from, to));
+    }
+
+    /**
+     * Matches any character with one of the given Unicode general categories, as per {@link Character#getType(char)}. For example, use
+     * {@link Character#DECIMAL_DIGIT_NUMBER} to match a digit.
+     */
+    public Expression charOfType(int... types) {
+        if (types.length == 0) {
+            throw new IllegalArgumentException("At least one character type required.");
+        }
+        return new CharClassExpression(CharClass.types(types));
+    }
+
     /**
      * Matches one of the given expressions. Order is significant and the first matching expression is selected, regardless of whether later expressions might also match.
      */
@@ -51,7 +102,33 @@ public class ParserBuilder {
         if (expressions.length < 2) {
             throw new IllegalArgumentException("At least two expressions required.");
         }
-        return new OneOfExpression(matchers(expressions));
+        List<MatchExpression> matchers = matchers(expressions);
+        // A choice of single characters can be matched using a single lookup
+        CharClassExpression charClass = CharClassExpression.fuse(matchers);
+        if (charClass != null) {
+            return charClass;
+        }
+        // A choice of literals can be matched using a single pass over the input
+        LiteralChoiceExpression literals = LiteralChoiceExpression.fuse(matchers);
+        if (literals != null) {
+            return literals;
+        }
+        return new OneOfExpression(matchers);
+    }
+
+    /**
+     * Matches one of the given strings, case sensitive. Order is significant and the first matching string is selected, regardless of whether later
+     * strings might also match. Produces a token for the string that matched.
+     */
+    public Expression literals(String... strings) {
+        if (strings.length < 2) {
+            throw new IllegalArgumentException("At least two strings required.");
+        }
+        Expression[] expressions = new Expression[strings.length];
+        for (int i = 0; i < strings.length; i++) {
+            expressions[i] = chars(strings[i]);
+        }
+        return oneOf(expressions);
     }
 
     /**
@@ -107,11 +184,109 @@ public class ParserBuilder {
         return new DefaultBackReference(matcher(expression));
     }
 
+    /**
+     * Matches the given expression, caching the result at each position of the input so that the expression is matched at most once per position
+     * during a parse. Use this for expressions that are attempted many times at the same position due to backtracking. The expression must always
+     * produce the same result at a given position, so should not contain the value of a {@link BackReference}.
+     */
+    public Expression memoize(Expression expression) {
+        return new MemoizingExpression(matcher(expression), memoizedExpressions++);
+    }
+
+    /**
+     * Matches the given expression, memoizing it as for {@link #memoize(Expression)}, and marks it as a point at which a large input can be split so
+     * that it can be parsed in parallel. Use this for an expression that typically starts at the start of a line and that is repeated many times
+     * in a large input, such as the declarations of a source file.
+     *
+     * <p>When a parse is given a {@link java.util.concurrent.ForkJoinPool} using {@link ParseOptions#setForkJoinPool(java.util.concurrent.ForkJoinPool)},
+     * the input is split into segments that are scanned in parallel. The split point expressions are matched at the first character that is not
+     * a space or tab on each line of a segment, continuing after the end of each match. The input is then parsed from the start, reusing these
+     * results wherever the parse attempts a split point expression at the same position, and matching everything else as usual. The results are
+     * the same as for parsing the input without a pool.</p>
+     *
+     * <p>The expression must always produce the same result at a given position, so should not contain the value of a {@link BackReference}.
+     * Split points that contain the value of a back reference are not matched in parallel.</p>
+     */
+    public Expression splitPoint(Expression expression) {
+        Expression memoized = memoize(expression);
+        splitPoints.add(matcher(memoized));
+        return memoized;
+    }
+
+    /**
+     * Sets the limits for the results cached by memoized expressions, for parsers created after this method is called.
+     *
+     * @param maxEntries The maximum number of results to cache per parse. Use 0 to disable caching.
+     * @param window The number of characters behind the farthest position reached for which results are retained when the cache is full.
+     */
+    public void setMemoizationLimits(int maxEntries, int window) {
+        if (maxEntries < 0 || window < 0) {
+            throw new IllegalArgumentException("Memoization limits must not be negative.");
+        }
+        memoizationMaxEntries = maxEntries;
+        memoizationWindow = window;
+    }
+
+    /**
+     * Sets the engine to use for parsers created after this method is called. Each engine produces the same tokens and failures for a given input.
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Sets whether the parsers created after this method is called first match the input without tracking where it fails, and match it again to
+     * report the failure only when it does not match. This makes parsing input that matches faster and parsing input that does not match slower, and
+     * does not change the tokens or failures produced. The default is false.
+     *
+     * <p>This applies to the {@link Engine#Interpreter} engine. The other engines always work this way. Incremental parses, parses of input read
+     * from a {@link java.io.Reader} whose root expression is a {@code zeroOrMore()} expression, and profiled parsers always track failures.
+     * Use {@link ParseStatistics#getPasses()} to find how often the input is matched again.</p>
+     */
+    public void setRecognizeFirst(boolean recognizeFirst) {
+        this.recognizeFirst = recognizeFirst;
+    }
+
+    /**
+     * Profiles the parsers created after this method is called, using the given profiler. Use null to not profile parsers.
+     *
+     * <p>A profiled parser always uses the {@link Engine#Interpreter} engine, regardless of the engine set using {@link #setEngine(Engine)}, and does
+     * not parse in parallel. Each rule of the parser is wrapped to record its invocations, which makes parsing slower. The tokens and failures
+     * produced by the parser are not affected. See {@link ParseProfiler} for which expressions are rules.</p>
+     */
+    public void setProfiler(ParseProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Gives the given expression a name, which is used to report the expression in the results of a {@link ParseProfiler} and in the rule events
+     * recorded for sampled parses. The expression is always treated as a rule. When an expression has no name, it is described using its structure
+     * instead.
+     */
+    public void setName(Expression expression, String name) {
+        names.put(expression, name);
+    }
+
     /**
      * Creates a parser for the given expression.
      */
     public Parser newParser(Expression expression) {
-        return new DefaultParser(matcher(expression));
+        if (profiler != null) {
+            ExpressionProfiler expressionProfiler = new ExpressionProfiler(matcher(expression), new IdentityHashMap<>(names), profiler.getRecorder());
+            return new DefaultParser(expressionProfiler.getRoot(), memoizationMaxEntries, memoizationWindow);
+        }
+        DefaultParser parser = new DefaultParser(matcher(expression), memoizationMaxEntries, memoizationWindow, new ArrayList<>(splitPoints),
+                new IdentityHashMap<>(names), recognizeFirst);
+        switch (engine) {
+            case Interpreter:
+                return parser;
+            case VirtualMachine:
+                return new VirtualMachineParser(matcher(expression), parser);
+            case GeneratedCode:
+                return new GeneratedCodeParser(matcher(expression), parser);
+            default:
+                throw new UnsupportedOperationException("Unsupported engine " + engine + ".");
+        }
     }
 
     private List<MatchExpression> matchers(Expression... expressions) {
@@ -8,4 +8,14 @@ public interface Region {
      * Returns the text contained in this region.
      */
     String getText();
+
+    /**
+     * Returns the offset of the start of this region from the start of the input, base 0. Use a {@link LineIndex} to convert this to a line and column.
+     */
+    int getStart();
+
+    /**
+     * Returns the offset of the end of this region (exclusive) from the start of the input, base 0.
+     */
+    int getEnd();
 }
@@ -0,0 +1,49 @@
+package net.rubygrapefruit.parser.peg;
+
+/**
+ * The invocations of a rule of a profiled parser, accumulated over all parses made by the parsers that use a {@link ParseProfiler}. Times are in
+ * nanoseconds.
+ */
+public interface RuleProfile {
+    /**
+     * Returns the name of the rule, as given to {@link ParserBuilder#setName(Expression, String)}, or a description of the expression of the rule.
+     */
+    String getName();
+
+    /**
+     * Returns the number of times the rule was matched, including those that were stopped early by the limits of {@link ParseOptions}.
+     */
+    long getInvocations();
+
+    /**
+     * Returns the number of times the rule matched.
+     */
+    long getSuccesses();
+
+    /**
+     * Returns the number of times the rule did not match.
+     */
+    long getFailures();
+
+    /**
+     * Returns the number of characters consumed by the matches of the rule.
+     */
+    long getConsumed();
+
+    /**
+     * Returns the number of characters that the rule matched before it failed, which are thrown away and may be matched again by some other
+     * alternative.
+     */
+    long getBacktracked();
+
+    /**
+     * Returns the time spent matching the rule, including the time spent in the rules that it invokes. The time of a recursive invocation is not
+     * counted twice.
+     */
+    long getInclusiveTime();
+
+    /**
+     * Returns the time spent matching the rule, excluding the time spent in the rules that it invokes.
+     */
+    long getExclusiveTime();
+}
@@ -0,0 +1,22 @@
+package net.rubygrapefruit.parser.peg;
+
+/**
+ * Creates the visitors for the inputs of a batch. See {@link Parser#parseAll(Iterable, ParseOptions, VisitorFactory)}.
+ *
+ * <p>The methods are called by the threads that parse the inputs, so may be called concurrently for different inputs. For a given input, the methods
+ * and the visitor are called by a single thread.</p>
+ *
+ * @param <T> The type of visitor.
+ */
+public interface VisitorFactory<T> {
+    /**
+     * Creates the visitor to receive the results for the given input, just before it is parsed.
+     */
+    T create(ParseInput input);
+
+    /**
+     * Called after the given input has been parsed and its results have been forwarded to the given visitor, which was created for the input
+     * using {@link #create(ParseInput)}. Is not called when the input could not be read, or when the visitor failed.
+     */
+    void finished(ParseInput input, T visitor);
+}
@@ -0,0 +1,186 @@
+package net.rubygrapefruit.parser.peg.internal;
+
+import net.rubygrapefruit.parser.peg.Engine;
+import net.rubygrapefruit.parser.peg.Expression;
+import net.rubygrapefruit.parser.peg.MemoizationStatistics;
+import net.rubygrapefruit.parser.peg.ParseBatch;
+import net.rubygrapefruit.parser.peg.ParseInput;
+import net.rubygrapefruit.parser.peg.ParseListener;
+import net.rubygrapefruit.parser.peg.ParseOptions;
+import net.rubygrapefruit.parser.peg.ParseResult;
+import net.rubygrapefruit.parser.peg.TokenVisitor;
+import net.rubygrapefruit.parser.peg.VisitorFactory;
+import net.rubygrapefruit.parser.peg.internal.event.ParseTrace;
+import net.rubygrapefruit.parser.peg.internal.match.TokenBuffer;
+import net.rubygrapefruit.parser.peg.internal.stream.InputBuffer;
+import net.rubygrapefruit.parser.peg.internal.stream.MappedFileReader;
+import net.rubygrapefruit.parser.peg.internal.stream.ParseAbortedException;
+import net.rubygrapefruit.parser.peg.internal.stream.ParseBudget;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+
+/**
+ * The base class for engines that match the input without tracking failures, and use the interpreter for everything else. The tokens are only
+ * forwarded to the visitor once the whole input has been matched. When the input does not match, the input is parsed again using the fallback
+ * parser, which reports the failure. The fallback parser is also used for incremental parses, for streaming input and for parses whose rules are
+ * being recorded.
+ *
+ * <p>Subclasses only implement {@link #match(CharSequence, ParseBudget, TokenBuffer)}.</p>
+ */
+public abstract class AbstractEngineParser implements ContextParser {
+    private final Engine engine;
+    private final DefaultParser fallback;
+
+    protected AbstractEngineParser(Engine engine, DefaultParser fallback) {
+        this.engine = engine;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Matches the whole input, collecting the tokens into the given buffer.
+     *
+     * @return true if the whole input matched.
+     * @throws ParseAbortedException when the budget is exceeded.
+     */
+    protected abstract boolean match(CharSequence input, ParseBudget budget, TokenBuffer tokens) throws ParseAbortedException;
+
+    /**
+     * Returns true if this engine can be used for the grammar. When false, every parse uses the fallback parser and is reported as a fallback.
+     */
+    protected boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public MemoizationStatistics getMemoizationStatistics() {
+        return fallback.getMemoizationStatistics();
+    }
+
+    @Override
+    public void addListener(ParseListener listener) {
+        fallback.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(ParseListener listener) {
+        fallback.removeListener(listener);
+    }
+
+    @Override
+    public ParseResult parseIncrementally(CharSequence input, TokenVisitor<Expression> visitor) {
+        // Only the interpreter caches results that can be reused
+        return fallback.parseIncrementally(input, visitor);
+    }
+
+    @Override
+    public ParseResult parseIncrementally(CharSequence input, ParseOptions options, TokenVisitor<Expression> visitor) {
+        return fallback.parseIncrementally(input, options, visitor);
+    }
+
+    @Override
+    public ParseResult reparse(ParseResult previous, int offset, int removed, CharSequence inserted, TokenVisitor<Expression> visitor) {
+        return fallback.reparse(previous, offset, removed, inserted, visitor);
+    }
+
+    @Override
+    public ParseResult reparse(ParseResult previous, int offset, int removed, CharSequence inserted, ParseOptions options, TokenVisitor<Expression> visitor) {
+        return fallback.reparse(previous, offset, removed, inserted, options, visitor);
+    }
+
+    @Override
+    public <T extends TokenVisitor<Expression>> T parse(Path input, T visitor) throws IOException {
+        if (fallback.isStreaming()) {
+            return fallback.parse(input, visitor);
+        }
+        try (MappedFileReader reader = new MappedFileReader(input)) {
+            return parse(reader.readAll(), visitor);
+        }
+    }
+
+    @Override
+    public <T extends TokenVisitor<Expression>> T parse(ReadableByteChannel input, Charset charset, T visitor) throws IOException {
+        return parse(Channels.newReader(input, charset.newDecoder(), -1), visitor);
+    }
+
+    @Override
+    public <T extends TokenVisitor<Expression>> T parse(Reader input, T visitor) throws IOException {
+        if (fallback.isStreaming()) {
+            // The interpreter can discard the input as it goes
+            return fallback.parse(input, visitor);
+        }
+        return parse(InputBuffer.readAll(input), visitor);
+    }
+
+    @Override
+    public <T extends TokenVisitor<Expression>> T parse(CharSequence input, T visitor) {
+        return parse(input, ParseBudget.unlimited(), new ParseContext(), visitor);
+    }
+
+    @Override
+    public <T extends TokenVisitor<Expression>> T parse(CharSequence input, ParseOptions options, T visitor) {
+        return parse(input, new ParseBudget(options), new ParseContext(), visitor);
+    }
+
+    @Override
+    public void parse(CharSequence input, ParseOptions options, ParseContext context, TokenVisitor<Expression> visitor) {
+        parse(input, new ParseBudget(options), context, visitor);
+    }
+
+    @Override
+    public <T extends TokenVisitor<Expression>> ParseBatch parseAll(Iterable<? extends ParseInput> inputs, VisitorFactory<T> visitors) {
+        return parseAll(inputs, new ParseOptions(), visitors);
+    }
+
+    @Override
+    public <T extends TokenVisitor<Expression>> ParseBatch parseAll(Iterable<? extends ParseInput> inputs, ParseOptions options, VisitorFactory<T> visitors) {
+        return DefaultParseBatch.start(this, inputs, options, visitors);
+    }
+
+    private <T extends TokenVisitor<Expression>> T parse(CharSequence input, ParseBudget budget, ParseContext context, T visitor) {
+        ParseTrace trace = ParseTrace.start(visitor, fallback.getListeners(), engine, input.length());
+        if (trace == null) {
+            parseOrFallBack(input, budget, context, visitor);
+        } else {
+            if (ParseTrace.isRuleSampled(trace)) {
+                // Only the interpreter can record the rules
+                fallback.parse(input, budget, context, trace);
+            } else {
+                parseOrFallBack(input, budget, context, trace);
+            }
+            trace.finish(input.length());
+        }
+        return visitor;
+    }
+
+    /**
+     * Matches the input using this engine, and parses the input again using the fallback parser when it does not match.
+     */
+    private void parseOrFallBack(CharSequence input, ParseBudget budget, ParseContext context, TokenVisitor<Expression> visitor) {
+        if (!isAvailable()) {
+            ParseTrace.fallback(visitor);
+            fallback.parse(input, budget, context, visitor);
+            return;
+        }
+        TokenBuffer tokens = context.getTokenBuffer();
+        boolean matched;
+        try {
+            matched = match(input, budget, tokens);
+        } catch (ParseAbortedException e) {
+            ParseTrace.bufferedTokens(visitor, tokens.getPeakSize());
+            fallback.aborted(e, input, visitor);
+            return;
+        }
+        ParseTrace.bufferedTokens(visitor, tokens.getPeakSize());
+        if (!matched) {
+            // The fallback continues with the same budget
+            fallback.parseFailure(input, budget, context, visitor);
+            return;
+        }
+        tokens.pushTo(input, visitor);
+    }
+}
@@ -0,0 +1,16 @@
+package net.rubygrapefruit.parser.peg.internal;
+
+import net.rubygrapefruit.parser.peg.Expression;
+import net.rubygrapefruit.parser.peg.ParseOptions;
+import net.rubygrapefruit.parser.peg.Parser;
+import net.rubygrapefruit.parser.peg.TokenVisitor;
+
+/**
+ * A parser that can reuse the buffers of a {@link ParseContext}.
+ */
+public interface ContextParser extends Parser {
+    /**
+     * Same as {@link #parse(CharSequence, ParseOptions, TokenVisitor)}, using the buffers of the given context.
+     */
+    void parse(CharSequence input, ParseOptions options, ParseContext context, TokenVisitor<Expression> visitor);
+}
@@ -0,0 +1,158 @@
+package net.rubygrapefruit.parser.peg.internal;
+
+import net.rubygrapefruit.parser.peg.CancellationToken;
+import net.rubygrapefruit.parser.peg.Expression;
+import net.rubygrapefruit.parser.peg.ParseBatch;
+import net.rubygrapefruit.parser.peg.ParseInput;
+import net.rubygrapefruit.parser.peg.ParseOptions;
+import net.rubygrapefruit.parser.peg.TokenVisitor;
+import net.rubygrapefruit.parser.peg.VisitorFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses a batch of inputs using one worker per thread of a pool. The inputs are sorted by decreasing length, and each worker takes the next input
+ * as it finishes the previous one, so that the long inputs are started first and the short inputs fill in the gaps at the end. Each worker reuses
+ * a {@link ParseContext} for the inputs that it parses.
+ */
+public class DefaultParseBatch<T extends TokenVisitor<Expression>> implements ParseBatch {
+    private final ContextParser parser;
+    private final List<ParseInput> inputs;
+    private final ParseOptions options;
+    private final VisitorFactory<T> visitors;
+    private final CancellationToken cancellationToken;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final List<ExecutionException> failures = new ArrayList<>();
+    private final ForkJoinPool pool;
+    private final boolean ownPool;
+    private final CountDownLatch workers;
+    private ExecutionException failure;
+
+    private DefaultParseBatch(ContextParser parser, Iterable<? extends ParseInput> inputs, ParseOptions options, VisitorFactory<T> visitors) {
+        this.parser = parser;
+        this.inputs = new ArrayList<>();
+        for (ParseInput input : inputs) {
+            this.inputs.add(input);
+        }
+        Collections.sort(this.inputs, new Comparator<ParseInput>() {
+            @Override
+            public int compare(ParseInput o1, ParseInput o2) {
+                return Long.compare(o2.getLength(), o1.getLength());
+            }
+        });
+        this.visitors = visitors;
+        this.options = new ParseOptions(options);
+        cancellationToken = new CancellationToken(options.getCancellationToken());
+        this.options.setCancellationToken(cancellationToken);
+        ownPool = options.getForkJoinPool() == null;
+        pool = ownPool ? new ForkJoinPool() : options.getForkJoinPool();
+        workers = new CountDownLatch(Math.min(pool.getParallelism(), this.inputs.size()));
+    }
+
+    /**
+     * Creates a batch for the given inputs and starts parsing them.
+     */
+    public static <T extends TokenVisitor<Expression>> DefaultParseBatch<T> start(ContextParser parser, Iterable<? extends ParseInput> inputs,
+            ParseOptions options, VisitorFactory<T> visitors) {
+        DefaultParseBatch<T> batch = new DefaultParseBatch<>(parser, inputs, options, visitors);
+        batch.startWorkers();
+        return batch;
+    }
+
+    private void startWorkers() {
+        for (long i = workers.getCount(); i > 0; i--) {
+            pool.execute(new Worker());
+        }
+        if (ownPool) {
+            // Lets the workers finish, then releases the threads
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    public int getInputCount() {
+        return inputs.size();
+    }
+
+    @Override
+    public int getCompletedCount() {
+        return completed.get();
+    }
+
+    @Override
+    public boolean isDone() {
+        return workers.getCount() == 0;
+    }
+
+    @Override
+    public void await() throws InterruptedException, ExecutionException {
+        workers.await();
+        rethrowFailure();
+    }
+
+    @Override
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+        if (!workers.await(timeout, unit)) {
+            return false;
+        }
+        rethrowFailure();
+        return true;
+    }
+
+    @Override
+    public void cancel() {
+        cancellationToken.cancel();
+    }
+
+    private synchronized void rethrowFailure() throws ExecutionException {
+        if (failure == null && !failures.isEmpty()) {
+            failure = failures.get(0);
+            for (int i = 1; i < failures.size(); i++) {
+                failure.addSuppressed(failures.get(i));
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private synchronized void failed(ParseInput input, Throwable failure) {
+        failures.add(new ExecutionException("Could not parse " + input.getName() + ".", failure));
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            try {
+                ParseContext context = new ParseContext();
+                while (!cancellationToken.isCancelled()) {
+                    int index = next.getAndIncrement();
+                    if (index >= inputs.size()) {
+                        break;
+                    }
+                    ParseInput input = inputs.get(index);
+                    try {
+                        T visitor = visitors.create(input);
+                        parser.parse(input.getText(), options, context, visitor);
+                        visitors.finished(input, visitor);
+                    } catch (Throwable e) {
+                        // Keep going with the other inputs
+                        failed(input, e);
+                    }
+                    completed.incrementAndGet();
+                }
+            } finally {
+                workers.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package net.rubygrapefruit.parser.peg.internal;
+
+import net.rubygrapefruit.parser.peg.FailureReason;
+import net.rubygrapefruit.parser.peg.FailureVisitor;
+import net.rubygrapefruit.parser.peg.LineIndex;
+import net.rubygrapefruit.parser.peg.ParseFailure;
+import net.rubygrapefruit.parser.peg.Region;
+import net.rubygrapefruit.parser.peg.TokenVisitor;
+import net.rubygrapefruit.parser.peg.internal.match.TerminalSet;
+
+import java.util.List;
+
+/**
+ * A failure that holds the state required to describe it, and formats the description on demand. The input is some part of the whole input that
+ * starts at the start of a line.
+ */
+public class DefaultParseFailure implements ParseFailure {
+    private final CharSequence input;
+    private final int lines;
+    private final int offset;
+    private final int pos;
+    private final TerminalSet expected;
+    private final FailureReason reason;
+    private final String description;
+    private final Region remainder;
+    private LineIndex lineIndex;
+    private String message;
+
+    private DefaultParseFailure(CharSequence input, int lines, int offset, int pos, TerminalSet expected, FailureReason reason, String description, Region remainder) {
+        this.input = input;
+        this.lines = lines;
+        this.offset = offset;
+        this.pos = pos;
+        this.expected = expected;
+        this.reason = reason;
+        this.description = description;
+        this.remainder = remainder;
+    }
+
+    /**
+     * Creates a failure to match the input.
+     *
+     * @param lines The number of lines before the start of the input.
+     * @param offset The offset of the input from the start of the whole input.
+     * @param pos The position in the input where matching stopped.
+     */
+    public static DefaultParseFailure failed(CharSequence input, int lines, int offset, int pos, TerminalSet expected) {
+        return new DefaultParseFailure(input, lines, offset, pos, expected, FailureReason.Mismatch, null, new DefaultRegion(input, offset, offset + pos, offset + input.length()));
+    }
+
+    /**
+     * Creates a failure for a parse that was stopped because it exceeded its budget. No tokens have been forwarded, so the remainder is the whole
+     * input.
+     *
+     * @param description Describes why the parse was stopped, used in the message.
+     */
+    public static DefaultParseFailure stopped(CharSequence input, int pos, FailureReason reason, String description) {
+        return new DefaultParseFailure(input, 0, 0, pos, TerminalSet.EMPTY, reason, description, new DefaultRegion(input, 0, input.length()));
+    }
+
+    /**
+     * Reports the given failure to the given visitor, formatting the message only when the visitor does not accept a {@link ParseFailure}.
+     */
+    public static void report(ParseFailure failure, TokenVisitor<?> visitor) {
+        if (visitor instanceof FailureVisitor) {
+            ((FailureVisitor<?>) visitor).failed(failure);
+        } else {
+            visitor.failed(failure.getMessage(), failure.getRemainder());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getMessage();
+    }
+
+    private LineIndex getLineIndex() {
+        if (lineIndex == null) {
+            lineIndex = new LineIndex(input);
+        }
+        return lineIndex;
+    }
+
+    @Override
+    public FailureReason getReason() {
+        return reason;
+    }
+
+    @Override
+    public int getOffset() {
+        return offset + pos;
+    }
+
+    @Override
+    public int getLine() {
+        return lines + getLineIndex().getLine(pos);
+    }
+
+    @Override
+    public int getColumn() {
+        return getLineIndex().getColumn(pos);
+    }
+
+    @Override
+    public List<String> getExpected() {
+        return expected.getDisplayNames();
+    }
+
+    @Override
+    public Region getRemainder() {
+        return remainder;
+    }
+
+    @Override
+    public String getMessage() {
+        if (message == null) {
+            message = format();
+        }
+        return message;
+    }
+
+    private String format() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("line ").append(getLine()).append(":");
+        if (description != null) {
+            builder.append(' ').append(description);
+        } else {
+            List<String> candidates = getExpected();
+            if (!candidates.isEmpty()) {
+                builder.append(" expected ");
+                for (int i = 0; i < candidates.size(); i++) {
+                    if (i > 0 && i == candidates.size() - 1) {
+                        builder.append(" or ");
+                    } else if (i > 0) {
+                        builder.append(", ");
+                    }
+                    builder.append(candidates.get(i));
+                }
+            } else {
+                builder.append(" unexpected characters");
+            }
+        }
+        LineIndex lineIndex = getLineIndex();
+        builder.append('\n');
+        builder.append(lineIndex.getLineText(pos));
+        builder.append('\n');
+        int column = lineIndex.getColumn(pos);
+        for (int i = 1; i < column; i++) {
+            builder.append(' ');
+        }
+        builder.append('^');
+        return builder.toString();
+    }
+}
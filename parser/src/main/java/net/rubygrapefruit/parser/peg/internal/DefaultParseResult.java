@@ -0,0 +1,38 @@
+package net.rubygrapefruit.parser.peg.internal;
+
+import net.rubygrapefruit.parser.peg.ParseResult;
+import net.rubygrapefruit.parser.peg.internal.stream.MemoTable;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class DefaultParseResult implements ParseResult {
+    private final DefaultParser parser;
+    private final String text;
+    private final AtomicReference<MemoTable> memoTable;
+
+    DefaultParseResult(DefaultParser parser, String text, MemoTable memoTable) {
+        this.parser = parser;
+        this.text = text;
+        this.memoTable = new AtomicReference<>(memoTable);
+    }
+
+    DefaultParser getParser() {
+        return parser;
+    }
+
+    @Override
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Removes the memo table from this result, so that it can be reused for another parse.
+     */
+    MemoTable takeMemoTable() {
+        MemoTable table = memoTable.getAndSet(null);
+        if (table == null) {
+            throw new IllegalStateException("This result has already been reparsed.");
+        }
+        return table;
+    }
+}
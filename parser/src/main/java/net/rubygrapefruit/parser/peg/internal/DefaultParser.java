@@ -1,84 +1,580 @@
 package net.rubygrapefruit.parser.peg.internal;
 
+import net.rubygrapefruit.parser.peg.Engine;
 import net.rubygrapefruit.parser.peg.Expression;
+import net.rubygrapefruit.parser.peg.MemoizationStatistics;
+import net.rubygrapefruit.parser.peg.ParseBatch;
+import net.rubygrapefruit.parser.peg.ParseInput;
+import net.rubygrapefruit.parser.peg.ParseListener;
+import net.rubygrapefruit.parser.peg.ParseOptions;
+import net.rubygrapefruit.parser.peg.ParseResult;
 import net.rubygrapefruit.parser.peg.Parser;
 import net.rubygrapefruit.parser.peg.TokenVisitor;
+import net.rubygrapefruit.parser.peg.VisitorFactory;
+import net.rubygrapefruit.parser.peg.internal.event.ParseListeners;
+import net.rubygrapefruit.parser.peg.internal.event.ParseTrace;
+import net.rubygrapefruit.parser.peg.internal.event.RuleEventRecorder;
+import net.rubygrapefruit.parser.peg.internal.expression.*;
 import net.rubygrapefruit.parser.peg.internal.match.*;
 import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
-import net.rubygrapefruit.parser.peg.internal.stream.StreamPos;
+import net.rubygrapefruit.parser.peg.internal.stream.InputBuffer;
+import net.rubygrapefruit.parser.peg.internal.stream.MappedFileReader;
+import net.rubygrapefruit.parser.peg.internal.stream.MemoTable;
+import net.rubygrapefruit.parser.peg.internal.stream.ParseAbortedException;
+import net.rubygrapefruit.parser.peg.internal.stream.ParseBudget;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class DefaultParser implements Parser {
+public class DefaultParser implements ContextParser {
+    // The input is only split into segments of at least this many characters
+    private static final int MIN_SEGMENT_LENGTH = 16 * 1024;
+    private static final int SEGMENTS_PER_THREAD = 4;
     private final MatchExpression rootExpression;
+    private final int memoizationMaxEntries;
+    private final int memoizationWindow;
+    private final List<MatchExpression> splitPoints;
+    private final Map<Expression, String> ruleNames;
+    private final boolean recognizeFirst;
+    private final DefaultMemoizationStatistics memoizationStatistics = new DefaultMemoizationStatistics();
+    private final ParseListeners listeners = new ParseListeners();
+    private BitSet contextDependentSlots;
+    private List<MatchExpression> parallelSplitPoints;
+    private volatile boolean optimized;
+    private MatchExpression sampledRootExpression;
 
-    public DefaultParser(MatchExpression rootExpression) {
+    public DefaultParser(MatchExpression rootExpression, int memoizationMaxEntries, int memoizationWindow) {
+        this(rootExpression, memoizationMaxEntries, memoizationWindow, Collections.<MatchExpression>emptyList(),
+                Collections.<Expression, String>emptyMap(), false);
+    }
+
+    /**
+     * @param ruleNames The names of the rules, keyed by identity, used for the events of sampled parses.
+     * @param recognizeFirst true to match the input without tracking failures first, and to match it again only when it does not match.
+     */
+    public DefaultParser(MatchExpression rootExpression, int memoizationMaxEntries, int memoizationWindow, List<MatchExpression> splitPoints,
+            Map<Expression, String> ruleNames, boolean recognizeFirst) {
         this.rootExpression = rootExpression;
+        this.memoizationMaxEntries = memoizationMaxEntries;
+        this.memoizationWindow = memoizationWindow;
+        this.splitPoints = splitPoints;
+        this.ruleNames = ruleNames;
+        this.recognizeFirst = recognizeFirst;
     }
 
     @Override
-    public <T extends TokenVisitor<Expression>> T parse(String input, final T visitor) {
-        final TokenCollector resultCollector = new TokenCollector() {
-            @Override
-            public void token(MatchResult token) {
-                visitor.token(token.getExpression(), token);
+    public MemoizationStatistics getMemoizationStatistics() {
+        return memoizationStatistics;
+    }
+
+    @Override
+    public void addListener(ParseListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(ParseListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the listeners of this parser, which are shared with the engines that fall back to this parser.
+     */
+    public ParseListeners getListeners() {
+        return listeners;
+    }
+
+    /**
+     * Optimizes the expressions on first use, so that reference expressions can be set up after the parser has been created.
+     */
+    private void optimize() {
+        if (optimized) {
+            return;
+        }
+        synchronized (this) {
+            if (!optimized) {
+                new GrammarOptimizer().optimize(rootExpression);
+                contextDependentSlots = findContextDependentSlots();
+                parallelSplitPoints = findParallelSplitPoints();
+                optimized = true;
             }
-        };
-        RootExpressionVisitor resultVisitor = new RootExpressionVisitor(resultCollector);
-        CharStream stream = new CharStream(input);
-        boolean match = rootExpression.getMatcher().consume(stream, resultVisitor);
-        resultVisitor.commitPartialMatches();
-        StreamPos pos = resultVisitor.getStoppedAt();
-        // Did not recognize or did not match up to the end of input
-        if (!match || !resultVisitor.getMatchEnd().isAtEnd()) {
-            StringBuilder builder = new StringBuilder();
-            builder.append("line ").append(pos.getLine()).append(":");
-            Set<String> candidates = new TreeSet<String>();
-            for (Terminal terminal : resultVisitor.getMatchPoint().getPrefixes()) {
-                candidates.add(terminal.getDisplayName());
+        }
+    }
+
+    /**
+     * Returns a copy of the root expression in which each rule is wrapped to record an event when it is matched, for use by sampled parses. The
+     * copy uses the same memoization slots and produces the same tokens as the root expression. Created on first use, as most parsers are never
+     * sampled.
+     */
+    private synchronized MatchExpression getSampledRootExpression() {
+        if (sampledRootExpression == null) {
+            MatchExpression root = new ExpressionProfiler(rootExpression, ruleNames, new RuleEventRecorder()).getRoot();
+            new GrammarOptimizer().optimize(root);
+            sampledRootExpression = root;
+        }
+        return sampledRootExpression;
+    }
+
+    /**
+     * Finds the memoized expressions whose results might depend on the input that precedes them, because they use or collect the value of a back
+     * reference.
+     */
+    private BitSet findContextDependentSlots() {
+        BitSet slots = new BitSet();
+        for (MatchExpression expression : new ExpressionGraph(rootExpression).getExpressions()) {
+            if (expression instanceof MemoizingExpression && usesBackReference(((MemoizingExpression) expression).getExpression())) {
+                slots.set(((MemoizingExpression) expression).getSlot());
             }
-            if (!candidates.isEmpty()) {
-                builder.append(" expected ");
-                int count = 0;
-                for (String candidate : candidates) {
-                    if (count > 0 && count == candidates.size() - 1) {
-                        builder.append(" or ");
-                    } else if (count > 0) {
-                        builder.append(", ");
+        }
+        return slots;
+    }
+
+    /**
+     * Finds the split points that are used by the root expression and that can be matched in parallel, as they do not use the value of a back
+     * reference. The value is held by the back reference, so it cannot be used by more than one thread.
+     */
+    private List<MatchExpression> findParallelSplitPoints() {
+        List<MatchExpression> result = new ArrayList<>();
+        Set<MatchExpression> expressions = new ExpressionGraph(rootExpression).getExpressions();
+        for (MatchExpression splitPoint : splitPoints) {
+            if (expressions.contains(splitPoint) && !usesBackReference(splitPoint)) {
+                result.add(splitPoint);
+            }
+        }
+        return result;
+    }
+
+    private static boolean usesBackReference(MatchExpression expression) {
+        for (MatchExpression child : new ExpressionGraph(expression).getExpressions()) {
+            if (child instanceof DefaultBackReference.Collector || child instanceof DefaultBackReference.ValueExpression) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if this parser can discard the input that it has parsed, when parsing input from a {@link Reader}. This is the case when the root
+     * expression is a {@code zeroOrMore()} expression, as each match of the repeated expression is never backtracked into.
+     */
+    public boolean isStreaming() {
+        return getStreamingRoot() != null;
+    }
+
+    private ZeroOrMoreExpression getStreamingRoot() {
+        MatchExpression expression = rootExpression;
+        while (expression instanceof DefaultReferenceExpression) {
+            expression = ((DefaultReferenceExpression) expression).getTarget();
+        }
+        return expression instanceof ZeroOrMoreExpression ? (ZeroOrMoreExpression) expression : null;
+    }
+
+    @Override
+    public <T extends TokenVisitor<Expression>> T parse(Path input, T visitor) throws IOException {
+        try (MappedFileReader reader = new MappedFileReader(input)) {
+            if (isStreaming()) {
+                return parse(reader, visitor);
+            }
+            return parse(reader.readAll(), visitor);
+        }
+    }
+
+    @Override
+    public <T extends TokenVisitor<Expression>> T parse(ReadableByteChannel input, Charset charset, T visitor) throws IOException {
+        return parse(Channels.newReader(input, charset.newDecoder(), -1), visitor);
+    }
+
+    /**
+     * Parses the input read from the given reader. When the root expression is a {@code zeroOrMore()} expression, the repeated expression is
+     * matched one occurrence at a time against a window of the input. The tokens of each occurrence are forwarded to the visitor once they are
+     * known to be part of the result, and the input that precedes the current line is discarded. Otherwise, the whole input is read and parsed.
+     */
+    @Override
+    public <T extends TokenVisitor<Expression>> T parse(Reader input, T visitor) throws IOException {
+        ZeroOrMoreExpression root = getStreamingRoot();
+        if (root == null) {
+            return parse(InputBuffer.readAll(input), visitor);
+        }
+        optimize();
+        ParseTrace trace = ParseTrace.start(visitor, listeners, Engine.Interpreter, -1);
+        if (trace == null) {
+            parse(root, input, visitor);
+        } else {
+            int length = parse(root, input, trace);
+            trace.finish(length);
+        }
+        return visitor;
+    }
+
+    /**
+     * Parses the input read from the given reader, one occurrence of the repeated expression at a time.
+     *
+     * @return the number of characters read.
+     */
+    private int parse(ZeroOrMoreExpression root, Reader input, TokenVisitor<Expression> visitor) throws IOException {
+        TokenCollector resultCollector = collector(visitor);
+        MatchExpression expression = root.getExpression();
+        InputBuffer buffer = new InputBuffer(input);
+        buffer.read();
+        String text = buffer.getText();
+        TokenArena arena = new TokenArena();
+        int emptyMark = arena.mark();
+        MemoTable memoTable = new MemoTable(text.length(), memoizationMaxEntries, memoizationWindow);
+        CharStream stream = new CharStream(text, memoTable, arena);
+        RootExpressionVisitor resultVisitor = new RootExpressionVisitor(arena);
+        int pos = 0;
+
+        // Matches the repeated expression in the same way as ZeroOrMoreExpression does
+        while (true) {
+            stream.moveTo(pos);
+            stream.resetHitEnd();
+            BatchingMatchVisitor nested = arena.newVisitor();
+            boolean matched = expression.getMatcher().consume(stream, nested);
+            if (stream.isHitEnd() && !buffer.isAtEnd()) {
+                // The result might be different when more of the input is available, so discard it and try again with more input
+                arena.release(nested);
+                arena.truncate(nested.getMark());
+                if (!resultVisitor.hasPendingMatches()) {
+                    int discarded = buffer.discard(pos);
+                    if (discarded > 0) {
+                        resultVisitor.rebase(discarded);
+                        pos -= discarded;
                     }
-                    count++;
-                    builder.append(candidate);
                 }
-            } else {
-                builder.append(" unexpected characters");
+                memoizationStatistics.add(memoTable);
+                buffer.read();
+                text = buffer.getText();
+                memoTable = new MemoTable(text.length(), memoizationMaxEntries, memoizationWindow);
+                stream = new CharStream(text, memoTable, arena);
+                continue;
+            }
+            if (!matched) {
+                stream.moveTo(pos);
+                resultVisitor.attempted(nested);
+                arena.release(nested);
+                break;
+            }
+            resultVisitor.matched(nested);
+            arena.release(nested);
+            pos = stream.getOffset();
+            arena.pushTo(resultVisitor.takeCommittedMatches(), text, buffer.getOffset(), resultCollector);
+            if (!resultVisitor.hasPendingMatches()) {
+                // None of the tokens are referenced any more
+                arena.truncate(emptyMark);
+            }
+        }
+        resultVisitor.matched(pos);
+        memoizationStatistics.add(memoTable);
+        ParseTrace.bufferedTokens(visitor, arena.getPeakSize());
+        resultVisitor.commitPartialMatches();
+        arena.pushTo(resultVisitor.getMatches(), text, buffer.getOffset(), resultCollector);
+        if (resultVisitor.getMatchEnd() != text.length() || !buffer.isAtEnd()) {
+            // Read the remainder of the input, to report the failure
+            while (buffer.read()) {
+                // Keep reading
             }
-            appendHighlight(pos, builder);
-            visitor.failed(builder.toString(), new DefaultRegion(pos, stream.end()));
+            text = buffer.getText();
+            failed(resultVisitor, buffer.getLines(), text, buffer.getOffset(), visitor);
+        }
+        return buffer.getOffset() + buffer.getText().length();
+    }
+
+    @Override
+    public <T extends TokenVisitor<Expression>> T parse(CharSequence input, final T visitor) {
+        return parse(input, ParseBudget.unlimited(), new ParseContext(), visitor);
+    }
+
+    @Override
+    public <T extends TokenVisitor<Expression>> T parse(CharSequence input, ParseOptions options, T visitor) {
+        parse(input, options, new ParseContext(), visitor);
+        return visitor;
+    }
+
+    @Override
+    public void parse(CharSequence input, ParseOptions options, ParseContext context, TokenVisitor<Expression> visitor) {
+        if (!isParallel(input, options)) {
+            parse(input, new ParseBudget(options), context, visitor);
+            return;
+        }
+        // Start the trace and the budget before the segments are matched, so that the time taken to match them is included
+        ParseTrace trace = ParseTrace.start(visitor, listeners, Engine.Interpreter, input.length());
+        ParseBudget budget = new ParseBudget(options);
+        if (trace == null) {
+            parse(input, matchSegments(input, options, visitor), budget, context.getTokenArena(), recognizeFirst, visitor);
+        } else {
+            parse(input, matchSegments(input, options, trace), budget, context.getTokenArena(), recognizeFirst, trace);
+            trace.finish(input.length());
+        }
+    }
+
+    @Override
+    public <T extends TokenVisitor<Expression>> ParseBatch parseAll(Iterable<? extends ParseInput> inputs, VisitorFactory<T> visitors) {
+        return parseAll(inputs, new ParseOptions(), visitors);
+    }
+
+    @Override
+    public <T extends TokenVisitor<Expression>> ParseBatch parseAll(Iterable<? extends ParseInput> inputs, ParseOptions options, VisitorFactory<T> visitors) {
+        return DefaultParseBatch.start(this, inputs, options, visitors);
+    }
+
+    /**
+     * Returns true if the given input would be parsed in parallel using the given options.
+     */
+    public boolean isParallel(CharSequence input, ParseOptions options) {
+        optimize();
+        return options.getForkJoinPool() != null && !parallelSplitPoints.isEmpty() && input.length() >= 2 * MIN_SEGMENT_LENGTH;
+    }
+
+    /**
+     * Splits the input into segments and matches the split points against each segment in parallel, returning a memo table that holds the
+     * results.
+     */
+    private MemoTable matchSegments(CharSequence input, ParseOptions options, TokenVisitor<Expression> visitor) {
+        ForkJoinPool pool = options.getForkJoinPool();
+        int length = input.length();
+        int segments = Math.min(pool.getParallelism() * SEGMENTS_PER_THREAD, length / MIN_SEGMENT_LENGTH);
+        ParseTrace.segments(visitor, segments);
+        List<ForkJoinTask<MemoTable>> tasks = new ArrayList<>(segments);
+        for (int i = 0; i < segments; i++) {
+            int start = (int) ((long) length * i / segments);
+            int end = (int) ((long) length * (i + 1) / segments);
+            tasks.add(pool.submit(new SegmentMatcher(input, start, end, parallelSplitPoints, options)));
+        }
+        // Retain all of the results, as any of them might be used
+        MemoTable memoTable = new MemoTable(length, Integer.MAX_VALUE, memoizationWindow);
+        for (ForkJoinTask<MemoTable> task : tasks) {
+            MemoTable segmentTable = task.join();
+            memoizationStatistics.add(segmentTable);
+            memoTable.merge(segmentTable, contextDependentSlots);
         }
+        return memoTable;
+    }
+
+    /**
+     * Parses the given input using the buffers of the given context, counting the steps taken against the given budget. The budget and context may
+     * already have been used by another engine.
+     */
+    public <T extends TokenVisitor<Expression>> T parse(CharSequence input, ParseBudget budget, ParseContext context, T visitor) {
+        optimize();
+        parse(input, new MemoTable(input.length(), memoizationMaxEntries, memoizationWindow), budget, context.getTokenArena(), recognizeFirst, visitor);
         return visitor;
     }
 
-    private void appendHighlight(StreamPos pos, StringBuilder builder) {
-        builder.append('\n');
-        builder.append(pos.getCurrentLine());
-        builder.append('\n');
-        for (int i = 1; i < pos.getColumn(); i++) {
-            builder.append(' ');
+    /**
+     * Parses input that another engine has found does not match, to report the failure. The budget may already have been used by the other
+     * engine.
+     */
+    public void parseFailure(CharSequence input, ParseBudget budget, ParseContext context, TokenVisitor<Expression> visitor) {
+        optimize();
+        ParseTrace.secondPass(visitor);
+        parse(input, new MemoTable(input.length(), memoizationMaxEntries, memoizationWindow), budget, context.getTokenArena(), false, visitor);
+    }
+
+    @Override
+    public ParseResult parseIncrementally(CharSequence input, TokenVisitor<Expression> visitor) {
+        return parseIncrementally(input, new ParseOptions(), visitor);
+    }
+
+    @Override
+    public ParseResult parseIncrementally(CharSequence input, ParseOptions options, TokenVisitor<Expression> visitor) {
+        optimize();
+        String text = input.toString();
+        // Retain all of the results, as any of them might be reused
+        MemoTable memoTable = new MemoTable(text.length(), Integer.MAX_VALUE, memoizationWindow);
+        parse(text, memoTable, new ParseBudget(options), new TokenArena(), false, visitor);
+        return new DefaultParseResult(this, text, memoTable);
+    }
+
+    @Override
+    public ParseResult reparse(ParseResult previous, int offset, int removed, CharSequence inserted, TokenVisitor<Expression> visitor) {
+        return reparse(previous, offset, removed, inserted, new ParseOptions(), visitor);
+    }
+
+    /**
+     * Parses the edited text using the memo table of the previous parse, from which the entries that examined the edited text have been removed.
+     * Matching continues to start from the root expression, but each memoized expression that does not overlap the edit is replayed from the
+     * table rather than matched.
+     *
+     * <p>When the parse is stopped by the options, the table still holds only complete results, so the returned result can be reparsed.</p>
+     */
+    @Override
+    public ParseResult reparse(ParseResult previous, int offset, int removed, CharSequence inserted, ParseOptions options, TokenVisitor<Expression> visitor) {
+        if (!(previous instanceof DefaultParseResult) || ((DefaultParseResult) previous).getParser() != this) {
+            throw new IllegalArgumentException("The result was not produced by this parser.");
+        }
+        String text = previous.getText();
+        if (offset < 0 || removed < 0 || offset > text.length() - removed) {
+            throw new IllegalArgumentException("The edit is outside of the text.");
         }
-        builder.append('^');
+        optimize();
+        MemoTable memoTable = ((DefaultParseResult) previous).takeMemoTable();
+        String newText = new StringBuilder(text.length() - removed + inserted.length()).append(text, 0, offset).append(inserted).append(text, offset + removed, text.length()).toString();
+        memoTable.edit(offset, removed, inserted.length(), contextDependentSlots);
+        parse(newText, memoTable, new ParseBudget(options), new TokenArena(), false, visitor);
+        return new DefaultParseResult(this, newText, memoTable);
+    }
+
+    /**
+     * Parses the given input, caching results in the given memo table.
+     *
+     * @param recognize true to first match the input without tracking failures, and to match it again using a new memo table only when it does
+     * not match. The results cached while recognizing do not track failures, so this must be false when the memo table is kept to be reused.
+     */
+    private void parse(CharSequence input, MemoTable memoTable, ParseBudget budget, TokenArena arena, boolean recognize, TokenVisitor<Expression> visitor) {
+        ParseTrace trace = ParseTrace.start(visitor, listeners, Engine.Interpreter, input.length());
+        if (trace != null) {
+            parse(input, memoTable, budget, arena, recognize, trace);
+            trace.finish(input.length());
+            return;
+        }
+        // Sampled parses record where each rule failed, so always track failures
+        if (recognize && !ParseTrace.isRuleSampled(visitor)) {
+            if (recognize(input, memoTable, budget, arena, visitor)) {
+                return;
+            }
+            // The input does not match, so match it again to report the failure, continuing with the same budget
+            ParseTrace.secondPass(visitor);
+            arena.clear();
+            memoTable = new MemoTable(input.length(), memoizationMaxEntries, memoizationWindow);
+        }
+        MatchExpression root = ParseTrace.isRuleSampled(visitor) ? getSampledRootExpression() : rootExpression;
+        TokenCollector resultCollector = collector(visitor);
+        CharStream stream = new CharStream(input, memoTable, arena, budget);
+        RootExpressionVisitor resultVisitor = new RootExpressionVisitor(stream.getTokenArena());
+        boolean match;
+        try {
+            match = root.getMatcher().consume(stream, resultVisitor);
+        } catch (ParseAbortedException e) {
+            memoizationStatistics.add(memoTable);
+            ParseTrace.bufferedTokens(visitor, arena.getPeakSize());
+            aborted(e, input, visitor);
+            return;
+        }
+        memoizationStatistics.add(memoTable);
+        ParseTrace.bufferedTokens(visitor, arena.getPeakSize());
+        resultVisitor.commitPartialMatches();
+        stream.getTokenArena().pushTo(resultVisitor.getMatches(), input, resultCollector);
+        // Did not recognize or did not match up to the end of input
+        if (!match || resultVisitor.getMatchEnd() != input.length()) {
+            failed(resultVisitor, 0, input, 0, visitor);
+        }
+    }
+
+    /**
+     * Matches the given input without tracking failures, and forwards the tokens to the visitor when the whole input matches.
+     *
+     * @return true when the parse has finished, or false when the input does not match and nothing has been forwarded to the visitor.
+     */
+    private boolean recognize(CharSequence input, MemoTable memoTable, ParseBudget budget, TokenArena arena, TokenVisitor<Expression> visitor) {
+        arena.setRecognizing(true);
+        CharStream stream = new CharStream(input, memoTable, arena, budget);
+        RootExpressionVisitor resultVisitor = new RootExpressionVisitor(arena);
+        boolean match;
+        try {
+            match = rootExpression.getMatcher().consume(stream, resultVisitor);
+        } catch (ParseAbortedException e) {
+            memoizationStatistics.add(memoTable);
+            ParseTrace.bufferedTokens(visitor, arena.getPeakSize());
+            aborted(e, input, visitor);
+            return true;
+        } finally {
+            arena.setRecognizing(false);
+        }
+        memoizationStatistics.add(memoTable);
+        ParseTrace.bufferedTokens(visitor, arena.getPeakSize());
+        if (!match || resultVisitor.getMatchEnd() != input.length()) {
+            return false;
+        }
+        arena.pushTo(resultVisitor.getMatches(), input, collector(visitor));
+        return true;
+    }
+
+    private static TokenCollector collector(final TokenVisitor<Expression> visitor) {
+        return new TokenCollector() {
+            @Override
+            public void token(MatchResult token) {
+                visitor.token(token.getExpression(), token);
+            }
+        };
+    }
+
+    /**
+     * Reports a failure to the visitor. The input is some part of the whole input that starts at the start of a line. The message is formatted
+     * only if the visitor asks for it.
+     *
+     * @param lines The number of lines before the start of the input.
+     * @param offset The offset of the input from the start of the whole input.
+     */
+    private void failed(AbstractMatchVisitor resultVisitor, int lines, CharSequence input, int offset, TokenVisitor<Expression> visitor) {
+        DefaultParseFailure failure = DefaultParseFailure.failed(input, lines, offset, resultVisitor.getStoppedAt(), resultVisitor.getExpected().toSet());
+        DefaultParseFailure.report(failure, visitor);
+    }
+
+    /**
+     * Reports a parse that was stopped because it exceeded its budget. No tokens have been forwarded, so the remainder is the whole input.
+     */
+    public void aborted(ParseAbortedException failure, CharSequence input, TokenVisitor<Expression> visitor) {
+        int pos = failure.getOffset();
+        ParseTrace.stopped(visitor, pos);
+        DefaultParseFailure.report(DefaultParseFailure.stopped(input, pos, failure.getReason(), failure.getMessage()), visitor);
     }
 
     private static class RootExpressionVisitor extends AbstractMatchVisitor {
-        private final TokenCollector resultCollector;
+        RootExpressionVisitor(TokenArena arena) {
+            super(arena);
+        }
 
-        RootExpressionVisitor(TokenCollector resultCollector) {
-            this.resultCollector = resultCollector;
+        /**
+         * Moves the positions of this visitor back by the given number of characters. Can only be used when there are no committed or pending matches.
+         */
+        void rebase(int count) {
+            restore(getMatchEnd() - count, getStoppedAt() - count, TokenArena.EMPTY, TokenArena.EMPTY, false);
+        }
+    }
+
+    private static class DefaultMemoizationStatistics implements MemoizationStatistics {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        void add(MemoTable memoTable) {
+            if (memoTable.getHits() > 0) {
+                hits.addAndGet(memoTable.getHits());
+            }
+            if (memoTable.getMisses() > 0) {
+                misses.addAndGet(memoTable.getMisses());
+            }
+            if (memoTable.getEvictions() > 0) {
+                evictions.addAndGet(memoTable.getEvictions());
+            }
+        }
+
+        @Override
+        public long getHits() {
+            return hits.get();
+        }
+
+        @Override
+        public long getMisses() {
+            return misses.get();
         }
 
         @Override
-        protected void commit(TokenSource result) {
-            result.pushMatches(resultCollector);
+        public long getEvictions() {
+            return evictions.get();
         }
     }
 }
@@ -1,28 +1,48 @@
 package net.rubygrapefruit.parser.peg.internal;
 
 import net.rubygrapefruit.parser.peg.Region;
-import net.rubygrapefruit.parser.peg.internal.stream.StreamPos;
+import net.rubygrapefruit.parser.peg.internal.stream.CharSequences;
 
 public class DefaultRegion implements Region {
-    final StreamPos start;
-    final StreamPos end;
+    final CharSequence input;
+    final int offset;
+    final int start;
+    final int end;
 
-    protected DefaultRegion(StreamPos start, StreamPos end) {
+    public DefaultRegion(CharSequence input, int start, int end) {
+        this(input, 0, start, end);
+    }
+
+    /**
+     * Creates a region of some part of the input.
+     *
+     * @param input The text of the part of the input.
+     * @param offset The offset of the part of the input from the start of the input.
+     */
+    public DefaultRegion(CharSequence input, int offset, int start, int end) {
+        this.input = input;
+        this.offset = offset;
         this.start = start;
         this.end = end;
     }
 
-    public StreamPos getStart() {
+    /**
+     * Returns the offset of the start of this region, base 0.
+     */
+    public int getStart() {
         return start;
     }
 
-    public StreamPos getEnd() {
+    /**
+     * Returns the offset of the end of this region (exclusive), base 0.
+     */
+    public int getEnd() {
         return end;
     }
 
     @Override
     public String getText() {
-        return start.upTo(end);
+        return CharSequences.substring(input, start - offset, end - offset);
     }
 
     @Override
@@ -0,0 +1,37 @@
+package net.rubygrapefruit.parser.peg.internal;
+
+import net.rubygrapefruit.parser.peg.internal.match.TokenArena;
+import net.rubygrapefruit.parser.peg.internal.match.TokenBuffer;
+
+/**
+ * Holds the buffers used by a parse, so that they can be reused by a sequence of parses done by a single thread rather than allocated and grown
+ * for each parse. The buffers are cleared when they are reused, so the context must not be used by more than one parse at a time.
+ */
+public class ParseContext {
+    private TokenArena tokenArena;
+    private TokenBuffer tokenBuffer;
+
+    /**
+     * Returns an empty token arena.
+     */
+    public TokenArena getTokenArena() {
+        if (tokenArena == null) {
+            tokenArena = new TokenArena();
+        } else {
+            tokenArena.clear();
+        }
+        return tokenArena;
+    }
+
+    /**
+     * Returns an empty token buffer.
+     */
+    public TokenBuffer getTokenBuffer() {
+        if (tokenBuffer == null) {
+            tokenBuffer = new TokenBuffer();
+        } else {
+            tokenBuffer.clear();
+        }
+        return tokenBuffer;
+    }
+}
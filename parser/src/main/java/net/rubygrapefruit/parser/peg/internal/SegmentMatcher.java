@@ -0,0 +1,104 @@
+package net.rubygrapefruit.parser.peg.internal;
+
+import net.rubygrapefruit.parser.peg.ParseOptions;
+import net.rubygrapefruit.parser.peg.internal.match.BatchingMatchVisitor;
+import net.rubygrapefruit.parser.peg.internal.match.MatchExpression;
+import net.rubygrapefruit.parser.peg.internal.match.TokenArena;
+import net.rubygrapefruit.parser.peg.internal.stream.CharSequences;
+import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
+import net.rubygrapefruit.parser.peg.internal.stream.MemoTable;
+import net.rubygrapefruit.parser.peg.internal.stream.ParseAbortedException;
+import net.rubygrapefruit.parser.peg.internal.stream.ParseBudget;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Matches the split point expressions against a segment of the input, collecting the results in a memo table so that they can be reused by a
+ * parse of the whole input. The split points are matched at the first character that is not a space or tab of each line that starts in the
+ * segment and that is not part of an earlier match, and the first match that consumes some input is used.
+ *
+ * <p>The results are speculative, as the parse of the whole input might never attempt a split point at these positions. Only the results of
+ * memoized expressions are retained, and these are the same regardless of where matching started, so they are safe to reuse.</p>
+ */
+class SegmentMatcher implements Callable<MemoTable> {
+    private final CharSequence input;
+    private final int start;
+    private final int end;
+    private final List<MatchExpression> splitPoints;
+    private final ParseOptions options;
+
+    /**
+     * @param start The start of the segment.
+     * @param end The end of the segment, exclusive. Matches that start in the segment may continue past this.
+     */
+    SegmentMatcher(CharSequence input, int start, int end, List<MatchExpression> splitPoints, ParseOptions options) {
+        this.input = input;
+        this.start = start;
+        this.end = end;
+        this.splitPoints = splitPoints;
+        this.options = options;
+    }
+
+    @Override
+    public MemoTable call() {
+        // Hold the results for matches that continue into the next segment, but not for the whole input
+        MemoTable memoTable = new MemoTable(start, Math.min(input.length(), end + (end - start)), Integer.MAX_VALUE, 0);
+        TokenArena arena = new TokenArena();
+        CharStream stream = new CharStream(input, memoTable, arena, new ParseBudget(options));
+        int matchedTo = start;
+        int lineStart = start == 0 ? 0 : CharSequences.indexOf(input, '\n', start - 1) + 1;
+        if (lineStart == 0 && start > 0) {
+            // No line starts after the start of the segment
+            return memoTable;
+        }
+        try {
+            while (lineStart < end) {
+                int pos = skipIndent(lineStart);
+                if (pos >= matchedTo) {
+                    matchedTo = Math.max(matchedTo, match(stream, arena, pos));
+                }
+                int next = CharSequences.indexOf(input, '\n', Math.max(pos, matchedTo - 1));
+                if (next < 0) {
+                    break;
+                }
+                lineStart = next + 1;
+            }
+        } catch (ParseAbortedException e) {
+            // Keep the results collected so far, the parse of the whole input reports the failure
+        }
+        return memoTable;
+    }
+
+    private int skipIndent(int pos) {
+        int length = input.length();
+        while (pos < length && (input.charAt(pos) == ' ' || input.charAt(pos) == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Matches the split points at the given position.
+     *
+     * @return The end of the first match that consumes some input, or the given position when there is no such match.
+     */
+    private int match(CharStream stream, TokenArena arena, int pos) {
+        int mark = arena.mark();
+        try {
+            for (MatchExpression splitPoint : splitPoints) {
+                stream.moveTo(pos);
+                BatchingMatchVisitor visitor = arena.newVisitor();
+                boolean matched = splitPoint.getMatcher().consume(stream, visitor);
+                arena.release(visitor);
+                if (matched && stream.getOffset() > pos) {
+                    return stream.getOffset();
+                }
+            }
+            return pos;
+        } finally {
+            // The tokens are not required, only the memoized results
+            arena.truncate(mark);
+        }
+    }
+}
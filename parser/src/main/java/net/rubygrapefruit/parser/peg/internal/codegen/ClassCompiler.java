@@ -0,0 +1,101 @@
+package net.rubygrapefruit.parser.peg.internal.codegen;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.*;
+
+/**
+ * Compiles generated source in memory and loads the result using a class loader of its own, so that the class can be garbage collected along with
+ * the parser that uses it.
+ */
+public class ClassCompiler {
+    /**
+     * Compiles the given source and loads the class with the given name, which is either the class of the source or one of its nested classes.
+     *
+     * @throws GenerationFailedException when no compiler is available or the source cannot be compiled.
+     */
+    public Class<?> compile(GeneratedSource source, String className) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new GenerationFailedException("No Java compiler is available.");
+        }
+
+        final Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+        final String text = source.getSource();
+        JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("mem:///" + source.getClassName().replace('.', '/') + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return text;
+            }
+        };
+
+        StringWriter diagnostics = new StringWriter();
+        List<String> options = Arrays.asList("-classpath", classPath(), "-proc:none", "-nowarn", "-g:source,lines");
+        Boolean success;
+        try (StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(null, null, null)) {
+            JavaFileManager fileManager = new ForwardingJavaFileManager<StandardJavaFileManager>(standardFileManager) {
+                @Override
+                public JavaFileObject getJavaFileForOutput(Location location, final String className, JavaFileObject.Kind kind, FileObject sibling) {
+                    return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                        @Override
+                        public OutputStream openOutputStream() {
+                            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                            classes.put(className, outputStream);
+                            return outputStream;
+                        }
+                    };
+                }
+            };
+            success = compiler.getTask(diagnostics, fileManager, null, options, null, Collections.singletonList(sourceFile)).call();
+        } catch (IOException e) {
+            throw new GenerationFailedException("Could not compile generated class " + source.getClassName() + ".", e);
+        }
+        if (!success) {
+            throw new GenerationFailedException("Could not compile generated class " + source.getClassName() + ": " + diagnostics);
+        }
+
+        final Map<String, byte[]> bytes = new HashMap<>();
+        for (Map.Entry<String, ByteArrayOutputStream> entry : classes.entrySet()) {
+            bytes.put(entry.getKey(), entry.getValue().toByteArray());
+        }
+        ClassLoader classLoader = new ClassLoader(GeneratedMatcher.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] content = bytes.get(name);
+                if (content == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return defineClass(name, content, 0, content.length);
+            }
+        };
+        try {
+            return classLoader.loadClass(className);
+        } catch (ClassNotFoundException e) {
+            throw new GenerationFailedException("Could not load generated class " + className + ".", e);
+        }
+    }
+
+    private String classPath() {
+        // The generated class needs to see the parser classes, which may not be on the system class path
+        StringBuilder classPath = new StringBuilder(System.getProperty("java.class.path", ""));
+        CodeSource codeSource = GeneratedMatcher.class.getProtectionDomain().getCodeSource();
+        if (codeSource != null) {
+            URL location = codeSource.getLocation();
+            if (location != null && "file".equals(location.getProtocol())) {
+                try {
+                    classPath.append(File.pathSeparator).append(new File(location.toURI()).getPath());
+                } catch (Exception e) {
+                    // Ignore, use the system class path only
+                }
+            }
+        }
+        return classPath.toString();
+    }
+}
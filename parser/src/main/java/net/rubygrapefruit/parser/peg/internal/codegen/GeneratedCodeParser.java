@@ -0,0 +1,83 @@
+package net.rubygrapefruit.parser.peg.internal.codegen;
+
+import net.rubygrapefruit.parser.peg.Engine;
+import net.rubygrapefruit.parser.peg.internal.AbstractEngineParser;
+import net.rubygrapefruit.parser.peg.internal.DefaultParser;
+import net.rubygrapefruit.parser.peg.internal.match.MatchExpression;
+import net.rubygrapefruit.parser.peg.internal.match.TokenBuffer;
+import net.rubygrapefruit.parser.peg.internal.stream.ParseBudget;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a matcher class for an expression and uses it to parse input. See {@link AbstractEngineParser} for how the fallback parser is used.
+ * When the class cannot be generated, every parse uses the fallback parser instead, and is reported using
+ * {@link net.rubygrapefruit.parser.peg.ParseStatistics#isFallback()}.
+ *
+ * <p>The class is generated on first use, so that reference expressions can be set up after the parser has been created.</p>
+ */
+public class GeneratedCodeParser extends AbstractEngineParser {
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+    private final MatchExpression rootExpression;
+    // Set once the class has been generated, or generation has failed. The other fields are written before this is set
+    private volatile boolean generated;
+    private GeneratedMatcher.Factory factory;
+    private GeneratedSource source;
+    private GenerationFailedException failure;
+
+    public GeneratedCodeParser(MatchExpression rootExpression, DefaultParser fallback) {
+        super(Engine.GeneratedCode, fallback);
+        this.rootExpression = rootExpression;
+    }
+
+    /**
+     * Returns true if a matcher class could be generated for the expression.
+     */
+    public boolean isGenerated() {
+        return getFactory() != null;
+    }
+
+    /**
+     * Returns the reason a matcher class could not be generated for the expression, or null if it was generated.
+     */
+    public GenerationFailedException getGenerationFailure() {
+        getFactory();
+        return failure;
+    }
+
+    private GeneratedMatcher.Factory getFactory() {
+        // Only lock while the class is generated, so that concurrent parses do not contend once it has been generated
+        if (generated) {
+            return factory;
+        }
+        synchronized (this) {
+            if (!generated) {
+                String className = "Matcher" + COUNTER.incrementAndGet();
+                try {
+                    source = new SourceGenerator().generate(GeneratedMatcher.class.getPackage().getName(), className, rootExpression);
+                    // Use reflection once to create the factory, which then creates the matcher for each parse
+                    Class<?> factoryClass = new ClassCompiler().compile(source, source.getFactoryClassName());
+                    factory = factoryClass.asSubclass(GeneratedMatcher.Factory.class).getConstructor().newInstance();
+                } catch (GenerationFailedException e) {
+                    // Use the fallback parser instead, and keep the reason so that it can be reported
+                    failure = e;
+                } catch (ReflectiveOperationException e) {
+                    failure = new GenerationFailedException("Could not create the factory of generated class " + className + ".", e);
+                }
+                generated = true;
+            }
+            return factory;
+        }
+    }
+
+    @Override
+    protected boolean isAvailable() {
+        return isGenerated();
+    }
+
+    @Override
+    protected boolean match(CharSequence input, ParseBudget budget, TokenBuffer tokens) {
+        GeneratedMatcher matcher = getFactory().create(input, source.getConstants(), source.getRegisters(), budget, tokens);
+        return matcher.match() == input.length();
+    }
+}
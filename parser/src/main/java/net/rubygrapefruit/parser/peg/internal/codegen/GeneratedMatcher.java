@@ -0,0 +1,185 @@
+package net.rubygrapefruit.parser.peg.internal.codegen;
+
+import net.rubygrapefruit.parser.peg.Expression;
+import net.rubygrapefruit.parser.peg.internal.expression.CharSequenceExpression;
+import net.rubygrapefruit.parser.peg.internal.expression.LiteralChoiceExpression;
+import net.rubygrapefruit.parser.peg.internal.expression.SingleCharExpression;
+import net.rubygrapefruit.parser.peg.internal.match.TokenBuffer;
+import net.rubygrapefruit.parser.peg.internal.stream.CharSequences;
+import net.rubygrapefruit.parser.peg.internal.stream.ParseBudget;
+
+/**
+ * The base class for matchers generated by {@link SourceGenerator}. An instance is used for a single parse.
+ *
+ * <p>Generated matchers are loaded by their own class loader, so the members used by the generated code must be public or protected.</p>
+ */
+public abstract class GeneratedMatcher {
+    protected final CharSequence input;
+    protected final int length;
+    protected final Object[] constants;
+    protected final CharSequenceExpression[] registers;
+    protected final TokenBuffer tokens;
+    private final ParseBudget budget;
+    private int countdown;
+
+    protected GeneratedMatcher(CharSequence input, Object[] constants, int registers, ParseBudget budget, TokenBuffer tokens) {
+        this.input = input;
+        this.length = input.length();
+        this.constants = constants;
+        this.registers = new CharSequenceExpression[registers];
+        this.budget = budget;
+        this.tokens = tokens;
+        this.countdown = budget.start();
+    }
+
+    /**
+     * Creates the matchers of a generated class. Each generated class has a nested factory, so that a matcher can be created for each parse without
+     * using reflection.
+     */
+    public interface Factory {
+        GeneratedMatcher create(CharSequence input, Object[] constants, int registers, ParseBudget budget, TokenBuffer tokens);
+    }
+
+    /**
+     * Matches the root expression against the start of the input.
+     *
+     * @return The offset of the end of the match, or -1 when not matched.
+     */
+    public abstract int match();
+
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Counts a step at the given offset, such as an alternative or a loop iteration.
+     */
+    protected final void step(int pos) {
+        if (--countdown <= 0) {
+            countdown = budget.check(countdown, pos, tokens.size());
+        }
+    }
+
+    /**
+     * Counts the given number of steps at the given offset, such as for a run of characters.
+     */
+    protected final void step(int count, int pos) {
+        countdown -= count;
+        if (countdown <= 0) {
+            countdown = budget.check(countdown, pos, tokens.size());
+        }
+    }
+
+    /**
+     * Matches the text collected for the given back reference register at the given offset.
+     *
+     * @return The offset of the end of the match, or -1 when not matched.
+     */
+    protected int matchRegister(int register, int pos, boolean emit) {
+        CharSequenceExpression value = registers[register];
+        if (value == null || !startsWith(value.getChars(), pos)) {
+            return -1;
+        }
+        int end = pos + value.getChars().length();
+        if (emit) {
+            tokens.add(value, pos, end);
+        }
+        return end;
+    }
+
+    /**
+     * Matches a character of the given single character expression at the given offset.
+     *
+     * @return The offset of the end of the match, or -1 when not matched.
+     */
+    protected int matchChar(int expression, int pos, boolean emit) {
+        if (pos >= length) {
+            return -1;
+        }
+        Expression type = ((SingleCharExpression) constants[expression]).getTokenType(input.charAt(pos));
+        if (type == null) {
+            return -1;
+        }
+        if (emit) {
+            tokens.add(type, pos, pos + 1);
+        }
+        return pos + 1;
+    }
+
+    /**
+     * Matches zero or more characters of the given single character expression at the given offset.
+     *
+     * @return The offset of the end of the match.
+     */
+    protected int matchCharRun(int expression, int pos, boolean emit) {
+        SingleCharExpression charExpression = (SingleCharExpression) constants[expression];
+        int start = pos;
+        while (pos < length) {
+            Expression type = charExpression.getTokenType(input.charAt(pos));
+            if (type == null) {
+                break;
+            }
+            if (emit) {
+                tokens.add(type, pos, pos + 1);
+            }
+            pos++;
+        }
+        step(pos - start, pos);
+        return pos;
+    }
+
+    /**
+     * Matches one of the literals of the given literal choice expression at the given offset.
+     *
+     * @return The offset of the end of the match, or -1 when not matched.
+     */
+    protected int matchLiterals(int expression, int pos, boolean emit) {
+        CharSequenceExpression literal = ((LiteralChoiceExpression) constants[expression]).match(input, pos);
+        if (literal == null) {
+            return -1;
+        }
+        int end = pos + literal.getChars().length();
+        if (emit) {
+            tokens.add(literal, pos, end);
+        }
+        return end;
+    }
+
+    /**
+     * Matches characters up to the next occurrence of the given string constant, or the end of input.
+     *
+     * @param type The token type to emit for each character, or -1 to not emit tokens.
+     * @return The offset of the end of the match.
+     */
+    protected int scanUntil(int terminator, int type, int pos) {
+        int end = CharSequences.indexOf(input, (String) constants[terminator], pos);
+        if (end < 0) {
+            end = length;
+        }
+        step(end - pos, end);
+        if (type >= 0) {
+            for (; pos < end; pos++) {
+                token(type, pos, pos + 1);
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Collects the given text into the given back reference register.
+     */
+    protected void collect(int register, int start, int end) {
+        registers[register] = CharSequenceExpression.value(CharSequences.substring(input, start, end));
+    }
+
+    /**
+     * Does the input contain the given string at the given offset?
+     */
+    protected boolean startsWith(String str, int pos) {
+        return CharSequences.startsWith(input, str, pos);
+    }
+
+    protected void token(int type, int start, int end) {
+        tokens.add((Expression) constants[type], start, end);
+    }
+}
@@ -0,0 +1,41 @@
+package net.rubygrapefruit.parser.peg.internal.codegen;
+
+/**
+ * The source of a generated matcher class, plus the values it needs to be instantiated.
+ */
+public class GeneratedSource {
+    private final String className;
+    private final String source;
+    private final Object[] constants;
+    private final int registers;
+
+    GeneratedSource(String className, String source, Object[] constants, int registers) {
+        this.className = className;
+        this.source = source;
+        this.constants = constants;
+        this.registers = registers;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Returns the name of the nested class that implements {@link GeneratedMatcher.Factory}.
+     */
+    public String getFactoryClassName() {
+        return className + "$Factory";
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public Object[] getConstants() {
+        return constants;
+    }
+
+    public int getRegisters() {
+        return registers;
+    }
+}
@@ -0,0 +1,16 @@
+package net.rubygrapefruit.parser.peg.internal.codegen;
+
+/**
+ * Thrown when a matcher class cannot be generated for some expression.
+ */
+public class GenerationFailedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public GenerationFailedException(String message) {
+        super(message);
+    }
+
+    public GenerationFailedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,325 @@
+package net.rubygrapefruit.parser.peg.internal.codegen;
+
+import net.rubygrapefruit.parser.peg.internal.expression.*;
+import net.rubygrapefruit.parser.peg.internal.match.MatchExpression;
+import net.rubygrapefruit.parser.peg.internal.match.TokenBuffer;
+import net.rubygrapefruit.parser.peg.internal.stream.ParseBudget;
+
+import java.util.*;
+
+/**
+ * Generates the Java source for a subclass of {@link GeneratedMatcher} that matches a graph of expressions.
+ *
+ * <p>Each rule of the {@link ExpressionGraph} is generated as a method, in up to two forms: one that emits tokens and one for use inside a group,
+ * which does not. Everything else is generated inline, with literals expanded into character comparisons. The generated code tracks the current
+ * offset in a local variable {@code p}, which is set to -1 when an expression does not match. A step is counted against the budget of the parse
+ * for each alternative, optional expression, predicate and loop iteration.</p>
+ */
+public class SourceGenerator {
+    private static final int MAX_INLINE_LITERAL = 16;
+
+    private final Map<Rule, String> methods = new HashMap<>();
+    private final Deque<Rule> pending = new ArrayDeque<>();
+    private final Map<Object, Integer> constantIndexes = new IdentityHashMap<>();
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<DefaultBackReference, Integer> registers = new IdentityHashMap<>();
+    private final StringBuilder source = new StringBuilder();
+    private ExpressionGraph graph;
+    private int indent;
+    private int nextVar;
+
+    /**
+     * Generates a class with the given name for the given expression.
+     */
+    public GeneratedSource generate(String packageName, String className, MatchExpression rootExpression) {
+        graph = new ExpressionGraph(rootExpression);
+
+        line("package " + packageName + ";");
+        line("");
+        line("public final class " + className + " extends " + GeneratedMatcher.class.getName() + " {");
+        indent++;
+        line("public " + className + "(CharSequence input, Object[] constants, int registers, " + ParseBudget.class.getName() + " budget, " + TokenBuffer.class.getName() + " tokens) {");
+        line("    super(input, constants, registers, budget, tokens);");
+        line("}");
+        line("");
+        line("public static final class Factory implements " + GeneratedMatcher.Factory.class.getCanonicalName() + " {");
+        line("    @Override");
+        line("    public " + GeneratedMatcher.class.getName() + " create(CharSequence input, Object[] constants, int registers, " + ParseBudget.class.getName() + " budget, " + TokenBuffer.class.getName() + " tokens) {");
+        line("        return new " + className + "(input, constants, registers, budget, tokens);");
+        line("    }");
+        line("}");
+        line("");
+        line("@Override");
+        line("public int match() {");
+        indent++;
+        line("int p = 0;");
+        compile(rootExpression, true);
+        line("return p;");
+        indent--;
+        line("}");
+        while (!pending.isEmpty()) {
+            Rule rule = pending.removeFirst();
+            line("");
+            line("private int " + methods.get(rule) + "(int p) {");
+            indent++;
+            inline(rule.expression, rule.emit);
+            line("return p;");
+            indent--;
+            line("}");
+        }
+        indent--;
+        line("}");
+
+        return new GeneratedSource(packageName + "." + className, source.toString(), constants.toArray(), registers.size());
+    }
+
+    private void compile(MatchExpression expression, boolean emit) {
+        MatchExpression target = graph.resolve(expression);
+        if (graph.isRule(target)) {
+            Rule rule = new Rule(target, emit);
+            String method = methods.get(rule);
+            if (method == null) {
+                method = "rule" + methods.size();
+                methods.put(rule, method);
+                pending.add(rule);
+            }
+            line("p = " + method + "(p);");
+        } else {
+            inline(target, emit);
+        }
+    }
+
+    private void inline(MatchExpression expression, boolean emit) {
+        if (expression instanceof CharSequenceExpression) {
+            String chars = ((CharSequenceExpression) expression).getChars();
+            line("if (" + literalCondition(chars) + ") {");
+            if (emit) {
+                line("    token(" + constant(expression) + ", p, p + " + chars.length() + ");");
+            }
+            line("    p += " + chars.length() + ";");
+            line("} else {");
+            line("    p = -1;");
+            line("}");
+        } else if (expression instanceof LetterExpression) {
+            singleChar("p < length && Character.isAlphabetic(input.charAt(p))", expression, emit);
+        } else if (expression instanceof AnythingExpression) {
+            singleChar("p < length", expression, emit);
+        } else if (expression instanceof SingleCharExpression) {
+            line("p = matchChar(" + constant(expression) + ", p, " + emit + ");");
+        } else if (expression instanceof LiteralChoiceExpression) {
+            line("p = matchLiterals(" + constant(expression) + ", p, " + emit + ");");
+        } else if (expression instanceof SequenceExpression) {
+            List<? extends MatchExpression> expressions = ((SequenceExpression) expression).getExpressions();
+            String label = "seq" + nextVar++;
+            line(label + ": {");
+            indent++;
+            for (int i = 0; i < expressions.size(); i++) {
+                if (i > 0) {
+                    line("if (p < 0) break " + label + ";");
+                }
+                compile(expressions.get(i), emit);
+            }
+            indent--;
+            line("}");
+        } else if (expression instanceof OneOfExpression) {
+            List<? extends MatchExpression> alternatives = ((OneOfExpression) expression).getExpressions();
+            int var = nextVar++;
+            line("alt" + var + ": {");
+            indent++;
+            line("final int s" + var + " = p;");
+            line("final int t" + var + " = tokens.size();");
+            for (int i = 0; i < alternatives.size(); i++) {
+                if (i > 0) {
+                    line("if (p >= 0) break alt" + var + ";");
+                    line("p = s" + var + ";");
+                    line("tokens.truncate(t" + var + ");");
+                }
+                line("step(p);");
+                compile(alternatives.get(i), emit);
+            }
+            indent--;
+            line("}");
+        } else if (expression instanceof OptionalExpression) {
+            int var = nextVar++;
+            line("{");
+            indent++;
+            line("step(p);");
+            line("final int s" + var + " = p;");
+            line("final int t" + var + " = tokens.size();");
+            compile(((OptionalExpression) expression).getExpression(), emit);
+            line("if (p < 0) {");
+            line("    p = s" + var + ";");
+            line("    tokens.truncate(t" + var + ");");
+            line("}");
+            indent--;
+            line("}");
+        } else if (expression instanceof ZeroOrMoreExpression) {
+            ScanUntilMatcher scan = ScanUntilMatcher.of((ZeroOrMoreExpression) expression, graph);
+            if (scan != null) {
+                line("p = scanUntil(" + constant(scan.getTerminator().getChars()) + ", " + (emit ? constant(scan.getAnything()) : -1) + ", p);");
+            } else {
+                zeroOrMore(((ZeroOrMoreExpression) expression).getExpression(), emit);
+            }
+        } else if (expression instanceof OneOrMoreExpression) {
+            MatchExpression child = ((OneOrMoreExpression) expression).getExpression();
+            String label = "seq" + nextVar++;
+            line(label + ": {");
+            indent++;
+            compile(child, emit);
+            line("if (p < 0) break " + label + ";");
+            zeroOrMore(child, emit);
+            indent--;
+            line("}");
+        } else if (expression instanceof NotPredicate) {
+            int var = nextVar++;
+            line("{");
+            indent++;
+            line("step(p);");
+            line("final int s" + var + " = p;");
+            line("final int t" + var + " = tokens.size();");
+            compile(((NotPredicate) expression).getExpression(), false);
+            line("p = p < 0 ? s" + var + " : -1;");
+            line("tokens.truncate(t" + var + ");");
+            indent--;
+            line("}");
+        } else if (expression instanceof GroupingExpression) {
+            MatchExpression child = ((GroupingExpression) expression).getExpression();
+            if (emit) {
+                int var = nextVar++;
+                line("{");
+                indent++;
+                line("final int s" + var + " = p;");
+                compile(child, false);
+                line("if (p > s" + var + ") {");
+                line("    token(" + constant(expression) + ", s" + var + ", p);");
+                line("}");
+                indent--;
+                line("}");
+            } else {
+                compile(child, false);
+            }
+        } else if (expression instanceof MemoizingExpression) {
+            compile(((MemoizingExpression) expression).getExpression(), emit);
+        } else if (expression instanceof DefaultBackReference.Collector) {
+            DefaultBackReference backReference = ((DefaultBackReference.Collector) expression).getBackReference();
+            int var = nextVar++;
+            line("{");
+            indent++;
+            line("final int s" + var + " = p;");
+            compile(backReference.getExpression(), emit);
+            line("if (p >= 0) {");
+            line("    collect(" + register(backReference) + ", s" + var + ", p);");
+            line("}");
+            indent--;
+            line("}");
+        } else if (expression instanceof DefaultBackReference.ValueExpression) {
+            DefaultBackReference backReference = ((DefaultBackReference.ValueExpression) expression).getBackReference();
+            line("p = matchRegister(" + register(backReference) + ", p, " + emit + ");");
+        } else {
+            throw new GenerationFailedException("Cannot generate code for expression " + expression + ".");
+        }
+    }
+
+    private void zeroOrMore(MatchExpression expression, boolean emit) {
+        MatchExpression target = graph.resolve(expression);
+        if (target instanceof SingleCharExpression) {
+            line("p = matchCharRun(" + constant(target) + ", p, " + emit + ");");
+            return;
+        }
+        int var = nextVar++;
+        line("while (true) {");
+        indent++;
+        line("step(p);");
+        line("final int s" + var + " = p;");
+        line("final int t" + var + " = tokens.size();");
+        compile(expression, emit);
+        line("if (p < 0) {");
+        line("    p = s" + var + ";");
+        line("    tokens.truncate(t" + var + ");");
+        line("    break;");
+        line("}");
+        indent--;
+        line("}");
+    }
+
+    private void singleChar(String condition, MatchExpression expression, boolean emit) {
+        line("if (" + condition + ") {");
+        if (emit) {
+            line("    token(" + constant(expression) + ", p, p + 1);");
+        }
+        line("    p++;");
+        line("} else {");
+        line("    p = -1;");
+        line("}");
+    }
+
+    private String literalCondition(String chars) {
+        if (chars.length() > MAX_INLINE_LITERAL) {
+            return "startsWith((String) constants[" + constant(chars) + "], p)";
+        }
+        StringBuilder condition = new StringBuilder();
+        condition.append("p + ").append(chars.length()).append(" <= length");
+        for (int i = 0; i < chars.length(); i++) {
+            condition.append(" && input.charAt(");
+            condition.append(i == 0 ? "p" : "p + " + i);
+            condition.append(") == ");
+            condition.append(charLiteral(chars.charAt(i)));
+        }
+        return condition.toString();
+    }
+
+    private String charLiteral(char ch) {
+        // Use the numeric value for anything that would need escaping, as unicode escapes are processed before the source is parsed
+        if (ch >= 32 && ch < 127 && ch != '\'' && ch != '\\') {
+            return "'" + ch + "'";
+        }
+        return Integer.toString(ch);
+    }
+
+    private int constant(Object value) {
+        Integer index = constantIndexes.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    private int register(DefaultBackReference backReference) {
+        Integer index = registers.get(backReference);
+        if (index == null) {
+            index = registers.size();
+            registers.put(backReference, index);
+        }
+        return index;
+    }
+
+    private void line(String text) {
+        for (int i = 0; i < indent; i++) {
+            source.append("    ");
+        }
+        source.append(text).append('\n');
+    }
+
+    private static class Rule {
+        final MatchExpression expression;
+        final boolean emit;
+
+        Rule(MatchExpression expression, boolean emit) {
+            this.expression = expression;
+            this.emit = emit;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            Rule other = (Rule) obj;
+            return expression == other.expression && emit == other.emit;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(expression) ^ (emit ? 1 : 0);
+        }
+    }
+}
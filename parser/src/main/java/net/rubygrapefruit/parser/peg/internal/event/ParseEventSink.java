@@ -0,0 +1,46 @@
+package net.rubygrapefruit.parser.peg.internal.event;
+
+import net.rubygrapefruit.parser.peg.Engine;
+
+/**
+ * Receives events for parses and for the rules matched by sampled parses, for example to record them using JDK Flight Recorder. An implementation is
+ * located using {@link java.util.ServiceLoader}, see {@link ParseEvents}.
+ *
+ * <p>The methods are called by any number of threads concurrently, and should return quickly when events are not being recorded.</p>
+ */
+public interface ParseEventSink {
+    /**
+     * Called when a parse starts. Returns an object that represents the event for the parse, which is passed to
+     * {@link #parseFinished(Object, Engine, int, int, boolean, int)} when the parse finishes, or null when parses are not being recorded.
+     */
+    Object parseStarted();
+
+    /**
+     * Called when a parse that is being recorded finishes.
+     *
+     * @param length The number of characters of input.
+     * @param tokens The number of tokens forwarded to the visitor.
+     * @param failed true when the input did not match, or when the parse was stopped.
+     * @param stoppedAt The offset where the parse stopped, which is the length of the input when the parse did not fail.
+     */
+    void parseFinished(Object event, Engine engine, int length, int tokens, boolean failed, int stoppedAt);
+
+    /**
+     * Called when a parse that is being recorded starts. Returns true when events should be recorded for each rule matched by the parse.
+     */
+    boolean isRuleSampled();
+
+    /**
+     * Called when a rule of a sampled parse is about to be matched. Returns an object that represents the event for the rule, which is passed to
+     * {@link #ruleFinished(Object, boolean, int, int)} when the rule has matched or failed, or null when rules are not being recorded.
+     */
+    Object ruleStarted(String rule);
+
+    /**
+     * Called when a rule of a sampled parse has matched or failed.
+     *
+     * @param start The offset where the rule started.
+     * @param end The offset where the match ended, or the farthest offset examined by a failure.
+     */
+    void ruleFinished(Object event, boolean matched, int start, int end);
+}
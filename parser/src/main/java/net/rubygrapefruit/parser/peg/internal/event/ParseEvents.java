@@ -0,0 +1,68 @@
+package net.rubygrapefruit.parser.peg.internal.event;
+
+import net.rubygrapefruit.parser.peg.Engine;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Holds the {@link ParseEventSink} that receives the events of all parsers. The sink is the first implementation located using
+ * {@link ServiceLoader}, such as the JDK Flight Recorder sink of the {@code jfr} project, or a sink that discards everything when there is no such
+ * implementation or it cannot be used by this JVM.
+ */
+public class ParseEvents {
+    private static volatile ParseEventSink sink = load();
+
+    public static ParseEventSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Replaces the sink, returning the previous sink.
+     */
+    public static ParseEventSink setSink(ParseEventSink sink) {
+        ParseEventSink previous = ParseEvents.sink;
+        ParseEvents.sink = sink == null ? NoOpSink.INSTANCE : sink;
+        return previous;
+    }
+
+    private static ParseEventSink load() {
+        try {
+            Iterator<ParseEventSink> sinks = ServiceLoader.load(ParseEventSink.class, ParseEvents.class.getClassLoader()).iterator();
+            if (sinks.hasNext()) {
+                return sinks.next();
+            }
+        } catch (ServiceConfigurationError | LinkageError e) {
+            // The sink cannot be used, for example because the JVM does not include JDK Flight Recorder
+        }
+        return NoOpSink.INSTANCE;
+    }
+
+    private static class NoOpSink implements ParseEventSink {
+        static final NoOpSink INSTANCE = new NoOpSink();
+
+        @Override
+        public Object parseStarted() {
+            return null;
+        }
+
+        @Override
+        public void parseFinished(Object event, Engine engine, int length, int tokens, boolean failed, int stoppedAt) {
+        }
+
+        @Override
+        public boolean isRuleSampled() {
+            return false;
+        }
+
+        @Override
+        public Object ruleStarted(String rule) {
+            return null;
+        }
+
+        @Override
+        public void ruleFinished(Object event, boolean matched, int start, int end) {
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package net.rubygrapefruit.parser.peg.internal.event;
+
+import net.rubygrapefruit.parser.peg.ParseListener;
+
+import java.util.Arrays;
+
+/**
+ * The listeners of a parser. The listeners are held in an array that is replaced when a listener is added or removed, so that a parse can read
+ * them without locking.
+ */
+public class ParseListeners {
+    private static final ParseListener[] EMPTY = new ParseListener[0];
+    private volatile ParseListener[] listeners = EMPTY;
+
+    public ParseListener[] get() {
+        return listeners;
+    }
+
+    public synchronized void add(ParseListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("The listener cannot be null.");
+        }
+        ParseListener[] result = Arrays.copyOf(listeners, listeners.length + 1);
+        result[listeners.length] = listener;
+        listeners = result;
+    }
+
+    public synchronized void remove(ParseListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                ParseListener[] result = new ParseListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, result, 0, i);
+                System.arraycopy(listeners, i + 1, result, i, result.length - i);
+                listeners = result;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package net.rubygrapefruit.parser.peg.internal.event;
+
+import net.rubygrapefruit.parser.peg.Engine;
+import net.rubygrapefruit.parser.peg.Expression;
+import net.rubygrapefruit.parser.peg.FailureVisitor;
+import net.rubygrapefruit.parser.peg.ParseFailure;
+import net.rubygrapefruit.parser.peg.ParseListener;
+import net.rubygrapefruit.parser.peg.ParseOutcome;
+import net.rubygrapefruit.parser.peg.ParseStatistics;
+import net.rubygrapefruit.parser.peg.Region;
+import net.rubygrapefruit.parser.peg.TokenVisitor;
+import net.rubygrapefruit.parser.peg.internal.DefaultParseFailure;
+
+/**
+ * Reports a parse to the listeners of the parser and to the {@link ParseEventSink}. Wraps the visitor of the parse, to count the tokens and to find
+ * how and where the parse stopped. A trace is only created when the parser has listeners or when parses are being recorded, so that any other parse
+ * pays only for the call to {@link #start(TokenVisitor, ParseListeners, Engine, int)}.
+ *
+ * <p>An engine that falls back to another engine passes the trace to the other engine as its visitor, so that the parse is reported only once.</p>
+ */
+public class ParseTrace implements FailureVisitor<Expression>, ParseStatistics {
+    private final ParseEventSink sink;
+    private final Object event;
+    private final ParseListener[] listeners;
+    private final Engine engine;
+    private final TokenVisitor<Expression> visitor;
+    private final boolean ruleSampled;
+    private final long startTime;
+    private int length;
+    private long elapsedTime;
+    private int passes = 1;
+    private long secondPassStartTime;
+    private long secondPassTime;
+    private int tokens;
+    private int peakBufferedTokens;
+    private int segments;
+    private boolean fallback;
+    private boolean failed;
+    private boolean stopped;
+    private int stoppedAt = -1;
+
+    private ParseTrace(ParseEventSink sink, Object event, ParseListener[] listeners, Engine engine, int length, TokenVisitor<Expression> visitor) {
+        this.sink = sink;
+        this.event = event;
+        this.listeners = listeners;
+        this.engine = engine;
+        this.length = length;
+        this.visitor = visitor;
+        this.ruleSampled = event != null && sink.isRuleSampled();
+        for (ParseListener listener : listeners) {
+            listener.parseStarted(engine, length);
+        }
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Starts a parse that will forward its results to the given visitor. Returns null when the parse does not need to be reported, or when the
+     * visitor is a trace, in which case the parse is part of a parse that is already being reported.
+     *
+     * @param length The number of characters of input, or -1 when not known.
+     */
+    public static ParseTrace start(TokenVisitor<Expression> visitor, ParseListeners listeners, Engine engine, int length) {
+        if (visitor instanceof ParseTrace) {
+            return null;
+        }
+        ParseListener[] current = listeners.get();
+        ParseEventSink sink = ParseEvents.getSink();
+        Object event = sink.parseStarted();
+        if (event == null && current.length == 0) {
+            return null;
+        }
+        return new ParseTrace(sink, event, current, engine, length, visitor);
+    }
+
+    /**
+     * Returns true when the given visitor is the trace of a parse whose rules should be recorded.
+     */
+    public static boolean isRuleSampled(TokenVisitor<Expression> visitor) {
+        return visitor instanceof ParseTrace && ((ParseTrace) visitor).ruleSampled;
+    }
+
+    /**
+     * Reports the peak number of tokens held by some part of the parse, when the given visitor is a trace.
+     */
+    public static void bufferedTokens(TokenVisitor<Expression> visitor, int tokens) {
+        if (visitor instanceof ParseTrace) {
+            ParseTrace trace = (ParseTrace) visitor;
+            trace.peakBufferedTokens = Math.max(trace.peakBufferedTokens, tokens);
+        }
+    }
+
+    /**
+     * Reports the number of segments of the input that are matched in parallel, when the given visitor is a trace.
+     */
+    public static void segments(TokenVisitor<Expression> visitor, int segments) {
+        if (visitor instanceof ParseTrace) {
+            ((ParseTrace) visitor).segments = segments;
+        }
+    }
+
+    /**
+     * Reports that the engine could not be used, so the input is parsed using the interpreter instead, when the given visitor is a trace.
+     */
+    public static void fallback(TokenVisitor<Expression> visitor) {
+        if (visitor instanceof ParseTrace) {
+            ((ParseTrace) visitor).fallback = true;
+        }
+    }
+
+    /**
+     * Reports that the parse was stopped at the given offset, when the given visitor is a trace.
+     */
+    public static void stopped(TokenVisitor<Expression> visitor, int offset) {
+        if (visitor instanceof ParseTrace) {
+            ParseTrace trace = (ParseTrace) visitor;
+            trace.stopped = true;
+            trace.stoppedAt = offset;
+        }
+    }
+
+    /**
+     * Reports that the input did not match and is being matched again to report the failure, when the given visitor is a trace.
+     */
+    public static void secondPass(TokenVisitor<Expression> visitor) {
+        if (visitor instanceof ParseTrace) {
+            ParseTrace trace = (ParseTrace) visitor;
+            trace.passes++;
+            trace.secondPassStartTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Reports the parse, once it has finished.
+     *
+     * @param length The number of characters of input.
+     */
+    public void finish(int length) {
+        long endTime = System.nanoTime();
+        elapsedTime = endTime - startTime;
+        if (passes > 1) {
+            secondPassTime = endTime - secondPassStartTime;
+        }
+        this.length = length;
+        if (!failed) {
+            stoppedAt = length;
+        }
+        if (event != null) {
+            sink.parseFinished(event, engine, length, tokens, failed, stoppedAt);
+        }
+        for (ParseListener listener : listeners) {
+            listener.parseFinished(this);
+        }
+    }
+
+    @Override
+    public void token(Expression type, Region match) {
+        tokens++;
+        visitor.token(type, match);
+    }
+
+    @Override
+    public void failed(String message, Region remainder) {
+        failed(remainder);
+        visitor.failed(message, remainder);
+    }
+
+    @Override
+    public void failed(ParseFailure failure) {
+        failed(failure.getRemainder());
+        DefaultParseFailure.report(failure, visitor);
+    }
+
+    private void failed(Region remainder) {
+        failed = true;
+        if (stoppedAt < 0) {
+            stoppedAt = remainder.getStart();
+        }
+    }
+
+    @Override
+    public Engine getEngine() {
+        return engine;
+    }
+
+    @Override
+    public boolean isFallback() {
+        return fallback;
+    }
+
+    @Override
+    public int getInputLength() {
+        return length;
+    }
+
+    @Override
+    public int getTokens() {
+        return tokens;
+    }
+
+    @Override
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    @Override
+    public int getPasses() {
+        return passes;
+    }
+
+    @Override
+    public long getSecondPassTime() {
+        return secondPassTime;
+    }
+
+    @Override
+    public int getPeakBufferedTokens() {
+        return peakBufferedTokens;
+    }
+
+    @Override
+    public int getSegments() {
+        return segments;
+    }
+
+    @Override
+    public ParseOutcome getOutcome() {
+        return stopped ? ParseOutcome.Stopped : failed ? ParseOutcome.Failed : ParseOutcome.Matched;
+    }
+
+    @Override
+    public int getStoppedAt() {
+        return stoppedAt;
+    }
+}
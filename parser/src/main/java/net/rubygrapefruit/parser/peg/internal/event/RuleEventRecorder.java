@@ -0,0 +1,21 @@
+package net.rubygrapefruit.parser.peg.internal.event;
+
+import net.rubygrapefruit.parser.peg.internal.profile.ProfileRecorder;
+import net.rubygrapefruit.parser.peg.internal.profile.RuleRecorder;
+
+/**
+ * Passes each invocation of a rule to the {@link ParseEventSink}. Used for the parses that are sampled by the sink.
+ */
+public class RuleEventRecorder implements RuleRecorder {
+    @Override
+    public Object enter(ProfileRecorder.Rule rule) {
+        return ParseEvents.getSink().ruleStarted(rule.getName());
+    }
+
+    @Override
+    public void exit(Object frame, boolean completed, boolean matched, int start, int end) {
+        if (frame != null && completed) {
+            ParseEvents.getSink().ruleFinished(frame, matched, start, end);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package net.rubygrapefruit.parser.peg.internal.expression;
+
+/**
+ * An immutable set of characters. Membership of an ASCII character is tested using a bitmap. Other characters are tested against a list of ranges
+ * and a set of Unicode general categories.
+ */
+public class CharClass {
+    private static final String[] CATEGORIES = {
+            "Cn", "Lu", "Ll", "Lt", "Lm", "Lo", "Mn", "Me", "Mc", "Nd", "Nl", "No", "Zs", "Zl", "Zp", "Cc",
+            "Cf", "", "Co", "Cs", "Pd", "Ps", "Pe", "Pc", "Po", "Sm", "Sc", "Sk", "So", "Pi", "Pf"
+    };
+
+    private final long low;
+    private final long high;
+    // Inclusive pairs
+    private final char[] ranges;
+    // A bit for each value of Character.getType()
+    private final int types;
+    private final boolean negated;
+    private final String displayName;
+
+    private CharClass(char[] ranges, int types, boolean negated, String displayName) {
+        this.ranges = ranges;
+        this.types = types;
+        this.negated = negated;
+        this.displayName = displayName;
+        long low = 0;
+        long high = 0;
+        for (char ch = 0; ch < 128; ch++) {
+            if (containsSlow(ch)) {
+                if (ch < 64) {
+                    low |= 1L << ch;
+                } else {
+                    high |= 1L << (ch - 64);
+                }
+            }
+        }
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * Creates a class that contains the given characters.
+     */
+    public static CharClass of(String chars) {
+        char[] ranges = new char[chars.length() * 2];
+        for (int i = 0; i < chars.length(); i++) {
+            ranges[i * 2] = chars.charAt(i);
+            ranges[i * 2 + 1] = chars.charAt(i);
+        }
+        return new CharClass(ranges, 0, false, "[" + escape(chars) + "]");
+    }
+
+    /**
+     * Creates a class that contains the characters in the given range, inclusive.
+     */
+    public static CharClass range(char from, char to) {
+        if (from > to) {
+            throw new IllegalArgumentException("Start of character range must not be after the end.");
+        }
+        return new CharClass(new char[]{from, to}, 0, false, "[" + escape(String.valueOf(from)) + "-" + escape(String.valueOf(to)) + "]");
+    }
+
+    /**
+     * Creates a class that contains the characters with any of the given general categories, as returned by {@link Character#getType(char)}.
+     */
+    public static CharClass types(int... types) {
+        int mask = 0;
+        StringBuilder displayName = new StringBuilder("[");
+        for (int type : types) {
+            if (type < 0 || type >= CATEGORIES.length || CATEGORIES[type].isEmpty()) {
+                throw new IllegalArgumentException("Unknown character type " + type + ".");
+            }
+            mask |= 1 << type;
+            displayName.append("\\p{").append(CATEGORIES[type]).append("}");
+        }
+        displayName.append("]");
+        return new CharClass(new char[0], mask, false, displayName.toString());
+    }
+
+    /**
+     * Returns a class that contains every character that this class does not.
+     */
+    public CharClass negate() {
+        String displayName = negated ? "[" + this.displayName.substring(2) : "[^" + this.displayName.substring(1);
+        return new CharClass(ranges, types, !negated, displayName);
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public boolean contains(char ch) {
+        if (ch < 64) {
+            return (low & (1L << ch)) != 0;
+        }
+        if (ch < 128) {
+            return (high & (1L << (ch - 64))) != 0;
+        }
+        return containsSlow(ch);
+    }
+
+    /**
+     * Can this class contain characters outside the ASCII range?
+     */
+    public boolean isContainsNonAscii() {
+        if (negated || types != 0) {
+            return true;
+        }
+        for (int i = 1; i < ranges.length; i += 2) {
+            if (ranges[i] >= 128) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsSlow(char ch) {
+        boolean contains = (types & (1 << Character.getType(ch))) != 0;
+        for (int i = 0; !contains && i < ranges.length; i += 2) {
+            contains = ch >= ranges[i] && ch <= ranges[i + 1];
+        }
+        return contains != negated;
+    }
+
+    private static String escape(String chars) {
+        return chars.replace("\\", "\\\\").replace("\n", "\\n").replace("]", "\\]").replace("-", "\\-").replace("^", "\\^");
+    }
+}
@@ -0,0 +1,139 @@
+package net.rubygrapefruit.parser.peg.internal.expression;
+
+import net.rubygrapefruit.parser.peg.Expression;
+import net.rubygrapefruit.parser.peg.internal.match.*;
+import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
+
+import java.util.*;
+
+/**
+ * Matches a single character from a {@link CharClass}.
+ *
+ * <p>An instance can also be created from an ordered choice of single characters, in which case it produces the same tokens and reports the same
+ * alternatives on failure as the choice would, but matches using a single lookup.</p>
+ */
+public class CharClassExpression extends AbstractExpression implements Matcher, Terminal, SingleCharExpression {
+    private final CharClass charClass;
+    // The token type for each ASCII character, for a class created from alternatives
+    private final Expression[] asciiTypes;
+    private final List<CharSequenceExpression> alternatives;
+    private final Set<? extends Terminal> prefixes;
+    private final TerminalSet expected;
+
+    public CharClassExpression(CharClass charClass) {
+        this.charClass = charClass;
+        this.asciiTypes = null;
+        this.alternatives = null;
+        this.prefixes = Collections.singleton(this);
+        this.expected = TerminalSet.of(prefixes);
+    }
+
+    private CharClassExpression(List<CharSequenceExpression> alternatives) {
+        StringBuilder chars = new StringBuilder();
+        Expression[] asciiTypes = new Expression[128];
+        for (int i = alternatives.size() - 1; i >= 0; i--) {
+            CharSequenceExpression alternative = alternatives.get(i);
+            char ch = alternative.getChars().charAt(0);
+            chars.append(ch);
+            if (ch < 128) {
+                // The first alternative for a character wins
+                asciiTypes[ch] = alternative;
+            }
+        }
+        this.charClass = CharClass.of(chars.reverse().toString());
+        this.asciiTypes = asciiTypes;
+        this.alternatives = alternatives;
+        this.prefixes = new LinkedHashSet<>(alternatives);
+        this.expected = TerminalSet.of(prefixes);
+    }
+
+    /**
+     * Creates an expression that matches the same characters as the given ordered choice, or returns null when not all of the alternatives match a
+     * single character.
+     */
+    public static CharClassExpression fuse(List<? extends MatchExpression> alternatives) {
+        List<CharSequenceExpression> chars = new ArrayList<>(alternatives.size());
+        for (MatchExpression alternative : alternatives) {
+            if (!(alternative instanceof CharSequenceExpression) || ((CharSequenceExpression) alternative).getChars().length() != 1) {
+                return null;
+            }
+            chars.add((CharSequenceExpression) alternative);
+        }
+        return new CharClassExpression(chars);
+    }
+
+    public CharClass getCharClass() {
+        return charClass;
+    }
+
+    @Override
+    public String toString() {
+        return alternatives == null ? getDisplayName() : "{one-of " + alternatives + "}";
+    }
+
+    @Override
+    public Expression group() {
+        // A choice produces a token for the matching alternative, so needs a group
+        return alternatives == null ? this : super.group();
+    }
+
+    @Override
+    public Matcher getMatcher() {
+        return this;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return charClass.getDisplayName();
+    }
+
+    @Override
+    public boolean isAcceptEmpty() {
+        return false;
+    }
+
+    @Override
+    public Set<? extends Terminal> getPrefixes() {
+        return prefixes;
+    }
+
+    @Override
+    public TerminalSet getExpected() {
+        return expected;
+    }
+
+    @Override
+    public boolean isMatchesNonAscii() {
+        return charClass.isContainsNonAscii();
+    }
+
+    @Override
+    public Expression getTokenType(char ch) {
+        if (asciiTypes == null) {
+            return charClass.contains(ch) ? this : null;
+        }
+        if (ch < 128) {
+            return asciiTypes[ch];
+        }
+        for (CharSequenceExpression alternative : alternatives) {
+            if (alternative.getChars().charAt(0) == ch) {
+                return alternative;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean consume(CharStream stream, MatchVisitor visitor) {
+        int start = stream.getOffset();
+        int ch = stream.peek();
+        Expression type = ch < 0 ? null : getTokenType((char) ch);
+        if (type == null) {
+            visitor.attempted(start, expected);
+            return false;
+        }
+        stream.moveTo(start + 1);
+        visitor.matched(type, start, start + 1);
+        return true;
+    }
+}
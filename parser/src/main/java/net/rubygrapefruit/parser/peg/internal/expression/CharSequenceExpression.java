@@ -3,17 +3,37 @@ package net.rubygrapefruit.parser.peg.internal.expression;
 import net.rubygrapefruit.parser.peg.Expression;
 import net.rubygrapefruit.parser.peg.internal.match.*;
 import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
-import net.rubygrapefruit.parser.peg.internal.stream.StreamPos;
 
 import java.util.Collections;
 import java.util.Set;
 
-public class CharSequenceExpression extends AbstractExpression implements Matcher, Terminal, MatchPoint {
+public class CharSequenceExpression extends AbstractExpression implements Matcher, Terminal {
 
     private final String str;
+    private TerminalSet expected;
 
     public CharSequenceExpression(String str) {
         this.str = str;
+        this.expected = TerminalSet.of(this);
+    }
+
+    private CharSequenceExpression(String str, TerminalSet expected) {
+        this.str = str;
+        this.expected = expected;
+    }
+
+    /**
+     * Creates an expression for text that is matched while parsing, such as the value of a back reference. The terminal is not numbered.
+     */
+    public static CharSequenceExpression value(String str) {
+        return new CharSequenceExpression(str, null);
+    }
+
+    /**
+     * Returns the characters that this expression matches.
+     */
+    public String getChars() {
+        return str;
     }
 
     @Override
@@ -41,6 +61,17 @@ public class CharSequenceExpression extends AbstractExpression implements Matche
         return Collections.singleton(this);
     }
 
+    /**
+     * Returns the terminals expected when this expression does not match.
+     */
+    public TerminalSet getExpected() {
+        if (expected == null) {
+            // Not numbered, can be safely calculated more than once
+            expected = TerminalSet.unnumbered(this);
+        }
+        return expected;
+    }
+
     @Override
     public String getDisplayName() {
         return "\"" + str.replace("\n", "\\n") + "\"";
@@ -48,13 +79,12 @@ public class CharSequenceExpression extends AbstractExpression implements Matche
 
     @Override
     public boolean consume(CharStream stream, MatchVisitor visitor) {
-        StreamPos start = stream.current();
+        int start = stream.getOffset();
         if (stream.consume(str)) {
-            StreamPos end = stream.current();
-            visitor.matched(new MatchResult(this, start, end));
+            visitor.matched(this, start, stream.getOffset());
             return true;
         }
-        visitor.attempted(start, this);
+        visitor.attempted(start, getExpected());
         return false;
     }
 }
@@ -3,8 +3,8 @@ package net.rubygrapefruit.parser.peg.internal.expression;
 import net.rubygrapefruit.parser.peg.BackReference;
 import net.rubygrapefruit.parser.peg.Expression;
 import net.rubygrapefruit.parser.peg.internal.match.*;
+import net.rubygrapefruit.parser.peg.internal.stream.CharSequences;
 import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
-import net.rubygrapefruit.parser.peg.internal.stream.StreamPos;
 
 import java.util.Arrays;
 import java.util.Set;
@@ -24,6 +24,13 @@ public class DefaultBackReference implements BackReference {
         return "{back-reference to: " + expression + "}";
     }
 
+    /**
+     * Returns the expression whose result is referenced.
+     */
+    public MatchExpression getExpression() {
+        return expression;
+    }
+
     @Override
     public Expression getValue() {
         return valueExpression;
@@ -34,7 +41,14 @@ public class DefaultBackReference implements BackReference {
         return new SequenceExpression(Arrays.asList(new Collector(), (MatchExpression) expression));
     }
 
-    private class Collector implements MatchExpression, Matcher {
+    /**
+     * Matches the source expression and collects the text it matched.
+     */
+    public class Collector implements MatchExpression, Matcher {
+        public DefaultBackReference getBackReference() {
+            return DefaultBackReference.this;
+        }
+
         @Override
         public Set<? extends Terminal> getPrefixes() {
             return expression.getMatcher().getPrefixes();
@@ -52,10 +66,10 @@ public class DefaultBackReference implements BackReference {
 
         @Override
         public boolean consume(CharStream stream, final MatchVisitor visitor) {
-            CollectingVisitor collectingVisitor = new CollectingVisitor(stream.current(), visitor);
+            CollectingVisitor collectingVisitor = new CollectingVisitor(stream.getInput(), stream.getOffset(), visitor);
             boolean matched = expression.getMatcher().consume(stream, collectingVisitor);
             if (matched) {
-                valueMatcher = new CharSequenceExpression(collectingVisitor.getText());
+                valueMatcher = CharSequenceExpression.value(collectingVisitor.getText());
             }
             return matched;
         }
@@ -63,10 +77,12 @@ public class DefaultBackReference implements BackReference {
 
     private static class CollectingVisitor implements MatchVisitor {
         private final MatchVisitor visitor;
-        private final StreamPos start;
-        private StreamPos end;
+        private final CharSequence input;
+        private final int start;
+        private int end;
 
-        CollectingVisitor(StreamPos start, MatchVisitor visitor) {
+        CollectingVisitor(CharSequence input, int start, MatchVisitor visitor) {
+            this.input = input;
             this.start = start;
             this.visitor = visitor;
         }
@@ -77,20 +93,20 @@ public class DefaultBackReference implements BackReference {
         }
 
         @Override
-        public void attempted(StreamPos pos, MatchPoint nextExpression) {
-            visitor.attempted(pos, nextExpression);
+        public void attempted(int pos, TerminalSet expected) {
+            visitor.attempted(pos, expected);
         }
 
         @Override
-        public void matched(StreamPos pos) {
+        public void matched(int pos) {
             end = pos;
             visitor.matched(pos);
         }
 
         @Override
-        public void matched(MatchResult result) {
-            end = result.getEnd();
-            visitor.matched(result);
+        public void matched(Expression expression, int start, int end) {
+            this.end = end;
+            visitor.matched(expression, start, end);
         }
 
         @Override
@@ -100,11 +116,18 @@ public class DefaultBackReference implements BackReference {
         }
 
         public String getText() {
-            return start.upTo(end);
+            return CharSequences.substring(input, start, end);
         }
     }
 
-    private class ValueExpression implements Expression, MatchExpression {
+    /**
+     * Matches the text collected for the source expression.
+     */
+    public class ValueExpression implements Expression, MatchExpression {
+        public DefaultBackReference getBackReference() {
+            return DefaultBackReference.this;
+        }
+
         @Override
         public String toString() {
             return "{value-of " + expression + "}";
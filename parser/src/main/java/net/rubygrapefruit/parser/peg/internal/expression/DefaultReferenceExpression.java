@@ -8,6 +8,8 @@ import net.rubygrapefruit.parser.peg.internal.match.Matcher;
 public class DefaultReferenceExpression implements ReferenceExpression, MatchExpression {
     private boolean locked;
     private MatchExpression expression;
+    // Set once the reference has been locked, so that the target can be used without synchronization
+    private MatchExpression target;
 
     @Override
     public String toString() {
@@ -31,6 +33,7 @@ public class DefaultReferenceExpression implements ReferenceExpression, MatchExp
                     throw new IllegalStateException("No target has been set for reference expression.");
                 }
                 locked = true;
+                target = expression;
             }
             return expression;
         }
@@ -38,7 +41,18 @@ public class DefaultReferenceExpression implements ReferenceExpression, MatchExp
 
     @Override
     public Matcher getMatcher() {
-        return getAndLock().getMatcher();
+        MatchExpression target = this.target;
+        if (target == null) {
+            target = getAndLock();
+        }
+        return target.getMatcher();
+    }
+
+    /**
+     * Returns the expression that this reference refers to.
+     */
+    public MatchExpression getTarget() {
+        return getAndLock();
     }
 
     @Override
@@ -0,0 +1,106 @@
+package net.rubygrapefruit.parser.peg.internal.expression;
+
+import net.rubygrapefruit.parser.peg.internal.match.MatchExpression;
+import net.rubygrapefruit.parser.peg.internal.match.TerminalSet;
+
+import java.util.*;
+
+/**
+ * A prediction table for an ordered choice, which maps the next character of the input to the alternatives that might match it.
+ *
+ * <p>An alternative is excluded for a character only when its {@link FirstSet} guarantees that the alternative will fail without consuming any input.
+ * The terminals of the excluded alternatives are still reported, in the same order as if each alternative had been attempted, so that failures
+ * are reported in the same way.</p>
+ */
+class DispatchTable {
+    private static final int OTHER = FirstSet.ASCII;
+    private static final int END = FirstSet.ASCII + 1;
+
+    private final Entry[] entries;
+
+    private DispatchTable(Entry[] entries) {
+        this.entries = entries;
+    }
+
+    static DispatchTable of(List<? extends MatchExpression> alternatives) {
+        List<FirstSet> firstSets = new ArrayList<>(alternatives.size());
+        for (MatchExpression alternative : alternatives) {
+            firstSets.add(FirstSet.of(alternative));
+        }
+        Map<Entry, Entry> unique = new HashMap<>();
+        Entry[] entries = new Entry[END + 1];
+        for (int i = 0; i < entries.length; i++) {
+            int ch = i == END ? -1 : i == OTHER ? Character.MAX_VALUE : i;
+            Entry entry = entry(firstSets, ch);
+            Entry existing = unique.get(entry);
+            if (existing == null) {
+                unique.put(entry, entry);
+            } else {
+                entry = existing;
+            }
+            entries[i] = entry;
+        }
+        return new DispatchTable(entries);
+    }
+
+    private static Entry entry(List<FirstSet> firstSets, int ch) {
+        int[] candidates = new int[firstSets.size()];
+        TerminalSet[] rejected = new TerminalSet[firstSets.size() + 1];
+        int count = 0;
+        TerminalSet current = null;
+        for (int i = 0; i < firstSets.size(); i++) {
+            FirstSet firstSet = firstSets.get(i);
+            if (firstSet.rejects(ch)) {
+                current = current == null ? firstSet.getExpected() : current.union(firstSet.getExpected());
+            } else {
+                rejected[count] = current;
+                candidates[count] = i;
+                count++;
+                current = null;
+            }
+        }
+        rejected[count] = current;
+        return new Entry(Arrays.copyOf(candidates, count), Arrays.copyOf(rejected, count + 1));
+    }
+
+    /**
+     * Returns the entry for the given character, or -1 for the end of input.
+     */
+    Entry get(int ch) {
+        if (ch < 0) {
+            return entries[END];
+        }
+        if (ch >= FirstSet.ASCII) {
+            return entries[OTHER];
+        }
+        return entries[ch];
+    }
+
+    static class Entry {
+        /**
+         * The indexes of the alternatives that might match, in order.
+         */
+        final int[] candidates;
+        /**
+         * For each candidate, the alternatives before it that are known to fail, or null when there are none. The final element holds the
+         * alternatives after the last candidate.
+         */
+        final TerminalSet[] rejected;
+
+        Entry(int[] candidates, TerminalSet[] rejected) {
+            this.candidates = candidates;
+            this.rejected = rejected;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            Entry other = (Entry) obj;
+            return Arrays.equals(candidates, other.candidates) && Arrays.equals(rejected, other.rejected);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(candidates);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package net.rubygrapefruit.parser.peg.internal.expression;
+
+import net.rubygrapefruit.parser.peg.internal.match.MatchExpression;
+
+import java.util.*;
+
+/**
+ * The graph of expressions reachable from some root expression, for use by the compilers.
+ *
+ * <p>Reference expressions are resolved to their targets. An expression that is the target of a reference or that is used from more than one place
+ * is a "rule", and is compiled into a unit of its own so that it can be used recursively and is not duplicated. Everything else is compiled inline.</p>
+ */
+public class ExpressionGraph {
+    private final MatchExpression root;
+    private final Map<MatchExpression, Integer> uses = new IdentityHashMap<>();
+    private final Set<MatchExpression> referenced = Collections.newSetFromMap(new IdentityHashMap<MatchExpression, Boolean>());
+
+    public ExpressionGraph(MatchExpression root) {
+        this.root = root;
+        countUses(root);
+    }
+
+    public MatchExpression getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the expressions reachable from the root, with references resolved.
+     */
+    public Set<MatchExpression> getExpressions() {
+        return uses.keySet();
+    }
+
+    private void countUses(MatchExpression expression) {
+        MatchExpression target = resolve(expression);
+        if (target != expression) {
+            referenced.add(target);
+        }
+        Integer count = uses.get(target);
+        uses.put(target, count == null ? 1 : count + 1);
+        if (count != null) {
+            return;
+        }
+        for (MatchExpression child : children(target)) {
+            countUses(child);
+        }
+    }
+
+    /**
+     * Returns the expressions that the given expression is composed of, in the order that they are matched.
+     */
+    public List<? extends MatchExpression> children(MatchExpression expression) {
+        if (expression instanceof SequenceExpression) {
+            return ((SequenceExpression) expression).getExpressions();
+        }
+        if (expression instanceof OneOfExpression) {
+            return ((OneOfExpression) expression).getExpressions();
+        }
+        if (expression instanceof OneOrMoreExpression) {
+            // Compiled as the expression followed by zero or more of the expression
+            MatchExpression child = ((OneOrMoreExpression) expression).getExpression();
+            return Arrays.asList(child, child);
+        }
+        if (expression instanceof OptionalExpression) {
+            return Collections.singletonList(((OptionalExpression) expression).getExpression());
+        }
+        if (expression instanceof ZeroOrMoreExpression) {
+            return Collections.singletonList(((ZeroOrMoreExpression) expression).getExpression());
+        }
+        if (expression instanceof NotPredicate) {
+            return Collections.singletonList(((NotPredicate) expression).getExpression());
+        }
+        if (expression instanceof GroupingExpression) {
+            return Collections.singletonList(((GroupingExpression) expression).getExpression());
+        }
+        if (expression instanceof MemoizingExpression) {
+            return Collections.singletonList(((MemoizingExpression) expression).getExpression());
+        }
+        if (expression instanceof DefaultBackReference.Collector) {
+            return Collections.singletonList(((DefaultBackReference.Collector) expression).getBackReference().getExpression());
+        }
+        if (expression instanceof ProfiledExpression) {
+            return Collections.singletonList(((ProfiledExpression) expression).getExpression());
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the expression that the given expression refers to, following any reference expressions.
+     */
+    public MatchExpression resolve(MatchExpression expression) {
+        while (expression instanceof DefaultReferenceExpression) {
+            expression = ((DefaultReferenceExpression) expression).getTarget();
+        }
+        return expression;
+    }
+
+    /**
+     * Does the given expression match some characters directly, rather than by delegating to other expressions?
+     */
+    public boolean isTerminal(MatchExpression expression) {
+        return expression instanceof CharSequenceExpression || expression instanceof SingleCharExpression || expression instanceof LiteralChoiceExpression
+                || expression instanceof DefaultBackReference.ValueExpression;
+    }
+
+    /**
+     * Should the given (resolved) expression be compiled as a separate unit?
+     */
+    public boolean isRule(MatchExpression expression) {
+        if (isTerminal(expression)) {
+            return false;
+        }
+        Integer count = uses.get(expression);
+        return referenced.contains(expression) || (count != null && count > 1);
+    }
+}
@@ -0,0 +1,203 @@
+package net.rubygrapefruit.parser.peg.internal.expression;
+
+import net.rubygrapefruit.parser.peg.Expression;
+import net.rubygrapefruit.parser.peg.internal.match.MatchExpression;
+import net.rubygrapefruit.parser.peg.internal.profile.ProfileRecorder;
+import net.rubygrapefruit.parser.peg.internal.profile.RuleRecorder;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates a copy of a graph of expressions in which each rule is wrapped in a {@link ProfiledExpression}, so that the invocations of the rule are
+ * passed to a {@link RuleRecorder}. The original expressions are not changed, so they can still be used by other parsers, and the copies produce
+ * tokens of the same types as the originals, so the tokens and failures are the same.
+ *
+ * <p>The rules are the root expression, the expressions that have been given a name, and the expressions that are compiled as rules, as per
+ * {@link ExpressionGraph#isRule(MatchExpression)}. Everything else is charged to the rule that contains it. A rule without a name is described
+ * using the first few levels of its expression.</p>
+ *
+ * <p>The graph is copied on first use, so that reference expressions can be set up after the parser has been created.</p>
+ */
+public class ExpressionProfiler {
+    private static final int DESCRIPTION_DEPTH = 2;
+    private static final int MAX_DESCRIPTION_LENGTH = 100;
+    private final MatchExpression source;
+    private final Map<Expression, String> names;
+    private final RuleRecorder recorder;
+    private final ProfiledExpression root;
+    private boolean copied;
+    private ExpressionGraph graph;
+    private Map<MatchExpression, String> ruleNames;
+    private Map<MatchExpression, MatchExpression> copies;
+
+    /**
+     * @param names The names of the expressions, keyed by identity.
+     */
+    public ExpressionProfiler(MatchExpression source, Map<Expression, String> names, RuleRecorder recorder) {
+        this.source = source;
+        this.names = names;
+        this.recorder = recorder;
+        root = new ProfiledExpression(recorder, this);
+    }
+
+    /**
+     * Returns the copy of the root expression.
+     */
+    public MatchExpression getRoot() {
+        return root;
+    }
+
+    synchronized void copy() {
+        if (copied) {
+            return;
+        }
+        graph = new ExpressionGraph(source);
+        ruleNames = new IdentityHashMap<>();
+        for (Map.Entry<Expression, String> entry : names.entrySet()) {
+            ruleNames.put(graph.resolve((MatchExpression) entry.getKey()), entry.getValue());
+        }
+        copies = new IdentityHashMap<>();
+        MatchExpression target = graph.resolve(source);
+        copies.put(target, root);
+        root.init(rule(target), copyOf(target));
+        graph = null;
+        ruleNames = null;
+        copies = null;
+        copied = true;
+    }
+
+    private MatchExpression copy(MatchExpression expression) {
+        MatchExpression target = graph.resolve(expression);
+        MatchExpression copy = copies.get(target);
+        if (copy != null) {
+            return copy;
+        }
+        if (ruleNames.containsKey(target) || graph.isRule(target)) {
+            // Add the rule before copying its expression, as the expression may refer back to the rule
+            ProfiledExpression profiled = new ProfiledExpression(recorder, this);
+            copies.put(target, profiled);
+            profiled.init(rule(target), copyOf(target));
+            return profiled;
+        }
+        copy = copyOf(target);
+        copies.put(target, copy);
+        return copy;
+    }
+
+    private List<MatchExpression> copyAll(List<? extends MatchExpression> expressions) {
+        List<MatchExpression> result = new ArrayList<>(expressions.size());
+        for (MatchExpression expression : expressions) {
+            result.add(copy(expression));
+        }
+        return result;
+    }
+
+    private MatchExpression copyOf(MatchExpression expression) {
+        if (expression instanceof SequenceExpression) {
+            return new SequenceExpression(copyAll(((SequenceExpression) expression).getExpressions()));
+        }
+        if (expression instanceof OneOfExpression) {
+            return new OneOfExpression(copyAll(((OneOfExpression) expression).getExpressions()));
+        }
+        if (expression instanceof OneOrMoreExpression) {
+            return new OneOrMoreExpression(copy(((OneOrMoreExpression) expression).getExpression()));
+        }
+        if (expression instanceof OptionalExpression) {
+            return new OptionalExpression(copy(((OptionalExpression) expression).getExpression()));
+        }
+        if (expression instanceof ZeroOrMoreExpression) {
+            return new ZeroOrMoreExpression(copy(((ZeroOrMoreExpression) expression).getExpression()));
+        }
+        if (expression instanceof NotPredicate) {
+            return new NotPredicate(copy(((NotPredicate) expression).getExpression()));
+        }
+        if (expression instanceof GroupingExpression) {
+            // Produce the same tokens as the original group
+            GroupingExpression grouping = (GroupingExpression) expression;
+            return new GroupingExpression(copy(grouping.getExpression()), grouping);
+        }
+        if (expression instanceof MemoizingExpression) {
+            MemoizingExpression memoizing = (MemoizingExpression) expression;
+            return new MemoizingExpression(copy(memoizing.getExpression()), memoizing.getSlot());
+        }
+        // Terminals, which can be shared, and back references, whose value is shared with the original. The expressions used by a back reference
+        // are not profiled separately
+        return expression;
+    }
+
+    private ProfileRecorder.Rule rule(MatchExpression expression) {
+        String name = ruleNames.get(expression);
+        if (name == null) {
+            name = describe(expression, DESCRIPTION_DEPTH);
+            if (name.length() > MAX_DESCRIPTION_LENGTH) {
+                name = name.substring(0, MAX_DESCRIPTION_LENGTH - 3) + "...";
+            }
+        }
+        return new ProfileRecorder.Rule(name);
+    }
+
+    /**
+     * Describes the given expression in the same way as its {@link Object#toString()} method, but stops at the given depth, so that the description
+     * is short and terminates for recursive expressions.
+     */
+    private String describe(MatchExpression expression, int depth) {
+        MatchExpression target = graph.resolve(expression);
+        String name = ruleNames.get(target);
+        if (name != null) {
+            return name;
+        }
+        List<? extends MatchExpression> children;
+        if (target instanceof OneOrMoreExpression) {
+            children = graph.children(target).subList(0, 1);
+        } else if (target instanceof DefaultBackReference.Collector) {
+            return target.toString();
+        } else {
+            children = graph.children(target);
+        }
+        if (children.isEmpty()) {
+            return target.toString();
+        }
+        if (depth == 0) {
+            return "{...}";
+        }
+        StringBuilder builder = new StringBuilder("{");
+        builder.append(kind(target));
+        for (MatchExpression child : children) {
+            builder.append(' ');
+            builder.append(describe(child, depth - 1));
+        }
+        builder.append('}');
+        return builder.toString();
+    }
+
+    private static String kind(MatchExpression expression) {
+        if (expression instanceof SequenceExpression) {
+            return "sequence:";
+        }
+        if (expression instanceof OneOfExpression) {
+            return "one-of";
+        }
+        if (expression instanceof OneOrMoreExpression) {
+            return "one-or-more:";
+        }
+        if (expression instanceof OptionalExpression) {
+            return "optional:";
+        }
+        if (expression instanceof ZeroOrMoreExpression) {
+            return "zero-or-more:";
+        }
+        if (expression instanceof NotPredicate) {
+            return "not";
+        }
+        if (expression instanceof GroupingExpression) {
+            return "group:";
+        }
+        if (expression instanceof MemoizingExpression) {
+            return "memoize:";
+        }
+        return expression.getClass().getSimpleName();
+    }
+}
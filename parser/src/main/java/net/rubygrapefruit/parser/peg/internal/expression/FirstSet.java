@@ -0,0 +1,235 @@
+package net.rubygrapefruit.parser.peg.internal.expression;
+
+import net.rubygrapefruit.parser.peg.internal.match.MatchExpression;
+import net.rubygrapefruit.parser.peg.internal.match.Terminal;
+import net.rubygrapefruit.parser.peg.internal.match.TerminalSet;
+
+import java.util.*;
+
+/**
+ * The characters that an expression can start with, for use in predicting which alternatives of an ordered choice can match.
+ *
+ * <p>The characters are an over-approximation, so an expression that starts with a character outside of the set is guaranteed not to consume that
+ * character. The set is "predictable" when, in this case, the expression is also guaranteed to either match nothing or fail without consuming
+ * any input, reporting exactly the terminals of this set as the alternatives. This is not the case for expressions that contain a predicate or a
+ * back reference in their first position, so these are never skipped.</p>
+ */
+public class FirstSet {
+    /**
+     * The number of characters that are tracked individually. Anything above this is tracked as "other".
+     */
+    public static final int ASCII = 128;
+    private static final FirstSet UNPREDICTABLE = new FirstSet(true, false, all(), true, Collections.<Terminal>emptySet());
+
+    private final boolean nullable;
+    private final boolean predictable;
+    private final BitSet chars;
+    private final boolean otherChars;
+    private final Set<Terminal> terminals;
+    private TerminalSet expected;
+
+    private FirstSet(boolean nullable, boolean predictable, BitSet chars, boolean otherChars, Set<Terminal> terminals) {
+        this.nullable = nullable;
+        this.predictable = predictable;
+        this.chars = chars;
+        this.otherChars = otherChars;
+        this.terminals = terminals;
+    }
+
+    @Override
+    public String toString() {
+        return "{first " + terminals + "}";
+    }
+
+    /**
+     * Calculates the first set of the given expression.
+     */
+    public static FirstSet of(MatchExpression expression) {
+        return new Analysis().visit(expression);
+    }
+
+    /**
+     * Can the expression match without consuming any input?
+     */
+    public boolean isNullable() {
+        return nullable;
+    }
+
+    public boolean isPredictable() {
+        return predictable;
+    }
+
+    /**
+     * Can the expression start with the given character? Use -1 for the end of input.
+     */
+    public boolean canStartWith(int ch) {
+        if (ch < 0) {
+            return false;
+        }
+        if (ch < ASCII) {
+            return chars.get(ch);
+        }
+        return otherChars;
+    }
+
+    /**
+     * Is the given character guaranteed to cause this expression to fail without consuming any input? Use -1 for the end of input.
+     */
+    public boolean rejects(int ch) {
+        return predictable && !nullable && !canStartWith(ch);
+    }
+
+    /**
+     * Returns the terminals that are attempted when the expression fails without consuming any input.
+     */
+    public Set<? extends Terminal> getPrefixes() {
+        return terminals;
+    }
+
+    /**
+     * Returns the set of terminals that are attempted when the expression fails without consuming any input.
+     */
+    public TerminalSet getExpected() {
+        if (expected == null) {
+            expected = TerminalSet.of(terminals);
+        }
+        return expected;
+    }
+
+    private static BitSet all() {
+        BitSet chars = new BitSet(ASCII);
+        chars.set(0, ASCII);
+        return chars;
+    }
+
+    private static class Analysis {
+        private final Map<MatchExpression, FirstSet> results = new IdentityHashMap<>();
+        private final Set<MatchExpression> visiting = Collections.newSetFromMap(new IdentityHashMap<MatchExpression, Boolean>());
+
+        FirstSet visit(MatchExpression expression) {
+            FirstSet result = results.get(expression);
+            if (result != null) {
+                return result;
+            }
+            if (!visiting.add(expression)) {
+                // Left recursion, which will not terminate when matched anyway
+                return UNPREDICTABLE;
+            }
+            result = calculate(expression);
+            visiting.remove(expression);
+            results.put(expression, result);
+            return result;
+        }
+
+        private FirstSet calculate(MatchExpression expression) {
+            if (expression instanceof DefaultReferenceExpression) {
+                return visit(((DefaultReferenceExpression) expression).getTarget());
+            }
+            if (expression instanceof CharSequenceExpression) {
+                CharSequenceExpression charSequence = (CharSequenceExpression) expression;
+                String str = charSequence.getChars();
+                if (str.isEmpty()) {
+                    // Produces an empty token
+                    return UNPREDICTABLE;
+                }
+                BitSet chars = new BitSet(ASCII);
+                char ch = str.charAt(0);
+                if (ch < ASCII) {
+                    chars.set(ch);
+                }
+                return new FirstSet(false, true, chars, ch >= ASCII, Collections.<Terminal>singleton(charSequence));
+            }
+            if (expression instanceof SingleCharExpression) {
+                SingleCharExpression charExpression = (SingleCharExpression) expression;
+                BitSet chars = new BitSet(ASCII);
+                for (char ch = 0; ch < ASCII; ch++) {
+                    if (charExpression.getTokenType(ch) != null) {
+                        chars.set(ch);
+                    }
+                }
+                return new FirstSet(false, true, chars, charExpression.isMatchesNonAscii(), new LinkedHashSet<Terminal>(charExpression.getPrefixes()));
+            }
+            if (expression instanceof SequenceExpression) {
+                return sequence(((SequenceExpression) expression).getExpressions());
+            }
+            if (expression instanceof OneOrMoreExpression) {
+                MatchExpression child = ((OneOrMoreExpression) expression).getExpression();
+                return sequence(Arrays.asList(child, new ZeroOrMoreExpression(child)));
+            }
+            if (expression instanceof OneOfExpression) {
+                return oneOf(((OneOfExpression) expression).getExpressions());
+            }
+            if (expression instanceof LiteralChoiceExpression) {
+                return oneOf(((LiteralChoiceExpression) expression).getExpressions());
+            }
+            if (expression instanceof OptionalExpression) {
+                return visit(((OptionalExpression) expression).getExpression()).orEmpty();
+            }
+            if (expression instanceof ZeroOrMoreExpression) {
+                return visit(((ZeroOrMoreExpression) expression).getExpression()).orEmpty();
+            }
+            if (expression instanceof GroupingExpression) {
+                return visit(((GroupingExpression) expression).getExpression());
+            }
+            if (expression instanceof MemoizingExpression) {
+                return visit(((MemoizingExpression) expression).getExpression());
+            }
+            if (expression instanceof DefaultBackReference.Collector) {
+                return visit(((DefaultBackReference.Collector) expression).getBackReference().getExpression());
+            }
+            if (expression instanceof ProfiledExpression) {
+                return visit(((ProfiledExpression) expression).getExpression());
+            }
+            // Predicates, back references and anything else
+            return UNPREDICTABLE;
+        }
+
+        private FirstSet sequence(List<? extends MatchExpression> expressions) {
+            // Each expression is attempted until one that cannot match empty input
+            Builder builder = new Builder();
+            for (MatchExpression expression : expressions) {
+                FirstSet first = visit(expression);
+                builder.add(first);
+                if (!first.nullable) {
+                    return builder.build(false);
+                }
+            }
+            return builder.build(true);
+        }
+
+        private FirstSet oneOf(List<? extends MatchExpression> expressions) {
+            // Each alternative is attempted until one that can match empty input
+            Builder builder = new Builder();
+            for (MatchExpression expression : expressions) {
+                FirstSet first = visit(expression);
+                builder.add(first);
+                if (first.nullable) {
+                    return builder.build(true);
+                }
+            }
+            return builder.build(false);
+        }
+    }
+
+    private FirstSet orEmpty() {
+        return new FirstSet(true, predictable, chars, otherChars, terminals);
+    }
+
+    private static class Builder {
+        private final BitSet chars = new BitSet(ASCII);
+        private final Set<Terminal> terminals = new LinkedHashSet<>();
+        private boolean predictable = true;
+        private boolean otherChars;
+
+        void add(FirstSet first) {
+            chars.or(first.chars);
+            terminals.addAll(first.terminals);
+            predictable &= first.predictable;
+            otherChars |= first.otherChars;
+        }
+
+        FirstSet build(boolean nullable) {
+            return new FirstSet(nullable, predictable, chars, otherChars, terminals);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package net.rubygrapefruit.parser.peg.internal.expression;
+
+import net.rubygrapefruit.parser.peg.internal.match.MatchExpression;
+
+/**
+ * Replaces the matchers of a graph of expressions with faster equivalents for some common idioms. The expressions themselves are not changed, so
+ * the tokens produced and the failures reported are the same.
+ *
+ * <ul>
+ *     <li>{@code zeroOrMore(sequence(not(chars(x)), anything()))} searches for {@code x} rather than matching each character.</li>
+ *     <li>Adjacent literals in a sequence are compared as a single string.</li>
+ *     <li>Reference expressions in a sequence are replaced by their targets.</li>
+ * </ul>
+ *
+ * <p>Expressions can be shared by several parsers, so an expression may be in use by another thread while it is being optimized. Optimizations run
+ * while holding a lock shared by all optimizers, and each expression is optimized at most once. The replacement matchers are immutable and are
+ * published through volatile fields, so a thread that is matching uses either the original matcher or a complete replacement.</p>
+ */
+public class GrammarOptimizer {
+    private static final Object LOCK = new Object();
+
+    public void optimize(MatchExpression rootExpression) {
+        synchronized (LOCK) {
+            ExpressionGraph graph = new ExpressionGraph(rootExpression);
+            for (MatchExpression expression : graph.getExpressions()) {
+                if (expression instanceof ZeroOrMoreExpression) {
+                    ((ZeroOrMoreExpression) expression).optimize(graph);
+                } else if (expression instanceof SequenceExpression) {
+                    ((SequenceExpression) expression).optimize(graph);
+                }
+            }
+        }
+    }
+}
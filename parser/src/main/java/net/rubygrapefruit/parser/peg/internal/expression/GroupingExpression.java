@@ -3,15 +3,28 @@ package net.rubygrapefruit.parser.peg.internal.expression;
 import net.rubygrapefruit.parser.peg.Expression;
 import net.rubygrapefruit.parser.peg.internal.match.*;
 import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
-import net.rubygrapefruit.parser.peg.internal.stream.StreamPos;
 
 import java.util.Set;
 
 public class GroupingExpression implements Expression, MatchExpression, Matcher {
     private final MatchExpression expression;
+    private final Expression tokenType;
 
     GroupingExpression(MatchExpression expression) {
         this.expression = expression;
+        this.tokenType = this;
+    }
+
+    /**
+     * Creates a group that produces tokens of the given type, rather than of this group.
+     */
+    GroupingExpression(MatchExpression expression, Expression tokenType) {
+        this.expression = expression;
+        this.tokenType = tokenType;
+    }
+
+    public MatchExpression getExpression() {
+        return expression;
     }
 
     @Override
@@ -41,163 +54,33 @@ public class GroupingExpression implements Expression, MatchExpression, Matcher
 
     @Override
     public boolean consume(CharStream stream, MatchVisitor visitor) {
-        GroupingVisitor groupingVisitor = new GroupingVisitor(stream.current(), visitor, this);
-        boolean match = expression.getMatcher().consume(stream, groupingVisitor);
-        groupingVisitor.done(match);
-        return match;
-    }
-
-    private static class GroupingVisitor implements MatchVisitor {
-        final StreamPos start;
-        final MatchVisitor visitor;
-        final GroupingExpression expression;
-        StreamPos end;
-        StreamPos stoppedAt;
-        MatchPoint matchPoint = MatchPoint.NO_ALTERNATIVES;
-
-        GroupingVisitor(StreamPos start, MatchVisitor visitor, GroupingExpression expression) {
-            this.start = start;
-            this.end = start;
-            this.visitor = visitor;
-            this.expression = expression;
+        TokenArena arena = stream.getTokenArena();
+        BatchingMatchVisitor nested = arena.newVisitor();
+        int start = stream.getOffset();
+        boolean match = expression.getMatcher().consume(stream, nested);
+
+        // Replace the tokens of the expression with a single token for this group
+        int end = nested.getMatchEnd() < 0 ? start : nested.getMatchEnd();
+        int stoppedAt = nested.getStoppedAt();
+        arena.truncate(nested.getMark());
+        int matches = match && end > start ? arena.token(tokenType, start, end) : TokenArena.EMPTY;
+        int bestAlternative;
+        if (stoppedAt <= start) {
+            bestAlternative = TokenArena.EMPTY;
+        } else if (match && stoppedAt == end) {
+            bestAlternative = matches;
+        } else {
+            bestAlternative = arena.token(tokenType, start, stoppedAt);
         }
+        boolean partialMatches = match ? stoppedAt > end : stoppedAt > start;
+        nested.replace(end, stoppedAt, matches, bestAlternative, partialMatches);
 
-        @Override
-        public void attempted(ExpressionMatchResult result) {
-            attempted(result.getStoppedAt(), result.getMatchPoint());
-        }
-
-        @Override
-        public void attempted(StreamPos pos, MatchPoint nextExpression) {
-            if (stoppedAt == null) {
-                stoppedAt = pos;
-                matchPoint = nextExpression;
-                return;
-            }
-
-            int diff = pos.diff(stoppedAt);
-            if (diff > 0) {
-                stoppedAt = pos;
-                matchPoint = nextExpression;
-            } else if (diff == 0) {
-                matchPoint = CompositeMatchPoint.of(matchPoint, nextExpression);
-            }
-        }
-
-        @Override
-        public void matched(StreamPos pos) {
-            matched(pos, pos, MatchPoint.NO_ALTERNATIVES);
-        }
-
-        @Override
-        public void matched(MatchResult result) {
-            matched(result.getEnd(), result.getEnd(), MatchPoint.NO_ALTERNATIVES);
-        }
-
-        @Override
-        public void matched(ExpressionMatchResult result) {
-            matched(result.getMatchEnd(), result.getStoppedAt(), result.getMatchPoint());
-        }
-
-        private void matched(StreamPos matchedTo, StreamPos stoppedAt, MatchPoint matchPoint) {
-            end = matchedTo;
-            if (this.stoppedAt == null) {
-                this.stoppedAt = stoppedAt;
-                this.matchPoint = matchPoint;
-                return;
-            }
-            int diff = stoppedAt.diff(this.stoppedAt);
-            if (diff > 0) {
-                this.stoppedAt = stoppedAt;
-                this.matchPoint = matchPoint;
-            } else if (diff == 0) {
-                this.matchPoint = CompositeMatchPoint.of(this.matchPoint, matchPoint);
-            }
-        }
-
-        void done(boolean matched) {
-            if (matched) {
-                visitor.matched(new ExpressionMatchResult() {
-                    @Override
-                    public TokenSource withBestAlternative() {
-                        if (stoppedAt.diff(start) == 0) {
-                            return EMPTY;
-                        }
-                        return new TokenSource() {
-                            @Override
-                            public void pushMatches(TokenCollector resultCollector) {
-                                resultCollector.token(new MatchResult(expression, start, stoppedAt));
-                            }
-                        };
-                    }
-
-                    @Override
-                    public boolean hasPartialMatches() {
-                        return stoppedAt.diff(end) > 0;
-                    }
-
-                    @Override
-                    public StreamPos getMatchEnd() {
-                        return end;
-                    }
-
-                    @Override
-                    public StreamPos getStoppedAt() {
-                        return stoppedAt;
-                    }
-
-                    @Override
-                    public MatchPoint getMatchPoint() {
-                        return matchPoint;
-                    }
-
-                    @Override
-                    public void pushMatches(TokenCollector resultCollector) {
-                        if (end.diff(start) > 0) {
-                            resultCollector.token(new MatchResult(expression, start, end));
-                        }
-                    }
-                });
-            } else {
-                visitor.attempted(new ExpressionMatchResult() {
-                    @Override
-                    public TokenSource withBestAlternative() {
-                        if (stoppedAt.diff(start) == 0) {
-                            return EMPTY;
-                        }
-                        return new TokenSource() {
-                            @Override
-                            public void pushMatches(TokenCollector resultCollector) {
-                                resultCollector.token(new MatchResult(expression, start, stoppedAt));
-                            }
-                        };
-                    }
-
-                    @Override
-                    public boolean hasPartialMatches() {
-                        return stoppedAt.diff(start) > 0;
-                    }
-
-                    @Override
-                    public StreamPos getMatchEnd() {
-                        return end;
-                    }
-
-                    @Override
-                    public StreamPos getStoppedAt() {
-                        return stoppedAt;
-                    }
-
-                    @Override
-                    public MatchPoint getMatchPoint() {
-                        return matchPoint;
-                    }
-
-                    @Override
-                    public void pushMatches(TokenCollector resultCollector) {
-                    }
-                });
-            }
+        if (match) {
+            visitor.matched(nested);
+        } else {
+            visitor.attempted(nested);
         }
+        arena.release(nested);
+        return match;
     }
 }
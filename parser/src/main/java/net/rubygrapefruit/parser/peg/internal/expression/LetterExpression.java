@@ -3,12 +3,13 @@ package net.rubygrapefruit.parser.peg.internal.expression;
 import net.rubygrapefruit.parser.peg.Expression;
 import net.rubygrapefruit.parser.peg.internal.match.*;
 import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
-import net.rubygrapefruit.parser.peg.internal.stream.StreamPos;
 
 import java.util.Collections;
 import java.util.Set;
 
-public class LetterExpression extends AbstractExpression implements Matcher, Terminal, MatchPoint {
+public class LetterExpression extends AbstractExpression implements Matcher, Terminal, SingleCharExpression {
+    private final TerminalSet expected = TerminalSet.of(this);
+
     @Override
     public Expression group() {
         return this;
@@ -39,15 +40,29 @@ public class LetterExpression extends AbstractExpression implements Matcher, Ter
         return Collections.singleton(this);
     }
 
+    @Override
+    public TerminalSet getExpected() {
+        return expected;
+    }
+
+    @Override
+    public Expression getTokenType(char ch) {
+        return Character.isAlphabetic(ch) ? this : null;
+    }
+
+    @Override
+    public boolean isMatchesNonAscii() {
+        return true;
+    }
+
     @Override
     public boolean consume(CharStream stream, MatchVisitor visitor) {
-        StreamPos start = stream.current();
+        int start = stream.getOffset();
         if (stream.consumeLetter()) {
-            StreamPos end = stream.current();
-            visitor.matched(new MatchResult(this, start, end));
+            visitor.matched(this, start, stream.getOffset());
             return true;
         }
-        visitor.attempted(start, this);
+        visitor.attempted(start, expected);
         return false;
     }
 }
@@ -0,0 +1,161 @@
+package net.rubygrapefruit.parser.peg.internal.expression;
+
+import net.rubygrapefruit.parser.peg.internal.match.*;
+import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
+
+import java.util.*;
+
+/**
+ * Matches an ordered choice of literals using a trie, so that the input is examined once regardless of how many literals there are.
+ *
+ * <p>Produces the same tokens and reports the same alternatives on failure as the equivalent choice would. In particular, the first literal in
+ * order that matches is selected, even when a later literal would match more of the input.</p>
+ */
+public class LiteralChoiceExpression extends AbstractExpression implements Matcher {
+    private final List<CharSequenceExpression> alternatives;
+    private final Set<? extends Terminal> prefixes;
+    private final TerminalSet expected;
+    // For each node of the trie, the characters of the outgoing edges, sorted, and the node that each edge leads to
+    private final char[][] edges;
+    private final int[][] targets;
+    // For each node of the trie, the index of the first alternative that ends at that node, or -1
+    private final int[] accepts;
+    private final int maxLength;
+
+    private LiteralChoiceExpression(List<CharSequenceExpression> alternatives) {
+        this.alternatives = alternatives;
+        this.prefixes = new LinkedHashSet<>(alternatives);
+        this.expected = TerminalSet.of(prefixes);
+
+        List<TreeMap<Character, Integer>> nodes = new ArrayList<>();
+        List<Integer> accepts = new ArrayList<>();
+        nodes.add(new TreeMap<Character, Integer>());
+        accepts.add(-1);
+        int maxLength = 0;
+        for (int i = 0; i < alternatives.size(); i++) {
+            String chars = alternatives.get(i).getChars();
+            maxLength = Math.max(maxLength, chars.length());
+            int node = 0;
+            for (int j = 0; j < chars.length(); j++) {
+                Integer next = nodes.get(node).get(chars.charAt(j));
+                if (next == null) {
+                    next = nodes.size();
+                    nodes.add(new TreeMap<Character, Integer>());
+                    accepts.add(-1);
+                    nodes.get(node).put(chars.charAt(j), next);
+                }
+                node = next;
+            }
+            if (accepts.get(node) < 0) {
+                // The first alternative for a literal wins
+                accepts.set(node, i);
+            }
+        }
+
+        this.edges = new char[nodes.size()][];
+        this.targets = new int[nodes.size()][];
+        this.accepts = new int[nodes.size()];
+        for (int node = 0; node < nodes.size(); node++) {
+            TreeMap<Character, Integer> edges = nodes.get(node);
+            this.edges[node] = new char[edges.size()];
+            this.targets[node] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> entry : edges.entrySet()) {
+                this.edges[node][i] = entry.getKey();
+                this.targets[node][i] = entry.getValue();
+                i++;
+            }
+            this.accepts[node] = accepts.get(node);
+        }
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Creates an expression that matches the same input as the given ordered choice, or returns null when not all of the alternatives are literals.
+     */
+    public static LiteralChoiceExpression fuse(List<? extends MatchExpression> alternatives) {
+        List<CharSequenceExpression> literals = new ArrayList<>(alternatives.size());
+        for (MatchExpression alternative : alternatives) {
+            if (!(alternative instanceof CharSequenceExpression) || ((CharSequenceExpression) alternative).getChars().isEmpty()) {
+                return null;
+            }
+            literals.add((CharSequenceExpression) alternative);
+        }
+        return new LiteralChoiceExpression(literals);
+    }
+
+    public List<CharSequenceExpression> getExpressions() {
+        return alternatives;
+    }
+
+    @Override
+    public String toString() {
+        return "{one-of " + alternatives + "}";
+    }
+
+    @Override
+    public Matcher getMatcher() {
+        return this;
+    }
+
+    @Override
+    public boolean isAcceptEmpty() {
+        return false;
+    }
+
+    @Override
+    public Set<? extends Terminal> getPrefixes() {
+        return prefixes;
+    }
+
+    /**
+     * Returns the alternative that matches the given input at the given offset, or null when none match.
+     */
+    public CharSequenceExpression match(CharSequence input, int pos) {
+        int best = -1;
+        int node = 0;
+        for (int i = pos; i < input.length(); i++) {
+            char[] chars = edges[node];
+            int edge = chars.length < 8 ? indexOf(chars, input.charAt(i)) : Arrays.binarySearch(chars, input.charAt(i));
+            if (edge < 0) {
+                break;
+            }
+            node = targets[node][edge];
+            int accept = accepts[node];
+            if (accept >= 0 && (best < 0 || accept < best)) {
+                best = accept;
+                if (best == 0) {
+                    break;
+                }
+            }
+        }
+        return best < 0 ? null : alternatives.get(best);
+    }
+
+    private static int indexOf(char[] chars, char ch) {
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] == ch) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean consume(CharStream stream, MatchVisitor visitor) {
+        int start = stream.getOffset();
+        CharSequence input = stream.getInput();
+        // A longer input might match a different alternative
+        stream.markExamined(Math.min(start + maxLength, input.length() + 1));
+        CharSequenceExpression match = match(input, start);
+        if (match == null) {
+            visitor.attempted(start, expected);
+            return false;
+        }
+        // The alternatives attempted before the match fail at the start, so are superseded by the match
+        int end = start + match.getChars().length();
+        stream.moveTo(end);
+        visitor.matched(match, start, end);
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+package net.rubygrapefruit.parser.peg.internal.expression;
+
+import net.rubygrapefruit.parser.peg.internal.match.MatchExpression;
+import net.rubygrapefruit.parser.peg.internal.match.MatchVisitor;
+import net.rubygrapefruit.parser.peg.internal.match.Matcher;
+import net.rubygrapefruit.parser.peg.internal.match.Terminal;
+import net.rubygrapefruit.parser.peg.internal.stream.CharSequences;
+import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Matches a sequence of literals using a single string comparison, producing a token for each literal. When the sequence does not match, the
+ * literals are matched one at a time to report the failure in the same way as the sequence would.
+ */
+class LiteralSequenceMatcher implements MatchExpression, Matcher {
+    private final CharSequenceExpression[] literals;
+    private final String chars;
+
+    LiteralSequenceMatcher(List<CharSequenceExpression> literals) {
+        this.literals = literals.toArray(new CharSequenceExpression[literals.size()]);
+        StringBuilder chars = new StringBuilder();
+        for (CharSequenceExpression literal : literals) {
+            chars.append(literal.getChars());
+        }
+        this.chars = chars.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "{literals: \"" + chars + "\"}";
+    }
+
+    @Override
+    public Matcher getMatcher() {
+        return this;
+    }
+
+    @Override
+    public boolean isAcceptEmpty() {
+        return false;
+    }
+
+    @Override
+    public Set<? extends Terminal> getPrefixes() {
+        return literals[0].getPrefixes();
+    }
+
+    @Override
+    public boolean consume(CharStream stream, MatchVisitor visitor) {
+        CharSequence input = stream.getInput();
+        int pos = stream.getOffset();
+        boolean matched = CharSequences.startsWith(input, chars, pos);
+        for (CharSequenceExpression literal : literals) {
+            String str = literal.getChars();
+            if (!matched && !CharSequences.startsWith(input, str, pos)) {
+                stream.markExamined(Math.min(pos + str.length(), input.length() + 1));
+                stream.moveTo(pos);
+                visitor.attempted(pos, literal.getExpected());
+                return false;
+            }
+            visitor.matched(literal, pos, pos + str.length());
+            pos += str.length();
+        }
+        stream.markExamined(pos);
+        stream.moveTo(pos);
+        return true;
+    }
+}
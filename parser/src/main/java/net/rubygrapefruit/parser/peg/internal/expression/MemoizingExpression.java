@@ -0,0 +1,135 @@
+package net.rubygrapefruit.parser.peg.internal.expression;
+
+import net.rubygrapefruit.parser.peg.internal.match.*;
+import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
+import net.rubygrapefruit.parser.peg.internal.stream.MemoTable;
+
+import java.util.Set;
+
+/**
+ * Matches the given expression, caching the result at each position of the stream so that the expression is matched at most once per position.
+ *
+ * <p>The cached results do not depend on the position where they start, and record how much of the input was examined to produce them, so that
+ * they can be reused when parsing an edited version of the input.</p>
+ */
+public class MemoizingExpression extends AbstractExpression implements Matcher {
+    private final MatchExpression expression;
+    private final int slot;
+
+    public MemoizingExpression(MatchExpression expression, int slot) {
+        this.expression = expression;
+        this.slot = slot;
+    }
+
+    public MatchExpression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns the slot of the memo table used to cache the results of this expression.
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public String toString() {
+        return "{memoize: " + expression + "}";
+    }
+
+    @Override
+    public Matcher getMatcher() {
+        return this;
+    }
+
+    @Override
+    public boolean isAcceptEmpty() {
+        return expression.getMatcher().isAcceptEmpty();
+    }
+
+    @Override
+    public Set<? extends Terminal> getPrefixes() {
+        return expression.getMatcher().getPrefixes();
+    }
+
+    @Override
+    public boolean consume(CharStream stream, MatchVisitor visitor) {
+        MemoTable memoTable = stream.getMemoTable();
+        if (memoTable == null) {
+            return expression.getMatcher().consume(stream, visitor);
+        }
+
+        int offset = stream.getOffset();
+        TokenArena arena = stream.getTokenArena();
+        BatchingMatchVisitor nested = arena.newVisitor();
+        Result result = (Result) memoTable.get(slot, offset);
+        if (result == null) {
+            // Determine how much of the input this expression examines
+            int examined = stream.getExamined();
+            stream.setExamined(offset);
+            boolean matched = expression.getMatcher().consume(stream, nested);
+            result = new Result(matched, offset, stream.getOffset(), stream.getExamined(), nested, arena);
+            memoTable.put(slot, offset, result);
+            stream.setExamined(Math.max(examined, stream.getExamined()));
+        } else {
+            // Replay the cached result, the tokens are copied into the arena
+            int matches = arena.restore(result.matches, offset);
+            int bestAlternative = result.bestAlternative == result.matches ? matches : arena.restore(result.bestAlternative, offset);
+            nested.replace(at(offset, result.matchEnd), at(offset, result.stoppedAt), result.expected, matches, bestAlternative, result.partialMatches);
+            stream.markExamined(offset + result.examined);
+        }
+
+        stream.moveTo(offset + result.end);
+        if (result.matched) {
+            visitor.matched(nested);
+        } else {
+            visitor.attempted(nested);
+        }
+        arena.release(nested);
+        return result.matched;
+    }
+
+    /**
+     * Converts a position relative to the given offset into an absolute position. A negative position means no position.
+     */
+    private static int at(int offset, int pos) {
+        return pos < 0 ? pos : offset + pos;
+    }
+
+    /**
+     * A copy of the result of matching the expression, which remains valid after the arena has been truncated. Positions are relative to the
+     * offset where matching started.
+     */
+    private static class Result implements MemoTable.Entry {
+        final boolean matched;
+        final int end;
+        final int examined;
+        final int matchEnd;
+        final int stoppedAt;
+        final TerminalSet expected;
+        final boolean partialMatches;
+        final TokenArena.Snapshot matches;
+        final TokenArena.Snapshot bestAlternative;
+
+        Result(boolean matched, int offset, int end, int examined, BatchingMatchVisitor nested, TokenArena arena) {
+            this.matched = matched;
+            this.end = end - offset;
+            this.examined = Math.max(0, examined - offset);
+            this.matchEnd = relative(offset, nested.getMatchEnd());
+            this.stoppedAt = relative(offset, nested.getStoppedAt());
+            this.expected = nested.getExpected().toSet();
+            this.partialMatches = nested.hasPartialMatches();
+            this.matches = arena.snapshot(nested.getMatches(), offset);
+            this.bestAlternative = partialMatches ? arena.snapshot(nested.getBestAlternative(), offset) : matches;
+        }
+
+        private static int relative(int offset, int pos) {
+            return pos < 0 ? pos : pos - offset;
+        }
+
+        @Override
+        public int getExamined() {
+            return examined;
+        }
+    }
+}
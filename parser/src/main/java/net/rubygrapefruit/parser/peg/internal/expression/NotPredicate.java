@@ -7,13 +7,17 @@ import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
 import java.util.Collections;
 import java.util.Set;
 
-public class NotPredicate implements Expression, MatchExpression, Matcher, MatchPoint {
+public class NotPredicate implements Expression, MatchExpression, Matcher {
     private final MatchExpression expression;
 
     public NotPredicate(MatchExpression expression) {
         this.expression = expression;
     }
 
+    public MatchExpression getExpression() {
+        return expression;
+    }
+
     @Override
     public String toString() {
         return "{not " + expression + "}";
@@ -41,13 +45,22 @@ public class NotPredicate implements Expression, MatchExpression, Matcher, Match
 
     @Override
     public boolean consume(CharStream stream, MatchVisitor visitor) {
+        stream.step();
         // TODO - use a visitor that does nothing
-        BatchingMatchVisitor nested = new BatchingMatchVisitor();
-        if (expression.getMatcher().consume(stream.tail(), nested)) {
-            visitor.attempted(stream.current(), this);
+        TokenArena arena = stream.getTokenArena();
+        BatchingMatchVisitor nested = arena.newVisitor();
+        int start = stream.getOffset();
+        boolean matched = expression.getMatcher().consume(stream, nested);
+        stream.moveTo(start);
+        // The tokens of the expression are never required
+        arena.truncate(nested.getMark());
+        arena.release(nested);
+        if (matched) {
+            // Nothing is expected
+            visitor.attempted(start, TerminalSet.EMPTY);
             return false;
         } else {
-            visitor.matched(stream.current());
+            visitor.matched(start);
             return true;
         }
     }
@@ -7,13 +7,18 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-public class OneOfExpression extends AbstractExpression implements Matcher, MatchPoint {
+public class OneOfExpression extends AbstractExpression implements Matcher {
     private final List<? extends MatchExpression> expressions;
+    private DispatchTable dispatchTable;
 
     public OneOfExpression(List<? extends MatchExpression> expressions) {
         this.expressions = expressions;
     }
 
+    public List<? extends MatchExpression> getExpressions() {
+        return expressions;
+    }
+
     @Override
     public String toString() {
         return "{one-of " + expressions + "}";
@@ -45,16 +50,38 @@ public class OneOfExpression extends AbstractExpression implements Matcher, Matc
 
     @Override
     public boolean consume(CharStream stream, MatchVisitor visitor) {
-        for (MatchExpression expression : expressions) {
-            CharStream tail = stream.tail();
-            BatchingMatchVisitor nested = new BatchingMatchVisitor();
-            if (expression.getMatcher().consume(tail, nested)) {
+        int start = stream.getOffset();
+        TokenArena arena = stream.getTokenArena();
+        DispatchTable.Entry entry = getDispatchTable().get(stream.peek());
+        int[] candidates = entry.candidates;
+        for (int i = 0; i < candidates.length; i++) {
+            if (entry.rejected[i] != null) {
+                visitor.attempted(start, entry.rejected[i]);
+            }
+            stream.step();
+            BatchingMatchVisitor nested = arena.newVisitor();
+            if (expressions.get(candidates[i]).getMatcher().consume(stream, nested)) {
                 visitor.matched(nested);
-                stream.moveTo(tail);
+                arena.release(nested);
                 return true;
             }
             visitor.attempted(nested);
+            arena.release(nested);
+            stream.moveTo(start);
+        }
+        if (entry.rejected[candidates.length] != null) {
+            visitor.attempted(start, entry.rejected[candidates.length]);
         }
         return false;
     }
+
+    private DispatchTable getDispatchTable() {
+        // The table is immutable, so can be safely calculated more than once by concurrent parses
+        DispatchTable dispatchTable = this.dispatchTable;
+        if (dispatchTable == null) {
+            dispatchTable = DispatchTable.of(expressions);
+            this.dispatchTable = dispatchTable;
+        }
+        return dispatchTable;
+    }
 }
@@ -14,6 +14,10 @@ public class OneOrMoreExpression extends AbstractExpression {
         matcher = new SequenceExpression(Arrays.asList(expression, new ZeroOrMoreExpression(expression))).getMatcher();
     }
 
+    public MatchExpression getExpression() {
+        return expression;
+    }
+
     @Override
     public String toString() {
         return "{one-or-more: " + expression + "}";
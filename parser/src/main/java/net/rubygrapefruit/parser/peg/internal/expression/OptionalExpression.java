@@ -12,6 +12,10 @@ public class OptionalExpression extends AbstractExpression implements Matcher {
         this.expression = expression;
     }
 
+    public MatchExpression getExpression() {
+        return expression;
+    }
+
     @Override
     public String toString() {
         return "{optional: " + expression + "}";
@@ -34,14 +38,18 @@ public class OptionalExpression extends AbstractExpression implements Matcher {
 
     @Override
     public boolean consume(CharStream stream, MatchVisitor visitor) {
-        CharStream tail = stream.tail();
-        BatchingMatchVisitor nested = new BatchingMatchVisitor();
-        if (expression.getMatcher().consume(tail, nested)) {
+        stream.step();
+        int start = stream.getOffset();
+        TokenArena arena = stream.getTokenArena();
+        BatchingMatchVisitor nested = arena.newVisitor();
+        if (expression.getMatcher().consume(stream, nested)) {
             visitor.matched(nested);
-            stream.moveTo(tail);
+            arena.release(nested);
         } else {
+            stream.moveTo(start);
             visitor.attempted(nested);
-            visitor.matched(stream.current());
+            arena.release(nested);
+            visitor.matched(start);
         }
         return true;
     }
@@ -0,0 +1,88 @@
+package net.rubygrapefruit.parser.peg.internal.expression;
+
+import net.rubygrapefruit.parser.peg.internal.match.*;
+import net.rubygrapefruit.parser.peg.internal.profile.ProfileRecorder;
+import net.rubygrapefruit.parser.peg.internal.profile.RuleRecorder;
+import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
+
+import java.util.Set;
+
+/**
+ * Matches a rule of a profiled parser, recording each invocation of the rule. See {@link ExpressionProfiler}.
+ */
+public class ProfiledExpression implements MatchExpression, Matcher {
+    private final RuleRecorder recorder;
+    private final ExpressionProfiler profiler;
+    private ProfileRecorder.Rule rule;
+    // Set once the graph has been copied, which happens on first use for the root expression
+    private volatile MatchExpression expression;
+
+    ProfiledExpression(RuleRecorder recorder, ExpressionProfiler profiler) {
+        this.recorder = recorder;
+        this.profiler = profiler;
+    }
+
+    void init(ProfileRecorder.Rule rule, MatchExpression expression) {
+        this.rule = rule;
+        this.expression = expression;
+    }
+
+    /**
+     * Returns the expression for the rule.
+     */
+    public MatchExpression getExpression() {
+        MatchExpression expression = this.expression;
+        if (expression == null) {
+            profiler.copy();
+            expression = this.expression;
+        }
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return "{profile " + rule + "}";
+    }
+
+    @Override
+    public Matcher getMatcher() {
+        return this;
+    }
+
+    @Override
+    public boolean isAcceptEmpty() {
+        return getExpression().getMatcher().isAcceptEmpty();
+    }
+
+    @Override
+    public Set<? extends Terminal> getPrefixes() {
+        return getExpression().getMatcher().getPrefixes();
+    }
+
+    @Override
+    public boolean consume(CharStream stream, MatchVisitor visitor) {
+        Matcher matcher = getExpression().getMatcher();
+        ProfileRecorder.Rule rule = this.rule;
+        int start = stream.getOffset();
+        TokenArena arena = stream.getTokenArena();
+        BatchingMatchVisitor nested = arena.newVisitor();
+        boolean completed = false;
+        boolean matched = false;
+        Object frame = recorder.enter(rule);
+        try {
+            matched = matcher.consume(stream, nested);
+            completed = true;
+        } finally {
+            // A failure is charged with the characters it matched before it failed, as these are discarded
+            int end = matched ? stream.getOffset() : Math.max(start, nested.getStoppedAt());
+            recorder.exit(frame, completed, matched, start, end);
+        }
+        if (matched) {
+            visitor.matched(nested);
+        } else {
+            visitor.attempted(nested);
+        }
+        arena.release(nested);
+        return matched;
+    }
+}
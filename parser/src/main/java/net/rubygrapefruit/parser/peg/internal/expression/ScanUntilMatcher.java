@@ -0,0 +1,99 @@
+package net.rubygrapefruit.parser.peg.internal.expression;
+
+import net.rubygrapefruit.parser.peg.internal.match.MatchExpression;
+import net.rubygrapefruit.parser.peg.internal.match.MatchVisitor;
+import net.rubygrapefruit.parser.peg.internal.match.Matcher;
+import net.rubygrapefruit.parser.peg.internal.match.Terminal;
+import net.rubygrapefruit.parser.peg.internal.match.TerminalSet;
+import net.rubygrapefruit.parser.peg.internal.stream.CharSequences;
+import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
+
+import java.util.Set;
+
+/**
+ * Matches {@code zeroOrMore(sequence(not(chars(terminator)), anything()))} by searching for the terminator, rather than attempting the predicate and
+ * the sequence at each character. Produces the same tokens and reports the same failure as the original expression.
+ */
+public class ScanUntilMatcher implements Matcher {
+    private final ZeroOrMoreExpression expression;
+    private final NotPredicate predicate;
+    private final CharSequenceExpression terminator;
+    private final AnythingExpression anything;
+
+    private ScanUntilMatcher(ZeroOrMoreExpression expression, NotPredicate predicate, CharSequenceExpression terminator, AnythingExpression anything) {
+        this.expression = expression;
+        this.predicate = predicate;
+        this.terminator = terminator;
+        this.anything = anything;
+    }
+
+    /**
+     * Creates a matcher for the given expression, or returns null when the expression is not of the expected form.
+     */
+    public static ScanUntilMatcher of(ZeroOrMoreExpression expression, ExpressionGraph graph) {
+        MatchExpression sequence = graph.resolve(expression.getExpression());
+        if (!(sequence instanceof SequenceExpression) || ((SequenceExpression) sequence).getExpressions().size() != 2) {
+            return null;
+        }
+        MatchExpression first = graph.resolve(((SequenceExpression) sequence).getExpressions().get(0));
+        MatchExpression second = graph.resolve(((SequenceExpression) sequence).getExpressions().get(1));
+        if (!(first instanceof NotPredicate) || !(second instanceof AnythingExpression)) {
+            return null;
+        }
+        MatchExpression terminator = graph.resolve(((NotPredicate) first).getExpression());
+        if (!(terminator instanceof CharSequenceExpression) || ((CharSequenceExpression) terminator).getChars().isEmpty()) {
+            return null;
+        }
+        return new ScanUntilMatcher(expression, (NotPredicate) first, (CharSequenceExpression) terminator, (AnythingExpression) second);
+    }
+
+    public CharSequenceExpression getTerminator() {
+        return terminator;
+    }
+
+    public AnythingExpression getAnything() {
+        return anything;
+    }
+
+    @Override
+    public String toString() {
+        return "{scan-until: " + terminator + "}";
+    }
+
+    @Override
+    public boolean isAcceptEmpty() {
+        return true;
+    }
+
+    @Override
+    public Set<? extends Terminal> getPrefixes() {
+        return expression.getPrefixes();
+    }
+
+    @Override
+    public boolean consume(CharStream stream, MatchVisitor visitor) {
+        CharSequence input = stream.getInput();
+        int start = stream.getOffset();
+        int end = CharSequences.indexOf(input, terminator.getChars(), start);
+        boolean found = end >= 0;
+        if (found) {
+            stream.markExamined(end + terminator.getChars().length());
+        } else {
+            end = input.length();
+            stream.markHitEnd();
+        }
+        for (int pos = start; pos < end; pos++) {
+            visitor.matched(anything, pos, pos + 1);
+        }
+        stream.moveTo(end);
+        stream.step(end - start);
+        // Report the expression that stopped the loop: the predicate, when the terminator is found, otherwise the end of input
+        if (found) {
+            visitor.attempted(end, TerminalSet.EMPTY);
+        } else {
+            visitor.attempted(end, anything.getExpected());
+        }
+        visitor.matched(end);
+        return true;
+    }
+}
@@ -3,21 +3,66 @@ package net.rubygrapefruit.parser.peg.internal.expression;
 import net.rubygrapefruit.parser.peg.internal.match.*;
 import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 public class SequenceExpression extends AbstractExpression {
     private final List<? extends MatchExpression> expressions;
-    private final SequenceMatcher matcher;
+    // Replaced by the optimizer, possibly while other threads are matching
+    private volatile SequenceMatcher matcher;
+    // Guarded by the optimizer's lock
+    private boolean optimized;
 
     public SequenceExpression(List<? extends MatchExpression> expressions) {
         this.expressions = expressions;
+        this.matcher = chain(expressions);
+    }
+
+    private static SequenceMatcher chain(List<? extends MatchExpression> expressions) {
         SequenceMatcher matcher = null;
         for (int i = expressions.size() - 1; i >= 0; i--) {
             matcher = new SequenceMatcher(expressions.get(i), matcher);
         }
-        this.matcher = matcher;
+        return matcher;
+    }
+
+    /**
+     * Replaces the matcher for this sequence with an equivalent one, where references are replaced with their targets and each run of adjacent
+     * literals is matched as a single string. Called while holding the lock of the {@link GrammarOptimizer}.
+     */
+    void optimize(ExpressionGraph graph) {
+        if (optimized) {
+            return;
+        }
+        List<MatchExpression> replacement = new ArrayList<>(expressions.size());
+        List<CharSequenceExpression> literals = new ArrayList<>();
+        for (MatchExpression expression : expressions) {
+            MatchExpression target = graph.resolve(expression);
+            if (target instanceof CharSequenceExpression) {
+                literals.add((CharSequenceExpression) target);
+                continue;
+            }
+            addLiterals(literals, replacement);
+            replacement.add(target);
+        }
+        addLiterals(literals, replacement);
+        matcher = chain(replacement);
+        optimized = true;
+    }
+
+    private static void addLiterals(List<CharSequenceExpression> literals, List<MatchExpression> optimized) {
+        if (literals.size() == 1) {
+            optimized.add(literals.get(0));
+        } else if (literals.size() > 1) {
+            optimized.add(new LiteralSequenceMatcher(literals));
+        }
+        literals.clear();
+    }
+
+    public List<? extends MatchExpression> getExpressions() {
+        return expressions;
     }
 
     @Override
@@ -30,7 +75,7 @@ public class SequenceExpression extends AbstractExpression {
         return matcher;
     }
 
-    private static class SequenceMatcher implements Matcher, MatchExpression, MatchPoint {
+    private static class SequenceMatcher implements Matcher, MatchExpression {
         private final MatchExpression expression;
         private final SequenceMatcher next;
 
@@ -73,26 +118,29 @@ public class SequenceExpression extends AbstractExpression {
 
         @Override
         public boolean consume(CharStream stream, MatchVisitor visitor) {
-            BatchingMatchVisitor thisMatch = new BatchingMatchVisitor();
-            CharStream tail = stream.tail();
-            boolean matched = expression.getMatcher().consume(tail, thisMatch);
-            stream.moveTo(tail);
+            TokenArena arena = stream.getTokenArena();
+            BatchingMatchVisitor thisMatch = arena.newVisitor();
+            boolean matched = expression.getMatcher().consume(stream, thisMatch);
             if (!matched) {
                 visitor.attempted(thisMatch);
+                arena.release(thisMatch);
                 return false;
             }
             visitor.matched(thisMatch);
+            arena.release(thisMatch);
             if (next == null) {
                 return true;
             }
 
-            BatchingMatchVisitor nextMatch = new BatchingMatchVisitor();
+            BatchingMatchVisitor nextMatch = arena.newVisitor();
             matched = next.consume(stream, nextMatch);
             if (!matched) {
                 visitor.attempted(nextMatch);
+                arena.release(nextMatch);
                 return false;
             }
             visitor.matched(nextMatch);
+            arena.release(nextMatch);
             return true;
         }
     }
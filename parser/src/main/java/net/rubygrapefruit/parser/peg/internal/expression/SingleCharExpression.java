@@ -0,0 +1,31 @@
+package net.rubygrapefruit.parser.peg.internal.expression;
+
+import net.rubygrapefruit.parser.peg.Expression;
+import net.rubygrapefruit.parser.peg.internal.match.MatchExpression;
+import net.rubygrapefruit.parser.peg.internal.match.Terminal;
+import net.rubygrapefruit.parser.peg.internal.match.TerminalSet;
+
+import java.util.Set;
+
+/**
+ * An expression that matches exactly one character. A run of such characters can be matched in a single loop, without attempting the expression
+ * for each character.
+ */
+public interface SingleCharExpression extends MatchExpression {
+    Set<? extends Terminal> getPrefixes();
+
+    /**
+     * Returns the terminals expected when this expression does not match.
+     */
+    TerminalSet getExpected();
+
+    /**
+     * Returns the type of the token to produce for the given character, or null when the character does not match.
+     */
+    Expression getTokenType(char ch);
+
+    /**
+     * Can this expression match a character outside the ASCII range?
+     */
+    boolean isMatchesNonAscii();
+}
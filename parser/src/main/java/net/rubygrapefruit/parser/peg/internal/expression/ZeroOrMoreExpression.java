@@ -1,5 +1,6 @@
 package net.rubygrapefruit.parser.peg.internal.expression;
 
+import net.rubygrapefruit.parser.peg.Expression;
 import net.rubygrapefruit.parser.peg.internal.match.*;
 import net.rubygrapefruit.parser.peg.internal.stream.CharStream;
 
@@ -7,9 +8,19 @@ import java.util.Set;
 
 public class ZeroOrMoreExpression extends AbstractExpression implements Matcher {
     private final MatchExpression expression;
+    private final SingleCharExpression charExpression;
+    // Replaced by the optimizer, possibly while other threads are matching
+    private volatile Matcher matcher = this;
+    // Guarded by the optimizer's lock
+    private boolean optimized;
 
     public ZeroOrMoreExpression(MatchExpression expression) {
         this.expression = expression;
+        this.charExpression = expression instanceof SingleCharExpression ? (SingleCharExpression) expression : null;
+    }
+
+    public MatchExpression getExpression() {
+        return expression;
     }
 
     @Override
@@ -19,7 +30,22 @@ public class ZeroOrMoreExpression extends AbstractExpression implements Matcher
 
     @Override
     public Matcher getMatcher() {
-        return this;
+        return matcher;
+    }
+
+    /**
+     * Replaces the matcher for this expression with an equivalent one, when there is a faster one. Called while holding the lock of the
+     * {@link GrammarOptimizer}.
+     */
+    void optimize(ExpressionGraph graph) {
+        if (optimized) {
+            return;
+        }
+        ScanUntilMatcher scan = ScanUntilMatcher.of(this, graph);
+        if (scan != null) {
+            matcher = scan;
+        }
+        optimized = true;
     }
 
     @Override
@@ -34,18 +60,50 @@ public class ZeroOrMoreExpression extends AbstractExpression implements Matcher
 
     @Override
     public boolean consume(CharStream stream, MatchVisitor visitor) {
+        if (charExpression != null) {
+            consumeRun(stream, visitor);
+            return true;
+        }
+        TokenArena arena = stream.getTokenArena();
         while (true) {
-            CharStream tail = stream.tail();
-            BatchingMatchVisitor nested = new BatchingMatchVisitor();
-            boolean matched = expression.getMatcher().consume(tail, nested);
+            stream.step();
+            int start = stream.getOffset();
+            BatchingMatchVisitor nested = arena.newVisitor();
+            boolean matched = expression.getMatcher().consume(stream, nested);
             if (!matched) {
+                stream.moveTo(start);
                 visitor.attempted(nested);
+                arena.release(nested);
                 break;
             }
             visitor.matched(nested);
-            stream.moveTo(tail);
+            arena.release(nested);
         }
-        visitor.matched(stream.current());
+        visitor.matched(stream.getOffset());
         return true;
     }
+
+    /**
+     * Consumes a run of characters that match the single character expression, reporting the same results as matching the expression
+     * for each character.
+     */
+    private void consumeRun(CharStream stream, MatchVisitor visitor) {
+        CharSequence input = stream.getInput();
+        int length = input.length();
+        int start = stream.getOffset();
+        int pos = start;
+        while (pos < length) {
+            Expression type = charExpression.getTokenType(input.charAt(pos));
+            if (type == null) {
+                break;
+            }
+            visitor.matched(type, pos, pos + 1);
+            pos++;
+        }
+        stream.markExamined(pos + 1);
+        stream.moveTo(pos);
+        stream.step(pos - start);
+        visitor.attempted(pos, charExpression.getExpected());
+        visitor.matched(pos);
+    }
 }
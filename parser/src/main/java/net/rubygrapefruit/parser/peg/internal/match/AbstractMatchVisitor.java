@@ -1,261 +1,268 @@
 package net.rubygrapefruit.parser.peg.internal.match;
 
-import net.rubygrapefruit.parser.peg.internal.stream.StreamPos;
+import net.rubygrapefruit.parser.peg.Expression;
+
+import static net.rubygrapefruit.parser.peg.internal.match.TokenArena.EMPTY;
+
+/**
+ * Tracks the results of the expressions attempted by some expression, so that the matches and the best partial match can be accepted or discarded
+ * by the parent expression. Tokens are held in a {@link TokenArena} and referenced using handles.
+ *
+ * <p>A match is committed once it has made at least as much progress as all of the alternatives attempted so far. Otherwise, it is queued as pending
+ * until a later match catches up, or until the partial matches are committed.</p>
+ *
+ * <p>When the arena is recognizing, as set using {@link TokenArena#setRecognizing(boolean)}, the visitor only tracks the matches. Every match is
+ * committed and the attempts are ignored, so the farthest position reached, the expected terminals and the partial matches are not available.
+ * The matches are the same as when failures are tracked, provided that the whole input matches.</p>
+ */
+public abstract class AbstractMatchVisitor implements MatchVisitor {
+    private static final int NONE = -1;
+    protected final TokenArena arena;
+    private int matchEnd;
+    private int stoppedAt;
+    private final ExpectedTerminals expected = new ExpectedTerminals();
+    private int bestAlternative;
+    private int committed;
+    private int pendingCount;
+    private int pendingHead;
+    private int lastPending;
+    private int lastPendingBestAlternative;
+    private boolean recognizing;
+
+    protected AbstractMatchVisitor(TokenArena arena) {
+        this.arena = arena;
+        reset();
+    }
 
-import java.util.ArrayList;
-import java.util.List;
+    /**
+     * Discards all state, so that this visitor can be reused.
+     */
+    protected void reset() {
+        recognizing = arena.isRecognizing();
+        matchEnd = -1;
+        stoppedAt = -1;
+        expected.clear();
+        bestAlternative = NONE;
+        committed = EMPTY;
+        clearPending();
+    }
 
-import static net.rubygrapefruit.parser.peg.internal.match.MatchPoint.*;
+    /**
+     * Replaces the state of this visitor with the given result.
+     */
+    protected void restore(int matchEnd, int stoppedAt, TerminalSet expected, int matches, int bestAlternative, boolean partialMatches) {
+        restore(matchEnd, stoppedAt, matches, bestAlternative, partialMatches);
+        this.expected.set(expected);
+    }
 
-public abstract class AbstractMatchVisitor implements MatchVisitor {
-    private StreamPos matchEnd;
-    private StreamPos stoppedAt;
-    private MatchPoint matchPoint;
-    private TokenSource bestAlternative;
-    private List<ExpressionMatchResult> pending;
+    /**
+     * Replaces the state of this visitor with the given result, keeping the expected terminals.
+     */
+    protected void restore(int matchEnd, int stoppedAt, int matches, int bestAlternative, boolean partialMatches) {
+        this.matchEnd = matchEnd;
+        this.stoppedAt = stoppedAt;
+        this.bestAlternative = NONE;
+        committed = EMPTY;
+        clearPending();
+        if (partialMatches) {
+            pendingCount = 1;
+            lastPending = matches;
+            lastPendingBestAlternative = bestAlternative;
+        } else {
+            committed = matches;
+        }
+    }
 
-    public StreamPos getMatchEnd() {
+    /**
+     * Returns the end of the most recent match, or -1 when nothing has matched.
+     */
+    public int getMatchEnd() {
         return matchEnd;
     }
 
-    public StreamPos getStoppedAt() {
+    /**
+     * Returns the farthest position reached by any match or attempt, or -1 when nothing has been attempted.
+     */
+    public int getStoppedAt() {
         return stoppedAt;
     }
 
-    public MatchPoint getMatchPoint() {
-        return matchPoint == null ? NO_ALTERNATIVES : matchPoint;
+    /**
+     * Returns the terminals that were expected at the farthest position reached. These are merged into this visitor as alternatives are attempted,
+     * so the result is only valid until the next call to this visitor.
+     */
+    public ExpectedTerminals getExpected() {
+        return expected;
     }
 
     public boolean hasPartialMatches() {
-        return bestAlternative != null || (pending != null && !pending.isEmpty());
+        return bestAlternative != NONE || pendingCount > 0;
     }
 
-    protected void commitMatching() {
-        if (pending != null) {
-            for (ExpressionMatchResult result : pending) {
-                commit(result);
-            }
-            pending.clear();
+    /**
+     * Returns the tokens of the matches, including those that are waiting to be accepted.
+     */
+    public int getMatches() {
+        if (pendingCount == 0) {
+            return committed;
+        }
+        return arena.concat(committed, arena.concat(pendingHead, lastPending));
+    }
+
+    /**
+     * Returns the tokens of the matches and partial matches of the best alternative.
+     */
+    public int getBestAlternative() {
+        if (bestAlternative != NONE) {
+            return arena.concat(committed, bestAlternative);
+        }
+        if (pendingCount > 0) {
+            return arena.concat(committed, arena.concat(pendingHead, lastPendingBestAlternative));
         }
+        return committed;
+    }
+
+    /**
+     * Are there any matches or partial matches that are waiting to be accepted or discarded?
+     */
+    public boolean hasPendingMatches() {
+        return pendingCount > 0 || (bestAlternative != NONE && bestAlternative != EMPTY);
+    }
+
+    /**
+     * Removes the committed matches from this visitor and returns them. The committed matches always precede any other matches reported by this
+     * visitor, so can be forwarded before matching has finished.
+     */
+    public int takeCommittedMatches() {
+        int matches = committed;
+        committed = EMPTY;
+        return matches;
     }
 
     public void commitPartialMatches() {
-        if (bestAlternative != null) {
+        if (bestAlternative != NONE) {
             commit(bestAlternative);
-            if (pending != null) {
-                pending.clear();
-            }
-            bestAlternative = null;
+            clearPending();
+            bestAlternative = NONE;
         }
-        if (pending != null && !pending.isEmpty()) {
-            for (int i = 0; i < pending.size() - 1; i++) {
-                ExpressionMatchResult result = pending.get(i);
-                commit(result);
-            }
-            commit(pending.get(pending.size()-1).withBestAlternative());
-            pending.clear();
+        if (pendingCount > 0) {
+            commit(pendingHead);
+            commit(lastPendingBestAlternative);
+            clearPending();
         }
     }
 
     @Override
-    public void attempted(StreamPos pos, MatchPoint expression) {
-        attempted(new MatchNothingResult(pos, expression));
+    public void attempted(int pos, TerminalSet expected) {
+        if (recognizing) {
+            return;
+        }
+        if (pos > stoppedAt) {
+            // This alternative has made more progress than matches
+            this.expected.set(expected);
+            stoppedAt = pos;
+            bestAlternative = EMPTY;
+        } else if (pos == stoppedAt) {
+            // This alternative has made the same progress as other alternatives
+            this.expected.add(expected);
+        }
     }
 
     @Override
     public void attempted(ExpressionMatchResult result) {
-        if (stoppedAt == null) {
-            matchPoint = result.getMatchPoint();
-            stoppedAt = result.getStoppedAt();
-            bestAlternative = result.withBestAlternative();
+        if (recognizing) {
+            arena.truncate(result.getMark());
             return;
         }
-        int diff = result.getStoppedAt().diff(stoppedAt);
-        if (diff > 0) {
+        int pos = result.getStoppedAt();
+        if (pos > stoppedAt) {
             // This alternative has made more progress than matches
-            matchPoint = result.getMatchPoint();
-            stoppedAt = result.getStoppedAt();
-            bestAlternative = result.withBestAlternative();
-        } else if (diff == 0) {
+            expected.set(result.getExpected());
+            stoppedAt = pos;
+            bestAlternative = result.getBestAlternative();
+            return;
+        }
+        if (pos == stoppedAt) {
             // This alternative has made the same progress as other alternatives
-            matchPoint = CompositeMatchPoint.of(matchPoint, result.getMatchPoint());
+            expected.add(result.getExpected());
         }
+        // The tokens of this alternative are not required
+        arena.truncate(result.getMark());
     }
 
     @Override
-    public void matched(StreamPos endPos) {
-        matched(new EmptyMatchResult(endPos));
-    }
-
-    @Override
-    public void matched(MatchResult result) {
-        matched(new SingleTokenResult(result));
+    public void matched(int endPos) {
+        if (!accept(endPos, endPos, null)) {
+            queue(EMPTY, EMPTY);
+        }
     }
 
     @Override
-    public void matched(ExpressionMatchResult result) {
-        matchEnd = result.getMatchEnd();
-        if (stoppedAt == null) {
-            stoppedAt = result.getStoppedAt();
-            matchPoint = result.getMatchPoint();
-            acceptMatch(result);
-            return;
-        }
-        int diff = result.getStoppedAt().diff(stoppedAt);
-        if (diff > 0) {
-            // This match has made the most progress
-            stoppedAt = result.getStoppedAt();
-            matchPoint = result.getMatchPoint();
-            bestAlternative = null;
-            acceptMatch(result);
-        } else if (diff == 0) {
-            // This match has made the same amount of progress
-            matchPoint = CompositeMatchPoint.of(matchPoint, result.getMatchPoint());
-            bestAlternative = null;
-            acceptMatch(result);
+    public void matched(Expression expression, int start, int end) {
+        int token = arena.token(expression, start, end);
+        if (accept(end, end, null)) {
+            commit(token);
         } else {
-            // An alternative has made more progress, keep this
-            queueMatch(result);
+            queue(token, token);
         }
     }
 
-    private void acceptMatch(ExpressionMatchResult result) {
-        if (pending != null) {
-            for (ExpressionMatchResult batched : pending) {
-                commit(batched);
-            }
-            pending.clear();
-        }
-        if (result.hasPartialMatches()) {
-            queueMatch(result);
+    @Override
+    public void matched(ExpressionMatchResult result) {
+        if (accept(result.getMatchEnd(), result.getStoppedAt(), result.getExpected()) && !result.hasPartialMatches()) {
+            commit(result.getMatches());
         } else {
-            commit(result);
-        }
-    }
-
-    private void queueMatch(ExpressionMatchResult result) {
-        if (pending == null) {
-            pending = new ArrayList<>();
+            queue(result.getMatches(), result.getBestAlternative());
         }
-        pending.add(result);
     }
 
     /**
-     * Adds the given result to the matches.
+     * Records a match and commits the pending matches, if the match has made at least as much progress as the alternatives.
+     *
+     * @return true if the match should be accepted, false if an alternative has made more progress and the match should be queued.
      */
-    protected abstract void commit(TokenSource result);
-
-    private static class SingleTokenResult implements ExpressionMatchResult {
-        private final MatchResult result;
-
-        SingleTokenResult(MatchResult result) {
-            this.result = result;
-        }
-
-        @Override
-        public void pushMatches(TokenCollector resultCollector) {
-            resultCollector.token(result);
-        }
-
-        @Override
-        public TokenSource withBestAlternative() {
-            return this;
+    private boolean accept(int end, int pos, ExpectedTerminals expected) {
+        matchEnd = end;
+        if (recognizing) {
+            return true;
         }
-
-        @Override
-        public boolean hasPartialMatches() {
+        if (pos > stoppedAt) {
+            // This match has made the most progress
+            stoppedAt = pos;
+            this.expected.set(expected);
+        } else if (pos == stoppedAt) {
+            // This match has made the same amount of progress
+            this.expected.add(expected);
+        } else {
+            // An alternative has made more progress, keep this
             return false;
         }
-
-        @Override
-        public StreamPos getMatchEnd() {
-            return result.getEnd();
-        }
-
-        @Override
-        public StreamPos getStoppedAt() {
-            return result.getEnd();
-        }
-
-        @Override
-        public MatchPoint getMatchPoint() {
-            return null;
+        bestAlternative = NONE;
+        if (pendingCount > 0) {
+            commit(pendingHead);
+            commit(lastPending);
+            clearPending();
         }
+        return true;
     }
 
-    private static class MatchNothingResult implements ExpressionMatchResult {
-        private final StreamPos pos;
-        private final MatchPoint expected;
-
-        MatchNothingResult(StreamPos pos, MatchPoint expected) {
-            this.pos = pos;
-            this.expected = expected;
-        }
-
-        @Override
-        public void pushMatches(TokenCollector resultCollector) {
-        }
-
-        @Override
-        public TokenSource withBestAlternative() {
-            return EMPTY;
-        }
-
-        @Override
-        public boolean hasPartialMatches() {
-            return false;
-        }
-
-        @Override
-        public StreamPos getMatchEnd() {
-            return pos;
-        }
-
-        @Override
-        public StreamPos getStoppedAt() {
-            return pos;
-        }
-
-        @Override
-        public MatchPoint getMatchPoint() {
-            return expected;
-        }
+    private void commit(int tokens) {
+        committed = arena.concat(committed, tokens);
     }
 
-    private static class EmptyMatchResult implements ExpressionMatchResult {
-        private final StreamPos endPos;
-
-        EmptyMatchResult(StreamPos endPos) {
-            this.endPos = endPos;
-        }
-
-        @Override
-        public void pushMatches(TokenCollector resultCollector) {
-        }
-
-        @Override
-        public TokenSource withBestAlternative() {
-            return EMPTY;
-        }
-
-        @Override
-        public boolean hasPartialMatches() {
-            return false;
-        }
-
-        @Override
-        public StreamPos getMatchEnd() {
-            return endPos;
-        }
-
-        @Override
-        public StreamPos getStoppedAt() {
-            return endPos;
+    private void queue(int matches, int bestAlternative) {
+        if (pendingCount > 0) {
+            pendingHead = arena.concat(pendingHead, lastPending);
         }
+        lastPending = matches;
+        lastPendingBestAlternative = bestAlternative;
+        pendingCount++;
+    }
 
-        @Override
-        public MatchPoint getMatchPoint() {
-            return null;
-        }
+    private void clearPending() {
+        pendingCount = 0;
+        pendingHead = EMPTY;
+        lastPending = EMPTY;
+        lastPendingBestAlternative = EMPTY;
     }
 }
@@ -1,38 +1,38 @@
 package net.rubygrapefruit.parser.peg.internal.match;
 
-import java.util.ArrayList;
-import java.util.List;
-
+/**
+ * Collects the results of matching an expression, so that they can be accepted or discarded by the parent expression.
+ *
+ * <p>Instances are pooled by the {@link TokenArena} of the parse, and are reused once their results have been forwarded to the parent.</p>
+ */
 public class BatchingMatchVisitor extends AbstractMatchVisitor implements ExpressionMatchResult {
-    private List<TokenSource> results;
+    private int mark;
 
-    @Override
-    public void pushMatches(TokenCollector resultCollector) {
-        commitMatching();
-        if (results != null) {
-            for (TokenSource result : results) {
-                result.pushMatches(resultCollector);
-            }
-            results.clear();
-        }
+    BatchingMatchVisitor(TokenArena arena) {
+        super(arena);
     }
 
-    @Override
-    protected void commit(TokenSource result) {
-        if (results == null) {
-            results = new ArrayList<>();
-        }
-        results.add(result);
+    void start(int mark) {
+        reset();
+        this.mark = mark;
     }
 
     @Override
-    public TokenSource withBestAlternative() {
-        return new TokenSource() {
-            @Override
-            public void pushMatches(TokenCollector resultCollector) {
-                commitPartialMatches();
-                BatchingMatchVisitor.this.pushMatches(resultCollector);
-            }
-        };
+    public int getMark() {
+        return mark;
+    }
+
+    /**
+     * Replaces the results collected by this visitor with the given result.
+     */
+    public void replace(int matchEnd, int stoppedAt, TerminalSet expected, int matches, int bestAlternative, boolean partialMatches) {
+        restore(matchEnd, stoppedAt, expected, matches, bestAlternative, partialMatches);
+    }
+
+    /**
+     * Replaces the results collected by this visitor with the given result, keeping the expected terminals.
+     */
+    public void replace(int matchEnd, int stoppedAt, int matches, int bestAlternative, boolean partialMatches) {
+        restore(matchEnd, stoppedAt, matches, bestAlternative, partialMatches);
     }
 }
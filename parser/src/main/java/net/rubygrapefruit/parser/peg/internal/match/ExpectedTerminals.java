@@ -0,0 +1,152 @@
+package net.rubygrapefruit.parser.peg.internal.match;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The terminals that are expected at the farthest position reached by some expression. The sets of the alternatives that stop at the same position
+ * are merged in place, so that no objects are created while matching. Until a set that is not a subset or superset of the current set is merged,
+ * the current set is referenced rather than copied.
+ */
+public final class ExpectedTerminals {
+    private TerminalSet shared;
+    private long[] words;
+    private int length;
+    private List<Terminal> others;
+    private boolean merged;
+
+    void clear() {
+        shared = null;
+        merged = false;
+    }
+
+    /**
+     * Replaces the terminals of this set with the given set, which may be null.
+     */
+    void set(TerminalSet set) {
+        shared = set;
+        merged = false;
+    }
+
+    /**
+     * Replaces the terminals of this set with the given set, which may be null.
+     */
+    void set(ExpectedTerminals other) {
+        if (other == null || !other.merged) {
+            set(other == null ? null : other.shared);
+            return;
+        }
+        shared = null;
+        merged = true;
+        length = 0;
+        if (others != null) {
+            others.clear();
+        }
+        or(other.words, other.length, other.others);
+    }
+
+    /**
+     * Adds the given set, which may be null, to this set.
+     */
+    void add(TerminalSet set) {
+        if (set == null || set == shared) {
+            return;
+        }
+        if (!merged) {
+            if (shared == null || contains(set, shared)) {
+                shared = set;
+                return;
+            }
+            if (contains(shared, set)) {
+                return;
+            }
+            startMerge();
+        }
+        or(set.words, set.words.length, set.others.length == 0 ? null : Arrays.asList(set.others));
+    }
+
+    /**
+     * Adds the given set, which may be null, to this set.
+     */
+    void add(ExpectedTerminals other) {
+        if (other == null || !other.merged) {
+            add(other == null ? null : other.shared);
+            return;
+        }
+        if (!merged) {
+            if (shared == null) {
+                set(other);
+                return;
+            }
+            startMerge();
+        }
+        or(other.words, other.length, other.others);
+    }
+
+    /**
+     * Does the first set contain all of the terminals of the second set?
+     */
+    private static boolean contains(TerminalSet first, TerminalSet second) {
+        if (second.others.length > 0) {
+            return false;
+        }
+        long[] words = first.words;
+        long[] other = second.words;
+        for (int i = 0; i < other.length; i++) {
+            long word = i < words.length ? words[i] : 0;
+            if ((other[i] & ~word) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void startMerge() {
+        TerminalSet first = shared;
+        shared = null;
+        merged = true;
+        length = 0;
+        if (others != null) {
+            others.clear();
+        }
+        or(first.words, first.words.length, first.others.length == 0 ? null : Arrays.asList(first.others));
+    }
+
+    private void or(long[] source, int sourceLength, List<Terminal> sourceOthers) {
+        if (sourceLength > length) {
+            if (words == null || sourceLength > words.length) {
+                words = words == null ? new long[Math.max(sourceLength, 4)] : Arrays.copyOf(words, Math.max(sourceLength, words.length * 2));
+            }
+            Arrays.fill(words, length, sourceLength, 0);
+            length = sourceLength;
+        }
+        for (int i = 0; i < sourceLength; i++) {
+            words[i] |= source[i];
+        }
+        if (sourceOthers != null && !sourceOthers.isEmpty()) {
+            if (others == null) {
+                others = new ArrayList<>();
+            }
+            others.addAll(sourceOthers);
+        }
+    }
+
+    /**
+     * Returns an immutable copy of this set. Does not create a new set unless sets have been merged, in which case this set then refers to the copy
+     * so that it is not copied again.
+     */
+    public TerminalSet toSet() {
+        if (!merged) {
+            return shared == null ? TerminalSet.EMPTY : shared;
+        }
+        int end = length;
+        while (end > 0 && words[end - 1] == 0) {
+            end--;
+        }
+        Terminal[] copy = others == null || others.isEmpty() ? TerminalSet.EMPTY.others : others.toArray(new Terminal[0]);
+        shared = new TerminalSet(Arrays.copyOf(words, end), copy);
+        merged = false;
+        return shared;
+    }
+}
@@ -1,18 +1,32 @@
 package net.rubygrapefruit.parser.peg.internal.match;
 
-import net.rubygrapefruit.parser.peg.internal.stream.StreamPos;
+/**
+ * The result of matching an expression. Tokens are referenced using handles into the {@link TokenArena} for the parse.
+ */
+public interface ExpressionMatchResult {
+    /**
+     * Returns the tokens of the match.
+     */
+    int getMatches();
 
-public interface ExpressionMatchResult extends TokenSource {
     /**
      * Returns all results including matches and partial matches.
      */
-    TokenSource withBestAlternative();
+    int getBestAlternative();
 
     boolean hasPartialMatches();
 
-    StreamPos getMatchEnd();
+    int getMatchEnd();
 
-    StreamPos getStoppedAt();
+    int getStoppedAt();
 
-    MatchPoint getMatchPoint();
+    /**
+     * Returns the terminals that were expected at the position where matching stopped.
+     */
+    ExpectedTerminals getExpected();
+
+    /**
+     * Returns the arena mark taken before the tokens of this result were created. The arena can be truncated to this mark when the result is discarded.
+     */
+    int getMark();
 }
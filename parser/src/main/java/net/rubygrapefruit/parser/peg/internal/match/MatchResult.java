@@ -2,13 +2,17 @@ package net.rubygrapefruit.parser.peg.internal.match;
 
 import net.rubygrapefruit.parser.peg.Expression;
 import net.rubygrapefruit.parser.peg.internal.DefaultRegion;
-import net.rubygrapefruit.parser.peg.internal.stream.StreamPos;
 
 public class MatchResult extends DefaultRegion {
     final Expression expression;
 
-    public MatchResult(Expression expression, StreamPos start, StreamPos end) {
-        super(start, end);
+    public MatchResult(Expression expression, CharSequence input, int start, int end) {
+        super(input, start, end);
+        this.expression = expression;
+    }
+
+    public MatchResult(Expression expression, CharSequence input, int offset, int start, int end) {
+        super(input, offset, start, end);
         this.expression = expression;
     }
 
@@ -1,7 +1,10 @@
 package net.rubygrapefruit.parser.peg.internal.match;
 
-import net.rubygrapefruit.parser.peg.internal.stream.StreamPos;
+import net.rubygrapefruit.parser.peg.Expression;
 
+/**
+ * Receives the results of matching an expression. Positions are offsets from the start of the input.
+ */
 public interface MatchVisitor {
     /**
      * Called to indicate that the given expression was attempted but was not accepted.
@@ -9,19 +12,21 @@ public interface MatchVisitor {
     void attempted(ExpressionMatchResult result);
 
     /**
-     * Called to indicate that the given atomic expression was attempted but did not match anything.
+     * Called to indicate that an atomic expression was attempted but did not match anything.
+     *
+     * @param expected The terminals that were expected at the given position.
      */
-    void attempted(StreamPos pos, MatchPoint nextExpression);
+    void attempted(int pos, TerminalSet expected);
 
     /**
      * Called to indicate an expression matched but consumed no input.
      */
-    void matched(StreamPos pos);
+    void matched(int pos);
 
     /**
      * Called to indicate that the given atomic expression was attempted and the result accepted.
      */
-    void matched(MatchResult result);
+    void matched(Expression expression, int start, int end);
 
     /**
      * Called to indicate that the given composite expression was attempted and the result accepted.
@@ -0,0 +1,36 @@
+package net.rubygrapefruit.parser.peg.internal.match;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns a number to each distinct terminal display name, so that sets of terminals can be held as bitsets. Terminals with the same display name
+ * share a number, as they are reported in the same way. Numbers are assigned when the expressions of a grammar are created, and are shared by all
+ * grammars.
+ */
+class TerminalNumbers {
+    private static final Map<String, Integer> numbers = new HashMap<>();
+    private static volatile String[] names = new String[64];
+
+    static synchronized int number(String displayName) {
+        Integer number = numbers.get(displayName);
+        if (number != null) {
+            return number;
+        }
+        int next = numbers.size();
+        String[] current = names;
+        if (next == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[next] = displayName;
+        numbers.put(displayName, next);
+        // Publish the new name
+        names = current;
+        return next;
+    }
+
+    static String displayName(int number) {
+        return names[number];
+    }
+}
@@ -0,0 +1,110 @@
+package net.rubygrapefruit.parser.peg.internal.match;
+
+import java.util.*;
+
+/**
+ * An immutable set of terminals, held as a bitset of terminal numbers. Terminals that are created while parsing, such as the value of a back
+ * reference, are not numbered and are held separately.
+ */
+public final class TerminalSet {
+    private static final long[] NO_WORDS = new long[0];
+    private static final Terminal[] NO_TERMINALS = new Terminal[0];
+    public static final TerminalSet EMPTY = new TerminalSet(NO_WORDS, NO_TERMINALS);
+
+    final long[] words;
+    final Terminal[] others;
+
+    TerminalSet(long[] words, Terminal[] others) {
+        this.words = words;
+        this.others = others;
+    }
+
+    /**
+     * Creates a set containing the given terminals, numbering them if required.
+     */
+    public static TerminalSet of(Collection<? extends Terminal> terminals) {
+        long[] words = NO_WORDS;
+        for (Terminal terminal : terminals) {
+            int number = TerminalNumbers.number(terminal.getDisplayName());
+            if (number >= words.length * 64) {
+                words = Arrays.copyOf(words, number / 64 + 1);
+            }
+            words[number / 64] |= 1L << number;
+        }
+        return new TerminalSet(words, NO_TERMINALS);
+    }
+
+    public static TerminalSet of(Terminal terminal) {
+        return of(Collections.singleton(terminal));
+    }
+
+    /**
+     * Creates a set containing the given terminal without numbering it, for a terminal that is created while parsing.
+     */
+    public static TerminalSet unnumbered(Terminal terminal) {
+        return new TerminalSet(NO_WORDS, new Terminal[]{terminal});
+    }
+
+    /**
+     * Returns the union of this set and the given set.
+     */
+    public TerminalSet union(TerminalSet other) {
+        ExpectedTerminals result = new ExpectedTerminals();
+        result.add(this);
+        result.add(other);
+        return result.toSet();
+    }
+
+    public boolean isEmpty() {
+        if (others.length > 0) {
+            return false;
+        }
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the display names of the terminals of this set, in order and without duplicates.
+     */
+    public List<String> getDisplayNames() {
+        Set<String> names = new TreeSet<>();
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                names.add(TerminalNumbers.displayName(i * 64 + bit));
+                word &= word - 1;
+            }
+        }
+        for (Terminal terminal : others) {
+            names.add(terminal.getDisplayName());
+        }
+        return new ArrayList<>(names);
+    }
+
+    @Override
+    public String toString() {
+        return getDisplayNames().toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof TerminalSet)) {
+            return false;
+        }
+        TerminalSet other = (TerminalSet) obj;
+        return Arrays.equals(words, other.words) && Arrays.equals(others, other.others);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+}
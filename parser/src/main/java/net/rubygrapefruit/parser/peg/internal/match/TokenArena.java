@@ -0,0 +1,257 @@
+package net.rubygrapefruit.parser.peg.internal.match;
+
+import net.rubygrapefruit.parser.peg.Expression;
+
+import java.util.Arrays;
+
+/**
+ * Holds the tokens produced during a single parse, so that matching does not need to allocate objects to hold intermediate results.
+ *
+ * <p>A sequence of tokens is referenced using an int handle. The tokens are held as a tree of nodes stored in primitive arrays, where each node is
+ * either a single token, the concatenation of two other sequences or a {@link Snapshot} of some sequence placed at some offset. Handle
+ * {@link #EMPTY} refers to the empty sequence.</p>
+ *
+ * <p>Nodes are allocated in order, so the nodes created for an expression that was attempted but whose results are not required can be discarded
+ * by truncating the arena back to a mark taken before the expression was attempted.</p>
+ *
+ * <p>The arena also holds a pool of {@link BatchingMatchVisitor} instances, which are used in last-in first-out order.</p>
+ */
+public class TokenArena {
+    public static final int EMPTY = 0;
+    private static final Snapshot EMPTY_SNAPSHOT = new Snapshot();
+
+    // The type of a token, a snapshot or null for a concatenation
+    private Object[] values = new Object[256];
+    // The start offset of a token, the first sequence of a concatenation or the offset of a snapshot
+    private int[] first = new int[256];
+    // The end offset of a token or the second sequence of a concatenation
+    private int[] second = new int[256];
+    private int top = 1;
+    // The largest value of top before it was last moved back
+    private int peak;
+    private BatchingMatchVisitor[] visitors = new BatchingMatchVisitor[16];
+    private int visitorCount;
+    private int[] stack = new int[32];
+    private boolean recognizing;
+
+    /**
+     * Returns a mark that can later be passed to {@link #truncate(int)} to discard the nodes created after this point.
+     */
+    public int mark() {
+        return top;
+    }
+
+    /**
+     * Discards the nodes created after the given mark was taken. Any handles to these nodes must no longer be used.
+     */
+    public void truncate(int mark) {
+        if (mark < top) {
+            peak = Math.max(peak, top);
+            top = mark;
+        }
+    }
+
+    /**
+     * Discards all of the nodes and visitors, so that the arena can be reused for another parse. The arrays are retained.
+     */
+    public void clear() {
+        Arrays.fill(values, 1, top, null);
+        top = 1;
+        peak = 0;
+        visitorCount = 0;
+        recognizing = false;
+    }
+
+    public boolean isRecognizing() {
+        return recognizing;
+    }
+
+    /**
+     * Sets whether the visitors created after this method is called only track the matches, rather than also tracking where matching failed. See
+     * {@link AbstractMatchVisitor}.
+     */
+    public void setRecognizing(boolean recognizing) {
+        this.recognizing = recognizing;
+    }
+
+    /**
+     * Returns the number of nodes currently allocated.
+     */
+    public int size() {
+        return top - 1;
+    }
+
+    /**
+     * Returns the largest number of nodes allocated at any point since the arena was created or cleared.
+     */
+    public int getPeakSize() {
+        return Math.max(peak, top) - 1;
+    }
+
+    /**
+     * Creates a sequence containing a single token.
+     */
+    public int token(Expression type, int start, int end) {
+        return node(type, start, end);
+    }
+
+    /**
+     * Creates a sequence containing the tokens of the first sequence followed by those of the second.
+     */
+    public int concat(int first, int second) {
+        if (first == EMPTY) {
+            return second;
+        }
+        if (second == EMPTY) {
+            return first;
+        }
+        return node(null, first, second);
+    }
+
+    /**
+     * Creates a sequence containing the tokens of the given snapshot, with the offsets of the tokens relative to the given offset.
+     */
+    public int restore(Snapshot snapshot, int offset) {
+        if (snapshot.size == 0) {
+            return EMPTY;
+        }
+        return node(snapshot, offset, 0);
+    }
+
+    private int node(Object value, int a, int b) {
+        if (top == values.length) {
+            values = Arrays.copyOf(values, top * 2);
+            first = Arrays.copyOf(first, top * 2);
+            second = Arrays.copyOf(second, top * 2);
+        }
+        values[top] = value;
+        first[top] = a;
+        second[top] = b;
+        return top++;
+    }
+
+    /**
+     * Copies the tokens of the given sequence into a snapshot that remains valid after the arena is truncated. The offsets of the tokens are stored
+     * relative to the given offset, so that the snapshot can be restored at some other offset.
+     */
+    public Snapshot snapshot(int handle, final int offset) {
+        if (handle == EMPTY) {
+            return EMPTY_SNAPSHOT;
+        }
+        final Snapshot snapshot = new Snapshot();
+        visit(handle, new TokenHandler() {
+            @Override
+            public void token(Expression type, int start, int end) {
+                snapshot.add(type, start - offset, end - offset);
+            }
+        });
+        return snapshot;
+    }
+
+    /**
+     * Forwards the tokens of the given sequence to the given collector, in order.
+     */
+    public void pushTo(int handle, final CharSequence input, final TokenCollector collector) {
+        visit(handle, new TokenHandler() {
+            @Override
+            public void token(Expression type, int start, int end) {
+                collector.token(new MatchResult(type, input, start, end));
+            }
+        });
+    }
+
+    /**
+     * Forwards the tokens of the given sequence to the given collector, in order. The input is a part of some larger input that starts at the given
+     * offset. Each token holds a copy of its text, rather than a reference to the input.
+     */
+    public void pushTo(int handle, final String input, final int offset, final TokenCollector collector) {
+        visit(handle, new TokenHandler() {
+            @Override
+            public void token(Expression type, int start, int end) {
+                collector.token(new MatchResult(type, input.substring(start, end), offset + start, offset + start, offset + end));
+            }
+        });
+    }
+
+    private void visit(int handle, TokenHandler handler) {
+        if (handle == EMPTY) {
+            return;
+        }
+        int depth = 0;
+        stack[depth++] = handle;
+        while (depth > 0) {
+            int node = stack[--depth];
+            Object value = values[node];
+            if (value == null) {
+                if (depth + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[depth++] = second[node];
+                stack[depth++] = first[node];
+            } else if (value instanceof Snapshot) {
+                Snapshot snapshot = (Snapshot) value;
+                int offset = first[node];
+                for (int i = 0; i < snapshot.size; i++) {
+                    handler.token(snapshot.types[i], offset + snapshot.starts[i], offset + snapshot.ends[i]);
+                }
+            } else {
+                handler.token((Expression) value, first[node], second[node]);
+            }
+        }
+    }
+
+    /**
+     * Returns a visitor from the pool, ready to collect the results of matching an expression. The visitor must be returned using
+     * {@link #release(BatchingMatchVisitor)} once its results have been forwarded to the parent visitor.
+     */
+    public BatchingMatchVisitor newVisitor() {
+        if (visitorCount == visitors.length) {
+            visitors = Arrays.copyOf(visitors, visitorCount * 2);
+        }
+        BatchingMatchVisitor visitor = visitors[visitorCount];
+        if (visitor == null) {
+            visitor = new BatchingMatchVisitor(this);
+            visitors[visitorCount] = visitor;
+        }
+        visitorCount++;
+        visitor.start(top);
+        return visitor;
+    }
+
+    /**
+     * Returns the given visitor to the pool. Visitors must be released in the reverse order to which they were created.
+     */
+    public void release(BatchingMatchVisitor visitor) {
+        if (visitorCount == 0 || visitors[visitorCount - 1] != visitor) {
+            throw new IllegalStateException("Visitor released out of order.");
+        }
+        visitorCount--;
+    }
+
+    private interface TokenHandler {
+        void token(Expression type, int start, int end);
+    }
+
+    /**
+     * An immutable copy of a sequence of tokens.
+     */
+    public static class Snapshot {
+        private Expression[] types = new Expression[0];
+        private int[] starts = new int[0];
+        private int[] ends = new int[0];
+        private int size;
+
+        private void add(Expression type, int start, int end) {
+            if (size == types.length) {
+                int capacity = Math.max(4, size * 2);
+                types = Arrays.copyOf(types, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+            }
+            types[size] = type;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package net.rubygrapefruit.parser.peg.internal.match;
+
+import net.rubygrapefruit.parser.peg.Expression;
+import net.rubygrapefruit.parser.peg.TokenVisitor;
+
+import java.util.Arrays;
+
+/**
+ * A growable buffer of tokens, held as primitive offsets. Tokens added after some point can be discarded by truncating the buffer, for backtracking.
+ */
+public class TokenBuffer {
+    private Expression[] types = new Expression[64];
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int count;
+    // The largest value of count before it was last truncated
+    private int peak;
+
+    /**
+     * Returns the number of tokens in this buffer. This can be passed to {@link #truncate(int)} to discard tokens added after this point.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the largest number of tokens held at any point since the buffer was created or cleared.
+     */
+    public int getPeakSize() {
+        return Math.max(peak, count);
+    }
+
+    public void add(Expression type, int start, int end) {
+        if (count == types.length) {
+            types = Arrays.copyOf(types, count * 2);
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        types[count] = type;
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    /**
+     * Discards the tokens added after the buffer contained the given number of tokens.
+     */
+    public void truncate(int size) {
+        peak = Math.max(peak, count);
+        count = size;
+    }
+
+    /**
+     * Discards all of the tokens, so that the buffer can be reused for another parse. The arrays are retained.
+     */
+    public void clear() {
+        Arrays.fill(types, 0, count, null);
+        count = 0;
+        peak = 0;
+    }
+
+    /**
+     * Forwards the tokens in this buffer to the given visitor, in order.
+     */
+    public void pushTo(CharSequence input, TokenVisitor<Expression> visitor) {
+        for (int i = 0; i < count; i++) {
+            visitor.token(types[i], new MatchResult(types[i], input, starts[i], ends[i]));
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package net.rubygrapefruit.parser.peg.internal.profile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the invocations of the rules of one or more parsers, as a tree of calls. The counters of each call are updated atomically, so that any
+ * number of parses can be recorded concurrently. Each thread tracks the rules that it is currently matching using a stack of its own.
+ */
+public class ProfileRecorder implements RuleRecorder {
+    private final CallNode root = new CallNode(null, null);
+    private final ThreadLocal<CallStack> stacks = new ThreadLocal<CallStack>() {
+        @Override
+        protected CallStack initialValue() {
+            return new CallStack();
+        }
+    };
+
+    /**
+     * Returns the root of the call tree, which represents the caller of the outermost rules and has no counters of its own.
+     */
+    public CallNode getRoot() {
+        return root;
+    }
+
+    /**
+     * Discards everything recorded so far. Should not be called while parsing.
+     */
+    public void reset() {
+        root.children.clear();
+    }
+
+    @Override
+    public Frame enter(Rule rule) {
+        CallStack stack = stacks.get();
+        CallNode parent = stack.depth == 0 ? root : stack.frames[stack.depth - 1].node;
+        Frame frame = stack.push();
+        frame.node = parent.child(rule);
+        frame.childTime = 0;
+        frame.start = System.nanoTime();
+        return frame;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>An invocation that did not complete is counted as neither a success nor a failure. The characters between the start and end are counted
+     * as consumed by a match, or as backtracked by a failure.</p>
+     */
+    @Override
+    public void exit(Object callFrame, boolean completed, boolean matched, int start, int end) {
+        Frame frame = (Frame) callFrame;
+        long time = System.nanoTime() - frame.start;
+        int chars = end - start;
+        CallStack stack = frame.stack;
+        stack.depth--;
+        if (stack.depth > 0) {
+            stack.frames[stack.depth - 1].childTime += time;
+        }
+        CallNode node = frame.node;
+        node.invocations.incrementAndGet();
+        if (completed) {
+            if (matched) {
+                node.successes.incrementAndGet();
+                node.consumed.addAndGet(chars);
+            } else {
+                node.failures.incrementAndGet();
+                node.backtracked.addAndGet(chars);
+            }
+        }
+        node.inclusiveTime.addAndGet(time);
+        node.exclusiveTime.addAndGet(time - frame.childTime);
+    }
+
+    /**
+     * A rule, which is a unit of profiling.
+     */
+    public static class Rule {
+        private final String name;
+
+        public Rule(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The invocations of a rule from a particular chain of callers. Times are in nanoseconds.
+     */
+    public static class CallNode {
+        private final Rule rule;
+        private final CallNode parent;
+        private final boolean recursive;
+        private final ConcurrentMap<Rule, CallNode> children = new ConcurrentHashMap<>();
+        private final AtomicLong invocations = new AtomicLong();
+        private final AtomicLong successes = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong consumed = new AtomicLong();
+        private final AtomicLong backtracked = new AtomicLong();
+        private final AtomicLong inclusiveTime = new AtomicLong();
+        private final AtomicLong exclusiveTime = new AtomicLong();
+
+        CallNode(Rule rule, CallNode parent) {
+            this.rule = rule;
+            this.parent = parent;
+            boolean recursive = false;
+            for (CallNode caller = parent; caller != null; caller = caller.parent) {
+                if (caller.rule == rule) {
+                    recursive = true;
+                    break;
+                }
+            }
+            this.recursive = recursive;
+        }
+
+        CallNode child(Rule rule) {
+            CallNode child = children.get(rule);
+            if (child == null) {
+                child = new CallNode(rule, this);
+                CallNode existing = children.putIfAbsent(rule, child);
+                if (existing != null) {
+                    child = existing;
+                }
+            }
+            return child;
+        }
+
+        public Rule getRule() {
+            return rule;
+        }
+
+        public CallNode getParent() {
+            return parent;
+        }
+
+        /**
+         * Is this an invocation of a rule from within another invocation of the same rule? The time of such an invocation is already included in
+         * the inclusive time of the outer invocation.
+         */
+        public boolean isRecursive() {
+            return recursive;
+        }
+
+        public Collection<CallNode> getChildren() {
+            return new ArrayList<>(children.values());
+        }
+
+        public long getInvocations() {
+            return invocations.get();
+        }
+
+        public long getSuccesses() {
+            return successes.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public long getConsumed() {
+            return consumed.get();
+        }
+
+        public long getBacktracked() {
+            return backtracked.get();
+        }
+
+        public long getInclusiveTime() {
+            return inclusiveTime.get();
+        }
+
+        public long getExclusiveTime() {
+            return exclusiveTime.get();
+        }
+    }
+
+    /**
+     * The state of an invocation of a rule that is currently being matched.
+     */
+    public static class Frame {
+        private final CallStack stack;
+        private CallNode node;
+        private long start;
+        private long childTime;
+
+        Frame(CallStack stack) {
+            this.stack = stack;
+        }
+    }
+
+    /**
+     * The invocations that a thread is currently matching. Frames are reused.
+     */
+    private static class CallStack {
+        private Frame[] frames = new Frame[0];
+        private int depth;
+
+        Frame push() {
+            if (depth == frames.length) {
+                frames = Arrays.copyOf(frames, Math.max(16, frames.length * 2));
+                for (int i = depth; i < frames.length; i++) {
+                    frames[i] = new Frame(this);
+                }
+            }
+            return frames[depth++];
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package net.rubygrapefruit.parser.peg.internal.profile;
+
+/**
+ * Receives the invocations of the rules of a parser whose rules have been wrapped using an
+ * {@link net.rubygrapefruit.parser.peg.internal.expression.ExpressionProfiler}.
+ */
+public interface RuleRecorder {
+    /**
+     * Called when the given rule is about to be matched by the current thread. The returned frame must be passed to
+     * {@link #exit(Object, boolean, boolean, int, int)} when matching has finished, even if it fails with an exception.
+     */
+    Object enter(ProfileRecorder.Rule rule);
+
+    /**
+     * Called when the rule of the given frame has finished matching.
+     *
+     * @param completed false when matching stopped with an exception.
+     * @param matched true when the rule matched.
+     * @param start the offset where the rule started.
+     * @param end the offset where a match ended, or the farthest offset matched before a failure.
+     */
+    void exit(Object frame, boolean completed, boolean matched, int start, int end);
+}
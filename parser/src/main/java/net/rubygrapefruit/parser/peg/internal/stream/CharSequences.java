@@ -0,0 +1,72 @@
+package net.rubygrapefruit.parser.peg.internal.stream;
+
+/**
+ * Searches the input of a parse. The input is usually a {@link String}, in which case the methods of {@link String} are used, and these are
+ * generally much faster than a loop over the characters of the input.
+ */
+public class CharSequences {
+    /**
+     * Does the input contain the given string at the given offset?
+     */
+    public static boolean startsWith(CharSequence input, String str, int pos) {
+        if (input instanceof String) {
+            return ((String) input).startsWith(str, pos);
+        }
+        int length = str.length();
+        if (pos < 0 || pos + length > input.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (input.charAt(pos + i) != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the offset of the first occurrence of the given string at or after the given offset, or -1 when there is no occurrence.
+     */
+    public static int indexOf(CharSequence input, String str, int pos) {
+        if (input instanceof String) {
+            return ((String) input).indexOf(str, pos);
+        }
+        if (str.isEmpty()) {
+            return Math.min(Math.max(pos, 0), input.length());
+        }
+        char first = str.charAt(0);
+        int last = input.length() - str.length();
+        for (int i = Math.max(pos, 0); i <= last; i++) {
+            if (input.charAt(i) == first && startsWith(input, str, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offset of the first occurrence of the given character at or after the given offset, or -1 when there is no occurrence.
+     */
+    public static int indexOf(CharSequence input, char ch, int pos) {
+        if (input instanceof String) {
+            return ((String) input).indexOf(ch, pos);
+        }
+        int length = input.length();
+        for (int i = Math.max(pos, 0); i < length; i++) {
+            if (input.charAt(i) == ch) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the text between the given offsets.
+     */
+    public static String substring(CharSequence input, int start, int end) {
+        if (input instanceof String) {
+            return ((String) input).substring(start, end);
+        }
+        return input.subSequence(start, end).toString();
+    }
+}
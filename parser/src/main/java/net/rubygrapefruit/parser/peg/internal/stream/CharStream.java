@@ -1,54 +1,185 @@
 package net.rubygrapefruit.parser.peg.internal.stream;
 
+import net.rubygrapefruit.parser.peg.LineIndex;
+import net.rubygrapefruit.parser.peg.internal.match.TokenArena;
+
 /**
  * A stream of characters with a mutable read position.
+ *
+ * <p>The read position is a plain offset, which can be saved using {@link #getOffset()} and later restored using {@link #moveTo(int)} to backtrack.
+ * A {@link StreamPos}, which includes line and column information, is only created on request, using a {@link LineIndex} that is built the first
+ * time it is needed.</p>
+ *
+ * <p>The input is usually a {@link String}, but can be any {@link CharSequence} that does not change while the stream is in use.</p>
+ *
+ * <p>The stream also records how far matching has examined the input, as the result of matching might be different if the examined input were
+ * different. In particular, when matching has examined the end of the input, the result might be different if the input were longer. This is used
+ * when parsing input that is read incrementally, and when reusing the results of a previous parse for an edited input.</p>
+ *
+ * <p>Matchers that might backtrack or repeat report their steps to the stream using {@link #step()}, which stops the parse when it exceeds its
+ * {@link ParseBudget}.</p>
  */
 public class CharStream {
-    private final String input;
-    private int startLine = 0;
-    private int line = 1;
+    private final CharSequence input;
+    private final MemoTable memoTable;
+    private final TokenArena tokenArena;
+    private final ParseBudget budget;
     private int pos = 0;
-    private DefaultStreamPos end;
+    // The number of steps that can be taken before the budget is checked
+    private int countdown;
+    // The offset after the farthest offset examined, where the end of the input counts as an offset
+    private int examined;
+    private LineIndex lineIndex;
 
-    public CharStream(String input) {
-        this.input = input;
+    public CharStream(CharSequence input) {
+        this(input, null);
+    }
+
+    public CharStream(CharSequence input, MemoTable memoTable) {
+        this(input, memoTable, new TokenArena());
+    }
+
+    public CharStream(CharSequence input, MemoTable memoTable, TokenArena tokenArena) {
+        this(input, memoTable, tokenArena, ParseBudget.unlimited());
     }
 
-    private CharStream(String input, int pos, int startLine, int line) {
+    public CharStream(CharSequence input, MemoTable memoTable, TokenArena tokenArena, ParseBudget budget) {
         this.input = input;
-        this.pos = pos;
-        this.startLine = startLine;
-        this.line = line;
+        this.memoTable = memoTable;
+        this.tokenArena = tokenArena;
+        this.budget = budget;
+        this.countdown = budget.start();
     }
 
     @Override
     public String toString() {
-        return "{chars " + pos + " \"" + input.substring(pos) + "\"}";
+        return "{chars " + pos + " \"" + input.subSequence(pos, input.length()) + "\"}";
+    }
+
+    /**
+     * Returns the table to use to cache match results for this stream, or null if results should not be cached.
+     */
+    public MemoTable getMemoTable() {
+        return memoTable;
+    }
+
+    /**
+     * Returns the arena that holds the tokens produced while matching this stream.
+     */
+    public TokenArena getTokenArena() {
+        return tokenArena;
+    }
+
+    public CharSequence getInput() {
+        return input;
+    }
+
+    /**
+     * Returns the current offset from the start of the stream, base 0.
+     */
+    public int getOffset() {
+        return pos;
     }
 
     /**
-     * Returns a {@link CharStream} that contains the tail of this char stream. Changes made to the other stream are not visible through this stream
-     * and vice versa.
+     * Moves the read position to the given offset, usually one previously returned by {@link #getOffset()}.
      */
-    public CharStream tail() {
-        return new CharStream(input, pos, startLine, line);
+    public void moveTo(int offset) {
+        pos = offset;
     }
 
     public StreamPos current() {
-        return new DefaultStreamPos(input, pos, startLine, line);
+        return pos(pos);
+    }
+
+    public StreamPos end() {
+        return pos(input.length());
+    }
+
+    /**
+     * Returns the position of the given offset.
+     */
+    public StreamPos pos(int offset) {
+        return new DefaultStreamPos(input, offset, getLineIndex());
+    }
+
+    /**
+     * Returns the line index for this stream, which is created on first use.
+     */
+    public LineIndex getLineIndex() {
+        if (lineIndex == null) {
+            lineIndex = new LineIndex(input);
+        }
+        return lineIndex;
+    }
+
+    /**
+     * Returns true if matching has examined the end of the input since the last call to {@link #resetHitEnd()}.
+     */
+    public boolean isHitEnd() {
+        return examined > input.length();
+    }
+
+    public void resetHitEnd() {
+        examined = 0;
+    }
+
+    /**
+     * Records that a matcher has examined the end of the input. Matchers that inspect the input directly, rather than using the methods of this
+     * stream, must call this when their result depends on where the input ends.
+     */
+    public void markHitEnd() {
+        examined = input.length() + 1;
+    }
+
+    /**
+     * Returns the offset after the farthest offset examined by matching, which is greater than the length of the input if the end of the input has
+     * been examined.
+     */
+    public int getExamined() {
+        return examined;
+    }
+
+    /**
+     * Replaces the offset after the farthest offset examined by matching. This can be used to determine how far a particular expression examines
+     * the input.
+     */
+    public void setExamined(int examined) {
+        this.examined = examined;
     }
 
-    public void moveTo(StreamPos pos) {
-        DefaultStreamPos p = (DefaultStreamPos) pos;
-        this.pos = p.pos;
-        this.startLine = p.startLine;
-        this.line = p.line;
+    /**
+     * Records that a matcher has examined the input up to the given offset, exclusive. Matchers that inspect the input directly, rather than using
+     * the methods of this stream, must call this when their result depends on the input. Use an offset greater than the length of the input when
+     * the end of the input has been examined.
+     */
+    public void markExamined(int end) {
+        if (end > examined) {
+            examined = end;
+        }
+    }
+
+    /**
+     * Records that a matcher has taken a step, such as attempting an alternative or a repetition.
+     *
+     * @throws ParseAbortedException when the parse has exceeded its budget.
+     */
+    public void step() {
+        if (--countdown <= 0) {
+            countdown = budget.check(countdown, pos, tokenArena.size());
+        }
     }
 
-    public void moveTo(CharStream stream) {
-        pos = stream.pos;
-        startLine = stream.startLine;
-        line = stream.line;
+    /**
+     * Records that a matcher has taken the given number of steps, such as matching a run of characters.
+     *
+     * @throws ParseAbortedException when the parse has exceeded its budget.
+     */
+    public void step(int count) {
+        countdown -= count;
+        if (countdown <= 0) {
+            countdown = budget.check(countdown, pos, tokenArena.size());
+        }
     }
 
     /**
@@ -57,10 +188,13 @@ public class CharStream {
      * @return true if consumed, false if not.
      */
     public boolean consume(String str) {
-        if (input.regionMatches(pos, str, 0, str.length())) {
-            moveForward(str.length());
+        int end = pos + str.length();
+        if (CharSequences.startsWith(input, str, pos)) {
+            markExamined(end);
+            pos = end;
             return true;
         }
+        markExamined(Math.min(end, input.length() + 1));
         return false;
     }
 
@@ -70,12 +204,12 @@ public class CharStream {
      * @return true if consumed, false if not.
      */
     public boolean consumeLetter() {
+        markExamined(pos + 1);
         if (pos >= input.length()) {
             return false;
         }
-        char ch = input.charAt(pos);
-        if (Character.isAlphabetic(ch)) {
-            moveForward(1);
+        if (Character.isAlphabetic(input.charAt(pos))) {
+            pos++;
             return true;
         }
         return false;
@@ -87,59 +221,44 @@ public class CharStream {
      * @return true if consumed, false if not.
      */
     public boolean consumeOne() {
+        markExamined(pos + 1);
         if (pos >= input.length()) {
             return false;
         }
-        moveForward(1);
+        pos++;
         return true;
     }
 
-    private void moveForward(int count) {
-        for (int i = 0; i < count; i++) {
-            char ch = input.charAt(pos);
-            if (ch == '\n') {
-                line++;
-                startLine = pos + 1;
-            }
-            pos++;
-        }
-    }
-
     public boolean isAtEnd() {
+        markExamined(pos + 1);
         return pos >= input.length();
     }
 
-    public StreamPos end() {
-        if (end == null) {
-            int line = this.line;
-            int startLine = this.startLine;
-            for (int i = pos; i < input.length(); i++) {
-                if (input.charAt(i) == '\n') {
-                    line++;
-                    startLine = i + 1;
-                }
-            }
-            end = new DefaultStreamPos(input, input.length(), startLine, line);
+    /**
+     * Returns the next character in the stream, without consuming it, or -1 at the end of the stream.
+     */
+    public int peek() {
+        markExamined(pos + 1);
+        if (pos >= input.length()) {
+            return -1;
         }
-        return end;
+        return input.charAt(pos);
     }
 
     private static class DefaultStreamPos implements StreamPos {
-        private final String input;
-        private int pos;
-        private final int startLine;
-        private final int line;
+        private final CharSequence input;
+        private final int pos;
+        private final LineIndex lineIndex;
 
-        DefaultStreamPos(String input, int pos, int startLine, int line) {
+        DefaultStreamPos(CharSequence input, int pos, LineIndex lineIndex) {
             this.input = input;
             this.pos = pos;
-            this.startLine = startLine;
-            this.line = line;
+            this.lineIndex = lineIndex;
         }
 
         @Override
         public String toString() {
-            return "{chars " + pos + " \"" + input.substring(pos) + "\"}";
+            return "{chars " + pos + " \"" + input.subSequence(pos, input.length()) + "\"}";
         }
 
         /**
@@ -153,14 +272,14 @@ public class CharStream {
          * Base 1
          */
         public int getLine() {
-            return line;
+            return lineIndex.getLine(pos);
         }
 
         /**
          * Base 1
          */
         public int getColumn() {
-            return pos - startLine + 1;
+            return lineIndex.getColumn(pos);
         }
 
         public boolean isAtEnd() {
@@ -169,29 +288,7 @@ public class CharStream {
 
         @Override
         public String getCurrentLine() {
-            int endLine = pos;
-            while (endLine < input.length() && input.charAt(endLine) != '\n') {
-                endLine++;
-            }
-            if (endLine < input.length() && endLine > 0 && input.charAt(endLine - 1) == '\r') {
-                endLine--;
-            }
-            return input.substring(startLine, endLine);
-        }
-
-        /**
-         * Returns the text between this position and the given end position (exclusive).
-         */
-        public String upTo(StreamPos end) {
-            return input.substring(pos, end.getOffset());
-        }
-
-        /**
-         * Returns the number of characters between this position and the other. Returns > 0 when this position is after the other, < 0 when this
-         * position is before the other.
-         */
-        public int diff(StreamPos start) {
-            return pos - start.getOffset();
+            return lineIndex.getLineText(pos);
         }
     }
 }
@@ -0,0 +1,118 @@
+package net.rubygrapefruit.parser.peg.internal.stream;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Holds a window of the text read from a {@link Reader}. Text is read in chunks as it is required, and text that is no longer required can be
+ * discarded from the start of the window.
+ *
+ * <p>The window always starts at the start of a line, so that line and column numbers can be calculated for any offset within the window.</p>
+ */
+public class InputBuffer {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final char[] chunk = new char[CHUNK_SIZE];
+    private final StringBuilder text = new StringBuilder();
+    private int offset;
+    private int lines;
+    private boolean atEnd;
+
+    public InputBuffer(Reader reader) {
+        this(reader, 0);
+    }
+
+    /**
+     * Creates a buffer for input whose first character is at the given offset.
+     */
+    InputBuffer(Reader reader, int offset) {
+        this.reader = reader;
+        this.offset = offset;
+    }
+
+    /**
+     * Reads the remainder of the given reader into a string.
+     */
+    public static String readAll(Reader reader) throws IOException {
+        InputBuffer buffer = new InputBuffer(reader);
+        while (buffer.read()) {
+            // Keep reading
+        }
+        return buffer.getText();
+    }
+
+    /**
+     * Returns the offset of the start of the window from the start of the input.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the number of lines before the start of the window.
+     */
+    public int getLines() {
+        return lines;
+    }
+
+    /**
+     * Returns the text of the window.
+     */
+    public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * Returns true when the window contains the end of the input.
+     */
+    public boolean isAtEnd() {
+        return atEnd;
+    }
+
+    /**
+     * Reads more of the input into the window. Reads at least half as many characters as the window already contains, so that the cost of copying
+     * the window is amortized when the window grows.
+     *
+     * @return false if the end of the input has been reached and nothing was read.
+     * @throws IOException when the input cannot be read, or contains more characters than can be addressed using an int offset.
+     */
+    public boolean read() throws IOException {
+        int required = Math.max(CHUNK_SIZE, text.length() / 2);
+        int total = 0;
+        while (!atEnd && total < required) {
+            int count = reader.read(chunk);
+            if (count < 0) {
+                atEnd = true;
+            } else {
+                if ((long) offset + text.length() + count > Integer.MAX_VALUE) {
+                    // Offsets into the input are ints
+                    throw new IOException("Input is too large to be parsed, as it contains more than " + Integer.MAX_VALUE + " characters.");
+                }
+                text.append(chunk, 0, count);
+                total += count;
+            }
+        }
+        return total > 0;
+    }
+
+    /**
+     * Discards the complete lines before the given offset, relative to the start of the window.
+     *
+     * @return The number of characters discarded.
+     */
+    public int discard(int pos) {
+        int end = text.lastIndexOf("\n", pos - 1) + 1;
+        if (end == 0) {
+            return 0;
+        }
+        for (int i = 0; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        text.delete(0, end);
+        offset += end;
+        return end;
+    }
+}
@@ -0,0 +1,147 @@
+package net.rubygrapefruit.parser.peg.internal.stream;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the UTF-8 encoded text of a file by mapping the file into memory, rather than copying the bytes of the file into a buffer.
+ *
+ * <p>The file is mapped in segments, so that files larger than a single mapping can be read. Runs of ASCII characters are converted directly from
+ * the mapped bytes, and a {@link CharsetDecoder} is used for everything else. Malformed input is replaced with {@code U+FFFD}.</p>
+ */
+public class MappedFileReader extends Reader {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // The longest encoding of a single character
+    private static final int MAX_CHAR_BYTES = 4;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int segmentSize;
+    private final CharsetDecoder decoder = UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    // The second half of a surrogate pair that did not fit in the caller's buffer, or -1
+    private int pending = -1;
+
+    public MappedFileReader(Path file) throws IOException {
+        this(file, 1 << 28);
+    }
+
+    MappedFileReader(Path file, int segmentSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Returns the size of the file, in bytes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Reads the remainder of the file. The characters are decoded into a single array, which is returned without copying it.
+     */
+    public CharSequence readAll() throws IOException {
+        long remaining = size - position();
+        if (remaining > Integer.MAX_VALUE - 8) {
+            throw new IOException("File is too large to be read into memory.");
+        }
+        // A UTF-8 encoding uses at least one byte per character
+        char[] chars = new char[(int) remaining];
+        int count = 0;
+        while (count < chars.length) {
+            int read = read(chars, count, chars.length - count);
+            if (read < 0) {
+                break;
+            }
+            count += read;
+        }
+        return CharBuffer.wrap(chars, 0, count);
+    }
+
+    private long position() {
+        return segment == null ? 0 : segmentStart + segment.position();
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (pending >= 0) {
+            chars[offset] = (char) pending;
+            pending = -1;
+            return 1;
+        }
+        while (true) {
+            long position = position();
+            if (segment == null || (segment.remaining() < MAX_CHAR_BYTES && segmentStart + segment.limit() < size)) {
+                // Map the next segment, starting at the first byte that has not been decoded
+                segmentStart = position;
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, size - position));
+            }
+            if (!segment.hasRemaining()) {
+                return -1;
+            }
+
+            int count = readAscii(segment, chars, offset, length);
+            if (count > 0) {
+                return count;
+            }
+
+            CharBuffer buffer = CharBuffer.wrap(chars, offset, length);
+            boolean endOfInput = segmentStart + segment.limit() == size;
+            CoderResult result = decoder.decode(segment, buffer, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            count = buffer.position() - offset;
+            if (count > 0) {
+                return count;
+            }
+            if (result.isOverflow()) {
+                // A surrogate pair and only space for one character
+                CharBuffer pair = CharBuffer.allocate(2);
+                decoder.decode(segment, pair, endOfInput);
+                chars[offset] = pair.get(0);
+                pending = pair.get(1);
+                return 1;
+            }
+            // Decoding stopped at a character that is split across segments, so map the next segment
+        }
+    }
+
+    private static int readAscii(ByteBuffer bytes, char[] chars, int offset, int length) {
+        int start = bytes.position();
+        int end = Math.min(bytes.limit(), start + length);
+        int pos = start;
+        while (pos < end) {
+            byte b = bytes.get(pos);
+            if (b < 0) {
+                break;
+            }
+            chars[offset++] = (char) b;
+            pos++;
+        }
+        bytes.position(pos);
+        return pos - start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        segment = null;
+        channel.close();
+    }
+}
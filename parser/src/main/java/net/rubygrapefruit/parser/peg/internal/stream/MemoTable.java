@@ -0,0 +1,378 @@
+package net.rubygrapefruit.parser.peg.internal.stream;
+
+import java.util.BitSet;
+
+/**
+ * Caches the results of matching expressions at positions in a stream, for a single parse.
+ *
+ * <p>Holds at most a fixed number of entries. When full, entries for positions more than a fixed window behind the farthest position
+ * cached so far are discarded first, as backtracking that far is unlikely.</p>
+ *
+ * <p>The table can be carried over to an edited version of the input using {@link #edit(int, int, int, BitSet)}, which keeps the entries that
+ * did not examine the edited part of the input.</p>
+ *
+ * <p>A table can also hold the entries for only a range of the input, so that a segment of the input can be matched separately, and the entries
+ * later combined into a table for the whole input using {@link #merge(MemoTable, BitSet)}.</p>
+ */
+public class MemoTable {
+    // The rows are held in pages of this many rows, which are allocated when an entry is added to the page
+    private static final int PAGE_BITS = 6;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private final int start;
+    private int end;
+    private final int maxEntries;
+    private final int window;
+    // An open addressed hash table of pages keyed by page number, so that memory follows the number of entries rather than the length of the input.
+    // Rows are indexed by offset from the start of the range
+    private int[] pageNumbers;
+    private Object[][][] pages;
+    private int pageCount;
+    // The most recently used page, as lookups tend to be close together
+    private int lastPageNumber = -1;
+    private Object[][] lastPage;
+    private int entries;
+    // The lowest and highest indexes of rows that may hold entries
+    private int lowest;
+    private int farthest;
+    private int hits;
+    private int misses;
+    private int evictions;
+
+    /**
+     * @param length The length of the input.
+     * @param maxEntries The maximum number of entries to hold.
+     * @param window The number of characters behind the farthest position for which entries are retained when the table is full.
+     */
+    public MemoTable(int length, int maxEntries, int window) {
+        this(0, length, maxEntries, window);
+    }
+
+    /**
+     * Creates a table that holds entries for the given range of offsets only.
+     *
+     * @param start The first offset to hold entries for.
+     * @param end The last offset to hold entries for, inclusive.
+     * @param maxEntries The maximum number of entries to hold.
+     * @param window The number of characters behind the farthest position for which entries are retained when the table is full.
+     */
+    public MemoTable(int start, int end, int maxEntries, int window) {
+        this.start = start;
+        this.end = end;
+        this.maxEntries = maxEntries;
+        this.window = window;
+    }
+
+    /**
+     * Returns the cached value for the given slot at the given offset, or null if not cached.
+     */
+    public Object get(int slot, int offset) {
+        Object value = find(slot, offset);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    private Object find(int slot, int offset) {
+        int index = offset - start;
+        if (index >= 0) {
+            Object[][] page = findPage(index >>> PAGE_BITS);
+            if (page != null) {
+                Object[] row = page[index & PAGE_MASK];
+                if (row != null && slot < row.length) {
+                    return row[slot];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Caches the given value for the given slot at the given offset. Does nothing when the offset is outside the range of this table.
+     */
+    public void put(int slot, int offset, Object value) {
+        int index = offset - start;
+        if (maxEntries <= 0 || index < 0 || index > end - start) {
+            return;
+        }
+        if (pageCount == 0) {
+            lowest = index;
+        }
+        Object[][] page = findPage(index >>> PAGE_BITS);
+        if (page == null) {
+            page = addPage(index >>> PAGE_BITS);
+        }
+        Object[] row = page[index & PAGE_MASK];
+        if (row == null) {
+            row = new Object[slot + 1];
+            page[index & PAGE_MASK] = row;
+        } else if (slot >= row.length) {
+            Object[] newRow = new Object[slot + 1];
+            System.arraycopy(row, 0, newRow, 0, row.length);
+            row = newRow;
+            page[index & PAGE_MASK] = row;
+        }
+        if (row[slot] == null) {
+            entries++;
+        }
+        row[slot] = value;
+        lowest = Math.min(lowest, index);
+        farthest = Math.max(farthest, index);
+        if (entries > maxEntries) {
+            evict();
+        }
+    }
+
+    /**
+     * Adds the entries of the given table to this table, except for those of the given slots and those for which this table already has an entry.
+     * The entries are shared by the tables.
+     */
+    public void merge(MemoTable other, BitSet skip) {
+        if (other.pages == null) {
+            return;
+        }
+        for (int i = 0; i < other.pages.length; i++) {
+            Object[][] page = other.pages[i];
+            if (page == null) {
+                continue;
+            }
+            int base = other.start + (other.pageNumbers[i] << PAGE_BITS);
+            for (int j = 0; j < PAGE_SIZE; j++) {
+                Object[] row = page[j];
+                if (row == null) {
+                    continue;
+                }
+                int offset = base + j;
+                for (int slot = 0; slot < row.length; slot++) {
+                    if (row[slot] != null && !skip.get(slot) && find(slot, offset) == null) {
+                        put(slot, offset, row[slot]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates this table for an edit to the input. Entries that examined the input at or after the edit and that start before the edit are
+     * discarded, as are entries that start in the removed part of the input and entries for the given slots that start after the edit. The
+     * remaining entries after the edit are moved by the change in length. Entries must be {@link Entry} instances that are independent of the
+     * offset where they start. Can only be used for a table that holds entries for the whole input.
+     *
+     * @param offset The offset of the edit.
+     * @param removed The number of characters removed at the offset.
+     * @param inserted The number of characters inserted at the offset.
+     * @param discard The slots whose entries depend on the input before the offset where they start.
+     */
+    public void edit(int offset, int removed, int inserted, BitSet discard) {
+        int newLength = end - removed + inserted;
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+        if (pages == null) {
+            end = newLength;
+            return;
+        }
+        int[] oldPageNumbers = pageNumbers;
+        Object[][][] oldPages = pages;
+        pageNumbers = null;
+        pages = null;
+        pageCount = 0;
+        lastPageNumber = -1;
+        lastPage = null;
+        entries = 0;
+        for (int i = 0; i < oldPages.length; i++) {
+            Object[][] page = oldPages[i];
+            if (page == null) {
+                continue;
+            }
+            int base = oldPageNumbers[i] << PAGE_BITS;
+            for (int j = 0; j < PAGE_SIZE; j++) {
+                Object[] row = page[j];
+                if (row == null) {
+                    continue;
+                }
+                int index = base + j;
+                if (index < offset) {
+                    for (int slot = 0; slot < row.length; slot++) {
+                        if (row[slot] != null && index + ((Entry) row[slot]).getExamined() > offset) {
+                            row[slot] = null;
+                        }
+                    }
+                } else if (index < offset + removed) {
+                    continue;
+                } else {
+                    for (int slot = discard.nextSetBit(0); slot >= 0 && slot < row.length; slot = discard.nextSetBit(slot + 1)) {
+                        row[slot] = null;
+                    }
+                    index = index - removed + inserted;
+                }
+                int count = count(row);
+                if (count > 0) {
+                    Object[][] newPage = findPage(index >>> PAGE_BITS);
+                    if (newPage == null) {
+                        newPage = addPage(index >>> PAGE_BITS);
+                    }
+                    newPage[index & PAGE_MASK] = row;
+                    entries += count;
+                }
+            }
+        }
+        lowest = 0;
+        farthest = farthest >= offset + removed ? farthest - removed + inserted : Math.min(farthest, newLength);
+        end = newLength;
+    }
+
+    private static int count(Object[] row) {
+        int count = 0;
+        if (row != null) {
+            for (Object value : row) {
+                if (value != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void evict() {
+        // Discard everything behind the window, then keep discarding the oldest positions until there is some space
+        int limit = farthest - window;
+        int target = maxEntries - maxEntries / 4;
+        while (lowest <= farthest && (lowest < limit || entries > target)) {
+            int pageNumber = lowest >>> PAGE_BITS;
+            Object[][] page = findPage(pageNumber);
+            if (page == null) {
+                // Skip to the start of the next page
+                lowest = (pageNumber + 1) << PAGE_BITS;
+                continue;
+            }
+            int count = count(page[lowest & PAGE_MASK]);
+            entries -= count;
+            evictions += count;
+            page[lowest & PAGE_MASK] = null;
+            lowest++;
+            if ((lowest & PAGE_MASK) == 0) {
+                removePage(pageNumber);
+            }
+        }
+    }
+
+    private static int hash(int pageNumber) {
+        int hash = pageNumber * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private Object[][] findPage(int pageNumber) {
+        if (pageNumber == lastPageNumber) {
+            return lastPage;
+        }
+        if (pages == null) {
+            return null;
+        }
+        int mask = pages.length - 1;
+        for (int i = hash(pageNumber) & mask; pages[i] != null; i = (i + 1) & mask) {
+            if (pageNumbers[i] == pageNumber) {
+                lastPageNumber = pageNumber;
+                lastPage = pages[i];
+                return lastPage;
+            }
+        }
+        return null;
+    }
+
+    private Object[][] addPage(int pageNumber) {
+        if (pages == null) {
+            pageNumbers = new int[16];
+            pages = new Object[16][][];
+        } else if (2 * (pageCount + 1) > pages.length) {
+            int[] oldPageNumbers = pageNumbers;
+            Object[][][] oldPages = pages;
+            pageNumbers = new int[oldPages.length * 2];
+            pages = new Object[oldPages.length * 2][][];
+            for (int i = 0; i < oldPages.length; i++) {
+                if (oldPages[i] != null) {
+                    insertPage(oldPageNumbers[i], oldPages[i]);
+                }
+            }
+        }
+        Object[][] page = new Object[PAGE_SIZE][];
+        insertPage(pageNumber, page);
+        pageCount++;
+        lastPageNumber = pageNumber;
+        lastPage = page;
+        return page;
+    }
+
+    private void insertPage(int pageNumber, Object[][] page) {
+        int mask = pages.length - 1;
+        int i = hash(pageNumber) & mask;
+        while (pages[i] != null) {
+            i = (i + 1) & mask;
+        }
+        pageNumbers[i] = pageNumber;
+        pages[i] = page;
+    }
+
+    private void removePage(int pageNumber) {
+        if (pageNumber == lastPageNumber) {
+            lastPageNumber = -1;
+            lastPage = null;
+        }
+        int mask = pages.length - 1;
+        int i = hash(pageNumber) & mask;
+        while (pages[i] != null && pageNumbers[i] != pageNumber) {
+            i = (i + 1) & mask;
+        }
+        if (pages[i] == null) {
+            return;
+        }
+        pages[i] = null;
+        pageCount--;
+        // Move back the pages that follow in the same run, so that lookups do not stop at the removed page
+        for (int j = (i + 1) & mask; pages[j] != null; j = (j + 1) & mask) {
+            int home = hash(pageNumbers[j]) & mask;
+            boolean reachable = i <= j ? i < home && home <= j : i < home || home <= j;
+            if (!reachable) {
+                pageNumbers[i] = pageNumbers[j];
+                pages[i] = pages[j];
+                pages[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found a cached value.
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that did not find a cached value.
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of entries discarded to stay within the size limit.
+     */
+    public int getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * An entry that can be carried over to an edited version of the input.
+     */
+    public interface Entry {
+        /**
+         * Returns the number of characters that were examined to produce this entry, starting at the offset of the entry. This is greater than the
+         * remaining length of the input when the end of the input was examined.
+         */
+        int getExamined();
+    }
+}
@@ -0,0 +1,33 @@
+package net.rubygrapefruit.parser.peg.internal.stream;
+
+import net.rubygrapefruit.parser.peg.FailureReason;
+
+/**
+ * Thrown by a {@link ParseBudget} to stop a parse that has exceeded one of its limits. The parser reports this to the visitor as a failure.
+ */
+public class ParseAbortedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final FailureReason reason;
+    private final int offset;
+
+    public ParseAbortedException(FailureReason reason, String message, int offset) {
+        // Thrown to unwind the matchers, so the stack trace is not useful
+        super(message, null, false, false);
+        this.reason = reason;
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the reason the parse was stopped.
+     */
+    public FailureReason getReason() {
+        return reason;
+    }
+
+    /**
+     * Returns the offset that was being matched when the parse was stopped.
+     */
+    public int getOffset() {
+        return offset;
+    }
+}
@@ -0,0 +1,81 @@
+package net.rubygrapefruit.parser.peg.internal.stream;
+
+import net.rubygrapefruit.parser.peg.CancellationToken;
+import net.rubygrapefruit.parser.peg.FailureReason;
+import net.rubygrapefruit.parser.peg.ParseOptions;
+
+/**
+ * Tracks the work done by a single parse against the limits of some {@link ParseOptions}.
+ *
+ * <p>To keep the cost low, matchers do not call this for every step. Instead, a matcher counts down the number of steps returned by {@link #start()}
+ * or {@link #check(int, int, int)} and calls {@link #check(int, int, int)} when the count reaches zero. The cancellation token, clock and token count
+ * are only examined at these checks.</p>
+ */
+public class ParseBudget {
+    private static final int CHECK_INTERVAL = 1024;
+    private final CancellationToken cancellationToken;
+    private final long maxSteps;
+    private final long deadline;
+    private final boolean hasDeadline;
+    private final int maxTokens;
+    private final int checkInterval;
+    private long steps;
+    private int interval;
+
+    public ParseBudget(ParseOptions options) {
+        cancellationToken = options.getCancellationToken();
+        maxSteps = options.getMaxSteps();
+        hasDeadline = options.getTimeoutNanos() != Long.MAX_VALUE;
+        deadline = hasDeadline ? System.nanoTime() + options.getTimeoutNanos() : 0;
+        maxTokens = options.getMaxTokens();
+        checkInterval = cancellationToken != null || hasDeadline || maxTokens != Integer.MAX_VALUE ? CHECK_INTERVAL : Integer.MAX_VALUE;
+        interval = nextInterval();
+    }
+
+    /**
+     * Returns a budget with no limits.
+     */
+    public static ParseBudget unlimited() {
+        return new ParseBudget(new ParseOptions());
+    }
+
+    /**
+     * Returns the number of steps that can be taken before {@link #check(int, int, int)} must be called.
+     */
+    public int start() {
+        return interval;
+    }
+
+    /**
+     * Checks the limits.
+     *
+     * @param remaining The number of steps remaining from the count previously returned by this budget, zero or less.
+     * @param offset The offset that is being matched.
+     * @param tokens The number of tokens currently held.
+     * @return The number of steps that can be taken before this method must be called again.
+     * @throws ParseAbortedException when a limit has been exceeded.
+     */
+    public int check(int remaining, int offset, int tokens) throws ParseAbortedException {
+        steps += (long) interval - remaining;
+        if (cancellationToken != null && cancellationToken.isCancelled()) {
+            throw new ParseAbortedException(FailureReason.Cancelled, "parsing was cancelled", offset);
+        }
+        if (steps > maxSteps) {
+            throw new ParseAbortedException(FailureReason.StepLimitExceeded, "parsing exceeded the limit of " + maxSteps + " steps", offset);
+        }
+        if (hasDeadline && System.nanoTime() - deadline > 0) {
+            throw new ParseAbortedException(FailureReason.TimeLimitExceeded, "parsing exceeded the time limit", offset);
+        }
+        if (tokens > maxTokens) {
+            throw new ParseAbortedException(FailureReason.TokenLimitExceeded, "parsing exceeded the limit of " + maxTokens + " tokens", offset);
+        }
+        interval = nextInterval();
+        return interval;
+    }
+
+    private int nextInterval() {
+        // Check again just after the step limit is reached
+        long remainingSteps = maxSteps - steps;
+        return remainingSteps >= checkInterval ? checkInterval : (int) remainingSteps + 1;
+    }
+}
@@ -28,14 +28,4 @@ public interface StreamPos {
      * Returns the line containing this position, excluding the line ending.
      */
     String getCurrentLine();
-
-    /**
-     * Returns the text between this position and the given end position (exclusive).
-     */
-    String upTo(StreamPos end);
-
-    /**
-     * Returns the number of characters between this position and the other. Returns > 0 when this position is after the other, < 0 when this position is before the other.
-     */
-    int diff(StreamPos start);
 }
@@ -0,0 +1,105 @@
+package net.rubygrapefruit.parser.peg.internal.vm;
+
+/**
+ * A compiled set of expressions. Each instruction is made up of an opcode followed by two operands.
+ */
+public class Program {
+    static final int INSTRUCTION_SIZE = 3;
+
+    /**
+     * Matches the string constant `a`. Emits a token of type `b`, if not -1.
+     */
+    static final int CHARS = 0;
+    /**
+     * Matches a letter. Emits a token of type `b`, if not -1.
+     */
+    static final int LETTER = 1;
+    /**
+     * Matches any character. Emits a token of type `b`, if not -1.
+     */
+    static final int ANY = 2;
+    /**
+     * Pushes a backtrack entry that continues at label `a`.
+     */
+    static final int CHOICE = 3;
+    /**
+     * Discards the top backtrack entry and continues at label `a`.
+     */
+    static final int COMMIT = 4;
+    /**
+     * Updates the top backtrack entry to the current position and continues at label `a`.
+     */
+    static final int PARTIAL_COMMIT = 5;
+    /**
+     * Discards the top backtrack entry, then backtracks to the one before it.
+     */
+    static final int FAIL_TWICE = 6;
+    /**
+     * Calls the subroutine at label `a`.
+     */
+    static final int CALL = 7;
+    /**
+     * Returns from the current subroutine.
+     */
+    static final int RETURN = 8;
+    /**
+     * Marks the start of a group.
+     */
+    static final int OPEN_GROUP = 9;
+    /**
+     * Emits a token of type `b` for the group started by the matching {@link #OPEN_GROUP}, if not empty.
+     */
+    static final int CLOSE_GROUP = 10;
+    /**
+     * Marks the start of the text to collect for a back reference.
+     */
+    static final int OPEN_CAPTURE = 11;
+    /**
+     * Collects the text since the matching {@link #OPEN_CAPTURE} into register `a`.
+     */
+    static final int CLOSE_CAPTURE = 12;
+    /**
+     * Matches the text in register `a`. Emits a token when `b` is 1.
+     */
+    static final int MATCH_CAPTURE = 13;
+    /**
+     * Stops the program.
+     */
+    static final int END = 14;
+    /**
+     * Matches a character of the single character expression `a`. Emits a token when `b` is 1.
+     */
+    static final int CHAR_CLASS = 15;
+    /**
+     * Matches zero or more characters of the single character expression `a`. Emits a token for each character when `b` is 1.
+     */
+    static final int CHAR_RUN = 16;
+    /**
+     * Matches characters up to the next occurrence of the string constant `a`, or the end of input. Emits a token of type `b` for each character,
+     * if not -1.
+     */
+    static final int SCAN_UNTIL = 17;
+    /**
+     * Matches one of the literals of the literal choice expression `a`. Emits a token for the literal when `b` is 1.
+     */
+    static final int LITERALS = 18;
+
+    final int[] code;
+    final Object[] constants;
+    final int registers;
+
+    Program(int[] code, Object[] constants, int registers) {
+        this.code = code;
+        this.constants = constants;
+        this.registers = registers;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < code.length; i += INSTRUCTION_SIZE) {
+            builder.append(i).append(": ").append(code[i]).append(' ').append(code[i + 1]).append(' ').append(code[i + 2]).append('\n');
+        }
+        return builder.toString();
+    }
+}
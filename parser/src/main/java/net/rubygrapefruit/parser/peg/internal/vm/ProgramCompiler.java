@@ -0,0 +1,193 @@
+package net.rubygrapefruit.parser.peg.internal.vm;
+
+import net.rubygrapefruit.parser.peg.internal.expression.*;
+import net.rubygrapefruit.parser.peg.internal.match.MatchExpression;
+
+import java.util.*;
+
+import static net.rubygrapefruit.parser.peg.internal.vm.Program.*;
+
+/**
+ * Compiles a graph of expressions into a {@link Program}.
+ *
+ * <p>Each rule of the {@link ExpressionGraph} is compiled into a subroutine and everything else is compiled inline. Each subroutine is compiled in up to
+ * two forms: one that emits tokens and one for use inside a group, which does not.</p>
+ */
+public class ProgramCompiler {
+    private final Map<Subroutine, Integer> labels = new HashMap<>();
+    private final Deque<Subroutine> pending = new ArrayDeque<>();
+    private final Map<Integer, Subroutine> calls = new HashMap<>();
+    private final Map<Object, Integer> constantIndexes = new IdentityHashMap<>();
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<DefaultBackReference, Integer> registers = new IdentityHashMap<>();
+    private ExpressionGraph graph;
+    private int[] code = new int[64];
+    private int pos;
+
+    public Program compile(MatchExpression rootExpression) {
+        graph = new ExpressionGraph(rootExpression);
+        compile(rootExpression, true);
+        instruction(END, 0, 0);
+        while (!pending.isEmpty()) {
+            Subroutine subroutine = pending.removeFirst();
+            labels.put(subroutine, pos);
+            inline(subroutine.expression, subroutine.emit);
+            instruction(RETURN, 0, 0);
+        }
+        for (Map.Entry<Integer, Subroutine> entry : calls.entrySet()) {
+            code[entry.getKey() + 1] = labels.get(entry.getValue());
+        }
+        return new Program(Arrays.copyOf(code, pos), constants.toArray(), registers.size());
+    }
+
+    private void compile(MatchExpression expression, boolean emit) {
+        MatchExpression target = graph.resolve(expression);
+        if (graph.isRule(target)) {
+            Subroutine subroutine = new Subroutine(target, emit);
+            if (!labels.containsKey(subroutine)) {
+                labels.put(subroutine, -1);
+                pending.add(subroutine);
+            }
+            calls.put(pos, subroutine);
+            instruction(CALL, -1, 0);
+        } else {
+            inline(target, emit);
+        }
+    }
+
+    private void inline(MatchExpression expression, boolean emit) {
+        if (expression instanceof CharSequenceExpression) {
+            CharSequenceExpression chars = (CharSequenceExpression) expression;
+            instruction(CHARS, constant(chars.getChars()), emit ? constant(expression) : -1);
+        } else if (expression instanceof LetterExpression) {
+            instruction(LETTER, 0, emit ? constant(expression) : -1);
+        } else if (expression instanceof AnythingExpression) {
+            instruction(ANY, 0, emit ? constant(expression) : -1);
+        } else if (expression instanceof SingleCharExpression) {
+            instruction(CHAR_CLASS, constant(expression), emit ? 1 : 0);
+        } else if (expression instanceof LiteralChoiceExpression) {
+            instruction(LITERALS, constant(expression), emit ? 1 : 0);
+        } else if (expression instanceof SequenceExpression) {
+            for (MatchExpression child : ((SequenceExpression) expression).getExpressions()) {
+                compile(child, emit);
+            }
+        } else if (expression instanceof OneOfExpression) {
+            List<? extends MatchExpression> alternatives = ((OneOfExpression) expression).getExpressions();
+            List<Integer> commits = new ArrayList<>();
+            for (int i = 0; i < alternatives.size() - 1; i++) {
+                int choice = instruction(CHOICE, -1, 0);
+                compile(alternatives.get(i), emit);
+                commits.add(instruction(COMMIT, -1, 0));
+                code[choice + 1] = pos;
+            }
+            compile(alternatives.get(alternatives.size() - 1), emit);
+            for (Integer commit : commits) {
+                code[commit + 1] = pos;
+            }
+        } else if (expression instanceof OptionalExpression) {
+            int choice = instruction(CHOICE, -1, 0);
+            compile(((OptionalExpression) expression).getExpression(), emit);
+            instruction(COMMIT, pos + INSTRUCTION_SIZE, 0);
+            code[choice + 1] = pos;
+        } else if (expression instanceof ZeroOrMoreExpression) {
+            ScanUntilMatcher scan = ScanUntilMatcher.of((ZeroOrMoreExpression) expression, graph);
+            if (scan != null) {
+                instruction(SCAN_UNTIL, constant(scan.getTerminator().getChars()), emit ? constant(scan.getAnything()) : -1);
+            } else {
+                zeroOrMore(((ZeroOrMoreExpression) expression).getExpression(), emit);
+            }
+        } else if (expression instanceof OneOrMoreExpression) {
+            MatchExpression child = ((OneOrMoreExpression) expression).getExpression();
+            compile(child, emit);
+            zeroOrMore(child, emit);
+        } else if (expression instanceof NotPredicate) {
+            int choice = instruction(CHOICE, -1, 0);
+            compile(((NotPredicate) expression).getExpression(), false);
+            instruction(FAIL_TWICE, 0, 0);
+            code[choice + 1] = pos;
+        } else if (expression instanceof GroupingExpression) {
+            if (emit) {
+                instruction(OPEN_GROUP, 0, 0);
+                compile(((GroupingExpression) expression).getExpression(), false);
+                instruction(CLOSE_GROUP, 0, constant(expression));
+            } else {
+                compile(((GroupingExpression) expression).getExpression(), false);
+            }
+        } else if (expression instanceof MemoizingExpression) {
+            compile(((MemoizingExpression) expression).getExpression(), emit);
+        } else if (expression instanceof DefaultBackReference.Collector) {
+            DefaultBackReference backReference = ((DefaultBackReference.Collector) expression).getBackReference();
+            instruction(OPEN_CAPTURE, 0, 0);
+            compile(backReference.getExpression(), emit);
+            instruction(CLOSE_CAPTURE, register(backReference), 0);
+        } else if (expression instanceof DefaultBackReference.ValueExpression) {
+            DefaultBackReference backReference = ((DefaultBackReference.ValueExpression) expression).getBackReference();
+            instruction(MATCH_CAPTURE, register(backReference), emit ? 1 : 0);
+        } else {
+            throw new IllegalArgumentException("Cannot compile expression " + expression + ".");
+        }
+    }
+
+    private void zeroOrMore(MatchExpression expression, boolean emit) {
+        MatchExpression target = graph.resolve(expression);
+        if (target instanceof SingleCharExpression) {
+            instruction(CHAR_RUN, constant(target), emit ? 1 : 0);
+            return;
+        }
+        int choice = instruction(CHOICE, -1, 0);
+        compile(expression, emit);
+        instruction(PARTIAL_COMMIT, choice + INSTRUCTION_SIZE, 0);
+        code[choice + 1] = pos;
+    }
+
+    private int constant(Object value) {
+        Integer index = constantIndexes.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    private int register(DefaultBackReference backReference) {
+        Integer index = registers.get(backReference);
+        if (index == null) {
+            index = registers.size();
+            registers.put(backReference, index);
+        }
+        return index;
+    }
+
+    private int instruction(int opcode, int a, int b) {
+        if (pos + INSTRUCTION_SIZE > code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+        int start = pos;
+        code[pos++] = opcode;
+        code[pos++] = a;
+        code[pos++] = b;
+        return start;
+    }
+
+    private static class Subroutine {
+        final MatchExpression expression;
+        final boolean emit;
+
+        Subroutine(MatchExpression expression, boolean emit) {
+            this.expression = expression;
+            this.emit = emit;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            Subroutine other = (Subroutine) obj;
+            return expression == other.expression && emit == other.emit;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(expression) ^ (emit ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package net.rubygrapefruit.parser.peg.internal.vm;
+
+import net.rubygrapefruit.parser.peg.Engine;
+import net.rubygrapefruit.parser.peg.Expression;
+import net.rubygrapefruit.parser.peg.internal.AbstractEngineParser;
+import net.rubygrapefruit.parser.peg.internal.DefaultParser;
+import net.rubygrapefruit.parser.peg.internal.expression.CharSequenceExpression;
+import net.rubygrapefruit.parser.peg.internal.expression.LiteralChoiceExpression;
+import net.rubygrapefruit.parser.peg.internal.expression.SingleCharExpression;
+import net.rubygrapefruit.parser.peg.internal.match.MatchExpression;
+import net.rubygrapefruit.parser.peg.internal.match.TokenBuffer;
+import net.rubygrapefruit.parser.peg.internal.stream.CharSequences;
+import net.rubygrapefruit.parser.peg.internal.stream.ParseAbortedException;
+import net.rubygrapefruit.parser.peg.internal.stream.ParseBudget;
+
+import java.util.Arrays;
+
+import static net.rubygrapefruit.parser.peg.internal.vm.Program.*;
+
+/**
+ * Compiles an expression into a {@link Program} and runs it against some input. See {@link AbstractEngineParser} for how the fallback parser is used.
+ *
+ * <p>The expression is compiled on first use, so that reference expressions can be set up after the parser has been created.</p>
+ */
+public class VirtualMachineParser extends AbstractEngineParser {
+    private static final int CHOICE_FRAME = 0;
+    private static final int CALL_FRAME = 1;
+    private static final int MARK_FRAME = 2;
+    private static final int FRAME_SIZE = 4;
+
+    private final MatchExpression rootExpression;
+    private volatile Program program;
+
+    public VirtualMachineParser(MatchExpression rootExpression, DefaultParser fallback) {
+        super(Engine.VirtualMachine, fallback);
+        this.rootExpression = rootExpression;
+    }
+
+    private Program getProgram() {
+        // Only lock while the program is compiled, so that concurrent parses do not contend once it has been compiled
+        Program current = program;
+        if (current == null) {
+            synchronized (this) {
+                current = program;
+                if (current == null) {
+                    current = new ProgramCompiler().compile(rootExpression);
+                    program = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Runs the program against the given input, collecting tokens. A step is counted for each choice or loop iteration, and for each character
+     * of a run.
+     *
+     * @return true if the program matched the whole input.
+     * @throws ParseAbortedException when the budget is exceeded.
+     */
+    @Override
+    protected boolean match(CharSequence input, ParseBudget budget, TokenBuffer tokens) {
+        Program program = getProgram();
+        int[] code = program.code;
+        Object[] constants = program.constants;
+        CharSequenceExpression[] registers = new CharSequenceExpression[program.registers];
+        int[] stack = new int[FRAME_SIZE * 32];
+        int top = 0;
+        int length = input.length();
+        int pc = 0;
+        int pos = 0;
+        int countdown = budget.start();
+
+        while (true) {
+            boolean failed = false;
+            switch (code[pc]) {
+                case CHARS: {
+                    String str = (String) constants[code[pc + 1]];
+                    if (CharSequences.startsWith(input, str, pos)) {
+                        if (code[pc + 2] >= 0) {
+                            tokens.add((Expression) constants[code[pc + 2]], pos, pos + str.length());
+                        }
+                        pos += str.length();
+                        pc += INSTRUCTION_SIZE;
+                    } else {
+                        failed = true;
+                    }
+                    break;
+                }
+                case LETTER:
+                    if (pos < length && Character.isAlphabetic(input.charAt(pos))) {
+                        if (code[pc + 2] >= 0) {
+                            tokens.add((Expression) constants[code[pc + 2]], pos, pos + 1);
+                        }
+                        pos++;
+                        pc += INSTRUCTION_SIZE;
+                    } else {
+                        failed = true;
+                    }
+                    break;
+                case ANY:
+                    if (pos < length) {
+                        if (code[pc + 2] >= 0) {
+                            tokens.add((Expression) constants[code[pc + 2]], pos, pos + 1);
+                        }
+                        pos++;
+                        pc += INSTRUCTION_SIZE;
+                    } else {
+                        failed = true;
+                    }
+                    break;
+                case CHAR_CLASS: {
+                    Expression type = pos < length ? ((SingleCharExpression) constants[code[pc + 1]]).getTokenType(input.charAt(pos)) : null;
+                    if (type != null) {
+                        if (code[pc + 2] != 0) {
+                            tokens.add(type, pos, pos + 1);
+                        }
+                        pos++;
+                        pc += INSTRUCTION_SIZE;
+                    } else {
+                        failed = true;
+                    }
+                    break;
+                }
+                case CHAR_RUN: {
+                    SingleCharExpression expression = (SingleCharExpression) constants[code[pc + 1]];
+                    boolean emit = code[pc + 2] != 0;
+                    int start = pos;
+                    while (pos < length) {
+                        Expression type = expression.getTokenType(input.charAt(pos));
+                        if (type == null) {
+                            break;
+                        }
+                        if (emit) {
+                            tokens.add(type, pos, pos + 1);
+                        }
+                        pos++;
+                    }
+                    countdown -= pos - start;
+                    if (countdown <= 0) {
+                        countdown = budget.check(countdown, pos, tokens.size());
+                    }
+                    pc += INSTRUCTION_SIZE;
+                    break;
+                }
+                case LITERALS: {
+                    CharSequenceExpression literal = ((LiteralChoiceExpression) constants[code[pc + 1]]).match(input, pos);
+                    if (literal != null) {
+                        int end = pos + literal.getChars().length();
+                        if (code[pc + 2] != 0) {
+                            tokens.add(literal, pos, end);
+                        }
+                        pos = end;
+                        pc += INSTRUCTION_SIZE;
+                    } else {
+                        failed = true;
+                    }
+                    break;
+                }
+                case SCAN_UNTIL: {
+                    int end = CharSequences.indexOf(input, (String) constants[code[pc + 1]], pos);
+                    if (end < 0) {
+                        end = length;
+                    }
+                    countdown -= end - pos;
+                    if (code[pc + 2] >= 0) {
+                        Expression type = (Expression) constants[code[pc + 2]];
+                        for (; pos < end; pos++) {
+                            tokens.add(type, pos, pos + 1);
+                        }
+                    }
+                    pos = end;
+                    if (countdown <= 0) {
+                        countdown = budget.check(countdown, pos, tokens.size());
+                    }
+                    pc += INSTRUCTION_SIZE;
+                    break;
+                }
+                case CHOICE:
+                    if (--countdown <= 0) {
+                        countdown = budget.check(countdown, pos, tokens.size());
+                    }
+                    if (top + FRAME_SIZE > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top] = CHOICE_FRAME;
+                    stack[top + 1] = code[pc + 1];
+                    stack[top + 2] = pos;
+                    stack[top + 3] = tokens.size();
+                    top += FRAME_SIZE;
+                    pc += INSTRUCTION_SIZE;
+                    break;
+                case COMMIT:
+                    top -= FRAME_SIZE;
+                    pc = code[pc + 1];
+                    break;
+                case PARTIAL_COMMIT:
+                    if (--countdown <= 0) {
+                        countdown = budget.check(countdown, pos, tokens.size());
+                    }
+                    stack[top - FRAME_SIZE + 2] = pos;
+                    stack[top - FRAME_SIZE + 3] = tokens.size();
+                    pc = code[pc + 1];
+                    break;
+                case FAIL_TWICE:
+                    top -= FRAME_SIZE;
+                    failed = true;
+                    break;
+                case CALL:
+                    if (top + FRAME_SIZE > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top] = CALL_FRAME;
+                    stack[top + 1] = pc + INSTRUCTION_SIZE;
+                    top += FRAME_SIZE;
+                    pc = code[pc + 1];
+                    break;
+                case RETURN:
+                    top -= FRAME_SIZE;
+                    pc = stack[top + 1];
+                    break;
+                case OPEN_GROUP:
+                case OPEN_CAPTURE:
+                    if (top + FRAME_SIZE > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top] = MARK_FRAME;
+                    stack[top + 2] = pos;
+                    top += FRAME_SIZE;
+                    pc += INSTRUCTION_SIZE;
+                    break;
+                case CLOSE_GROUP: {
+                    top -= FRAME_SIZE;
+                    int start = stack[top + 2];
+                    if (pos > start) {
+                        tokens.add((Expression) constants[code[pc + 2]], start, pos);
+                    }
+                    pc += INSTRUCTION_SIZE;
+                    break;
+                }
+                case CLOSE_CAPTURE:
+                    top -= FRAME_SIZE;
+                    registers[code[pc + 1]] = CharSequenceExpression.value(CharSequences.substring(input, stack[top + 2], pos));
+                    pc += INSTRUCTION_SIZE;
+                    break;
+                case MATCH_CAPTURE: {
+                    CharSequenceExpression value = registers[code[pc + 1]];
+                    if (value != null && CharSequences.startsWith(input, value.getChars(), pos)) {
+                        int end = pos + value.getChars().length();
+                        if (code[pc + 2] != 0) {
+                            tokens.add(value, pos, end);
+                        }
+                        pos = end;
+                        pc += INSTRUCTION_SIZE;
+                    } else {
+                        failed = true;
+                    }
+                    break;
+                }
+                case END:
+                    return pos == length;
+                default:
+                    throw new IllegalStateException("Unknown instruction " + code[pc] + " at " + pc + ".");
+            }
+
+            if (failed) {
+                // Unwind to the most recent choice
+                while (top > 0 && stack[top - FRAME_SIZE] != CHOICE_FRAME) {
+                    top -= FRAME_SIZE;
+                }
+                if (top == 0) {
+                    return false;
+                }
+                top -= FRAME_SIZE;
+                pc = stack[top + 1];
+                pos = stack[top + 2];
+                tokens.truncate(stack[top + 3]);
+            }
+        }
+    }
+}
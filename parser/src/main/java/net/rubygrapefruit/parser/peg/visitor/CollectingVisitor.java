@@ -1,15 +1,17 @@
 package net.rubygrapefruit.parser.peg.visitor;
 
+import net.rubygrapefruit.parser.peg.FailureVisitor;
+import net.rubygrapefruit.parser.peg.ParseFailure;
 import net.rubygrapefruit.parser.peg.Region;
-import net.rubygrapefruit.parser.peg.TokenVisitor;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class CollectingVisitor<T> implements TokenVisitor<T> {
+public class CollectingVisitor<T> implements FailureVisitor<T> {
     private final List<String> tokens = new ArrayList<String>();
     private final List<T> values = new ArrayList<T>();
     private String failure;
+    private ParseFailure parseFailure;
 
     public List<String> getTokens() {
         return tokens;
@@ -20,9 +22,19 @@ public class CollectingVisitor<T> implements TokenVisitor<T> {
     }
 
     public String getFailure() {
+        if (failure == null && parseFailure != null) {
+            failure = parseFailure.getMessage();
+        }
         return failure;
     }
 
+    /**
+     * Returns the failure, or null when parsing did not fail or the failure was reported as a message.
+     */
+    public ParseFailure getParseFailure() {
+        return parseFailure;
+    }
+
     @Override
     public void token(T value, Region match) {
         values.add(value);
@@ -33,4 +45,9 @@ public class CollectingVisitor<T> implements TokenVisitor<T> {
     public void failed(String message, Region remainder) {
         this.failure = message;
     }
+
+    @Override
+    public void failed(ParseFailure failure) {
+        this.parseFailure = failure;
+    }
 }
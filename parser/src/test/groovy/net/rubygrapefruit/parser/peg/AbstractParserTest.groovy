@@ -6,19 +6,19 @@ import spock.lang.Specification
 abstract class AbstractParserTest extends Specification {
     def builder = new ParserBuilder()
 
-    List<String> tokens(Parser parser, String str) {
+    List<String> tokens(Parser parser, CharSequence str) {
         def visitor = parser.parse(str, new CollectingVisitor())
         assert visitor.failure == null
         return visitor.tokens
     }
 
-    CollectingVisitor parse(Parser parser, String str) {
+    CollectingVisitor parse(Parser parser, CharSequence str) {
         def visitor = parser.parse(str, new CollectingVisitor())
         assert visitor.failure == null
         return visitor
     }
 
-    CollectingVisitor fail(Parser parser, String str) {
+    CollectingVisitor fail(Parser parser, CharSequence str) {
         def visitor = parser.parse(str, new CollectingVisitor())
         assert visitor.failure != null
         return visitor
@@ -0,0 +1,7 @@
+package net.rubygrapefruit.parser.peg
+
+class GeneratedCodeParseAllTest extends ParseAllTest {
+    def setup() {
+        builder.engine = Engine.GeneratedCode
+    }
+}
@@ -0,0 +1,7 @@
+package net.rubygrapefruit.parser.peg
+
+class GeneratedCodeParseEventsTest extends ParseEventsTest {
+    def setup() {
+        builder.engine = Engine.GeneratedCode
+    }
+}
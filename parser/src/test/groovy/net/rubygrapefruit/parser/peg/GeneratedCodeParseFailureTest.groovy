@@ -0,0 +1,7 @@
+package net.rubygrapefruit.parser.peg
+
+class GeneratedCodeParseFailureTest extends ParseFailureTest {
+    def setup() {
+        builder.engine = Engine.GeneratedCode
+    }
+}
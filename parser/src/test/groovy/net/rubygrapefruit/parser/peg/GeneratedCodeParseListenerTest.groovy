@@ -0,0 +1,24 @@
+package net.rubygrapefruit.parser.peg
+
+import net.rubygrapefruit.parser.peg.internal.codegen.GeneratedCodeParser
+
+class GeneratedCodeParseListenerTest extends ParseListenerTest {
+    def setup() {
+        builder.engine = Engine.GeneratedCode
+    }
+
+    @Override
+    int getFailurePasses() {
+        return 2
+    }
+
+    def "generates a matcher class for a simple grammar"() {
+        given:
+        def parser = parser()
+
+        expect:
+        parser instanceof GeneratedCodeParser
+        parser.generated
+        parser.generationFailure == null
+    }
+}
@@ -0,0 +1,7 @@
+package net.rubygrapefruit.parser.peg
+
+class GeneratedCodeParseOptionsTest extends ParseOptionsTest {
+    def setup() {
+        builder.engine = Engine.GeneratedCode
+    }
+}
@@ -0,0 +1,7 @@
+package net.rubygrapefruit.parser.peg
+
+class GeneratedCodeParserBuilderTest extends ParserBuilderTest {
+    def setup() {
+        builder.engine = Engine.GeneratedCode
+    }
+}
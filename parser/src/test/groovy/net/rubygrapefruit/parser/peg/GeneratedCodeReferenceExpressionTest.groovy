@@ -0,0 +1,7 @@
+package net.rubygrapefruit.parser.peg
+
+class GeneratedCodeReferenceExpressionTest extends ReferenceExpressionTest {
+    def setup() {
+        builder.engine = Engine.GeneratedCode
+    }
+}
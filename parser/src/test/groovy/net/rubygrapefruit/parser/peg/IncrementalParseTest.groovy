@@ -0,0 +1,119 @@
+package net.rubygrapefruit.parser.peg
+
+import net.rubygrapefruit.parser.peg.visitor.CollectingVisitor
+import spock.lang.Unroll
+
+class IncrementalParseTest extends AbstractParserTest {
+    def "reuses results of memoized expressions that do not overlap the edit"() {
+        expect:
+        def word = builder.memoize(builder.sequence(builder.oneOrMore(builder.letter()).group(), builder.optional(builder.singleChar(' ' as char))))
+        def parser = builder.newParser(builder.zeroOrMore(word))
+
+        def visitor = new CollectingVisitor()
+        def result = parser.parseIncrementally("ab cd ef gh", visitor)
+        visitor.tokens == ["ab", " ", "cd", " ", "ef", " ", "gh"]
+        result.text == "ab cd ef gh"
+        parser.memoizationStatistics.hits == 0
+        parser.memoizationStatistics.misses == 5
+
+        def visitor2 = new CollectingVisitor()
+        def result2 = parser.reparse(result, 4, 0, "x", visitor2)
+        visitor2.tokens == ["ab", " ", "cxd", " ", "ef", " ", "gh"]
+        result2.text == "ab cxd ef gh"
+        parser.memoizationStatistics.hits == 4
+        parser.memoizationStatistics.misses == 6
+
+        def visitor3 = new CollectingVisitor()
+        def result3 = parser.reparse(result2, 2, 1, "", visitor3)
+        visitor3.tokens == ["abcxd", " ", "ef", " ", "gh"]
+        result3.text == "abcxd ef gh"
+        parser.memoizationStatistics.hits == 7
+        parser.memoizationStatistics.misses == 7
+    }
+
+    @Unroll
+    def "reparse produces the same result as parsing the edited text - #text"() {
+        expect:
+        def word = builder.memoize(builder.oneOrMore(builder.letter()).group())
+        def stmt = builder.memoize(builder.sequence(word, builder.zeroOrMore(builder.sequence(builder.singleChar(' ' as char), word)), builder.singleChar(';' as char)))
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(stmt, builder.singleChar('\n' as char))))
+
+        def result = parser.parseIncrementally("ab cd;\nef;\ngh ij kl;\n", new CollectingVisitor())
+        def visitor = new CollectingVisitor()
+        def result2 = parser.reparse(result, offset, removed, inserted, visitor)
+        def expected = parser.parse(text, new CollectingVisitor())
+
+        result2.text == text
+        visitor.tokens == expected.tokens
+        visitor.values == expected.values
+        visitor.failure == expected.failure
+
+        where:
+        offset | removed | inserted | text
+        0      | 0       | "x"      | "xab cd;\nef;\ngh ij kl;\n"
+        2      | 1       | ""       | "abcd;\nef;\ngh ij kl;\n"
+        5      | 1       | ""       | "ab cd\nef;\ngh ij kl;\n"
+        7      | 3       | "mn op;" | "ab cd;\nmn op;\ngh ij kl;\n"
+        11     | 0       | " "      | "ab cd;\nef;\n gh ij kl;\n"
+        21     | 0       | "qr;"    | "ab cd;\nef;\ngh ij kl;\nqr;"
+        0      | 21      | ""       | ""
+    }
+
+    def "reparse discards results that depend on a back reference changed by the edit"() {
+        expect:
+        def name = builder.oneOrMore(builder.letter())
+        def ref = builder.backReference(name)
+        def item = builder.memoize(builder.sequence(ref.value, builder.singleChar(';' as char)))
+        def parser = builder.newParser(ref.followedBy(builder.sequence(builder.singleChar(':' as char), builder.zeroOrMore(item))))
+
+        def result = parser.parseIncrementally("ab:ab;ab;", new CollectingVisitor())
+
+        def visitor = new CollectingVisitor()
+        def result2 = parser.reparse(result, 0, 0, "a", visitor)
+        visitor.tokens == ["a", "a", "b", ":"]
+        visitor.failure != null
+
+        def visitor2 = new CollectingVisitor()
+        parser.reparse(result2, 4, 6, "aab;", visitor2)
+        visitor2.tokens == ["a", "a", "b", ":", "aab", ";"]
+        visitor2.failure == null
+    }
+
+    def "cannot reparse a result more than once"() {
+        def parser = builder.newParser(builder.chars("abc"))
+        def result = parser.parseIncrementally("abc", new CollectingVisitor())
+        parser.reparse(result, 0, 0, "", new CollectingVisitor())
+
+        when:
+        parser.reparse(result, 0, 0, "", new CollectingVisitor())
+
+        then:
+        def e = thrown(IllegalStateException)
+        e.message == "This result has already been reparsed."
+    }
+
+    def "cannot reparse a result from another parser"() {
+        def parser = builder.newParser(builder.chars("abc"))
+        def other = builder.newParser(builder.chars("abc"))
+        def result = other.parseIncrementally("abc", new CollectingVisitor())
+
+        when:
+        parser.reparse(result, 0, 0, "", new CollectingVisitor())
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "The result was not produced by this parser."
+    }
+
+    def "cannot reparse an edit outside of the text"() {
+        def parser = builder.newParser(builder.chars("abc"))
+        def result = parser.parseIncrementally("abc", new CollectingVisitor())
+
+        when:
+        parser.reparse(result, 2, 2, "", new CollectingVisitor())
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "The edit is outside of the text."
+    }
+}
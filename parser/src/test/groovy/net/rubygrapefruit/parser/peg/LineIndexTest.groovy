@@ -0,0 +1,104 @@
+package net.rubygrapefruit.parser.peg
+
+import spock.lang.Specification
+
+class LineIndexTest extends Specification {
+    def "calculates line and column of offsets"() {
+        expect:
+        def index = new LineIndex("abc\n123\r\ndef\n\n123")
+        index.lineCount == 5
+
+        index.getLine(0) == 1
+        index.getColumn(0) == 1
+        index.getLineText(0) == "abc"
+
+        index.getLine(3) == 1
+        index.getColumn(3) == 4
+
+        index.getLine(4) == 2
+        index.getColumn(4) == 1
+        index.getLineText(4) == "123"
+
+        index.getLine(8) == 2
+        index.getColumn(8) == 5
+        index.getLineText(8) == "123"
+
+        index.getLine(13) == 4
+        index.getColumn(13) == 1
+        index.getLineText(13) == ""
+
+        index.getLine(17) == 5
+        index.getColumn(17) == 4
+        index.getLineText(17) == "123"
+    }
+
+    def "empty input has a single line"() {
+        expect:
+        def index = new LineIndex("")
+        index.lineCount == 1
+        index.getLine(0) == 1
+        index.getColumn(0) == 1
+        index.getLineText(0) == ""
+    }
+
+    def "resolves line and column of regions"() {
+        given:
+        def builder = new ParserBuilder()
+        def parser = builder.newParser(builder.oneOrMore(builder.oneOf(builder.chars("ab"), builder.chars("\n"), builder.chars("c"))))
+        def input = "ab\nc\n\nabab"
+        def regions = []
+        parser.parse(input, new TokenVisitor<Expression>() {
+            @Override
+            void token(Expression type, Region match) {
+                regions << match
+            }
+
+            @Override
+            void failed(String message, Region remainder) {
+            }
+        })
+
+        expect:
+        new LineIndex(input).resolve(regions) as List == [
+            1, 1, 1, 3,
+            1, 3, 2, 1,
+            2, 1, 2, 2,
+            2, 2, 3, 1,
+            3, 1, 4, 1,
+            4, 1, 4, 3,
+            4, 3, 4, 5
+        ]
+    }
+
+    def "resolves regions that are out of order"() {
+        given:
+        def input = "a\nb\nc"
+        def regions = [region(input, 4, 5), region(input, 0, 1), region(input, 2, 5)]
+
+        expect:
+        new LineIndex(input).resolve(regions) as List == [
+            3, 1, 3, 2,
+            1, 1, 1, 2,
+            2, 1, 3, 2
+        ]
+    }
+
+    def region(String input, int start, int end) {
+        return new Region() {
+            @Override
+            String getText() {
+                return input.substring(start, end)
+            }
+
+            @Override
+            int getStart() {
+                return start
+            }
+
+            @Override
+            int getEnd() {
+                return end
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package net.rubygrapefruit.parser.peg
+
+import spock.lang.Unroll
+
+class MemoizeExpressionTest extends AbstractParserTest {
+    def "can parse memoized expression"() {
+        expect:
+        def e = builder.chars("abc")
+        def parser = builder.newParser(builder.memoize(e))
+        def result = parse(parser, "abc")
+        result.tokens == ["abc"]
+        result.values == [e]
+    }
+
+    def "can parse memoized expression as a group"() {
+        expect:
+        def group = builder.memoize(builder.oneOrMore(builder.letter())).group()
+        def parser = builder.newParser(group)
+        def result = parse(parser, "abc")
+        result.tokens == ["abc"]
+        result.values == [group]
+    }
+
+    def "reuses result of memoized expression when backtracking"() {
+        expect:
+        def ws = builder.memoize(builder.zeroOrMore(builder.singleChar(' ' as char)))
+        def x = builder.chars("x")
+        def parser = builder.newParser(builder.oneOf(builder.sequence(ws, x, builder.chars("1")), builder.sequence(ws, x, builder.chars("2")), builder.sequence(ws, x)))
+
+        tokens(parser, "  x2") == [" ", " ", "x", "2"]
+        parser.memoizationStatistics.hits == 1
+        parser.memoizationStatistics.misses == 1
+
+        tokens(parser, "  x") == [" ", " ", "x"]
+        parser.memoizationStatistics.hits == 3
+        parser.memoizationStatistics.misses == 2
+    }
+
+    def "discards cached results when cache is full"() {
+        expect:
+        def ws = builder.memoize(builder.zeroOrMore(builder.singleChar(' ' as char)))
+        def x = builder.chars("x")
+        builder.setMemoizationLimits(2, 1)
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(builder.sequence(ws, x, builder.chars("1")), builder.sequence(ws, x))))
+
+        tokens(parser, " x1 x  x") == [" ", "x", "1", " ", "x", " ", " ", "x"]
+        parser.memoizationStatistics.evictions > 0
+    }
+
+    def "does not cache results when cache is disabled"() {
+        expect:
+        def ws = builder.memoize(builder.zeroOrMore(builder.singleChar(' ' as char)))
+        def x = builder.chars("x")
+        builder.setMemoizationLimits(0, 0)
+        def parser = builder.newParser(builder.oneOf(builder.sequence(ws, x, builder.chars("1")), builder.sequence(ws, x)))
+
+        tokens(parser, " x") == [" ", "x"]
+        parser.memoizationStatistics.hits == 0
+    }
+
+    @Unroll
+    def "reports failure to match memoized expression - #input"() {
+        expect:
+        def ws = builder.memoize(builder.zeroOrMore(builder.singleChar(' ' as char)))
+        def parser = builder.newParser(builder.oneOf(builder.sequence(ws, builder.chars("x")), builder.sequence(ws, builder.chars("y"))))
+        def result = fail(parser, input)
+        result.tokens == tokens
+        result.failure == message
+
+        where:
+        input | tokens | message
+        ""    | []     | '''line 1: expected " ", "x" or "y"
+
+^'''
+        "  z" | [" ", " "] | '''line 1: expected " ", "x" or "y"
+  z
+  ^'''
+    }
+}
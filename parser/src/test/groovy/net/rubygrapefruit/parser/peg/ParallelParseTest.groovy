@@ -0,0 +1,81 @@
+package net.rubygrapefruit.parser.peg
+
+import net.rubygrapefruit.parser.peg.visitor.CollectingVisitor
+
+import java.util.concurrent.ForkJoinPool
+
+class ParallelParseTest extends AbstractParserTest {
+    def pool = new ForkJoinPool(4)
+    def options = new ParseOptions()
+
+    def setup() {
+        options.forkJoinPool = pool
+    }
+
+    def cleanup() {
+        pool.shutdown()
+    }
+
+    def "parses large input in parallel"() {
+        given:
+        def parser = statementParser()
+        def text = "  abc def;\n" * 10000
+        def listener = new ParseListenerTest.RecordingListener()
+        parser.addListener(listener)
+
+        expect:
+        def result = parser.parse(text, options, new CollectingVisitor())
+        def expected = parser.parse(text, new CollectingVisitor())
+        result.failure == null
+        result.tokens.size() == 70000
+        result.tokens == expected.tokens
+        result.values == expected.values
+        parser.memoizationStatistics.hits > 0
+        listener.statistics[0].segments > 1
+        listener.statistics[1].segments == 0
+    }
+
+    def "reports failure when parsing large input in parallel"() {
+        expect:
+        def parser = statementParser()
+        def text = "  abc def;\n" * 5000 + "  abc, def;\n" + "  abc def;\n" * 5000
+
+        def result = parser.parse(text, options, new CollectingVisitor())
+        def expected = parser.parse(text, new CollectingVisitor())
+        result.failure != null
+        result.failure == expected.failure
+        result.tokens == expected.tokens
+    }
+
+    def "parses input with statements that span lines in parallel"() {
+        expect:
+        def parser = statementParser()
+        def text = "abc\n def\n;\n" * 4000 + "  abc def;\n" * 4000
+
+        def result = parser.parse(text, options, new CollectingVisitor())
+        def expected = parser.parse(text, new CollectingVisitor())
+        result.failure == null
+        result.tokens == expected.tokens
+    }
+
+    def "does not match split points that use a back reference in parallel"() {
+        expect:
+        def name = builder.backReference(builder.oneOrMore(builder.letter()).group())
+        def ws = builder.zeroOrMore(builder.charIn(" \n"))
+        def statement = builder.splitPoint(builder.sequence(name.value, builder.singleChar(';' as char), ws))
+        def parser = builder.newParser(name.followedBy(builder.sequence(builder.singleChar(':' as char), ws, builder.zeroOrMore(statement))))
+        def text = "abc:\n" + "abc;\n" * 10000
+
+        def result = parser.parse(text, options, new CollectingVisitor())
+        def expected = parser.parse(text, new CollectingVisitor())
+        result.failure == null
+        result.tokens == expected.tokens
+    }
+
+    Parser statementParser() {
+        def ws = builder.zeroOrMore(builder.charIn(" \n"))
+        def word = builder.oneOrMore(builder.letter()).group()
+        def statement = builder.splitPoint(builder.sequence(word, builder.zeroOrMore(builder.sequence(ws, word)), ws, builder.singleChar(';' as char), ws))
+        return builder.newParser(builder.sequence(ws, builder.zeroOrMore(statement)))
+    }
+}
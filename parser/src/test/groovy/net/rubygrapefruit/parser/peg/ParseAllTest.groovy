@@ -0,0 +1,145 @@
+package net.rubygrapefruit.parser.peg
+
+import net.rubygrapefruit.parser.peg.visitor.CollectingVisitor
+
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ForkJoinPool
+
+class ParseAllTest extends AbstractParserTest {
+    def results = new ConcurrentHashMap<String, CollectingVisitor>()
+    def visitors = new VisitorFactory<CollectingVisitor>() {
+        @Override
+        CollectingVisitor create(ParseInput input) {
+            return new CollectingVisitor()
+        }
+
+        @Override
+        void finished(ParseInput input, CollectingVisitor visitor) {
+            results.put(input.name, visitor)
+        }
+    }
+
+    def "parses each input of a batch"() {
+        expect:
+        def parser = wordParser()
+        def inputs = (1..100).collect { ParseInput.of("input $it", "ab cd " * it + (it % 10 == 0 ? "12" : "")) }
+
+        def batch = parser.parseAll(inputs, visitors)
+        batch.await()
+
+        batch.done
+        batch.inputCount == 100
+        batch.completedCount == 100
+        results.size() == 100
+        inputs.each { input ->
+            def expected = parser.parse(input.text, new CollectingVisitor())
+            assert results[input.name].tokens == expected.tokens
+            assert results[input.name].failure == expected.failure
+        }
+        results["input 10"].failure != null
+    }
+
+    def "parses each input of a batch using the pool from the options"() {
+        given:
+        def parser = wordParser()
+        def inputs = (1..20).collect { ParseInput.of("input $it", "ab cd " * it) }
+        def pool = new ForkJoinPool(2)
+        def options = new ParseOptions()
+        options.forkJoinPool = pool
+        options.maxSteps = 30
+
+        when:
+        parser.parseAll(inputs, options, visitors).await()
+
+        then:
+        results["input 1"].tokens == ["ab", " ", "cd", " "]
+        results["input 1"].failure == null
+        results["input 20"].tokens == []
+        results["input 20"].failure.startsWith("line 1: parsing exceeded the limit of 30 steps\n")
+
+        cleanup:
+        pool.shutdown()
+    }
+
+    def "parses a file"() {
+        given:
+        def parser = wordParser()
+        def file = Files.createTempFile("input", ".txt")
+        file.text = "ab cd"
+
+        when:
+        parser.parseAll([ParseInput.of(file)], visitors).await()
+
+        then:
+        results[file.toString()].tokens == ["ab", " ", "cd"]
+
+        cleanup:
+        Files.deleteIfExists(file)
+    }
+
+    def "reports failure to read an input and parses the remaining inputs"() {
+        def parser = wordParser()
+        def missing = ParseInput.of(Paths.get("missing/file.txt"))
+        def batch = parser.parseAll([missing, ParseInput.of("input", "ab")], visitors)
+
+        when:
+        batch.await()
+
+        then:
+        def e = thrown(ExecutionException)
+        e.message == "Could not parse ${missing.name}."
+        batch.completedCount == 2
+        results.keySet() == ["input"] as Set
+    }
+
+    def "can cancel a batch"() {
+        def parser = wordParser()
+        def started = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def inputs = (1..100).collect { ParseInput.of("input $it", "ab cd") }
+        def pool = new ForkJoinPool(1)
+        def options = new ParseOptions()
+        options.forkJoinPool = pool
+        def blockingVisitors = new VisitorFactory<CollectingVisitor>() {
+            @Override
+            CollectingVisitor create(ParseInput input) {
+                started.countDown()
+                release.await()
+                return new CollectingVisitor()
+            }
+
+            @Override
+            void finished(ParseInput input, CollectingVisitor visitor) {
+            }
+        }
+
+        when:
+        def batch = parser.parseAll(inputs, options, blockingVisitors)
+        started.await()
+        batch.cancel()
+        release.countDown()
+        batch.await()
+
+        then:
+        batch.done
+        batch.completedCount == 1
+
+        cleanup:
+        pool.shutdown()
+    }
+
+    def "batch with no inputs is done"() {
+        expect:
+        def batch = wordParser().parseAll([], visitors)
+        batch.done
+        batch.await()
+    }
+
+    Parser wordParser() {
+        return builder.newParser(builder.zeroOrMore(builder.oneOf(builder.oneOrMore(builder.letter()).group(), builder.singleChar(' ' as char))))
+    }
+}
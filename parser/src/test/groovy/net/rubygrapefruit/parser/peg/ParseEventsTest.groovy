@@ -0,0 +1,114 @@
+package net.rubygrapefruit.parser.peg
+
+import net.rubygrapefruit.parser.peg.internal.event.ParseEventSink
+import net.rubygrapefruit.parser.peg.internal.event.ParseEvents
+import net.rubygrapefruit.parser.peg.visitor.CollectingVisitor
+
+class ParseEventsTest extends AbstractParserTest {
+    def sink = new RecordingSink()
+    ParseEventSink previous
+
+    def setup() {
+        previous = ParseEvents.setSink(sink)
+    }
+
+    def cleanup() {
+        ParseEvents.setSink(previous)
+    }
+
+    Engine getEngine() {
+        return builder.engine
+    }
+
+    def "records an event for a parse"() {
+        expect:
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(builder.oneOrMore(builder.letter()).group(), builder.chars(" "))))
+
+        tokens(parser, "abc d ef") == ["abc", " ", "d", " ", "ef"]
+        sink.parses == ["${engine} length: 8 tokens: 5 failed: false stopped at: 8"]
+        sink.rules.empty
+    }
+
+    def "records an event for a parse that fails"() {
+        expect:
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(builder.oneOrMore(builder.letter()).group(), builder.chars(" "))))
+
+        fail(parser, "abc d 12").tokens == ["abc", " ", "d", " "]
+        sink.parses == ["${engine} length: 8 tokens: 4 failed: true stopped at: 6"]
+    }
+
+    def "records an event for a parse that is stopped"() {
+        given:
+        def parser = builder.newParser(builder.zeroOrMore(builder.letter()))
+        def options = new ParseOptions()
+        options.maxTokens = 100
+
+        expect:
+        def result = parser.parse("a" * 5000, options, new CollectingVisitor())
+        result.failure.startsWith("line 1: parsing exceeded the limit of 100 tokens\n")
+        sink.parses.size() == 1
+        sink.parses[0].startsWith("${engine} length: 5000 tokens: 0 failed: true stopped at: ")
+        !sink.parses[0].endsWith(" stopped at: 0")
+    }
+
+    def "records an event for each rule of a sampled parse"() {
+        given:
+        def word = builder.oneOrMore(builder.letter()).group()
+        def space = builder.chars(" ")
+        builder.setName(word, "word")
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(word, space)))
+        sink.sampled = true
+
+        expect:
+        tokens(parser, "abc d") == ["abc", " ", "d"]
+        fail(parser, "ab 1").tokens == ["ab", " "]
+        sink.parses == ["${engine} length: 5 tokens: 3 failed: false stopped at: 5", "${engine} length: 4 tokens: 2 failed: true stopped at: 3"]
+        sink.rules == [
+                "word matched 0-3", "word matched 4-5", "{zero-or-more: {one-of word \" \"}} matched 0-5",
+                "word matched 0-2", "{zero-or-more: {one-of word \" \"}} matched 0-3"
+        ]
+    }
+
+    def "records nothing when parses are not being recorded"() {
+        given:
+        def parser = builder.newParser(builder.zeroOrMore(builder.letter()))
+        sink.enabled = false
+
+        expect:
+        tokens(parser, "abc") == ["a", "b", "c"]
+        sink.parses.empty
+    }
+
+    static class RecordingSink implements ParseEventSink {
+        boolean enabled = true
+        boolean sampled
+        List<String> parses = []
+        List<String> rules = []
+
+        @Override
+        Object parseStarted() {
+            return enabled ? "parse" : null
+        }
+
+        @Override
+        void parseFinished(Object event, Engine engine, int length, int tokens, boolean failed, int stoppedAt) {
+            assert event == "parse"
+            parses << "${engine} length: ${length} tokens: ${tokens} failed: ${failed} stopped at: ${stoppedAt}".toString()
+        }
+
+        @Override
+        boolean isRuleSampled() {
+            return sampled
+        }
+
+        @Override
+        Object ruleStarted(String rule) {
+            return rule
+        }
+
+        @Override
+        void ruleFinished(Object event, boolean matched, int start, int end) {
+            rules << "${event} ${matched ? "matched" : "failed"} ${start}-${end}".toString()
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package net.rubygrapefruit.parser.peg
+
+import net.rubygrapefruit.parser.peg.visitor.CollectingVisitor
+
+class ParseFailureTest extends AbstractParserTest {
+    Parser parser() {
+        def word = builder.oneOrMore(builder.letter()).group()
+        def statement = builder.sequence(word, builder.zeroOrMore(builder.sequence(builder.chars(" "), word)), builder.chars(";"), builder.chars("\n"))
+        return builder.newParser(builder.zeroOrMore(statement))
+    }
+
+    def "reports failure to match"() {
+        expect:
+        def visitor = parser().parse("ab cd;\nef 12;\n", new CollectingVisitor())
+        def failure = visitor.parseFailure
+        visitor.tokens == ["ab", " ", "cd", ";", "\n", "ef", " "]
+        failure.reason == FailureReason.Mismatch
+        failure.offset == 10
+        failure.line == 2
+        failure.column == 4
+        failure.expected == ["letter"]
+        failure.remainder.text == "12;\n"
+        failure.message == """line 2: expected letter
+ef 12;
+   ^"""
+        visitor.failure == failure.message
+    }
+
+    def "reports the terminals expected by each alternative"() {
+        expect:
+        def failure = parser().parse("ab cd", new CollectingVisitor()).parseFailure
+        failure.offset == 5
+        failure.expected == ['" "', '";"', "letter"]
+        failure.message.startsWith('line 1: expected " ", ";" or letter\n')
+    }
+
+    def "reports terminals with the same display name once"() {
+        expect:
+        def parser = builder.newParser(builder.oneOf(builder.sequence(builder.chars("a"), builder.chars("b")), builder.chars("a"), builder.chars("c")))
+        def failure = parser.parse("x", new CollectingVisitor()).parseFailure
+        failure.offset == 0
+        failure.expected == ['"a"', '"c"']
+        failure.message.startsWith('line 1: expected "a" or "c"\n')
+    }
+
+    def "reports unexpected characters when no terminal is expected"() {
+        expect:
+        def parser = builder.newParser(builder.chars("ab"))
+        def failure = parser.parse("abc", new CollectingVisitor()).parseFailure
+        failure.offset == 2
+        failure.expected == []
+        failure.message == "line 1: unexpected characters\nabc\n  ^"
+    }
+
+    def "reports the same message to a visitor that does not accept a failure"() {
+        expect:
+        def visitor = new MessageVisitor()
+        parser().parse("ab cd;\nef 12;\n", visitor)
+        visitor.message == parser().parse("ab cd;\nef 12;\n", new CollectingVisitor()).failure
+        visitor.remainder.text == "12;\n"
+    }
+
+    def "reports failure of input read from a reader"() {
+        expect:
+        def visitor = parser().parse(new StringReader("ab;\n" * 100 + "ab cd\n"), new CollectingVisitor())
+        def failure = visitor.parseFailure
+        failure.offset == 405
+        failure.line == 101
+        failure.column == 6
+        failure.expected == ['" "', '";"', "letter"]
+        failure.remainder.text == "\n"
+        failure.message == """line 101: expected " ", ";" or letter
+ab cd
+     ^"""
+    }
+
+    def "reports a parse that is stopped"() {
+        given:
+        def options = new ParseOptions()
+        options.maxTokens = 100
+
+        expect:
+        def failure = parser().parse("ab;\n" * 2000, options, new CollectingVisitor()).parseFailure
+        failure.reason == FailureReason.TokenLimitExceeded
+        failure.expected == []
+        failure.remainder.start == 0
+        failure.message.startsWith("line ${failure.line}: parsing exceeded the limit of 100 tokens\n")
+    }
+
+    def "reports value of back reference as expected"() {
+        expect:
+        def ref = builder.backReference(builder.oneOrMore(builder.letter()))
+        def parser = builder.newParser(ref.followedBy(builder.sequence(builder.chars(":"), ref.value)))
+        def failure = parser.parse("abc:abd", new CollectingVisitor()).parseFailure
+        failure.offset == 4
+        failure.expected == ['"abc"']
+    }
+
+    static class MessageVisitor implements TokenVisitor<Expression> {
+        String message
+        Region remainder
+
+        @Override
+        void token(Expression type, Region match) {
+        }
+
+        @Override
+        void failed(String message, Region remainder) {
+            this.message = message
+            this.remainder = remainder
+        }
+    }
+}
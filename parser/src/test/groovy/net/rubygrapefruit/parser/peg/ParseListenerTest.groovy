@@ -0,0 +1,150 @@
+package net.rubygrapefruit.parser.peg
+
+import net.rubygrapefruit.parser.peg.visitor.CollectingVisitor
+
+class ParseListenerTest extends AbstractParserTest {
+    def listener = new RecordingListener()
+
+    Engine getEngine() {
+        return builder.engine
+    }
+
+    /**
+     * The number of times the input is matched when it does not match.
+     */
+    int getFailurePasses() {
+        return 1
+    }
+
+    Parser parser() {
+        return builder.newParser(builder.zeroOrMore(builder.oneOf(builder.oneOrMore(builder.letter()).group(), builder.chars(" "))))
+    }
+
+    def "notifies listener of a parse"() {
+        expect:
+        def parser = parser()
+        parser.addListener(listener)
+
+        tokens(parser, "abc d ef") == ["abc", " ", "d", " ", "ef"]
+        listener.events == ["started ${engine} 8", "finished ${engine} 8 tokens: 5 Matched at: 8"]
+        listener.statistics[0].elapsedTime > 0
+        listener.statistics[0].peakBufferedTokens >= 5
+    }
+
+    def "notifies listener of a parse that fails"() {
+        expect:
+        def parser = parser()
+        parser.addListener(listener)
+
+        fail(parser, "abc d 12").tokens == ["abc", " ", "d", " "]
+        listener.events == ["started ${engine} 8", "finished ${engine} 8 tokens: 4 Failed at: 6"]
+    }
+
+    def "reports the number of times the input was matched"() {
+        expect:
+        def parser = parser()
+        parser.addListener(listener)
+
+        tokens(parser, "abc d")
+        fail(parser, "abc d 12")
+        listener.statistics[0].passes == 1
+        listener.statistics[0].secondPassTime == 0
+        listener.statistics[1].passes == failurePasses
+        failurePasses == 1 ? listener.statistics[1].secondPassTime == 0 : listener.statistics[1].secondPassTime > 0
+        listener.statistics[1].secondPassTime < listener.statistics[1].elapsedTime
+    }
+
+    def "reports that the parse used the engine"() {
+        given:
+        def parser = parser()
+        parser.addListener(listener)
+
+        expect:
+        tokens(parser, "abc d")
+        fail(parser, "abc d 12")
+        listener.statistics.engine == [engine, engine]
+        listener.statistics.fallback == [false, false]
+    }
+
+    def "notifies listener of a parse that is stopped"() {
+        given:
+        def parser = parser()
+        parser.addListener(listener)
+        def options = new ParseOptions()
+        options.maxTokens = 100
+
+        expect:
+        def result = parser.parse("ab " * 2000, options, new CollectingVisitor())
+        result.failure.startsWith("line 1: parsing exceeded the limit of 100 tokens\n")
+        listener.statistics.size() == 1
+        listener.statistics[0].outcome == ParseOutcome.Stopped
+        listener.statistics[0].tokens == 0
+        listener.statistics[0].stoppedAt > 0
+        listener.statistics[0].peakBufferedTokens > 100
+    }
+
+    def "notifies listener of a parse of input from a reader"() {
+        expect:
+        def parser = parser()
+        parser.addListener(listener)
+
+        parser.parse(new StringReader("ab cd"), new CollectingVisitor()).tokens == ["ab", " ", "cd"]
+        listener.events == ["started Interpreter -1", "finished Interpreter 5 tokens: 3 Matched at: 5"]
+    }
+
+    def "notifies listener of incremental parses"() {
+        expect:
+        def parser = parser()
+        parser.addListener(listener)
+
+        def result = parser.parseIncrementally("ab cd", new CollectingVisitor())
+        parser.reparse(result, 0, 1, "xy", new CollectingVisitor())
+        listener.events == ["started Interpreter 5", "finished Interpreter 5 tokens: 3 Matched at: 5", "started Interpreter 6", "finished Interpreter 6 tokens: 3 Matched at: 6"]
+    }
+
+    def "notifies listener of each parse of a batch"() {
+        expect:
+        def parser = parser()
+        parser.addListener(listener)
+
+        def batch = parser.parseAll([ParseInput.of("a", "ab cd"), ParseInput.of("b", "ab 1")], new VisitorFactory<CollectingVisitor>() {
+            @Override
+            CollectingVisitor create(ParseInput input) {
+                return new CollectingVisitor()
+            }
+
+            @Override
+            void finished(ParseInput input, CollectingVisitor visitor) {
+            }
+        })
+        batch.await()
+        listener.events.findAll { it.startsWith("finished") }.sort() == ["finished ${engine} 4 tokens: 2 Failed at: 3", "finished ${engine} 5 tokens: 3 Matched at: 5"]
+    }
+
+    def "listener can be removed"() {
+        expect:
+        def parser = parser()
+        parser.addListener(listener)
+        tokens(parser, "ab")
+        parser.removeListener(listener)
+        tokens(parser, "ab")
+
+        listener.statistics.size() == 1
+    }
+
+    static class RecordingListener implements ParseListener {
+        List<String> events = []
+        List<ParseStatistics> statistics = []
+
+        @Override
+        synchronized void parseStarted(Engine engine, int length) {
+            events << "started ${engine} ${length}".toString()
+        }
+
+        @Override
+        synchronized void parseFinished(ParseStatistics statistics) {
+            events << "finished ${statistics.engine} ${statistics.inputLength} tokens: ${statistics.tokens} ${statistics.outcome} at: ${statistics.stoppedAt}".toString()
+            this.statistics << statistics
+        }
+    }
+}
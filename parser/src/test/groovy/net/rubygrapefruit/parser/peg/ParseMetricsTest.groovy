@@ -0,0 +1,127 @@
+package net.rubygrapefruit.parser.peg
+
+import java.lang.management.ManagementFactory
+import javax.management.ObjectName
+
+class ParseMetricsTest extends AbstractParserTest {
+    def metrics = new ParseMetrics()
+
+    ParseStatistics statistics(ParseOutcome outcome, int length, int tokens, long time, long secondPassTime = 0) {
+        return [getEngine: { Engine.Interpreter }, getInputLength: { length }, getTokens: { tokens }, getElapsedTime: { time },
+                getPasses: { secondPassTime > 0 ? 2 : 1 }, getSecondPassTime: { secondPassTime }, getPeakBufferedTokens: { tokens * 2 },
+                getOutcome: { outcome }, getStoppedAt: { length }] as ParseStatistics
+    }
+
+    def "accumulates statistics of parses"() {
+        when:
+        metrics.parseFinished(statistics(ParseOutcome.Matched, 10, 4, 100))
+        metrics.parseFinished(statistics(ParseOutcome.Failed, 20, 3, 300))
+        metrics.parseFinished(statistics(ParseOutcome.Stopped, 30, 5, 200))
+
+        then:
+        metrics.parses == 3
+        metrics.failures == 1
+        metrics.stopped == 1
+        metrics.characters == 60
+        metrics.tokens == 12
+        metrics.totalTime == 600
+        metrics.meanTime == 200
+        metrics.maxTime == 300
+        metrics.maxBufferedTokens == 10
+    }
+
+    def "accumulates statistics of parses that match the input a second time"() {
+        when:
+        metrics.parseFinished(statistics(ParseOutcome.Matched, 10, 4, 100))
+        metrics.parseFinished(statistics(ParseOutcome.Failed, 20, 3, 300, 200))
+        metrics.parseFinished(statistics(ParseOutcome.Failed, 30, 5, 200, 120))
+
+        then:
+        metrics.parses == 3
+        metrics.failures == 2
+        metrics.secondPasses == 2
+        metrics.secondPassTime == 320
+        metrics.totalTime == 600
+    }
+
+    def "calculates percentiles of the time taken by parses"() {
+        when:
+        (1..98).each { metrics.parseFinished(statistics(ParseOutcome.Matched, 1, 1, 1000)) }
+        metrics.parseFinished(statistics(ParseOutcome.Matched, 1, 1, 100000))
+        metrics.parseFinished(statistics(ParseOutcome.Matched, 1, 1, 150000))
+
+        then:
+        metrics.latencyHistogram[9] == 98
+        metrics.latencyHistogram[16] == 1
+        metrics.latencyHistogram[17] == 1
+        metrics.medianTime == 1023
+        metrics.get99thPercentileTime() == 131071
+        metrics.getPercentileTime(100) == 150000
+        metrics.getPercentileTime(0) == 1023
+    }
+
+    def "metrics are empty when there have been no parses"() {
+        expect:
+        metrics.parses == 0
+        metrics.meanTime == 0
+        metrics.medianTime == 0
+        metrics.maxTime == 0
+    }
+
+    def "can discard metrics"() {
+        given:
+        metrics.parseFinished(statistics(ParseOutcome.Failed, 20, 3, 300))
+
+        when:
+        metrics.reset()
+
+        then:
+        metrics.parses == 0
+        metrics.failures == 0
+        metrics.secondPasses == 0
+        metrics.characters == 0
+        metrics.maxTime == 0
+        metrics.medianTime == 0
+        metrics.latencyHistogram.every { it == 0 }
+    }
+
+    def "collects statistics of parses done by a parser"() {
+        given:
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(builder.oneOrMore(builder.letter()).group(), builder.chars(" "))))
+        parser.addListener(metrics)
+
+        when:
+        tokens(parser, "abc d")
+        tokens(parser, "")
+        fail(parser, "ab 12")
+
+        then:
+        metrics.parses == 3
+        metrics.failures == 1
+        metrics.characters == 10
+        metrics.tokens == 5
+        metrics.maxTime > 0
+        metrics.maxBufferedTokens >= 3
+    }
+
+    def "can register metrics as an MBean"() {
+        given:
+        def server = ManagementFactory.platformMBeanServer
+        def name = new ObjectName('net.rubygrapefruit.parser:type=ParseMetrics,name="test"')
+        metrics.parseFinished(statistics(ParseOutcome.Failed, 20, 3, 300))
+
+        when:
+        metrics.register("test")
+
+        then:
+        server.getAttribute(name, "Parses") == 1
+        server.getAttribute(name, "Failures") == 1
+        server.getAttribute(name, "Characters") == 20
+
+        when:
+        metrics.unregister()
+
+        then:
+        !server.isRegistered(name)
+    }
+}
@@ -0,0 +1,137 @@
+package net.rubygrapefruit.parser.peg
+
+import net.rubygrapefruit.parser.peg.visitor.CollectingVisitor
+
+import java.util.concurrent.TimeUnit
+
+class ParseOptionsTest extends AbstractParserTest {
+    def options = new ParseOptions()
+
+    def "parses input that is within the limits"() {
+        given:
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(builder.oneOrMore(builder.letter()).group(), builder.singleChar(' ' as char))))
+        options.maxSteps = 100
+        options.maxTokens = 100
+        options.setTimeout(1, TimeUnit.MINUTES)
+        options.cancellationToken = new CancellationToken()
+
+        expect:
+        def result = parser.parse("abc d ef", options, new CollectingVisitor())
+        result.tokens == ["abc", " ", "d", " ", "ef"]
+        result.failure == null
+        result.parseFailure == null
+    }
+
+    def "stops parse that exceeds the step limit"() {
+        given:
+        def parser = backtrackingParser()
+        options.maxSteps = 1000
+
+        expect:
+        def result = parser.parse("a" * 40, options, new CollectingVisitor())
+        result.tokens == []
+        result.parseFailure.reason == FailureReason.StepLimitExceeded
+        result.failure.startsWith("line 1: parsing exceeded the limit of 1000 steps\n")
+    }
+
+    def "stops parse that exceeds the time limit"() {
+        given:
+        def parser = backtrackingParser()
+        options.setTimeout(20, TimeUnit.MILLISECONDS)
+
+        expect:
+        def result = parser.parse("a" * 40, options, new CollectingVisitor())
+        result.tokens == []
+        result.parseFailure.reason == FailureReason.TimeLimitExceeded
+        result.failure.startsWith("line 1: parsing exceeded the time limit\n")
+    }
+
+    def "stops parse that exceeds the token limit"() {
+        given:
+        def parser = builder.newParser(builder.zeroOrMore(builder.letter()))
+        options.maxTokens = 100
+
+        expect:
+        parser.parse("a" * 100, options, new CollectingVisitor()).failure == null
+
+        def result = parser.parse("a" * 5000, options, new CollectingVisitor())
+        result.tokens == []
+        result.parseFailure.reason == FailureReason.TokenLimitExceeded
+        result.failure.startsWith("line 1: parsing exceeded the limit of 100 tokens\n")
+    }
+
+    def "stops parse that is cancelled"() {
+        given:
+        def parser = backtrackingParser()
+        def token = new CancellationToken()
+        options.cancellationToken = token
+        token.cancel()
+
+        expect:
+        def result = parser.parse("a" * 40, options, new CollectingVisitor())
+        result.tokens == []
+        result.parseFailure.reason == FailureReason.Cancelled
+        result.failure.startsWith("line 1: parsing was cancelled\n")
+    }
+
+    def "reports whole input as the remainder when parse is stopped"() {
+        def parser = backtrackingParser()
+        options.maxSteps = 0
+        def visitor = Mock(TokenVisitor)
+
+        when:
+        parser.parse("aaa\naaa", options, visitor)
+
+        then:
+        1 * visitor.failed(_, { it.start == 0 && it.end == 7 && it.text == "aaa\naaa" })
+        0 * visitor._
+    }
+
+    def "can reparse the result of an incremental parse that was stopped"() {
+        given:
+        def word = builder.memoize(builder.sequence(builder.oneOrMore(builder.letter()).group(), builder.optional(builder.singleChar(' ' as char))))
+        def parser = builder.newParser(builder.zeroOrMore(word))
+        options.maxSteps = 2
+
+        expect:
+        def visitor = new CollectingVisitor()
+        def result = parser.parseIncrementally("ab cd ef", options, visitor)
+        visitor.parseFailure.reason == FailureReason.StepLimitExceeded
+        visitor.failure.startsWith("line 1: parsing exceeded the limit of 2 steps\n")
+
+        def visitor2 = new CollectingVisitor()
+        parser.reparse(result, 0, 0, "x", new ParseOptions(), visitor2)
+        visitor2.tokens == ["xab", " ", "cd", " ", "ef"]
+        visitor2.failure == null
+    }
+
+    def "options cannot be negative"() {
+        when:
+        options.maxSteps = -1
+
+        then:
+        thrown(IllegalArgumentException)
+
+        when:
+        options.maxTokens = -1
+
+        then:
+        thrown(IllegalArgumentException)
+
+        when:
+        options.setTimeout(-1, TimeUnit.SECONDS)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    /**
+     * Creates a parser that takes an exponential number of steps to reject a run of "a" characters.
+     */
+    Parser backtrackingParser() {
+        def ref = builder.reference()
+        def a = builder.chars("a")
+        ref.set(builder.oneOf(builder.sequence(a, ref, builder.chars("!")), builder.sequence(a, ref), a))
+        return builder.newParser(builder.sequence(ref, builder.chars("?")))
+    }
+}
@@ -0,0 +1,169 @@
+package net.rubygrapefruit.parser.peg
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class ParseProfilerTest extends AbstractParserTest {
+    def profiler = new ParseProfiler()
+
+    def setup() {
+        builder.setProfiler(profiler)
+    }
+
+    RuleProfile rule(String name) {
+        def rules = profiler.rules.findAll { it.name == name }
+        assert rules.size() == 1
+        return rules[0]
+    }
+
+    def "profiled parser produces the same tokens as a parser that is not profiled"() {
+        expect:
+        def ws = builder.memoize(builder.oneOrMore(builder.singleChar(' ' as char))).group()
+        def word = builder.oneOrMore(builder.letter()).group()
+        def number = builder.oneOrMore(builder.charRange('0' as char, '9' as char)).group()
+        def expression = builder.zeroOrMore(builder.oneOf(ws, word, number))
+        def profiled = builder.newParser(expression)
+        builder.setProfiler(null)
+        def parser = builder.newParser(expression)
+
+        def result = parse(profiled, "abc 123  d")
+        result.tokens == ["abc", " ", "123", "  ", "d"]
+        result.values == [word, ws, number, ws, word]
+        result.tokens == parse(parser, "abc 123  d").tokens
+        fail(profiled, "abc !").failure == fail(parser, "abc !").failure
+    }
+
+    def "records invocations of named rules"() {
+        expect:
+        def a = builder.sequence(builder.chars("x"), builder.chars("1"))
+        def b = builder.sequence(builder.chars("x"), builder.chars("2"))
+        builder.setName(a, "a")
+        builder.setName(b, "b")
+        def parser = builder.newParser(builder.oneOf(a, b))
+
+        tokens(parser, "x2") == ["x", "2"]
+        tokens(parser, "x1") == ["x", "1"]
+
+        def ruleA = rule("a")
+        ruleA.invocations == 2
+        ruleA.successes == 1
+        ruleA.failures == 1
+        ruleA.consumed == 2
+        ruleA.backtracked == 1
+
+        def ruleB = rule("b")
+        ruleB.invocations == 1
+        ruleB.successes == 1
+        ruleB.failures == 0
+        ruleB.consumed == 2
+        ruleB.backtracked == 0
+
+        def root = rule("{one-of a b}")
+        root.invocations == 2
+        root.successes == 2
+        root.consumed == 4
+        root.inclusiveTime >= ruleA.inclusiveTime + ruleB.inclusiveTime
+        root.exclusiveTime <= root.inclusiveTime
+    }
+
+    def "expressions used from more than one place are rules"() {
+        expect:
+        def ws = builder.zeroOrMore(builder.singleChar(' ' as char))
+        def parser = builder.newParser(builder.sequence(ws, builder.chars("x"), ws))
+
+        tokens(parser, " x  ") == [" ", "x", " ", " "]
+
+        def rule = rule("{zero-or-more: \" \"}")
+        rule.invocations == 2
+        rule.consumed == 3
+        profiler.rules.size() == 2
+    }
+
+    def "records recursive rules"() {
+        expect:
+        def ref = builder.reference()
+        def list = builder.oneOf(builder.sequence(builder.chars("("), ref, builder.chars(")")), builder.chars("x"))
+        ref.set(list)
+        builder.setName(list, "list")
+        def parser = builder.newParser(list)
+
+        tokens(parser, "((x))") == ["(", "(", "x", ")", ")"]
+
+        def rule = rule("list")
+        rule.invocations == 3
+        rule.successes == 3
+        rule.consumed == 5 + 3 + 1
+        profiler.rules.size() == 1
+
+        def stacks = profiler.formatCollapsedStacks().readLines()
+        stacks.every { it ==~ /list(;list){0,2} \d+/ }
+    }
+
+    def "records failed parse"() {
+        expect:
+        def letters = builder.oneOrMore(builder.letter())
+        def statement = builder.sequence(letters, builder.chars(";"))
+        builder.setName(statement, "statement")
+        def parser = builder.newParser(builder.zeroOrMore(statement))
+
+        fail(parser, "ab;cd")
+
+        def rule = rule("statement")
+        rule.invocations == 2
+        rule.successes == 1
+        rule.failures == 1
+        rule.consumed == 3
+        rule.backtracked == 2
+    }
+
+    def "formats results"() {
+        given:
+        def a = builder.chars("a")
+        builder.setName(a, "a;b")
+        def parser = builder.newParser(builder.oneOrMore(a))
+
+        when:
+        tokens(parser, "aaa")
+        def table = profiler.formatTable().readLines()
+        def stacks = profiler.formatCollapsedStacks().readLines()
+
+        then:
+        table.size() == 3
+        table[0].contains("invocations")
+        table.any { it ==~ /\s+4\s+3\s+1\s+3\s+0\s+\S+\s+\S+\s+a;b/ }
+        stacks.every { it ==~ /\{one-or-more: a:b\}(;a:b)? \d+/ }
+    }
+
+    def "aggregates results of concurrent parses"() {
+        given:
+        def word = builder.oneOrMore(builder.letter())
+        builder.setName(word, "word")
+        def parser = builder.newParser(builder.zeroOrMore(builder.sequence(word, builder.singleChar(' ' as char))))
+        def executor = Executors.newFixedThreadPool(4)
+
+        when:
+        def futures = (1..20).collect {
+            executor.submit({ tokens(parser, "abc de f " * 10) } as Callable)
+        }
+        futures*.get()
+        executor.shutdown()
+
+        then:
+        rule("word").invocations == 20 * 31
+        rule("word").successes == 20 * 30
+        rule("word").consumed == 20 * 60
+    }
+
+    def "can discard results"() {
+        given:
+        def parser = builder.newParser(builder.chars("abc"))
+        tokens(parser, "abc")
+
+        when:
+        profiler.reset()
+
+        then:
+        profiler.rules.empty
+        profiler.formatCollapsedStacks() == ""
+    }
+}
@@ -1,7 +1,10 @@
 package net.rubygrapefruit.parser.peg
 
+import net.rubygrapefruit.parser.peg.visitor.CollectingVisitor
 import spock.lang.Unroll
 
+import java.nio.CharBuffer
+
 class ParserBuilderTest extends AbstractParserTest {
     def "can parse a string token"() {
         def expression = builder.chars("abc")
@@ -174,6 +177,89 @@ yx
 ^'''
     }
 
+    def "can parse a character from a set of characters"() {
+        expect:
+        def e = builder.charIn("ab\n")
+        def parser = builder.newParser(builder.oneOrMore(e))
+        def result = parse(parser, "ab\nba")
+        result.tokens == ["a", "b", "\n", "b", "a"]
+        result.values == [e, e, e, e, e]
+    }
+
+    def "can parse a character not in a set of characters"() {
+        expect:
+        def parser = builder.newParser(builder.oneOrMore(builder.charNotIn("ab")))
+        tokens(parser, "xyz") == ["x", "y", "z"]
+        tokens(parser, "\u00c9") == ["\u00c9"]
+    }
+
+    def "can parse a character from a range of characters"() {
+        expect:
+        def parser = builder.newParser(builder.oneOrMore(builder.charRange('0' as char, '9' as char)))
+        tokens(parser, "0123456789") == ["0", "1", "2", "3", "4", "5", "6", "7", "8", "9"]
+    }
+
+    def "can parse a character of a given type"() {
+        expect:
+        def parser = builder.newParser(builder.oneOrMore(builder.charOfType(Character.UPPERCASE_LETTER, Character.DECIMAL_DIGIT_NUMBER)))
+        tokens(parser, "A1\u00c9") == ["A", "1", "\u00c9"]
+    }
+
+    def "can parse a run of characters as a group"() {
+        expect:
+        def parser = builder.newParser(builder.oneOrMore(builder.charRange('a' as char, 'z' as char)).group())
+        tokens(parser, "abc") == ["abc"]
+    }
+
+    @Unroll
+    def "reports failure to match a character class - #input"() {
+        expect:
+        def parser = builder.newParser(builder.sequence(builder.zeroOrMore(builder.charRange('0' as char, '9' as char)), builder.charNotIn("ab")))
+        def result = fail(parser, input)
+        result.tokens == tokens
+        result.failure == message
+
+        where:
+        input | tokens     | message
+        ""    | []         | '''line 1: expected [0-9] or [^ab]
+
+^'''
+        "12a" | ["1", "2"] | '''line 1: expected [0-9] or [^ab]
+12a
+  ^'''
+        "1xy" | ["1", "x"] | '''line 1: unexpected characters
+1xy
+  ^'''
+    }
+
+    def "can parse one of several alternative characters"() {
+        expect:
+        def a = builder.singleChar('a' as char)
+        def b = builder.singleChar('b' as char)
+        def parser = builder.newParser(builder.oneOrMore(builder.oneOf(a, b, builder.singleChar('a' as char))))
+        def result = parse(parser, "abba")
+        result.tokens == ["a", "b", "b", "a"]
+        result.values == [a, b, b, a]
+    }
+
+    @Unroll
+    def "reports failure to match one of several alternative characters - #input"() {
+        expect:
+        def parser = builder.newParser(builder.oneOrMore(builder.oneOf(builder.singleChar('a' as char), builder.singleChar('\n' as char))))
+        def result = fail(parser, input)
+        result.tokens == tokens
+        result.failure == message
+
+        where:
+        input | tokens     | message
+        ""    | []         | '''line 1: expected "\\n" or "a"
+
+^'''
+        "ab"  | ["a"]      | '''line 1: expected "\\n" or "a"
+ab
+ ^'''
+    }
+
     def "can parse a sequence of tokens"() {
         def e1 = builder.chars("abc")
         def e2 = builder.chars("123")
@@ -1070,6 +1156,72 @@ a.*b
    ^'''
     }
 
+    @Unroll
+    def "reports failure to match one of several alternative expressions that start with different characters - #input"() {
+        def e1 = builder.sequence(builder.chars("a"), builder.chars("b"))
+        def e2 = builder.sequence(builder.optional(builder.chars("x")), builder.chars("y"))
+        def e3 = builder.sequence(builder.zeroOrMore(builder.chars("-")), builder.chars("c"))
+
+        expect:
+        def parser = builder.newParser(builder.oneOf(e1, e2, e3))
+        def result = fail(parser, input)
+        result.tokens == tokens
+        result.failure == message
+
+        where:
+        input | tokens | message
+        ""    | []     | '''line 1: expected "-", "a", "c", "x" or "y"
+
+^'''
+        "q"   | []     | '''line 1: expected "-", "a", "c", "x" or "y"
+q
+^'''
+        "a"   | ["a"]  | '''line 1: expected "b"
+a
+ ^'''
+        "xq"  | ["x"]  | '''line 1: expected "y"
+xq
+ ^'''
+        "-q"  | ["-"]  | '''line 1: expected "-" or "c"
+-q
+ ^'''
+    }
+
+    def "can parse one of several literals"() {
+        expect:
+        def parser = builder.newParser(builder.oneOrMore(builder.literals("ab", "abc", "a", "c")))
+        tokens(parser, "abc") == ["ab", "c"]
+        tokens(parser, "aab") == ["a", "ab"]
+        tokens(parser, "ca") == ["c", "a"]
+    }
+
+    def "can parse one of several literals as a group"() {
+        expect:
+        def parser = builder.newParser(builder.oneOrMore(builder.literals("ab", "abc", "a", "c")).group())
+        tokens(parser, "abcaab") == ["abcaab"]
+    }
+
+    @Unroll
+    def "reports failure to match one of several literals - #input"() {
+        expect:
+        def parser = builder.newParser(builder.sequence(builder.literals("public", "private", "protected"), builder.chars(";")))
+        def result = fail(parser, input)
+        result.tokens == tokens
+        result.failure == message
+
+        where:
+        input    | tokens     | message
+        ""       | []         | '''line 1: expected "private", "protected" or "public"
+
+^'''
+        "pr;"    | []         | '''line 1: expected "private", "protected" or "public"
+pr;
+^'''
+        "public" | ["public"] | '''line 1: expected ";"
+public
+      ^'''
+    }
+
     def "can parse a sequence of optional tokens"() {
         def e1 = builder.optional(builder.chars("abc"))
         def e2 = builder.optional(builder.chars("123"))
@@ -1147,4 +1299,77 @@ abc123
 123
 ^'''
     }
+
+    def "can parse a sequence of tokens followed by anything up to a terminator"() {
+        def end = builder.chars("*/")
+        def body = builder.zeroOrMore(builder.sequence(builder.not(end), builder.anything())).group()
+
+        expect:
+        def parser = builder.newParser(builder.sequence(builder.chars("/"), builder.chars("*"), body, end))
+        tokens(parser, "/**/") == ["/", "*", "*/"]
+        tokens(parser, "/* abc */") == ["/", "*", " abc ", "*/"]
+        tokens(parser, "/* * / */") == ["/", "*", " * / ", "*/"]
+    }
+
+    @Unroll
+    def "reports failure to match a sequence of tokens followed by anything up to a terminator - #input"() {
+        def end = builder.chars("*/")
+        def body = builder.zeroOrMore(builder.sequence(builder.not(end), builder.anything())).group()
+
+        expect:
+        def parser = builder.newParser(builder.sequence(builder.chars("/"), builder.chars("*"), body, end))
+        def result = fail(parser, input)
+        result.tokens == tokens
+        result.failure == message
+
+        where:
+        input      | tokens                     | message
+        "/x"       | ["/"]                      | '''line 1: expected "*"
+/x
+ ^'''
+        "/* abc"   | ["/", "*", " abc"]         | '''line 1: expected "*/" or anything
+/* abc
+      ^'''
+        "/* a */b" | ["/", "*", " a ", "*/"]    | '''line 1: unexpected characters
+/* a */b
+       ^'''
+    }
+
+    def "can parse a CharSequence"() {
+        def end = builder.chars("*/")
+        def body = builder.zeroOrMore(builder.sequence(builder.not(end), builder.anything())).group()
+        def comment = builder.sequence(builder.chars("/*"), body, end)
+        def word = builder.oneOrMore(builder.letter()).group()
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(comment, word, builder.literals("  ", " "))))
+
+        expect:
+        def input = new StringBuilder("ab /* c */  d")
+        def result = parse(parser, input)
+        result.tokens == ["ab", " ", "/*", " c ", "*/", "  ", "d"]
+        result.tokens == tokens(parser, input.toString())
+
+        def failure = parser.parse(CharBuffer.wrap("ab /* c".toCharArray()), new CollectingVisitor())
+        failure.tokens == ["ab", " ", "/*", " c"]
+        failure.failure == fail(parser, "ab /* c").failure
+    }
+
+    def "can use expressions shared by parsers that are first used concurrently"() {
+        def end = builder.chars("*/")
+        def body = builder.zeroOrMore(builder.sequence(builder.not(end), builder.anything())).group()
+        def comment = builder.sequence(builder.chars("/"), builder.chars("*"), body, end)
+        def word = builder.oneOrMore(builder.letter()).group()
+        def expression = builder.zeroOrMore(builder.oneOf(comment, word, builder.chars(" ")))
+        def input = "ab /* c */ d " * 100
+        def expected = ["ab", " ", "/", "*", " c ", "*/", " ", "d", " "] * 100
+        def parsers = (1..8).collect { builder.newParser(expression) }
+        def results = Collections.synchronizedList([])
+
+        when:
+        def threads = parsers.collect { parser -> Thread.start { 20.times { results << tokens(parser, input) } } }
+        threads*.join()
+
+        then:
+        results.size() == 160
+        results.every { it == expected }
+    }
 }
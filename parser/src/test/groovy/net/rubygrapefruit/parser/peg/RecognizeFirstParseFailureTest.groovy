@@ -0,0 +1,7 @@
+package net.rubygrapefruit.parser.peg
+
+class RecognizeFirstParseFailureTest extends ParseFailureTest {
+    def setup() {
+        builder.recognizeFirst = true
+    }
+}
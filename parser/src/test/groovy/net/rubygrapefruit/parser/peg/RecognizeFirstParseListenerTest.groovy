@@ -0,0 +1,12 @@
+package net.rubygrapefruit.parser.peg
+
+class RecognizeFirstParseListenerTest extends ParseListenerTest {
+    def setup() {
+        builder.recognizeFirst = true
+    }
+
+    @Override
+    int getFailurePasses() {
+        return 2
+    }
+}
@@ -0,0 +1,7 @@
+package net.rubygrapefruit.parser.peg
+
+class RecognizeFirstParserBuilderTest extends ParserBuilderTest {
+    def setup() {
+        builder.recognizeFirst = true
+    }
+}
@@ -0,0 +1,132 @@
+package net.rubygrapefruit.parser.peg
+
+import net.rubygrapefruit.parser.peg.visitor.CollectingVisitor
+
+import java.nio.channels.Channels
+import java.nio.charset.Charset
+import java.nio.file.Files
+
+class StreamingParseTest extends AbstractParserTest {
+    def "can parse input from a reader"() {
+        expect:
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(builder.oneOrMore(builder.letter()).group(), builder.singleChar(' ' as char))))
+        def result = parser.parse(new StringReader("abc d ef"), new CollectingVisitor())
+        result.tokens == ["abc", " ", "d", " ", "ef"]
+        result.failure == null
+    }
+
+    def "can parse input from a channel"() {
+        expect:
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(builder.oneOrMore(builder.letter()).group(), builder.singleChar(' ' as char))))
+        def channel = Channels.newChannel(new ByteArrayInputStream("abc éf".getBytes("utf-8")))
+        def result = parser.parse(channel, Charset.forName("utf-8"), new CollectingVisitor())
+        result.tokens == ["abc", " ", "éf"]
+        result.failure == null
+    }
+
+    def "can parse input that is larger than the buffer"() {
+        def text = "abc; de;\n" * 100000
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(builder.oneOrMore(builder.letter()).group(), builder.charIn("; \n"))))
+        def regions = []
+        def visitor = new TokenVisitor<Expression>() {
+            @Override
+            void token(Expression type, Region match) {
+                regions << match
+            }
+
+            @Override
+            void failed(String message, Region remainder) {
+                throw new AssertionError(message)
+            }
+        }
+
+        when:
+        parser.parse(new StringReader(text), visitor)
+
+        then:
+        regions.size() == 600000
+        regions.every { text.substring(it.start, it.end) == it.text }
+        regions.last().end == text.length()
+    }
+
+    def "forwards tokens before the whole input has been read"() {
+        def text = "ab\n" * 100000
+        def charsRead = 0
+        def reader = new StringReader(text) {
+            @Override
+            int read(char[] buffer, int offset, int length) {
+                def count = super.read(buffer, offset, length)
+                charsRead += Math.max(count, 0)
+                return count
+            }
+        }
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(builder.oneOrMore(builder.letter()).group(), builder.singleChar('\n' as char))))
+        def readBeforeFirstToken = null
+        def visitor = new TokenVisitor<Expression>() {
+            @Override
+            void token(Expression type, Region match) {
+                if (readBeforeFirstToken == null) {
+                    readBeforeFirstToken = charsRead
+                }
+            }
+
+            @Override
+            void failed(String message, Region remainder) {
+                throw new AssertionError(message)
+            }
+        }
+
+        when:
+        parser.parse(reader, visitor)
+
+        then:
+        readBeforeFirstToken < text.length()
+        charsRead == text.length()
+    }
+
+    def "reports failure to match input from a reader"() {
+        def text = "abc;\n" * 100000 + "ab\ncd;\n"
+        def parser = builder.newParser(builder.zeroOrMore(builder.sequence(builder.oneOrMore(builder.letter()).group(), builder.chars(";"), builder.chars("\n"))))
+
+        when:
+        def result = parser.parse(new StringReader(text), new CollectingVisitor())
+
+        then:
+        result.tokens.size() == 300001
+        result.tokens.last() == "ab"
+        result.failure == '''line 100001: expected ";" or letter
+ab
+  ^'''
+    }
+
+    def "produces the same results as parsing a string when the root expression is not repeated"() {
+        expect:
+        def parser = builder.newParser(builder.sequence(builder.chars("a"), builder.zeroOrMore(builder.chars("b")).group(), builder.chars("c")))
+        def result = parser.parse(new StringReader("abbc"), new CollectingVisitor())
+        result.tokens == ["a", "bb", "c"]
+        result.failure == null
+
+        def failure = parser.parse(new StringReader("abbd"), new CollectingVisitor())
+        failure.tokens == ["a", "bb"]
+        failure.failure == fail(parser, "abbd").failure
+    }
+
+    def "can parse a file"() {
+        def file = Files.createTempFile("input", ".txt")
+        file.toFile().deleteOnExit()
+        file.toFile().setText("abc éf\n😀 " * 1000, "utf-8")
+        def text = file.toFile().getText("utf-8")
+
+        expect:
+        def parser = builder.newParser(builder.zeroOrMore(builder.oneOf(builder.oneOrMore(builder.charNotIn(" \n")).group(), builder.charIn(" \n"))))
+        def result = parser.parse(file, new CollectingVisitor())
+        result.tokens == parser.parse(text, new CollectingVisitor()).tokens
+        result.tokens.take(5) == ["abc", " ", "éf", "\n", "😀"]
+        result.failure == null
+
+        def notStreamed = builder.newParser(builder.sequence(builder.chars("abc"), builder.chars(" ")))
+        def failure = notStreamed.parse(file, new CollectingVisitor())
+        failure.tokens == ["abc", " "]
+        failure.failure == fail(notStreamed, text).failure
+    }
+}
@@ -0,0 +1,7 @@
+package net.rubygrapefruit.parser.peg
+
+class VirtualMachineParseAllTest extends ParseAllTest {
+    def setup() {
+        builder.engine = Engine.VirtualMachine
+    }
+}
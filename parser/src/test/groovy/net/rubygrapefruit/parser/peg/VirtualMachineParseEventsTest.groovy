@@ -0,0 +1,7 @@
+package net.rubygrapefruit.parser.peg
+
+class VirtualMachineParseEventsTest extends ParseEventsTest {
+    def setup() {
+        builder.engine = Engine.VirtualMachine
+    }
+}
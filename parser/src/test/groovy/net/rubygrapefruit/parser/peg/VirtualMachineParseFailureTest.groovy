@@ -0,0 +1,7 @@
+package net.rubygrapefruit.parser.peg
+
+class VirtualMachineParseFailureTest extends ParseFailureTest {
+    def setup() {
+        builder.engine = Engine.VirtualMachine
+    }
+}
@@ -0,0 +1,12 @@
+package net.rubygrapefruit.parser.peg
+
+class VirtualMachineParseListenerTest extends ParseListenerTest {
+    def setup() {
+        builder.engine = Engine.VirtualMachine
+    }
+
+    @Override
+    int getFailurePasses() {
+        return 2
+    }
+}
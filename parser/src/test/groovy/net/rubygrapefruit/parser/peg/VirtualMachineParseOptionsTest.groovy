@@ -0,0 +1,7 @@
+package net.rubygrapefruit.parser.peg
+
+class VirtualMachineParseOptionsTest extends ParseOptionsTest {
+    def setup() {
+        builder.engine = Engine.VirtualMachine
+    }
+}
@@ -0,0 +1,7 @@
+package net.rubygrapefruit.parser.peg
+
+class VirtualMachineParserBuilderTest extends ParserBuilderTest {
+    def setup() {
+        builder.engine = Engine.VirtualMachine
+    }
+}
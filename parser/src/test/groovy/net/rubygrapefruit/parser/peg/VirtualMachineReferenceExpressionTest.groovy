@@ -0,0 +1,7 @@
+package net.rubygrapefruit.parser.peg
+
+class VirtualMachineReferenceExpressionTest extends ReferenceExpressionTest {
+    def setup() {
+        builder.engine = Engine.VirtualMachine
+    }
+}
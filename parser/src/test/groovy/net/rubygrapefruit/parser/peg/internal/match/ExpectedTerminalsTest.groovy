@@ -0,0 +1,118 @@
+package net.rubygrapefruit.parser.peg.internal.match
+
+import net.rubygrapefruit.parser.peg.internal.expression.CharSequenceExpression
+import spock.lang.Specification
+
+class ExpectedTerminalsTest extends Specification {
+    def expected = new ExpectedTerminals()
+    def a = TerminalSet.of(new CharSequenceExpression("a"))
+    def b = TerminalSet.of(new CharSequenceExpression("b"))
+    def ab = TerminalSet.of([new CharSequenceExpression("a"), new CharSequenceExpression("b")])
+
+    def "is empty when nothing has been added"() {
+        expect:
+        expected.toSet() == TerminalSet.EMPTY
+        expected.toSet().empty
+        expected.toSet().displayNames == []
+    }
+
+    def "treats distinct terminals with the same display name as the same terminal"() {
+        when:
+        expected.add(TerminalSet.of(new CharSequenceExpression("a")))
+        expected.add(b)
+
+        then:
+        expected.toSet() == ab
+        expected.toSet().displayNames == ['"a"', '"b"']
+    }
+
+    def "references a single set rather than copying it"() {
+        when:
+        expected.add(a)
+        expected.add(a)
+
+        then:
+        expected.toSet().is(a)
+    }
+
+    def "references a set that contains the other sets"() {
+        when:
+        expected.add(a)
+        expected.add(ab)
+        expected.add(b)
+
+        then:
+        expected.toSet().is(ab)
+    }
+
+    def "merges sets"() {
+        when:
+        expected.add(b)
+        expected.add(a)
+        def result = expected.toSet()
+
+        then:
+        result == ab
+        result.displayNames == ['"a"', '"b"']
+        expected.toSet().is(result)
+    }
+
+    def "can replace merged sets"() {
+        given:
+        expected.add(a)
+        expected.add(b)
+
+        when:
+        expected.set(a)
+
+        then:
+        expected.toSet().is(a)
+
+        when:
+        expected.add(b)
+        expected.clear()
+        expected.add(b)
+
+        then:
+        expected.toSet().is(b)
+    }
+
+    def "can copy and merge other sets"() {
+        given:
+        def other = new ExpectedTerminals()
+        other.add(a)
+        other.add(b)
+
+        when:
+        expected.set(other)
+
+        then:
+        expected.toSet() == ab
+
+        when:
+        def third = new ExpectedTerminals()
+        third.add(TerminalSet.of(new CharSequenceExpression("c")))
+        third.add(other)
+
+        then:
+        third.toSet().displayNames == ['"a"', '"b"', '"c"']
+    }
+
+    def "terminals with the same display name are the same terminal"() {
+        expect:
+        TerminalSet.of(new CharSequenceExpression("a")) == a
+        a.union(TerminalSet.of(new CharSequenceExpression("a"))) == a
+        a.union(b) == ab
+    }
+
+    def "can include terminals that are not numbered"() {
+        when:
+        expected.add(a)
+        expected.add(TerminalSet.unnumbered(CharSequenceExpression.value("z")))
+        expected.add(TerminalSet.unnumbered(CharSequenceExpression.value("a")))
+
+        then:
+        expected.toSet().displayNames == ['"a"', '"z"']
+        !expected.toSet().empty
+    }
+}
@@ -0,0 +1,92 @@
+package net.rubygrapefruit.parser.peg.internal.match
+
+import net.rubygrapefruit.parser.peg.internal.expression.CharSequenceExpression
+import spock.lang.Specification
+
+class TokenArenaTest extends Specification {
+    def arena = new TokenArena()
+    def a = new CharSequenceExpression("a")
+    def b = new CharSequenceExpression("b")
+
+    def "empty sequence has no tokens"() {
+        expect:
+        tokens(TokenArena.EMPTY) == []
+        arena.concat(TokenArena.EMPTY, TokenArena.EMPTY) == TokenArena.EMPTY
+        arena.size() == 0
+    }
+
+    def "concatenates sequences in order"() {
+        when:
+        def first = arena.concat(arena.token(a, 0, 1), arena.token(b, 1, 2))
+        def second = arena.concat(arena.token(a, 2, 3), TokenArena.EMPTY)
+        def all = arena.concat(first, second)
+
+        then:
+        tokens(all) == ["a", "b", "a"]
+        tokens(first) == ["a", "b"]
+    }
+
+    def "can discard nodes created after mark"() {
+        given:
+        def first = arena.token(a, 0, 1)
+        def mark = arena.mark()
+        arena.concat(first, arena.token(b, 1, 2))
+
+        when:
+        arena.truncate(mark)
+
+        then:
+        arena.size() == 1
+        arena.token(b, 1, 2) == mark
+    }
+
+    def "snapshot remains valid after arena is truncated"() {
+        given:
+        def mark = arena.mark()
+        def snapshot = arena.snapshot(arena.concat(arena.token(a, 0, 1), arena.token(b, 1, 2)), 0)
+        arena.truncate(mark)
+
+        expect:
+        tokens(arena.concat(arena.token(b, 1, 2), arena.restore(snapshot, 0))) == ["b", "a", "b"]
+        arena.restore(arena.snapshot(TokenArena.EMPTY, 0), 0) == TokenArena.EMPTY
+    }
+
+    def "snapshot can be restored at another offset"() {
+        given:
+        def snapshot = arena.snapshot(arena.concat(arena.token(a, 2, 3), arena.token(b, 3, 4)), 2)
+
+        expect:
+        tokens(arena.restore(snapshot, 0)) == ["a", "b"]
+        tokens(arena.restore(snapshot, 1)) == ["b", "a"]
+        tokens(arena.restore(snapshot, 2)) == ["a", "b"]
+    }
+
+    def "reuses visitors"() {
+        when:
+        def visitor1 = arena.newVisitor()
+        def visitor2 = arena.newVisitor()
+        arena.release(visitor2)
+        arena.release(visitor1)
+
+        then:
+        arena.newVisitor().is(visitor1)
+    }
+
+    def "visitors must be released in order"() {
+        given:
+        def visitor1 = arena.newVisitor()
+        arena.newVisitor()
+
+        when:
+        arena.release(visitor1)
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def tokens(int handle) {
+        def result = []
+        arena.pushTo(handle, "abab", { MatchResult token -> result << token.text } as TokenCollector)
+        return result
+    }
+}
@@ -0,0 +1,38 @@
+package net.rubygrapefruit.parser.peg.internal.stream
+
+import spock.lang.Specification
+
+class InputBufferTest extends Specification {
+    def "reads input and discards complete lines"() {
+        given:
+        def buffer = new InputBuffer(new StringReader("ab\ncd\nef"))
+
+        when:
+        buffer.read()
+
+        then:
+        buffer.text == "ab\ncd\nef"
+        buffer.atEnd
+
+        when:
+        def discarded = buffer.discard(7)
+
+        then:
+        discarded == 6
+        buffer.text == "ef"
+        buffer.offset == 6
+        buffer.lines == 2
+    }
+
+    def "fails when the input has more characters than an int offset can address"() {
+        given:
+        def buffer = new InputBuffer(new StringReader("abcdef"), Integer.MAX_VALUE - 5)
+
+        when:
+        buffer.read()
+
+        then:
+        def e = thrown(IOException)
+        e.message == "Input is too large to be parsed, as it contains more than ${Integer.MAX_VALUE} characters."
+    }
+}
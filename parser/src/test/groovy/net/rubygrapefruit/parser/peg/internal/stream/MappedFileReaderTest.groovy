@@ -0,0 +1,45 @@
+package net.rubygrapefruit.parser.peg.internal.stream
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.Files
+
+class MappedFileReaderTest extends Specification {
+    @Unroll
+    def "reads characters that are split across segments - #segmentSize"() {
+        def file = Files.createTempFile("input", ".txt")
+        file.toFile().deleteOnExit()
+        def text = "ab\né€😀\n" * 10
+        file.toFile().setText(text, "utf-8")
+
+        expect:
+        def reader = new MappedFileReader(file, segmentSize)
+        reader.readAll().toString() == text
+        reader.close()
+
+        def chars = new StringBuilder()
+        def buffer = new char[1]
+        def single = new MappedFileReader(file, segmentSize)
+        int count
+        while ((count = single.read(buffer, 0, 1)) >= 0) {
+            chars.append(buffer, 0, count)
+        }
+        single.close()
+        chars.toString() == text
+
+        where:
+        segmentSize << [4, 5, 6, 7, 1024]
+    }
+
+    def "reads empty file"() {
+        def file = Files.createTempFile("input", ".txt")
+        file.toFile().deleteOnExit()
+
+        expect:
+        def reader = new MappedFileReader(file)
+        reader.readAll().toString() == ""
+        reader.read() == -1
+        reader.close()
+    }
+}
@@ -0,0 +1,90 @@
+package net.rubygrapefruit.parser.peg.internal.stream
+
+import spock.lang.Specification
+
+class MemoTableTest extends Specification {
+    def "can cache entries at offsets far apart in a large input"() {
+        given:
+        def table = new MemoTable(Integer.MAX_VALUE - 1, 100, 10)
+
+        when:
+        table.put(0, 0, "a")
+        table.put(2, 1000000000, "b")
+        table.put(1, Integer.MAX_VALUE - 1, "c")
+
+        then:
+        table.get(0, 0) == "a"
+        table.get(2, 1000000000) == "b"
+        table.get(1, Integer.MAX_VALUE - 1) == "c"
+        table.get(0, 1000000000) == null
+        table.get(0, 1) == null
+        table.hits == 3
+        table.misses == 2
+    }
+
+    def "evicts entries behind the window when full"() {
+        given:
+        def table = new MemoTable(10000, 100, 50)
+
+        when:
+        (0..<1000).each { table.put(0, it * 10, it) }
+
+        then:
+        table.evictions > 0
+        table.get(0, 0) == null
+        table.get(0, 9990) == 999
+        (0..<1000).count { table.get(0, it * 10) != null } <= 100
+    }
+
+    def "merges entries of another table"() {
+        given:
+        def table = new MemoTable(1000, Integer.MAX_VALUE, 0)
+        def other = new MemoTable(500, 1000, Integer.MAX_VALUE, 0)
+        table.put(0, 600, "a")
+        other.put(0, 600, "b")
+        other.put(1, 600, "c")
+        other.put(2, 900, "d")
+        def skip = new BitSet()
+        skip.set(2)
+
+        when:
+        table.merge(other, skip)
+
+        then:
+        table.get(0, 600) == "a"
+        table.get(1, 600) == "c"
+        table.get(2, 900) == null
+    }
+
+    def "moves and discards entries for an edit"() {
+        given:
+        def table = new MemoTable(1000, Integer.MAX_VALUE, 0)
+        table.put(0, 10, entry(5))
+        table.put(0, 95, entry(10))
+        table.put(0, 150, entry(2))
+        table.put(0, 300, entry(2))
+        table.put(1, 300, entry(2))
+        def discard = new BitSet()
+        discard.set(1)
+
+        when:
+        table.edit(100, 100, 20, discard)
+
+        then:
+        table.get(0, 10) != null
+        table.get(0, 95) == null
+        table.get(0, 150) == null
+        table.get(0, 220) != null
+        table.get(1, 220) == null
+        table.get(0, 300) == null
+    }
+
+    MemoTable.Entry entry(int examined) {
+        return new MemoTable.Entry() {
+            @Override
+            int getExamined() {
+                return examined
+            }
+        }
+    }
+}
@@ -2,44 +2,91 @@ package net.rubygrapefruit.parser.java.test;
 
 import net.rubygrapefruit.parser.java.JavaParser;
 import net.rubygrapefruit.parser.java.JavaToken;
+import net.rubygrapefruit.parser.peg.Engine;
+import net.rubygrapefruit.parser.peg.FailureVisitor;
+import net.rubygrapefruit.parser.peg.ParseFailure;
+import net.rubygrapefruit.parser.peg.ParseInput;
+import net.rubygrapefruit.parser.peg.ParseMetrics;
+import net.rubygrapefruit.parser.peg.ParseProfiler;
 import net.rubygrapefruit.parser.peg.Region;
 import net.rubygrapefruit.parser.peg.TokenVisitor;
+import net.rubygrapefruit.parser.peg.VisitorFactory;
 import net.rubygrapefruit.parser.sample.util.FileCollector;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutionException;
 
+/**
+ * Parses Java source files and reports the time taken.
+ *
+ * Usage: `java Benchmark [--engine=name] [--profile=file] source-files-or-directories`
+ *
+ * With `--profile`, the rules of the grammar are profiled using the interpreter, a table of the results is printed and the results are written to
+ * the given file in the collapsed stack format used by flame graph tools.
+ */
 public class Benchmark {
-    public static void main(String[] args) throws InterruptedException {
-        final AtomicInteger count = new AtomicInteger();
-        final AtomicInteger failed = new AtomicInteger();
-
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        Engine engine = Engine.Interpreter;
+        File profile = null;
         List<File> files = new ArrayList<>();
         for (int i = 0; i < args.length; i++) {
             String arg = args[i];
-            files.add(new File(arg));
+            if (arg.startsWith("--engine=")) {
+                engine = Engine.valueOf(arg.substring("--engine=".length()));
+            } else if (arg.startsWith("--profile=")) {
+                profile = new File(arg.substring("--profile=".length()));
+            } else {
+                files.add(new File(arg));
+            }
+        }
+        if (profile != null) {
+            // Profiled parsers always use the interpreter
+            engine = Engine.Interpreter;
         }
         long start = System.nanoTime();
-        final JavaParser parser = new JavaParser();
-        new FileCollector().process(files, new FileCollector.Worker() {
+        FileCollector collector = new FileCollector();
+        List<ParseInput> inputs = collector.collect(files);
+        ParseProfiler profiler = new ParseProfiler();
+        final JavaParser parser = profile != null ? new JavaParser(profiler) : new JavaParser(engine);
+        ParseMetrics metrics = new ParseMetrics();
+        parser.addListener(metrics);
+        parser.parseAll(inputs, new VisitorFactory<TokenVisitor<JavaToken>>() {
             @Override
-            public void handle(File file, String content) throws Exception {
-                count.incrementAndGet();
-                parser.parse(content, new TokenVisitor<JavaToken>() {
+            public TokenVisitor<JavaToken> create(ParseInput input) {
+                // Failures are counted by the metrics, so the messages are not required
+                return new FailureVisitor<JavaToken>() {
                     @Override
                     public void token(JavaToken type, Region match) {
                     }
 
                     @Override
                     public void failed(String message, Region remainder) {
-                        failed.incrementAndGet();
                     }
-                });
+
+                    @Override
+                    public void failed(ParseFailure failure) {
+                    }
+                };
             }
-        }, 4);
+
+            @Override
+            public void finished(ParseInput input, TokenVisitor<JavaToken> visitor) {
+            }
+        }).await();
         long end = System.nanoTime();
-        System.out.println(String.format("Parsed %d files with %d errors in %dms", count.get(), failed.get(), (end - start) / 1000000));
+        System.out.println(String.format("Parsed %d files with %d errors in %dms using %s", metrics.getParses(), metrics.getFailures(), (end - start) / 1000000, engine));
+        System.out.println(String.format("Parsed %d characters into %d tokens, median %.2fms, 99th percentile %.2fms, max %.2fms per file", metrics.getCharacters(),
+                metrics.getTokens(), metrics.getMedianTime() / 1e6, metrics.get99thPercentileTime() / 1e6, metrics.getMaxTime() / 1e6));
+        System.out.println(collector.getStatistics());
+        if (profile != null) {
+            System.out.print(profiler.formatTable());
+            Files.write(profile.toPath(), profiler.formatCollapsedStacks().getBytes(StandardCharsets.UTF_8));
+            System.out.println("Wrote collapsed stacks to " + profile);
+        }
     }
 }
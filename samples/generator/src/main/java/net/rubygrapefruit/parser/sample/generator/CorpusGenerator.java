@@ -0,0 +1,275 @@
+package net.rubygrapefruit.parser.sample.generator;
+
+import net.rubygrapefruit.parser.peg.ParseInput;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates Java source files that can be parsed by the Java grammar, for use in benchmarks. The files are generated from a seed, so that the
+ * same seed always produces the same files.
+ *
+ * <p>Each file has exactly the requested number of characters, so that corpora of different shapes can be compared. A file can also be
+ * generated with a syntax error at a chosen offset.</p>
+ *
+ * Usage: `java CorpusGenerator [--seed=n] [--shape=name] [--files=n] [--length=n] [--fail-at=n] output-directory`
+ */
+public class CorpusGenerator {
+    private static final String[] WORDS = {"name", "value", "count", "item", "index", "builder", "result", "source", "target", "state", "owner", "parent", "child", "entry", "key"};
+    private static final String[] TYPES = {"String", "Object", "List", "Map", "Thing", "Node", "Builder", "Entry", "Path", "Region"};
+    private static final String[] COMMENTS = {"Returns the value.", "This is not a /* nested comment.", "Uses a * and a / but does not end here.", "See // the other method.", "TODO - something ** here"};
+    private static final int MAX_MISSES = 20;
+    private final long seed;
+
+    public CorpusGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long seed = 0;
+        Shape shape = Shape.Mixed;
+        int files = 100;
+        int length = 10 * 1024;
+        int failAt = -1;
+        File output = null;
+        for (String arg : args) {
+            if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--shape=")) {
+                shape = Shape.valueOf(arg.substring("--shape=".length()));
+            } else if (arg.startsWith("--files=")) {
+                files = Integer.parseInt(arg.substring("--files=".length()));
+            } else if (arg.startsWith("--length=")) {
+                length = Integer.parseInt(arg.substring("--length=".length()));
+            } else if (arg.startsWith("--fail-at=")) {
+                failAt = Integer.parseInt(arg.substring("--fail-at=".length()));
+            } else {
+                output = new File(arg);
+            }
+        }
+        if (output == null) {
+            throw new IllegalArgumentException("No output directory specified.");
+        }
+        Path dir = output.toPath();
+        Files.createDirectories(dir);
+        CorpusGenerator generator = new CorpusGenerator(seed);
+        for (int i = 0; i < files; i++) {
+            String source = generator.generate(shape, length, failAt, i);
+            Files.write(dir.resolve(fileName(i)), source.getBytes(StandardCharsets.UTF_8));
+        }
+        System.out.println(String.format("Generated %d %s files of %d characters in %s", files, shape, length, dir));
+    }
+
+    /**
+     * Generates a corpus of the given number of files, each with the given number of characters. The files do not contain any errors.
+     */
+    public List<ParseInput> generate(Shape shape, int files, int length) {
+        List<ParseInput> inputs = new ArrayList<>(files);
+        for (int i = 0; i < files; i++) {
+            inputs.add(ParseInput.of(fileName(i), generate(shape, length, -1, i)));
+        }
+        return inputs;
+    }
+
+    /**
+     * Generates a source file with the given number of characters. When the fail offset is not negative, a syntax error is placed between two
+     * members, at or shortly after this offset, or after the last member when the offset is beyond the last member, so that the parse fails at that
+     * point. The index selects one of the files for the seed.
+     */
+    public String generate(Shape shape, int length, int failAt, int index) {
+        Random random = new Random(seed * 31 + index);
+        String className = capitalize(word(random)) + capitalize(word(random));
+        String footer = "}\n";
+        StringBuilder builder = new StringBuilder(length);
+        String header = "package org.sample." + word(random) + ";\n\nimport java.util.List;\nimport org.sample.*;\n\n";
+        String declaration = "public class " + className + " {\n";
+        if (header.length() + declaration.length() + footer.length() + 1 <= length) {
+            builder.append(header);
+        } else {
+            declaration = "class " + className + "{";
+        }
+        builder.append(declaration);
+        int minimum = builder.length() + footer.length() + (failAt >= 0 ? 1 : 0);
+        if (minimum > length) {
+            throw new IllegalArgumentException(String.format("A source file must have at least %d characters.", minimum));
+        }
+        // Whether the error still needs to be inserted
+        boolean fail = failAt >= 0;
+        // Keep trying smaller members for a while when a member does not fit
+        int misses = 0;
+        while (misses < MAX_MISSES) {
+            if (fail && builder.length() >= failAt) {
+                builder.append('#');
+                fail = false;
+            }
+            String member = member(shape, className, random);
+            if (builder.length() + member.length() + footer.length() + (fail ? 1 : 0) > length) {
+                misses++;
+                continue;
+            }
+            builder.append(member);
+            misses = 0;
+        }
+        if (fail) {
+            builder.append('#');
+        }
+        while (builder.length() + footer.length() < length) {
+            builder.append('\n');
+        }
+        builder.append(footer);
+        return builder.toString();
+    }
+
+    private static String fileName(int index) {
+        return "Source" + index + ".java";
+    }
+
+    private String member(Shape shape, String className, Random random) {
+        switch (shape) {
+            case Fields:
+                return field(random);
+            case Methods:
+                return method(random, 2 + random.nextInt(6), 2 + random.nextInt(10));
+            case Comments:
+                return commented(random, className);
+            default:
+                switch (random.nextInt(8)) {
+                    case 0:
+                        return "\n    // " + comment(random) + "\n" + field(random);
+                    case 1:
+                        return constructor(random, className);
+                    case 2:
+                        return "\n    /**\n     * " + comment(random) + "\n     */\n" + method(random, random.nextInt(3), 1 + random.nextInt(3));
+                    case 3:
+                        return "\n    @Override\n" + method(random, random.nextInt(2), 1);
+                    case 4:
+                    case 5:
+                        return field(random);
+                    default:
+                        return "\n" + method(random, random.nextInt(3), 1 + random.nextInt(3));
+                }
+        }
+    }
+
+    private String field(Random random) {
+        String modifiers = random.nextBoolean() ? "private final " : "private ";
+        return "    " + modifiers + type(random) + " " + word(random) + capitalize(word(random)) + ";\n";
+    }
+
+    private String constructor(Random random, String className) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("\n    public ").append(className).append("(").append(params(random, 1 + random.nextInt(3))).append(") {\n");
+        statements(random, 1 + random.nextInt(3), builder);
+        builder.append("    }\n");
+        return builder.toString();
+    }
+
+    private String method(Random random, int params, int statements) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("    public ");
+        if (random.nextBoolean()) {
+            builder.append("static ");
+        }
+        builder.append(random.nextInt(3) == 0 ? "void" : type(random)).append(" ").append(word(random)).append(capitalize(word(random)));
+        builder.append("(").append(params(random, params)).append(") {\n");
+        statements(random, statements, builder);
+        builder.append("    }\n");
+        return builder.toString();
+    }
+
+    private String params(Random random, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(type(random)).append(" ").append(word(random));
+        }
+        return builder.toString();
+    }
+
+    private void statements(Random random, int count, StringBuilder builder) {
+        for (int i = 0; i < count; i++) {
+            builder.append("        ");
+            switch (random.nextInt(5)) {
+                case 0:
+                    builder.append("this.").append(word(random)).append(" = ").append(word(random)).append(";\n");
+                    break;
+                case 1:
+                    builder.append(word(random)).append(" = new ").append(type(random)).append("(").append(args(random)).append(");\n");
+                    break;
+                case 2:
+                    builder.append("return this;\n");
+                    break;
+                case 3:
+                    builder.append("return ").append(random.nextBoolean() ? "true" : "false").append(";\n");
+                    break;
+                default:
+                    builder.append("return ").append(word(random)).append(";\n");
+            }
+        }
+    }
+
+    private String args(Random random) {
+        StringBuilder builder = new StringBuilder();
+        int count = random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(word(random));
+        }
+        return builder.toString();
+    }
+
+    private String commented(Random random, String className) {
+        StringBuilder builder = new StringBuilder();
+        int comments = 1 + random.nextInt(4);
+        for (int i = 0; i < comments; i++) {
+            if (random.nextBoolean()) {
+                builder.append("    // ").append(comment(random)).append("\n");
+            } else {
+                builder.append("    /*\n");
+                int lines = 1 + random.nextInt(4);
+                for (int j = 0; j < lines; j++) {
+                    builder.append("     * ").append(comment(random)).append("\n");
+                }
+                builder.append("     */\n");
+            }
+        }
+        switch (random.nextInt(3)) {
+            case 0:
+                builder.append("    private /* ").append(comment(random)).append(" */ final // ").append(comment(random)).append("\n        ");
+                builder.append(type(random)).append(" /* */ ").append(word(random)).append(" /** ").append(comment(random)).append(" */;\n");
+                break;
+            case 1:
+                builder.append(constructor(random, className));
+                break;
+            default:
+                builder.append(method(random, random.nextInt(3), 1 + random.nextInt(3)));
+        }
+        return builder.toString();
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String type(Random random) {
+        return TYPES[random.nextInt(TYPES.length)];
+    }
+
+    private static String comment(Random random) {
+        return COMMENTS[random.nextInt(COMMENTS.length)];
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
@@ -0,0 +1,24 @@
+package net.rubygrapefruit.parser.sample.generator;
+
+/**
+ * The kind of content of a generated source file.
+ */
+public enum Shape {
+    /**
+     * A mix of fields, constructors and methods, with the occasional comment and annotation.
+     */
+    Mixed,
+    /**
+     * A long list of short field declarations.
+     */
+    Fields,
+    /**
+     * Methods with long parameter lists and many statements.
+     */
+    Methods,
+    /**
+     * Members surrounded by long runs of comments, with comments between the tokens of each member. The comments contain text that looks like
+     * the start or end of another comment.
+     */
+    Comments
+}
@@ -2,14 +2,19 @@ package net.rubygrapefruit.parser.java.test;
 
 import net.rubygrapefruit.parser.java.JavaParser;
 import net.rubygrapefruit.parser.java.JavaToken;
+import net.rubygrapefruit.parser.peg.ParseInput;
+import net.rubygrapefruit.parser.peg.ParseMetrics;
 import net.rubygrapefruit.parser.peg.Region;
 import net.rubygrapefruit.parser.peg.TokenVisitor;
+import net.rubygrapefruit.parser.peg.VisitorFactory;
 import net.rubygrapefruit.parser.sample.util.FileCollector;
 
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 /**
  * A Java source code syntax highlighter that generates HTML from Java source files.
@@ -17,14 +22,11 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Usage: `java Highlighter output-file source-files-or-directories
  */
 public class Highlighter {
-    private final AtomicInteger count = new AtomicInteger();
-    private final AtomicInteger failed = new AtomicInteger();
-
     public static void main(String[] args) throws Exception {
         new Highlighter().parseFiles(args);
     }
 
-    private void parseFiles(final String[] args) throws IOException, InterruptedException {
+    private void parseFiles(final String[] args) throws IOException, InterruptedException, ExecutionException {
         File output = new File(args[0]);
         final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(output), "utf8"));
         out.println("<!DOCTYPE html>");
@@ -49,63 +51,83 @@ public class Highlighter {
             files.add(new File(arg));
         }
         long start = System.nanoTime();
+        List<ParseInput> inputs = new FileCollector().collect(files);
+        // The files are parsed in parallel and in some arbitrary order, so collect the output for each file and write it in order at the end
+        final Map<ParseInput, String> results = new ConcurrentHashMap<>();
         final JavaParser parser = new JavaParser();
-        new FileCollector().process(files, new FileCollector.Worker() {
+        ParseMetrics metrics = new ParseMetrics();
+        parser.addListener(metrics);
+        parser.parseAll(inputs, new VisitorFactory<HighlightingVisitor>() {
+            @Override
+            public HighlightingVisitor create(ParseInput input) {
+                return new HighlightingVisitor(new File(input.getName()));
+            }
+
             @Override
-            public void handle(File file, String content) throws Exception {
-                parse(parser, file, content, out);
+            public void finished(ParseInput input, HighlightingVisitor visitor) {
+                results.put(input, visitor.finish());
             }
-        }, 1);
+        }).await();
+        for (ParseInput input : inputs) {
+            out.print(results.get(input));
+        }
         long end = System.nanoTime();
         out.println("</body>");
         out.println("</html>");
         out.flush();
 
-        System.out.println(String.format("Parsed %d files with %d errors in %dms", count.get(), failed.get(), (end-start)/1000000));
+        System.out.println(String.format("Parsed %d files with %d errors in %dms", metrics.getParses(), metrics.getFailures(), (end-start)/1000000));
     }
 
-    private void parse(JavaParser parser, File file, String content, final PrintWriter out) {
-        count.incrementAndGet();
-        out.println("<h1>" + file.getName() + "</h1>");
-        out.println("<pre class='code'>");
-        parser.parse(content, new TokenVisitor<JavaToken>() {
-            @Override
-            public void token(JavaToken type, Region match) {
-                switch (type) {
-                    case Comment:
-                        out.print("<span class='comment'>");
-                        appendText(match.getText(), out);
-                        out.print("</span>");
-                        break;
-                    case Identifier:
-                        out.print("<span class='identifier'>");
-                        appendText(match.getText(), out);
-                        out.print("</span>");
-                        break;
-                    case Keyword:
-                        out.print("<span class='keyword'>");
-                        appendText(match.getText(), out);
-                        out.print("</span>");
-                        break;
-                    default:
-                        appendText(match.getText(), out);
-                }
-            }
+    private class HighlightingVisitor implements TokenVisitor<JavaToken> {
+        private final StringWriter content = new StringWriter();
+        private final PrintWriter out = new PrintWriter(content);
 
-            @Override
-            public void failed(String message, Region remainder) {
-                failed.incrementAndGet();
-                out.print("<span class='remainder'>");
-                appendText(remainder.getText(), out);
-                out.println("</span>");
-                out.println();
-                out.print("<span class='failure'>FAILED: ");
-                appendText(message, out);
-                out.println("</span>");
+        HighlightingVisitor(File file) {
+            out.println("<h1>" + file.getName() + "</h1>");
+            out.println("<pre class='code'>");
+        }
+
+        String finish() {
+            out.println();
+            out.println("</pre>");
+            out.flush();
+            return content.toString();
+        }
+
+        @Override
+        public void token(JavaToken type, Region match) {
+            switch (type) {
+                case Comment:
+                    out.print("<span class='comment'>");
+                    appendText(match.getText(), out);
+                    out.print("</span>");
+                    break;
+                case Identifier:
+                    out.print("<span class='identifier'>");
+                    appendText(match.getText(), out);
+                    out.print("</span>");
+                    break;
+                case Keyword:
+                    out.print("<span class='keyword'>");
+                    appendText(match.getText(), out);
+                    out.print("</span>");
+                    break;
+                default:
+                    appendText(match.getText(), out);
             }
-        });
-        out.println();
-        out.println("</pre>");
+        }
+
+        @Override
+        public void failed(String message, Region remainder) {
+            out.print("<span class='remainder'>");
+            appendText(remainder.getText(), out);
+            out.println("</span>");
+            out.println();
+            out.print("<span class='failure'>FAILED: ");
+            appendText(message, out);
+            out.println("</span>");
+        }
     }
 
     private void appendText(String message, PrintWriter out) {
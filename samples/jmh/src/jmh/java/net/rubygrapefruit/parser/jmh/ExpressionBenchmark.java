@@ -0,0 +1,109 @@
+package net.rubygrapefruit.parser.jmh;
+
+import net.rubygrapefruit.parser.peg.Engine;
+import net.rubygrapefruit.parser.peg.Expression;
+import net.rubygrapefruit.parser.peg.Parser;
+import net.rubygrapefruit.parser.peg.ParserBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each kind of primitive expression, by repeatedly matching it against an input that consists of many matches of the expression.
+ *
+ * <p>Throughput is reported in characters per microsecond, which is MB/s for these ASCII inputs.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(Inputs.LENGTH)
+public class ExpressionBenchmark {
+    @Param({"Interpreter", "VirtualMachine", "GeneratedCode"})
+    public String engine;
+
+    private Parser chars;
+    private String charsInput;
+    private Parser letter;
+    private String letterInput;
+    private Parser oneOf;
+    private String oneOfInput;
+    private Parser zeroOrMore;
+    private String zeroOrMoreInput;
+    private Parser not;
+    private String notInput;
+    private Parser group;
+    private String groupInput;
+
+    @Setup
+    public void setup() {
+        ParserBuilder builder = builder();
+        chars = builder.newParser(builder.zeroOrMore(builder.chars("abcd")));
+        charsInput = Inputs.repeat("abcd");
+
+        builder = builder();
+        letter = builder.newParser(builder.zeroOrMore(builder.letter()));
+        letterInput = Inputs.repeat("abcd");
+
+        // The last alternative is the one that matches most often
+        builder = builder();
+        oneOf = builder.newParser(builder.zeroOrMore(builder.oneOf(builder.chars("a"), builder.chars("b"), builder.chars("c"), builder.chars("d"))));
+        oneOfInput = Inputs.repeat("dddc");
+
+        builder = builder();
+        zeroOrMore = builder.newParser(builder.zeroOrMore(builder.sequence(builder.zeroOrMore(builder.chars("a")), builder.chars(";"))));
+        zeroOrMoreInput = Inputs.repeat("aaa;");
+
+        builder = builder();
+        // Matches the body of a comment, which includes some '*' characters that do not end the comment
+        not = builder.newParser(builder.zeroOrMore(builder.sequence(builder.not(builder.chars("*/")), builder.anything())));
+        notInput = Inputs.repeat("a *-");
+
+        builder = builder();
+        group = builder.newParser(builder.zeroOrMore(builder.sequence(builder.oneOrMore(builder.letter()).group(), builder.singleChar(' '))));
+        groupInput = Inputs.repeat("abc ");
+
+        // Check that the inputs parse
+        chars();
+        letter();
+        oneOf();
+        zeroOrMore();
+        not();
+        group();
+    }
+
+    private ParserBuilder builder() {
+        ParserBuilder builder = new ParserBuilder();
+        builder.setEngine(Engine.valueOf(engine));
+        return builder;
+    }
+
+    @Benchmark
+    public int chars() {
+        return chars.parse(charsInput, Inputs.<Expression>count()).tokens;
+    }
+
+    @Benchmark
+    public int letter() {
+        return letter.parse(letterInput, Inputs.<Expression>count()).tokens;
+    }
+
+    @Benchmark
+    public int oneOf() {
+        return oneOf.parse(oneOfInput, Inputs.<Expression>count()).tokens;
+    }
+
+    @Benchmark
+    public int zeroOrMore() {
+        return zeroOrMore.parse(zeroOrMoreInput, Inputs.<Expression>count()).tokens;
+    }
+
+    @Benchmark
+    public int not() {
+        return not.parse(notInput, Inputs.<Expression>count()).tokens;
+    }
+
+    @Benchmark
+    public int group() {
+        return group.parse(groupInput, Inputs.<Expression>count()).tokens;
+    }
+}
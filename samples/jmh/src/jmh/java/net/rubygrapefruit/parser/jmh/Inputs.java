@@ -0,0 +1,74 @@
+package net.rubygrapefruit.parser.jmh;
+
+import net.rubygrapefruit.parser.peg.Region;
+import net.rubygrapefruit.parser.peg.TokenVisitor;
+
+/**
+ * Builds the inputs for the benchmarks. Each input has exactly {@link #LENGTH} ASCII characters, and each benchmark declares this as the number of
+ * operations per invocation, so that throughput is reported in characters per unit of time and the allocation reported by the GC profiler
+ * (gc.alloc.rate.norm) is in bytes per character of input.
+ */
+class Inputs {
+    static final int LENGTH = 64 * 1024;
+
+    /**
+     * Returns the given text repeated to fill an input.
+     */
+    static String repeat(String unit) {
+        if (LENGTH % unit.length() != 0) {
+            throw new IllegalArgumentException("Unit length must divide the input length.");
+        }
+        StringBuilder builder = new StringBuilder(LENGTH);
+        while (builder.length() < LENGTH) {
+            builder.append(unit);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns a Java class whose body is the given member repeated to fill an input. The class is padded with blank lines at the end.
+     */
+    static String javaClass(String member) {
+        return javaClass(member, LENGTH);
+    }
+
+    /**
+     * Returns a Java class with the given number of characters, whose body is the given member repeated. The class is padded with blank lines at
+     * the end.
+     */
+    static String javaClass(String member, int length) {
+        String header = "class Thing {\n";
+        String footer = "}\n";
+        StringBuilder builder = new StringBuilder(length);
+        builder.append(header);
+        while (builder.length() + member.length() + footer.length() <= length) {
+            builder.append(member);
+        }
+        builder.append(footer);
+        while (builder.length() < length) {
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    static <T> CountingVisitor<T> count() {
+        return new CountingVisitor<>();
+    }
+
+    /**
+     * Counts the tokens, and fails when the input does not parse, so that a broken benchmark is noticed rather than measuring the failure path.
+     */
+    static class CountingVisitor<T> implements TokenVisitor<T> {
+        int tokens;
+
+        @Override
+        public void token(T type, Region match) {
+            tokens++;
+        }
+
+        @Override
+        public void failed(String message, Region remainder) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
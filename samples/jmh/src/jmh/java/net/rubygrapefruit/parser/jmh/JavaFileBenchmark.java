@@ -0,0 +1,99 @@
+package net.rubygrapefruit.parser.jmh;
+
+import net.rubygrapefruit.parser.java.JavaParser;
+import net.rubygrapefruit.parser.java.JavaToken;
+import net.rubygrapefruit.parser.peg.Engine;
+import net.rubygrapefruit.parser.peg.ParseInput;
+import net.rubygrapefruit.parser.peg.ParseOptions;
+import net.rubygrapefruit.parser.peg.VisitorFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing a corpus of Java source files held in memory, one file at a time and as a batch.
+ *
+ * <p>Throughput is reported in characters per microsecond, which is MB/s for these ASCII inputs.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(JavaFileBenchmark.CORPUS_LENGTH)
+public class JavaFileBenchmark {
+    // Two files of each size from 1K to 128K characters
+    static final int CORPUS_LENGTH = 2 * 255 * 1024;
+    static final String MEMBERS = "\n    // Some state\n    private final String s;\n\n    // Creates a thing\n    public Thing(String s) {\n        this.s = s;\n    }\n\n"
+            + "    /**\n     * Does something.\n     */\n    public String m(String a, int b) {\n        return this;\n    }\n\n"
+            + "    public static String x(int a, String b) {\n        a = new Foo(a, b);\n    }\n";
+
+    @Param({"Interpreter", "VirtualMachine", "GeneratedCode"})
+    public String engine;
+
+    private JavaParser parser;
+    private List<String> files;
+    private List<ParseInput> inputs;
+    private ForkJoinPool pool;
+    private ParseOptions options;
+
+    @Setup
+    public void setup() throws Exception {
+        parser = new JavaParser(Engine.valueOf(engine));
+        files = new ArrayList<>();
+        inputs = new ArrayList<>();
+        int length = 0;
+        for (int i = 0; i < 2; i++) {
+            for (int size = 1024; size <= 128 * 1024; size *= 2) {
+                String file = Inputs.javaClass(MEMBERS, size);
+                files.add(file);
+                inputs.add(ParseInput.of("Thing" + files.size() + ".java", file));
+                length += file.length();
+            }
+        }
+        if (length != CORPUS_LENGTH) {
+            throw new IllegalStateException("Unexpected corpus length " + length);
+        }
+        pool = new ForkJoinPool();
+        options = new ParseOptions();
+        options.setForkJoinPool(pool);
+
+        // Check that the inputs parse
+        parseEach();
+        parseAll();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int parseEach() {
+        int tokens = 0;
+        for (String file : files) {
+            tokens += parser.parse(file, Inputs.<JavaToken>count()).tokens;
+        }
+        return tokens;
+    }
+
+    @Benchmark
+    public int parseAll() throws Exception {
+        final int[] tokens = new int[1];
+        parser.parseAll(inputs, options, new VisitorFactory<Inputs.CountingVisitor<JavaToken>>() {
+            @Override
+            public Inputs.CountingVisitor<JavaToken> create(ParseInput input) {
+                return Inputs.count();
+            }
+
+            @Override
+            public void finished(ParseInput input, Inputs.CountingVisitor<JavaToken> visitor) {
+                synchronized (tokens) {
+                    tokens[0] += visitor.tokens;
+                }
+            }
+        }).await();
+        return tokens[0];
+    }
+}
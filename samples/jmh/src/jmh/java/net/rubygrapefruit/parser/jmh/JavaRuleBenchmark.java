@@ -0,0 +1,86 @@
+package net.rubygrapefruit.parser.jmh;
+
+import net.rubygrapefruit.parser.java.JavaParser;
+import net.rubygrapefruit.parser.java.JavaToken;
+import net.rubygrapefruit.parser.peg.Engine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the rules of the Java grammar, by parsing a class whose body consists of many matches of a single rule.
+ *
+ * <p>Throughput is reported in characters per microsecond, which is MB/s for these ASCII inputs.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(Inputs.LENGTH)
+public class JavaRuleBenchmark {
+    static final String FIELD = "    private final String name;\n";
+    static final String METHOD = "    public String name(String a, int b) {\n        return this;\n    }\n";
+    static final String CONSTRUCTOR = "    public Thing(String a) {\n        this.a = a;\n    }\n";
+    static final String NEW_EXPRESSION = "    void build() {\n        a = new Foo(a, b, c, d);\n        return new Bar(a);\n    }\n";
+    static final String COMMENT = "    /**\n     * Does something.\n     */\n    // Some more detail\n";
+    static final String WHITESPACE = "        \n";
+
+    @Param({"Interpreter", "VirtualMachine", "GeneratedCode"})
+    public String engine;
+
+    private JavaParser parser;
+    private String fields;
+    private String methods;
+    private String constructors;
+    private String newExpressions;
+    private String comments;
+    private String whitespace;
+
+    @Setup
+    public void setup() {
+        parser = new JavaParser(Engine.valueOf(engine));
+        fields = Inputs.javaClass(FIELD);
+        methods = Inputs.javaClass(METHOD);
+        constructors = Inputs.javaClass(CONSTRUCTOR);
+        newExpressions = Inputs.javaClass(NEW_EXPRESSION);
+        comments = Inputs.javaClass(COMMENT);
+        whitespace = Inputs.javaClass(WHITESPACE);
+
+        // Check that the inputs parse
+        fields();
+        methods();
+        constructors();
+        newExpressions();
+        comments();
+        whitespace();
+    }
+
+    @Benchmark
+    public int fields() {
+        return parser.parse(fields, Inputs.<JavaToken>count()).tokens;
+    }
+
+    @Benchmark
+    public int methods() {
+        return parser.parse(methods, Inputs.<JavaToken>count()).tokens;
+    }
+
+    @Benchmark
+    public int constructors() {
+        return parser.parse(constructors, Inputs.<JavaToken>count()).tokens;
+    }
+
+    @Benchmark
+    public int newExpressions() {
+        return parser.parse(newExpressions, Inputs.<JavaToken>count()).tokens;
+    }
+
+    @Benchmark
+    public int comments() {
+        return parser.parse(comments, Inputs.<JavaToken>count()).tokens;
+    }
+
+    @Benchmark
+    public int whitespace() {
+        return parser.parse(whitespace, Inputs.<JavaToken>count()).tokens;
+    }
+}
@@ -0,0 +1,99 @@
+package net.rubygrapefruit.parser.jmh;
+
+import net.rubygrapefruit.parser.java.JavaParser;
+import net.rubygrapefruit.parser.java.JavaToken;
+import net.rubygrapefruit.parser.peg.Engine;
+import net.rubygrapefruit.parser.peg.FailureVisitor;
+import net.rubygrapefruit.parser.peg.ParseFailure;
+import net.rubygrapefruit.parser.peg.Region;
+import net.rubygrapefruit.parser.sample.generator.CorpusGenerator;
+import net.rubygrapefruit.parser.sample.generator.Shape;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how parsing scales with the size of the input, by parsing generated corpora of files of different sizes and shapes. Each corpus has
+ * the same total number of characters, so that the results for different file sizes can be compared directly: the throughput should not depend on
+ * the file size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(ScalingBenchmark.CORPUS_LENGTH)
+public class ScalingBenchmark {
+    static final int CORPUS_LENGTH = 1024 * 1024;
+
+    @Param({"Interpreter", "VirtualMachine", "GeneratedCode"})
+    public String engine;
+
+    @Param({"Mixed", "Fields", "Methods", "Comments"})
+    public String shape;
+
+    @Param({"1024", "16384", "131072", "1048576"})
+    public int fileLength;
+
+    private JavaParser parser;
+    private List<String> files;
+    private List<String> failingFiles;
+
+    @Setup
+    public void setup() {
+        parser = new JavaParser(Engine.valueOf(engine));
+        CorpusGenerator generator = new CorpusGenerator(12);
+        files = new ArrayList<>();
+        failingFiles = new ArrayList<>();
+        for (int i = 0; i < CORPUS_LENGTH / fileLength; i++) {
+            files.add(generator.generate(Shape.valueOf(shape), fileLength, -1, i));
+            // Fail in the middle of the file, so that the parser does half of the work before it fails
+            failingFiles.add(generator.generate(Shape.valueOf(shape), fileLength, fileLength / 2, i));
+        }
+
+        // Check that the inputs parse, and that the failing inputs fail
+        parse();
+        if (parseFailing() != files.size()) {
+            throw new IllegalStateException("Expected each failing input to fail.");
+        }
+    }
+
+    @Benchmark
+    public int parse() {
+        int tokens = 0;
+        for (String file : files) {
+            tokens += parser.parse(file, Inputs.<JavaToken>count()).tokens;
+        }
+        return tokens;
+    }
+
+    @Benchmark
+    public int parseFailing() {
+        int failures = 0;
+        for (String file : failingFiles) {
+            failures += parser.parse(file, new FailureCounter()).failures;
+        }
+        return failures;
+    }
+
+    /**
+     * Counts the failures without asking for the messages, so that the messages are not formatted.
+     */
+    private static class FailureCounter implements FailureVisitor<JavaToken> {
+        int failures;
+
+        @Override
+        public void token(JavaToken type, Region match) {
+        }
+
+        @Override
+        public void failed(String message, Region remainder) {
+            failures++;
+        }
+
+        @Override
+        public void failed(ParseFailure failure) {
+            failures++;
+        }
+    }
+}
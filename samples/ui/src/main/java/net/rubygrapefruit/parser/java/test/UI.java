@@ -2,6 +2,9 @@ package net.rubygrapefruit.parser.java.test;
 
 import net.rubygrapefruit.parser.java.JavaParser;
 import net.rubygrapefruit.parser.java.JavaToken;
+import net.rubygrapefruit.parser.peg.CancellationToken;
+import net.rubygrapefruit.parser.peg.ParseOptions;
+import net.rubygrapefruit.parser.peg.ParseResult;
 import net.rubygrapefruit.parser.peg.Region;
 import net.rubygrapefruit.parser.peg.TokenVisitor;
 
@@ -90,18 +93,26 @@ public class UI {
         private final Lock lock = new ReentrantLock();
         private final Condition condition = lock.newCondition();
         private String current;
+        private CancellationToken inProgress;
 
         void onUpdate(String text) {
             lock.lock();
             try {
                 current = text;
+                if (inProgress != null) {
+                    // The result of the parse in progress is stale
+                    inProgress.cancel();
+                }
                 condition.signalAll();
             } finally {
                 lock.unlock();
             }
         }
 
-        String getNext() {
+        /**
+         * Returns the next text to parse, and cancels the given token when the text is updated.
+         */
+        String getNext(CancellationToken cancellationToken) {
             String str;
             lock.lock();
             try {
@@ -114,6 +125,7 @@ public class UI {
                 }
                 str = current;
                 current = null;
+                inProgress = cancellationToken;
             } finally {
                 lock.unlock();
             }
@@ -160,6 +172,7 @@ public class UI {
         private final Style comment;
         private final Style identifier;
         private final Style keyword;
+        private ParseResult previous;
 
         ParseLoop(ParseQueue queue, JTextPane parsed, JTextPane status) {
             this.queue = queue;
@@ -188,10 +201,32 @@ public class UI {
         }
 
         private void doOnce() {
-            final String str = queue.getNext();
+            CancellationToken cancellationToken = new CancellationToken();
+            final String str = queue.getNext(cancellationToken);
+            ParseOptions options = new ParseOptions();
+            options.setCancellationToken(cancellationToken);
 
             final ResultCollector collector = new ResultCollector();
-            javaParser.parse(str, collector);
+            if (previous == null) {
+                previous = javaParser.parseIncrementally(str, options, collector);
+            } else {
+                // Reparse the part of the text between the common prefix and suffix of the previous and current text
+                String text = previous.getText();
+                int start = 0;
+                int max = Math.min(text.length(), str.length());
+                while (start < max && text.charAt(start) == str.charAt(start)) {
+                    start++;
+                }
+                int end = 0;
+                while (end < max - start && text.charAt(text.length() - end - 1) == str.charAt(str.length() - end - 1)) {
+                    end++;
+                }
+                previous = javaParser.reparse(previous, start, text.length() - end - start, str.substring(start, str.length() - end), options, collector);
+            }
+            if (cancellationToken.isCancelled()) {
+                // The text has changed, so parse it again rather than showing the stale result
+                return;
+            }
 
             SwingUtilities.invokeLater(new Runnable() {
                 @Override
@@ -1,32 +1,108 @@
 package net.rubygrapefruit.parser.sample.util;
 
-import java.io.BufferedReader;
+import net.rubygrapefruit.parser.peg.ParseInput;
+
 import java.io.File;
-import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Finds and reads source files, and collects statistics about the time taken to do so.
+ */
 public class FileCollector {
+    // The number of files that can be waiting for each worker thread before the walk blocks
+    private static final int QUEUE_CAPACITY_PER_THREAD = 16;
+    private final Statistics statistics = new Statistics();
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Returns an input for each file in the given source files and directories. The size of each file is taken from the walk, and the file is read
+     * using {@link #read(Path)} when it is parsed.
+     */
+    public List<ParseInput> collect(Collection<File> sources) throws IOException {
+        final List<ParseInput> inputs = new ArrayList<>();
+        walk(sources, new FileHandler() {
+            @Override
+            public boolean file(final Path file, final long size) {
+                inputs.add(new ParseInput() {
+                    @Override
+                    public String getName() {
+                        return file.toString();
+                    }
+
+                    @Override
+                    public long getLength() {
+                        return size;
+                    }
+
+                    @Override
+                    public CharSequence getText() throws IOException {
+                        return read(file);
+                    }
+                });
+                return true;
+            }
+        });
+        return inputs;
+    }
+
     /**
-     * Process the given source files and directories using the given number of threads.
+     * Process the given source files and directories using the given number of threads. The directories are walked by another thread, which hands
+     * the files to the worker threads using a bounded queue, so that the walk blocks when the workers fall behind. Stops at the first failure,
+     * which is rethrown.
      */
-    public void process(Collection<File> files, final Worker worker, int threads) throws InterruptedException {
-        ExecutorService executor = Executors.newCachedThreadPool();
-        final List<File> copy = new ArrayList<>(files);
-        final File endQueue = new File(".");
-        final LinkedBlockingQueue<File> queue = new LinkedBlockingQueue<>();
+    public void process(final Collection<File> sources, final Worker worker, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        final BlockingQueue<Path> queue = new ArrayBlockingQueue<>(threads * QUEUE_CAPACITY_PER_THREAD);
+        final Path endQueue = new File(".").toPath();
+        final AtomicReference<Exception> failure = new AtomicReference<>();
         executor.execute(new Runnable() {
             @Override
             public void run() {
-                for (File file : copy) {
-                    collect(file, queue);
+                try {
+                    walk(sources, new FileHandler() {
+                        @Override
+                        public boolean file(Path file, long size) throws InterruptedException {
+                            while (failure.get() == null) {
+                                if (queue.offer(file, 100, TimeUnit.MILLISECONDS)) {
+                                    return true;
+                                }
+                            }
+                            return false;
+                        }
+                    });
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                }
+                if (failure.get() != null) {
+                    // The workers stop taking files once there is a failure, so discard the files they will not take
+                    queue.clear();
+                }
+                try {
+                    queue.put(endQueue);
+                } catch (InterruptedException e) {
+                    failure.compareAndSet(null, e);
                 }
-                queue.add(endQueue);
             }
         });
         for (int i = 0; i < threads; i++) {
@@ -34,50 +110,225 @@ public class FileCollector {
                 @Override
                 public void run() {
                     try {
-                        while (true) {
-                            File file = queue.take();
+                        while (failure.get() == null) {
+                            Path file = queue.take();
                             if (file == endQueue) {
-                                queue.add(endQueue);
+                                queue.put(endQueue);
                                 break;
                             }
-                            StringBuilder content = new StringBuilder();
-                            BufferedReader reader = new BufferedReader(new FileReader(file));
-                            try {
-                                char[] chars = new char[4096];
-                                while (true) {
-                                    int nread = reader.read(chars, 0, chars.length);
-                                    if (nread < 0) {
-                                        break;
-                                    }
-                                    content.append(chars, 0, nread);
-                                }
-                            } finally {
-                                reader.close();
-                            }
-
-                            worker.handle(file, content.toString());
+                            String content = read(file);
+                            long start = System.nanoTime();
+                            worker.handle(file, content);
+                            statistics.handled(System.nanoTime() - start);
                         }
                     } catch (Exception e) {
-                        throw new RuntimeException(e);
+                        failure.compareAndSet(null, e);
                     }
                 }
             });
         }
         executor.shutdown();
         executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        if (failure.get() != null) {
+            throw failure.get();
+        }
     }
 
-    private void collect(File source, Collection<File> files) {
-        if (source.isFile()) {
-            files.add(source);
-        } else if (source.isDirectory()) {
-            for (File file : source.listFiles()) {
-                collect(file, files);
+    /**
+     * Reads the content of the given file, which is encoded using UTF-8.
+     */
+    public String read(Path file) throws IOException {
+        long start = System.nanoTime();
+        byte[] bytes = Files.readAllBytes(file);
+        String content = decode(bytes);
+        statistics.read(file, bytes.length, System.nanoTime() - start);
+        return content;
+    }
+
+    static String decode(byte[] bytes) {
+        for (byte b : bytes) {
+            if (b < 0) {
+                return new String(bytes, StandardCharsets.UTF_8);
             }
         }
+        // Plain ASCII, which can be copied directly to the string rather than decoded
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private void walk(Collection<File> sources, final FileHandler handler) throws IOException {
+        long start = System.nanoTime();
+        try {
+            for (File source : sources) {
+                final boolean[] stopped = new boolean[1];
+                Files.walkFileTree(source.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (!attrs.isRegularFile()) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        try {
+                            if (!handler.file(file, attrs.size())) {
+                                stopped[0] = true;
+                                return FileVisitResult.TERMINATE;
+                            }
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        // Ignore missing files and directory cycles
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+                if (stopped[0]) {
+                    break;
+                }
+            }
+        } finally {
+            statistics.walked(System.nanoTime() - start);
+        }
+    }
+
+    private interface FileHandler {
+        /**
+         * @return false to stop the walk.
+         */
+        boolean file(Path file, long size) throws InterruptedException;
     }
 
     public interface Worker {
-        void handle(File file, String content) throws Exception;
+        void handle(Path file, String content) throws Exception;
+    }
+
+    /**
+     * Statistics for the files found and read by a collector. Times are in nanoseconds. The statistics can be updated and read concurrently.
+     */
+    public static class Statistics {
+        private final AtomicLong walkTime = new AtomicLong();
+        private final AtomicLong files = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong readTime = new AtomicLong();
+        private final AtomicLong handleTime = new AtomicLong();
+        private final AtomicReference<FileRead> largest = new AtomicReference<>();
+        private final AtomicReference<FileRead> slowest = new AtomicReference<>();
+
+        void walked(long time) {
+            walkTime.addAndGet(time);
+        }
+
+        void read(Path file, long size, long time) {
+            files.incrementAndGet();
+            bytes.addAndGet(size);
+            readTime.addAndGet(time);
+            FileRead read = new FileRead(file, size, time);
+            while (true) {
+                FileRead current = largest.get();
+                if (current != null && current.size >= size || largest.compareAndSet(current, read)) {
+                    break;
+                }
+            }
+            while (true) {
+                FileRead current = slowest.get();
+                if (current != null && current.time >= time || slowest.compareAndSet(current, read)) {
+                    break;
+                }
+            }
+        }
+
+        void handled(long time) {
+            handleTime.addAndGet(time);
+        }
+
+        /**
+         * Returns the time spent walking directories.
+         */
+        public long getWalkTime() {
+            return walkTime.get();
+        }
+
+        /**
+         * Returns the number of files read.
+         */
+        public long getFileCount() {
+            return files.get();
+        }
+
+        /**
+         * Returns the number of bytes read.
+         */
+        public long getByteCount() {
+            return bytes.get();
+        }
+
+        /**
+         * Returns the total time spent reading and decoding files, summed over all threads.
+         */
+        public long getReadTime() {
+            return readTime.get();
+        }
+
+        /**
+         * Returns the total time spent in {@link Worker#handle(Path, String)}, summed over all threads.
+         */
+        public long getHandleTime() {
+            return handleTime.get();
+        }
+
+        /**
+         * Returns the largest file read, or null if none.
+         */
+        public FileRead getLargestFile() {
+            return largest.get();
+        }
+
+        /**
+         * Returns the file that took the longest to read, or null if none.
+         */
+        public FileRead getSlowestFile() {
+            return slowest.get();
+        }
+
+        @Override
+        public String toString() {
+            long count = getFileCount();
+            return String.format("Found files in %dms, read %d files (%d KB) in %dms, average %dus per file, largest %s, slowest %s",
+                    getWalkTime() / 1000000, count, getByteCount() / 1024, getReadTime() / 1000000, count == 0 ? 0 : getReadTime() / count / 1000,
+                    getLargestFile(), getSlowestFile());
+        }
+    }
+
+    /**
+     * The size of a file and the time taken to read it.
+     */
+    public static class FileRead {
+        private final Path file;
+        private final long size;
+        private final long time;
+
+        FileRead(Path file, long size, long time) {
+            this.file = file;
+            this.size = size;
+            this.time = time;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%d KB, %dus)", file, size / 1024, time / 1000);
+        }
     }
 }